@@ -0,0 +1,120 @@
+package com.strategicgains.aclaid.benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.CheckRequest;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.TupleToUserSetPlan;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Measures AccessControl.check() through the namespace rewrite rules, a bare
+ * TupleToUserSetPlan.evaluate() over the 'parent' relation, a batch of
+ * BATCH_SIZE checks for one user made with checkAll() versus one check() per object,
+ * and lookupResources() of every object of a query's type the user has the relation to.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessControlBenchmark
+{
+	private static final int BATCH_SIZE = 200;
+	private static final int BATCHES = 16;
+
+	private AccessControl acl;
+	private TupleStore tuples;
+	private List<CheckQuery> queries;
+	private RewritePlan parentViewers;
+	private List<List<CheckRequest>> batches;
+
+	@Setup(Level.Trial)
+	public void setup(GraphState state)
+	throws InvalidTupleException
+	{
+		SyntheticGraph graph = state.newGraph();
+		tuples = state.store.newStore();
+		acl = graph.newAccessControl(tuples);
+		queries = graph.getAclQueries();
+		parentViewers = new TupleToUserSetPlan(SyntheticGraph.PARENT, SyntheticGraph.VIEWER, true);
+
+		// Each batch asks about BATCH_SIZE objects for the user of its first query, like a rendered document list.
+		batches = new ArrayList<>(BATCHES);
+
+		for (int b = 0; b < BATCHES; b++)
+		{
+			CheckQuery first = queries.get((b * BATCH_SIZE) % queries.size());
+			List<CheckRequest> batch = new ArrayList<>(BATCH_SIZE);
+
+			for (int i = 0; i < BATCH_SIZE; i++)
+			{
+				CheckQuery q = queries.get((b * BATCH_SIZE + i) % queries.size());
+				batch.add(new CheckRequest(first.getUserset(), q.getRelation(), q.getObjectId()));
+			}
+
+			batches.add(batch);
+		}
+	}
+
+	@Benchmark
+	public boolean check(TupleStoreBenchmark.Cursor cursor)
+	{
+		CheckQuery q = queries.get(cursor.next(queries.size()));
+		return acl.check(q.getUserset(), q.getRelation(), q.getObjectId());
+	}
+
+	@Benchmark
+	public BitSet checkAll(TupleStoreBenchmark.Cursor cursor)
+	{
+		return acl.checkAll(batches.get(cursor.next(batches.size())));
+	}
+
+	@Benchmark
+	public BitSet checkEach(TupleStoreBenchmark.Cursor cursor)
+	{
+		List<CheckRequest> batch = batches.get(cursor.next(batches.size()));
+		BitSet results = new BitSet(batch.size());
+
+		for (int i = 0; i < batch.size(); i++)
+		{
+			CheckRequest r = batch.get(i);
+			if (acl.check(r.getUserset(), r.getRelation(), r.getObjectId())) results.set(i);
+		}
+
+		return results;
+	}
+
+	@Benchmark
+	public long lookupResources(TupleStoreBenchmark.Cursor cursor)
+	{
+		CheckQuery q = queries.get(cursor.next(queries.size()));
+		return acl.lookupResources(q.getUserset(), q.getRelation(), q.getObjectId().getType()).count();
+	}
+
+	@Benchmark
+	public boolean tupleToUserSet(TupleStoreBenchmark.Cursor cursor)
+	{
+		CheckQuery q = queries.get(cursor.next(queries.size()));
+		return parentViewers.evaluate(new CheckContext(tuples), q.getObjectId(), q.getUserset());
+	}
+}
@@ -0,0 +1,29 @@
+package com.strategicgains.aclaid.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH GC profiler always attached, so every run reports allocation
+ * rate (gc.alloc.rate.norm) alongside throughput and latency. Accepts the standard JMH command
+ * line, e.g.
+ *
+ *   java -jar target/benchmarks.jar TupleStoreBenchmark.check -p store=DICTIONARY -p tuples=1000000 -rf json
+ */
+public class BenchmarkRunner
+{
+	public static void main(String[] args)
+	throws RunnerException, CommandLineOptionException
+	{
+		CommandLineOptions cli = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+			.parent(cli)
+			.addProfiler(GCProfiler.class)
+			.build())
+		.run();
+	}
+}
@@ -0,0 +1,43 @@
+package com.strategicgains.aclaid.benchmark;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+
+/**
+ * A pre-parsed check request so benchmarks measure evaluation rather than parsing.
+ */
+public class CheckQuery
+{
+	private final UserSet userset;
+	private final String relation;
+	private final ObjectId objectId;
+
+	public CheckQuery(UserSet userset, String relation, ObjectId objectId)
+	{
+		super();
+		this.userset = userset;
+		this.relation = relation;
+		this.objectId = objectId;
+	}
+
+	public UserSet getUserset()
+	{
+		return userset;
+	}
+
+	public String getRelation()
+	{
+		return relation;
+	}
+
+	public ObjectId getObjectId()
+	{
+		return objectId;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s@%s#%s", userset, relation, objectId);
+	}
+}
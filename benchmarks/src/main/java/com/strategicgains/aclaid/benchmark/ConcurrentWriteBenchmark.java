@@ -0,0 +1,79 @@
+package com.strategicgains.aclaid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Measures SimpleTupleStore write throughput from concurrent threads. Each operation writes a tuple and
+ * removes the one its thread wrote WINDOW operations earlier, so the store stays at a steady size.
+ *
+ * Run with e.g. '-t 1,2,4,8,16' (or '-t max') to see how throughput scales with writer threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentWriteBenchmark
+{
+	private static final int WINDOW = 4096;
+	private static final int GROUPS = 1024;
+
+	private SimpleTupleStore tuples;
+	private AtomicInteger threads = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Writer
+	{
+		private Tuple[] written = new Tuple[WINDOW];
+		private UserSet user;
+		private int next;
+
+		@Setup(Level.Iteration)
+		public void setup(ConcurrentWriteBenchmark benchmark)
+		{
+			user = new UserSet(new ObjectId("app", "user", "writer" + benchmark.threads.getAndIncrement()));
+			written = new Tuple[WINDOW];
+			next = 0;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup()
+	{
+		tuples = new SimpleTupleStore();
+	}
+
+	@Benchmark
+	public SimpleTupleStore writeAndRemove(Writer writer)
+	throws InvalidTupleException
+	{
+		int i = writer.next++;
+		int slot = i & (WINDOW - 1);
+		Tuple old = writer.written[slot];
+		if (old != null) tuples.remove(old);
+
+		Tuple tuple = new Tuple(writer.user, "member", new ObjectId("app", "group", "g" + (i % GROUPS) + "-" + i));
+		writer.written[slot] = tuple;
+		return tuples.write(tuple);
+	}
+}
@@ -0,0 +1,93 @@
+package com.strategicgains.aclaid.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.wal.DurableTupleStore;
+import com.strategicgains.aclaid.domain.wal.WriteAheadLog;
+import com.strategicgains.aclaid.domain.wal.WriteAheadLog.FsyncPolicy;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Measures the latency distribution (including p99) of a DurableTupleStore write for each fsync policy.
+ * Run with e.g. '-t 1,4,16' to see group commit share fsyncs between writer threads.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DurableWriteBenchmark
+{
+	@Param({"ALWAYS", "PERIODIC", "NEVER"})
+	public FsyncPolicy policy;
+
+	private Path directory;
+	private DurableTupleStore tuples;
+	private AtomicInteger threads = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Writer
+	{
+		private UserSet user;
+		private int next;
+
+		@Setup(Level.Iteration)
+		public void setup(DurableWriteBenchmark benchmark)
+		{
+			user = new UserSet(new ObjectId("app", "user", "writer" + benchmark.threads.getAndIncrement()));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup()
+	throws IOException
+	{
+		directory = Files.createTempDirectory("wal-benchmark");
+		tuples = new DurableTupleStore(new SimpleTupleStore(), new WriteAheadLog(directory, policy, WriteAheadLog.DEFAULT_FSYNC_INTERVAL_MILLIS, WriteAheadLog.DEFAULT_SEGMENT_SIZE));
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown()
+	throws IOException
+	{
+		tuples.close();
+
+		try (Stream<Path> files = Files.walk(directory))
+		{
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public DurableTupleStore write(Writer writer)
+	throws InvalidTupleException
+	{
+		int i = writer.next++;
+		return tuples.write(new Tuple(writer.user, "viewer", new ObjectId("app", "doc", "d" + i)));
+	}
+}
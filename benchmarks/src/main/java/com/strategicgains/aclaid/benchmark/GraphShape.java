@@ -0,0 +1,21 @@
+package com.strategicgains.aclaid.benchmark;
+
+/**
+ * The kinds of synthetic relation graphs the benchmarks can generate.
+ */
+public enum GraphShape
+{
+	/**
+	 * employee --teacher--> class#teacher --edit--> grade#edit --view--> grade
+	 * 
+	 * @see https://medium.com/building-carta/user-authorization-in-less-than-10-milliseconds-f20d277fec47
+	 */
+	CARTA,
+
+	/**
+	 * Nested groups granting viewer on a folder hierarchy whose leaf folders parent documents.
+	 * 
+	 * @see https://zanzibar.academy/
+	 */
+	ACADEMY
+}
@@ -0,0 +1,39 @@
+package com.strategicgains.aclaid.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark parameters describing the synthetic graph. Override on the command line, e.g.
+ * -p tuples=1000000 -p depth=8 -p fanOut=50 -p wildcardRatio=0.01
+ */
+@State(Scope.Benchmark)
+public class GraphState
+{
+	@Param({"CARTA", "ACADEMY"})
+	public GraphShape shape;
+
+	@Param({"SIMPLE", "SIMPLE_LEOPARD", "DICTIONARY", "OFF_HEAP"})
+	public StoreType store;
+
+	@Param({"100000"})
+	public int tuples;
+
+	@Param({"4"})
+	public int depth;
+
+	@Param({"20"})
+	public int fanOut;
+
+	@Param({"0.0"})
+	public double wildcardRatio;
+
+	@Param({"42"})
+	public long seed;
+
+	public SyntheticGraph newGraph()
+	{
+		return new SyntheticGraph(shape, tuples, depth, fanOut, wildcardRatio, seed);
+	}
+}
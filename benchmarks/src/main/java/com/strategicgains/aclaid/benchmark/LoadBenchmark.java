@@ -0,0 +1,119 @@
+package com.strategicgains.aclaid.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.encoded.TupleSnapshot;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Measures cold-loading the whole synthetic graph into an empty TupleStore, and removing every tuple
+ * from a loaded one (e.g. revoking access in bulk), one at a time and as a single batch.
+ *
+ * openSnapshot measures the alternative cold start: mapping a TupleSnapshot of the graph and answering
+ * the graph's check queries from it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark
+{
+	private List<Tuple> tuples;
+	private List<CheckQuery> queries;
+	private StoreType store;
+	private Path snapshot;
+
+	@Setup(Level.Trial)
+	public void setup(GraphState state)
+	throws IOException, InvalidTupleException
+	{
+		SyntheticGraph graph = state.newGraph();
+		tuples = graph.getTuples();
+		queries = graph.getStoreQueries();
+		store = state.store;
+		snapshot = Files.createTempFile("tuples", ".snapshot");
+		TupleSnapshot.write(snapshot, tuples, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	throws IOException
+	{
+		Files.deleteIfExists(snapshot);
+	}
+
+	@State(Scope.Thread)
+	public static class Loaded
+	{
+		private TupleStore tuples;
+
+		@Setup(Level.Invocation)
+		public void setup(LoadBenchmark benchmark)
+		throws InvalidTupleException
+		{
+			tuples = benchmark.store.newStore().write(benchmark.tuples);
+		}
+	}
+
+	@Benchmark
+	public TupleStore load()
+	throws InvalidTupleException
+	{
+		return store.newStore().write(tuples);
+	}
+
+	@Benchmark
+	public TupleStore removeAll(Loaded loaded)
+	{
+		TupleStore store = loaded.tuples;
+
+		for (Tuple tuple : tuples)
+		{
+			store.remove(tuple.getUserset(), tuple.getRelation(), tuple.getObjectId());
+		}
+
+		return store;
+	}
+
+	@Benchmark
+	public TupleStore removeBulk(Loaded loaded)
+	{
+		return loaded.tuples.remove(tuples);
+	}
+
+	@Benchmark
+	public int openSnapshot()
+	throws IOException
+	{
+		TupleSnapshot tuples = TupleSnapshot.open(snapshot);
+		int allowed = 0;
+
+		for (CheckQuery query : queries)
+		{
+			if (tuples.check(query.getUserset(), query.getRelation(), query.getObjectId())) allowed++;
+		}
+
+		return allowed;
+	}
+}
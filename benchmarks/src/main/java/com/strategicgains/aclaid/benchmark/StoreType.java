@@ -0,0 +1,48 @@
+package com.strategicgains.aclaid.benchmark;
+
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.encoded.DictionaryTupleStore;
+import com.strategicgains.aclaid.domain.encoded.OffHeapTupleStore;
+
+/**
+ * The TupleStore implementations under benchmark. Add new implementations here so every
+ * benchmark measures them against the same baseline.
+ */
+public enum StoreType
+{
+	SIMPLE
+	{
+		@Override
+		public TupleStore newStore()
+		{
+			return new SimpleTupleStore();
+		}
+	},
+	SIMPLE_LEOPARD
+	{
+		@Override
+		public TupleStore newStore()
+		{
+			return new SimpleTupleStore().enableLeopardIndex();
+		}
+	},
+	DICTIONARY
+	{
+		@Override
+		public TupleStore newStore()
+		{
+			return new DictionaryTupleStore();
+		}
+	},
+	OFF_HEAP
+	{
+		@Override
+		public TupleStore newStore()
+		{
+			return new OffHeapTupleStore();
+		}
+	};
+
+	public abstract TupleStore newStore();
+}
@@ -0,0 +1,356 @@
+package com.strategicgains.aclaid.benchmark;
+
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites._this;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.computedUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.tupleToUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.union;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Generates a deterministic, synthetic relation graph of roughly the requested number of tuples,
+ * along with check queries, read tuple sets and spare tuples (not in the graph) for write/remove
+ * benchmarks.
+ *
+ * Scale is controlled by:
+ *   tuples        - the approximate number of tuples to generate.
+ *   depth         - group nesting and folder hierarchy depth (ACADEMY only).
+ *   fanOut        - direct members per group, classes per teacher, grades per class, documents per folder.
+ *   wildcardRatio - the fraction of leaf objects also granted to every user via a 'type/*' userset.
+ */
+public class SyntheticGraph
+{
+	public static final String NAMESPACE = "bench";
+
+	public static final String MEMBER = "member";
+	public static final String PARENT = "parent";
+	public static final String OWNER = "owner";
+	public static final String EDITOR = "editor";
+	public static final String VIEWER = "viewer";
+	public static final String TEACHER = "teacher";
+	public static final String EDIT = "edit";
+	public static final String VIEW = "view";
+
+	private static final int QUERY_COUNT = 1024;
+
+	private final GraphShape shape;
+	private final int depth;
+	private final int fanOut;
+	private final double wildcardRatio;
+	private final Random random;
+
+	private final List<Tuple> tuples = new ArrayList<>();
+	private final List<Tuple> spareTuples = new ArrayList<>();
+	private final List<CheckQuery> storeQueries = new ArrayList<>();
+	private final List<CheckQuery> aclQueries = new ArrayList<>();
+	private final List<TupleSet> readSets = new ArrayList<>();
+
+	// Leaf objects per partition used to derive queries.
+	private final List<List<String>> partitionUsers = new ArrayList<>();
+	private final List<List<String>> partitionObjects = new ArrayList<>();
+	private final List<String> partitionGroups = new ArrayList<>();
+
+	public SyntheticGraph(GraphShape shape, int tuples, int depth, int fanOut, double wildcardRatio, long seed)
+	{
+		super();
+		this.shape = shape;
+		this.depth = Math.max(1, depth);
+		this.fanOut = Math.max(1, fanOut);
+		this.wildcardRatio = wildcardRatio;
+		this.random = new Random(seed);
+
+		if (shape == GraphShape.CARTA)
+		{
+			generateCarta(tuples);
+		}
+		else
+		{
+			generateAcademy(tuples);
+		}
+
+		generateQueries();
+	}
+
+	public GraphShape getShape()
+	{
+		return shape;
+	}
+
+	public List<Tuple> getTuples()
+	{
+		return tuples;
+	}
+
+	public List<Tuple> getSpareTuples()
+	{
+		return spareTuples;
+	}
+
+	/**
+	 * Queries answerable by TupleStore.check() alone.
+	 */
+	public List<CheckQuery> getStoreQueries()
+	{
+		return storeQueries;
+	}
+
+	/**
+	 * Queries that exercise the AccessControl rewrite rules (union, computed userset, tuple to userset).
+	 */
+	public List<CheckQuery> getAclQueries()
+	{
+		return aclQueries;
+	}
+
+	public List<TupleSet> getReadSets()
+	{
+		return readSets;
+	}
+
+	public <T extends TupleStore> T load(T store)
+	throws InvalidTupleException
+	{
+		store.write(tuples);
+		return store;
+	}
+
+	/**
+	 * Build an AccessControl whose namespace configuration matches the generated graph shape.
+	 *
+	 * @param store an empty TupleStore to hold the generated tuples.
+	 * @return a populated AccessControl.
+	 */
+	public AccessControl newAccessControl(TupleStore store)
+	throws InvalidTupleException
+	{
+		AccessControlBuilder builder = new AccessControlBuilder().tupleStore(store);
+
+		if (shape == GraphShape.CARTA)
+		{
+			builder
+				.object("employee")
+				.object("class")
+					.relation(TEACHER)
+				.object("grade")
+					.relation(EDIT)
+					.relation(VIEW)
+						.rewrite(union(_this(), computedUserSet(EDIT)));
+		}
+		else
+		{
+			builder
+				.object("user")
+				.object("group")
+					.relation(MEMBER)
+				.object("folder")
+					.relation(PARENT)
+					.relation(OWNER)
+					.relation(EDITOR)
+						.rewrite(union(_this(), computedUserSet(OWNER)))
+					.relation(VIEWER)
+						.rewrite(union(_this(), computedUserSet(EDITOR),
+							tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+				.object("doc")
+					.relation(PARENT)
+					.relation(OWNER)
+					.relation(EDITOR)
+						.rewrite(union(_this(), computedUserSet(OWNER)))
+					.relation(VIEWER)
+						.rewrite(union(_this(), computedUserSet(EDITOR),
+							tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))));
+		}
+
+		AccessControl acl = builder.build();
+
+		for (Tuple tuple : tuples)
+		{
+			acl.addTuple(tuple);
+		}
+
+		return acl;
+	}
+
+	private void generateCarta(int target)
+	{
+		int perClass = 1 + (2 * fanOut);
+		int classes = Math.max(1, target / perClass);
+		int employees = Math.max(1, classes / fanOut);
+		String everyone = objectId("employee", "*");
+
+		for (int c = 0; c < classes; c++)
+		{
+			String employee = objectId("employee", "e" + (c % employees));
+			String clazz = objectId("class", "c" + c);
+			List<String> users = new ArrayList<>();
+			List<String> grades = new ArrayList<>();
+			users.add(employee);
+			add(employee, TEACHER, clazz);
+
+			for (int g = 0; g < fanOut; g++)
+			{
+				String grade = objectId("grade", "c" + c + "g" + g);
+				grades.add(grade);
+				add(clazz + "#" + TEACHER, EDIT, grade);
+				add(grade + "#" + EDIT, VIEW, grade);
+
+				if (random.nextDouble() < wildcardRatio)
+				{
+					add(everyone, VIEW, grade);
+				}
+			}
+
+			partitionUsers.add(users);
+			partitionObjects.add(grades);
+			partitionGroups.add(clazz);
+			spareTuples.add(tuple(objectId("employee", "spare" + c), TEACHER, clazz));
+		}
+	}
+
+	private void generateAcademy(int target)
+	{
+		int perTeam = (3 * fanOut) + (2 * depth);
+		int teams = Math.max(1, target / perTeam);
+		String everyone = objectId("user", "*");
+
+		for (int t = 0; t < teams; t++)
+		{
+			List<String> users = new ArrayList<>();
+			List<String> docs = new ArrayList<>();
+
+			// Nested groups: group t_0 has users as members, group t_(k+1) contains t_k#member.
+			for (int u = 0; u < fanOut; u++)
+			{
+				String user = objectId("user", "t" + t + "u" + u);
+				users.add(user);
+				add(user, MEMBER, group(t, 0));
+			}
+
+			for (int k = 1; k < depth; k++)
+			{
+				add(group(t, k - 1) + "#" + MEMBER, MEMBER, group(t, k));
+			}
+
+			// Folder hierarchy: folder t_0 is the root, folder t_(k+1) has parent t_k.
+			for (int k = 1; k < depth; k++)
+			{
+				add(folder(t, k - 1), PARENT, folder(t, k));
+			}
+
+			add(group(t, depth - 1) + "#" + MEMBER, VIEWER, folder(t, 0));
+			add(users.get(0), OWNER, folder(t, 0));
+
+			for (int d = 0; d < fanOut; d++)
+			{
+				String doc = objectId("doc", "t" + t + "d" + d);
+				docs.add(doc);
+				add(folder(t, depth - 1), PARENT, doc);
+				add(users.get(d % users.size()), OWNER, doc);
+
+				if (random.nextDouble() < wildcardRatio)
+				{
+					add(everyone, VIEWER, doc);
+				}
+			}
+
+			partitionUsers.add(users);
+			partitionObjects.add(docs);
+			partitionGroups.add(group(t, depth - 1));
+			spareTuples.add(tuple(objectId("user", "spare" + t), MEMBER, group(t, 0)));
+		}
+	}
+
+	private void generateQueries()
+	{
+		int partitions = partitionUsers.size();
+		String groupRelation = (shape == GraphShape.CARTA ? TEACHER : MEMBER);
+		String storeRelation = (shape == GraphShape.CARTA ? EDIT : MEMBER);
+		String aclRelation = (shape == GraphShape.CARTA ? VIEW : VIEWER);
+
+		for (int i = 0; i < QUERY_COUNT; i++)
+		{
+			int p = random.nextInt(partitions);
+			// Half of the queries target the actor's own partition (mostly allowed), half a random one (mostly denied).
+			int q = (i % 2 == 0 ? p : random.nextInt(partitions));
+			String user = pick(partitionUsers.get(p));
+			String object = pick(partitionObjects.get(q));
+
+			storeQueries.add(query(user, storeRelation, (shape == GraphShape.CARTA ? object : partitionGroups.get(q))));
+			aclQueries.add(query(user, aclRelation, object));
+
+			if (i % 3 == 0) readSets.add(new TupleSet(null, null, parseObjectId(object)));
+			else if (i % 3 == 1) readSets.add(new TupleSet(parseUserSet(user)));
+			else readSets.add(new TupleSet(groupRelation, parseObjectId(partitionGroups.get(q))));
+		}
+	}
+
+	private String group(int team, int level)
+	{
+		return objectId("group", "t" + team + "g" + level);
+	}
+
+	private String folder(int team, int level)
+	{
+		return objectId("folder", "t" + team + "f" + level);
+	}
+
+	private String pick(List<String> values)
+	{
+		return values.get(random.nextInt(values.size()));
+	}
+
+	private void add(String userset, String relation, String objectId)
+	{
+		tuples.add(tuple(userset, relation, objectId));
+	}
+
+	private static String objectId(String type, String id)
+	{
+		return NAMESPACE + ":" + type + "/" + id;
+	}
+
+	private static Tuple tuple(String userset, String relation, String objectId)
+	{
+		return new Tuple(parseUserSet(userset), relation, parseObjectId(objectId));
+	}
+
+	private static CheckQuery query(String userset, String relation, String objectId)
+	{
+		return new CheckQuery(parseUserSet(userset), relation, parseObjectId(objectId));
+	}
+
+	private static UserSet parseUserSet(String userset)
+	{
+		try
+		{
+			return UserSet.parse(userset);
+		}
+		catch (ParseException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static ObjectId parseObjectId(String objectId)
+	{
+		try
+		{
+			return new ObjectId(objectId);
+		}
+		catch (ParseException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.strategicgains.aclaid.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Measures TupleStore.check(), read(TupleSet), write() and remove() directly, without
+ * any rewrite rule evaluation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TupleStoreBenchmark
+{
+	private TupleStore tuples;
+	private List<Tuple> graphTuples;
+	private List<CheckQuery> queries;
+	private List<TupleSet> readSets;
+	private List<Tuple> spares;
+
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		int next;
+
+		int next(int size)
+		{
+			int i = next;
+			next = (i + 1 == size ? 0 : i + 1);
+			return i;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup(GraphState state)
+	throws InvalidTupleException
+	{
+		SyntheticGraph graph = state.newGraph();
+		tuples = graph.load(state.store.newStore());
+		graphTuples = graph.getTuples();
+		queries = graph.getStoreQueries();
+		readSets = graph.getReadSets();
+		spares = graph.getSpareTuples();
+	}
+
+	@Benchmark
+	public boolean check(Cursor cursor)
+	{
+		CheckQuery q = queries.get(cursor.next(queries.size()));
+		return tuples.check(q.getUserset(), q.getRelation(), q.getObjectId());
+	}
+
+	@Benchmark
+	public Collection<Tuple> read(Cursor cursor)
+	{
+		return tuples.read(readSets.get(cursor.next(readSets.size())));
+	}
+
+	/**
+	 * Writes then removes a tuple that is not in the graph, so the store size stays constant.
+	 */
+	@Benchmark
+	public TupleStore writeThenRemove(Cursor cursor)
+	throws InvalidTupleException
+	{
+		Tuple tuple = spares.get(cursor.next(spares.size()));
+		tuples.write(tuple);
+		return tuples.remove(tuple);
+	}
+
+	/**
+	 * Removes then re-writes a tuple that is in the graph, so the store size stays constant.
+	 */
+	@Benchmark
+	public TupleStore removeThenWrite(Cursor cursor)
+	throws InvalidTupleException
+	{
+		Tuple tuple = graphTuples.get(cursor.next(graphTuples.size()));
+		tuples.remove(tuple);
+		return tuples.write(tuple);
+	}
+}
@@ -1,17 +1,42 @@
 package com.strategicgains.aclaid;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.cache.DecisionCache;
+import com.strategicgains.aclaid.domain.AsyncConditions;
+import com.strategicgains.aclaid.domain.CheckBudget;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.CheckRequest;
+import com.strategicgains.aclaid.domain.CheckResult;
 import com.strategicgains.aclaid.domain.SimpleTupleStore;
 import com.strategicgains.aclaid.domain.ObjectDefinition;
 import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.RelationDefinition;
+import com.strategicgains.aclaid.domain.ResourceLookup;
+import com.strategicgains.aclaid.domain.SubjectLookup;
 import com.strategicgains.aclaid.domain.Tuple;
 import com.strategicgains.aclaid.domain.TupleStore;
 import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+import com.strategicgains.aclaid.domain.Zookie;
+import com.strategicgains.aclaid.exception.BudgetExceededException;
 import com.strategicgains.aclaid.exception.InvalidTupleException;
 
 /**
@@ -32,34 +57,132 @@ import com.strategicgains.aclaid.exception.InvalidTupleException;
 public class AccessControl
 {
 	private Map<String, ObjectDefinition> objectsByName = new HashMap<>();
-	private TupleStore tuples = new SimpleTupleStore();
+	private TupleStore tuples;
+	private DecisionCache decisionCache;
+	private Executor unionExecutor;
+	private CheckBudget checkBudget;
 
-	public AccessControl addTuple(String userset, String relation, String objectId)
+	public AccessControl()
+	{
+		this(new SimpleTupleStore());
+	}
+
+	/**
+	 * Create an AccessControl that keeps its relation tuples in the given TupleStore.
+	 * 
+	 * @param tuples the TupleStore implementation to use for this namespace.
+	 */
+	public AccessControl(TupleStore tuples)
+	{
+		super();
+		this.tuples = tuples;
+	}
+
+	public DecisionCache getDecisionCache()
+	{
+		return decisionCache;
+	}
+
+	/**
+	 * Cache check decisions across requests. Cached decisions are tagged with the TupleStore revision they
+	 * were computed at and are not used once the store has advanced past it.
+	 * 
+	 * @param decisionCache the cache to use, or null to disable caching.
+	 * @return this AccessControl.
+	 */
+	public AccessControl setDecisionCache(DecisionCache decisionCache)
+	{
+		this.decisionCache = decisionCache;
+		return this;
+	}
+
+	public Executor getUnionExecutor()
+	{
+		return unionExecutor;
+	}
+
+	/**
+	 * Evaluate the branches of unions concurrently on the given executor, e.g. one from
+	 * {@link CheckContext#newUnionExecutor()}, so a slow branch does not hold back one that allows the user.
+	 * Worth it when some branches are slow, such as deep folder hierarchies or a remote TupleStore; for
+	 * in-memory trees the default sequential evaluation is cheaper.
+	 * 
+	 * @param unionExecutor the executor for union branches, or null to evaluate unions sequentially.
+	 * @return this AccessControl.
+	 */
+	public AccessControl setUnionExecutor(Executor unionExecutor)
+	{
+		this.unionExecutor = unionExecutor;
+		return this;
+	}
+
+	public CheckBudget getCheckBudget()
+	{
+		return checkBudget;
+	}
+
+	/**
+	 * Limit the work of each check, so a pathological graph cannot hold the calling thread. A check that
+	 * exceeds the budget is {@link CheckResult#INDETERMINATE} from {@link #decide(UserSet, String, ObjectId)}
+	 * and denied by the boolean checks. Indeterminate decisions are not cached. A batch from
+	 * {@link #checkAll(List)} shares one budget.
+	 * 
+	 * @param checkBudget the limits of each check, or null for none.
+	 * @return this AccessControl.
+	 */
+	public AccessControl setCheckBudget(CheckBudget checkBudget)
+	{
+		this.checkBudget = checkBudget;
+		return this;
+	}
+
+	/**
+	 * Write a relation tuple.
+	 * 
+	 * @return a Zookie covering the write, for later checks that must see it.
+	 */
+	public Zookie addTuple(String userset, String relation, String objectId)
 	throws ParseException, InvalidTupleException
 	{
 		return addTuple(new Tuple(userset, relation, objectId));
 	}
 
-	public AccessControl addTuple(UserSet userset, String relation, ObjectId objectId)
+	public Zookie addTuple(UserSet userset, String relation, ObjectId objectId)
 	throws InvalidTupleException
 	{
-		if (!containsRelation(relation)) throw new InvalidTupleException("Relation not registered: " + relation);
-		if (!objectsByName.containsKey(objectId.getType())) throw new InvalidTupleException("Object not defined: " + objectId.getType());
-
-		tuples.write(userset, relation, objectId);
-		return this;
+		return addTuple(new Tuple(userset, relation, objectId));
 	}
 
-	public AccessControl addTuple(Tuple tuple)
+	/**
+	 * Add a relation tuple, including its expiry if it has one.
+	 * 
+	 * @return a Zookie covering the write, for later checks that must see it.
+	 */
+	public Zookie addTuple(Tuple tuple)
 	throws InvalidTupleException
 	{
-		return addTuple(tuple.getUserset(), tuple.getRelation(), tuple.getObjectId());
+		if (!containsRelation(tuple.getRelation())) throw new InvalidTupleException("Relation not registered: " + tuple.getRelation());
+		if (!objectsByName.containsKey(tuple.getObjectId().getType())) throw new InvalidTupleException("Object not defined: " + tuple.getObjectId().getType());
+
+		return tuples.write(tuple).getZookie();
 	}
 
-	public AccessControl removeTuple(UserSet userset, String relation, ObjectId resource)
+	/**
+	 * Remove a relation tuple.
+	 * 
+	 * @return a Zookie covering the remove, for later checks that must see it.
+	 */
+	public Zookie removeTuple(UserSet userset, String relation, ObjectId resource)
 	{
-		tuples.remove(userset, relation, resource);
-		return this;
+		return tuples.remove(userset, relation, resource).getZookie();
+	}
+
+	/**
+	 * Answer a Zookie for the latest revision of the relation tuples.
+	 */
+	public Zookie getZookie()
+	{
+		return tuples.getZookie();
 	}
 
 	/**
@@ -74,6 +197,18 @@ public class AccessControl
 		return objectsByName.computeIfAbsent(objectName, ObjectDefinition::new);
 	}
 
+	/**
+	 * Compile the rewrite rules of every relation defined so far into their evaluation plans, so no check
+	 * pays for compiling them. Relations defined or changed afterward compile on their first check.
+	 *
+	 * @return this AccessControl instance.
+	 */
+	public AccessControl compile()
+	{
+		objectsByName.values().forEach(o -> o.relations().forEach(RelationDefinition::compile));
+		return this;
+	}
+
 	/**
 	 * Check to see if the given relation name is defined in any of the object definitions.
 	 * 
@@ -125,10 +260,367 @@ public class AccessControl
 	 * @return
 	 */
 	public boolean check(UserSet userset, String relation, ObjectId objectId)
+	{
+		return check(userset, relation, objectId, tuples.getRevision());
+	}
+
+	/**
+	 * Make an authorization check, accepting a cached decision computed at or after minRevision.
+	 * Without a DecisionCache this is the same as {@link #check(UserSet, String, ObjectId)}.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param minRevision the oldest TupleStore revision whose decisions are acceptable.
+	 * @return
+	 */
+	public boolean check(UserSet userset, String relation, ObjectId objectId, long minRevision)
+	{
+		return decide(userset, relation, objectId, minRevision).isAllowed();
+	}
+
+	/**
+	 * Make an authorization check, distinguishing a check that exceeded the {@link CheckBudget} from a
+	 * denial.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return ALLOWED, DENIED, or INDETERMINATE if the budget was exceeded.
+	 */
+	public CheckResult decide(UserSet userset, String relation, ObjectId objectId)
+	{
+		return decide(userset, relation, objectId, tuples.getRevision());
+	}
+
+	/**
+	 * Make an authorization check like {@link #decide(UserSet, String, ObjectId)}, accepting a cached
+	 * decision computed at or after minRevision.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param minRevision the oldest TupleStore revision whose decisions are acceptable.
+	 * @return ALLOWED, DENIED, or INDETERMINATE if the budget was exceeded.
+	 */
+	public CheckResult decide(UserSet userset, String relation, ObjectId objectId, long minRevision)
+	{
+		if (decisionCache != null)
+		{
+			Boolean cached = decisionCache.get(userset, relation, objectId, minRevision);
+			if (cached != null) return CheckResult.of(cached);
+		}
+
+		long revision = tuples.getRevision();
+		long expiresAt = tuples.getNextExpiry();
+		boolean allowed;
+
+		try
+		{
+			allowed = check(newCheckContext(), userset, relation, objectId);
+		}
+		catch (BudgetExceededException e)
+		{
+			return CheckResult.INDETERMINATE;
+		}
+
+		if (decisionCache != null) decisionCache.put(userset, relation, objectId, allowed, revision, expiresAt);
+		return CheckResult.of(allowed);
+	}
+
+	/**
+	 * Make an authorization check at least as fresh as the Zookie, e.g. one returned by
+	 * {@link #addTuple(Tuple)} or {@link #removeTuple(UserSet, String, ObjectId)}. Cached decisions
+	 * computed at or after the Zookie's revision are used.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param zookie the oldest acceptable revision.
+	 * @return
+	 */
+	public boolean check(UserSet userset, String relation, ObjectId objectId, Zookie zookie)
+	{
+		return check(userset, relation, objectId, zookie.getRevision());
+	}
+
+	/**
+	 * Make an authorization check within the given context. Sub-checks already answered in the
+	 * context (e.g. by a previous check using the same context) are not evaluated again.
+	 * 
+	 * @param context a CheckContext from {@link #newCheckContext()}.
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return
+	 * @throws BudgetExceededException if the context's budget is exceeded.
+	 */
+	public boolean check(CheckContext context, UserSet userset, String relation, ObjectId objectId)
 	{
 		ObjectDefinition objectDefinition = objectsByName.get(objectId.getType());
-		if (objectDefinition == null) return false;
-		return objectDefinition.check(tuples, userset, relation, objectId);
+		if (objectDefinition == null || !objectDefinition.containsRelation(relation)) return false;
+		return context.check(userset, relation, objectId);
+	}
+
+	/**
+	 * Make an authorization check without blocking on the TupleStore. Sub-checks are composed from the
+	 * store's {@link TupleStore#checkAsync(UserSet, String, ObjectId)} and
+	 * {@link TupleStore#readAsync(com.strategicgains.aclaid.domain.TupleSet)}, so a store backed by I/O can
+	 * answer them without holding a thread; in-memory stores answer them immediately. Unions are evaluated
+	 * in order, even with a union executor. A check that exceeds the budget is denied.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return a stage completing with the decision.
+	 */
+	public CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		return decideAsync(userset, relation, objectId, tuples.getRevision()).thenApply(CheckResult::isAllowed);
+	}
+
+	/**
+	 * Make an asynchronous authorization check at least as fresh as the Zookie, accepting cached decisions
+	 * computed at or after its revision.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param zookie the oldest acceptable revision.
+	 * @return a stage completing with the decision.
+	 */
+	public CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId, Zookie zookie)
+	{
+		return decideAsync(userset, relation, objectId, zookie.getRevision()).thenApply(CheckResult::isAllowed);
+	}
+
+	/**
+	 * Make an asynchronous authorization check like {@link #checkAsync(UserSet, String, ObjectId)},
+	 * distinguishing a check that exceeded the {@link CheckBudget} from a denial.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return a stage completing with ALLOWED, DENIED, or INDETERMINATE if the budget was exceeded.
+	 */
+	public CompletionStage<CheckResult> decideAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		return decideAsync(userset, relation, objectId, tuples.getRevision());
+	}
+
+	private CompletionStage<CheckResult> decideAsync(UserSet userset, String relation, ObjectId objectId, long minRevision)
+	{
+		if (decisionCache != null)
+		{
+			Boolean cached = decisionCache.get(userset, relation, objectId, minRevision);
+			if (cached != null) return CompletableFuture.completedFuture(CheckResult.of(cached));
+		}
+
+		long revision = tuples.getRevision();
+		long expiresAt = tuples.getNextExpiry();
+		return checkAsync(newCheckContext(), userset, relation, objectId)
+			.thenApply(allowed -> {
+				if (decisionCache != null) decisionCache.put(userset, relation, objectId, allowed, revision, expiresAt);
+				return CheckResult.of(allowed);
+			})
+			.exceptionally(e -> {
+				Throwable cause = (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+				if (cause instanceof BudgetExceededException) return CheckResult.INDETERMINATE;
+				throw (e instanceof CompletionException ? (CompletionException) e : new CompletionException(e));
+			});
+	}
+
+	/**
+	 * Make an asynchronous authorization check within the given context, which must not be used again
+	 * until the returned stage completes.
+	 * 
+	 * @param context a CheckContext from {@link #newCheckContext()}.
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return a stage completing with the decision, or failing with BudgetExceededException if the context's
+	 * budget is exceeded.
+	 */
+	public CompletionStage<Boolean> checkAsync(CheckContext context, UserSet userset, String relation, ObjectId objectId)
+	{
+		ObjectDefinition objectDefinition = objectsByName.get(objectId.getType());
+		if (objectDefinition == null || !objectDefinition.containsRelation(relation)) return AsyncConditions.of(false);
+		return context.checkAsync(userset, relation, objectId);
+	}
+
+	/**
+	 * Make many authorization checks in one pass, e.g. a permission bit for every document in a list.
+	 * 
+	 * Requests are grouped by userset and relation. Each group's stored relations are checked with a single
+	 * batched {@link TupleStore#checkAll(UserSet, String, List)} call, then every request is evaluated through
+	 * the rewrite rules in one shared CheckContext, so sub-checks common to several requests (e.g. a shared
+	 * parent folder) are computed once. Decisions are read from and written to the DecisionCache, if any.
+	 * Requests left undecided when the batch exceeds the {@link CheckBudget} are denied.
+	 * 
+	 * @param requests the checks to make.
+	 * @return a BitSet with bit i set if requests.get(i) is allowed.
+	 */
+	public BitSet checkAll(List<CheckRequest> requests)
+	{
+		BitSet results = new BitSet(requests.size());
+		long revision = tuples.getRevision();
+		long expiresAt = tuples.getNextExpiry();
+		Map<UserSet, Map<String, List<Integer>>> groups = new LinkedHashMap<>();
+
+		for (int i = 0; i < requests.size(); i++)
+		{
+			CheckRequest request = requests.get(i);
+			if (request == null || !request.isValid()) continue;
+
+			if (decisionCache != null)
+			{
+				Boolean cached = decisionCache.get(request.getUserset(), request.getRelation(), request.getObjectId(), revision);
+
+				if (cached != null)
+				{
+					if (cached) results.set(i);
+					continue;
+				}
+			}
+
+			groups.computeIfAbsent(request.getUserset(), u -> new HashMap<>())
+				.computeIfAbsent(request.getRelation(), r -> new ArrayList<>())
+				.add(i);
+		}
+
+		CheckContext context = newCheckContext();
+
+		groups.forEach((userset, relations) -> relations.forEach((relation, indexes) -> {
+			List<ObjectId> objectIds = new ArrayList<>(indexes.size());
+			indexes.forEach(i -> objectIds.add(requests.get(i).getObjectId()));
+			context.prefetchTuples(userset, relation, objectIds);
+
+			for (int i = 0; i < indexes.size(); i++)
+			{
+				boolean allowed;
+
+				try
+				{
+					allowed = check(context, userset, relation, objectIds.get(i));
+				}
+				catch (BudgetExceededException e)
+				{
+					continue;
+				}
+
+				if (allowed) results.set(indexes.get(i));
+				if (decisionCache != null) decisionCache.put(userset, relation, objectIds.get(i), allowed, revision, expiresAt);
+			}
+		}));
+
+		return results;
+	}
+
+	/**
+	 * Answer the objects of the given type to which the userset has the relation, e.g. every 'doc' that
+	 * 'app:user/kim' can view. Rather than checking every known object, the relation tuples and rewrite
+	 * rules are walked backwards from the userset. The stream is lazy: objects are found as it is consumed.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectType the name of the object definition, e.g. 'doc'.
+	 * @return a stream of matching ObjectIds, in no particular order.
+	 * @see ResourceLookup
+	 */
+	public Stream<ObjectId> lookupResources(UserSet userset, String relation, String objectType)
+	{
+		ObjectDefinition objectDefinition = objectsByName.get(objectType);
+		if (objectDefinition == null || !objectDefinition.containsRelation(relation)) return Stream.empty();
+
+		ResourceLookup lookup = new ResourceLookup(newCheckContext(), objectsByName.values(), userset, relation, objectType);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(lookup, Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Answer a page of the objects of the given type to which the userset has the relation. Pages are
+	 * consistent with each other while the TupleStore revision is unchanged.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectType the name of the object definition, e.g. 'doc'.
+	 * @param offset the number of matching objects to skip.
+	 * @param limit the maximum number of objects to return.
+	 * @return up to limit matching ObjectIds.
+	 */
+	public List<ObjectId> lookupResources(UserSet userset, String relation, String objectType, int offset, int limit)
+	{
+		if (offset < 0) throw new IllegalArgumentException("Offset cannot be negative: " + offset);
+		if (limit < 0) throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+
+		return lookupResources(userset, relation, objectType).skip(offset).limit(limit).toList();
+	}
+
+	/**
+	 * Expand the userset of an object's relation into a tree of the users and usersets it contains, following
+	 * the rewrite rules (Zanzibar's Expand). Nested usersets in the leaves (e.g. 'app:group/eng#member') are
+	 * not expanded; see {@link #lookupSubjects(ObjectId, String)} for the flattened users.
+	 * 
+	 * @param objectId
+	 * @param relation
+	 * @return the userset tree, or an empty leaf if the object type or relation is not defined.
+	 */
+	public UsersetTree expand(ObjectId objectId, String relation)
+	{
+		ObjectDefinition objectDefinition = objectsByName.get(objectId.getType());
+
+		if (objectDefinition == null || !objectDefinition.containsRelation(relation))
+		{
+			return UsersetTree.leaf(new UserSet(objectId, relation), Collections.emptyList());
+		}
+
+		return newCheckContext().expand(objectId, relation);
+	}
+
+	/**
+	 * Answer the users that have the relation to the object, expanding nested usersets up to the TupleStore's
+	 * default maximum depth. Each user is returned once. The stream is lazy: usersets are expanded as it is consumed.
+	 * 
+	 * @param objectId
+	 * @param relation
+	 * @return a stream of the users, in no particular order.
+	 */
+	public Stream<UserSet> lookupSubjects(ObjectId objectId, String relation)
+	{
+		return lookupSubjects(objectId, relation, TupleStore.DEFAULT_MAX_DEPTH, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Answer the users that have the relation to the object, expanding nested usersets up to maxDepth levels.
+	 * 
+	 * @param objectId
+	 * @param relation
+	 * @param maxDepth the maximum number of userset levels to expand, the object's relation being the first.
+	 * @param limit the maximum number of users to return.
+	 * @return a stream of at most limit users.
+	 * @see SubjectLookup
+	 */
+	public Stream<UserSet> lookupSubjects(ObjectId objectId, String relation, int maxDepth, int limit)
+	{
+		if (maxDepth < 1) throw new IllegalArgumentException("Maximum depth must be positive: " + maxDepth);
+		if (limit < 0) throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+
+		ObjectDefinition objectDefinition = objectsByName.get(objectId.getType());
+		if (objectDefinition == null || !objectDefinition.containsRelation(relation)) return Stream.empty();
+
+		SubjectLookup lookup = new SubjectLookup(newCheckContext(), objectId, relation, maxDepth);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(lookup, Spliterator.DISTINCT | Spliterator.NONNULL), false)
+			.limit(limit);
+	}
+
+	/**
+	 * Create a request-scoped CheckContext that memoizes sub-checks and resolves computed usersets
+	 * on other objects through this namespace's object definitions.
+	 * 
+	 * @return a new CheckContext.
+	 */
+	public CheckContext newCheckContext()
+	{
+		return new CheckContext(tuples, objectsByName::get, unionExecutor).setBudget(checkBudget);
 	}
 
 	@Override
@@ -2,12 +2,22 @@ package com.strategicgains.aclaid.builder;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.cache.DecisionCache;
+import com.strategicgains.aclaid.domain.CheckBudget;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.TupleStore;
 
 public class AccessControlBuilder
 {
 	private Map<String, ObjectDefinitionBuilder> objectBuilders = new HashMap<>();
+	private TupleStore tupleStore;
+	private DecisionCache decisionCache;
+	private Executor unionExecutor;
+	private CheckBudget checkBudget;
 
 	public ObjectDefinitionBuilder object(String objectName)
 	{
@@ -16,6 +26,56 @@ public class AccessControlBuilder
 		return current;
 	}
 
+	/**
+	 * Use the given TupleStore for the built AccessControl instead of a new SimpleTupleStore.
+	 * 
+	 * @param tupleStore the TupleStore to hold the relation tuples.
+	 * @return this builder.
+	 */
+	public AccessControlBuilder tupleStore(TupleStore tupleStore)
+	{
+		this.tupleStore = tupleStore;
+		return this;
+	}
+
+	/**
+	 * Cache check decisions of the built AccessControl in the given DecisionCache.
+	 * 
+	 * @param decisionCache the cache for check decisions.
+	 * @return this builder.
+	 */
+	public AccessControlBuilder decisionCache(DecisionCache decisionCache)
+	{
+		this.decisionCache = decisionCache;
+		return this;
+	}
+
+	/**
+	 * Evaluate the branches of unions concurrently on the given executor in the built AccessControl.
+	 * 
+	 * @param unionExecutor the executor for union branches, e.g. from {@link CheckContext#newUnionExecutor()}.
+	 * @return this builder.
+	 * @see AccessControl#setUnionExecutor(Executor)
+	 */
+	public AccessControlBuilder parallelUnions(Executor unionExecutor)
+	{
+		this.unionExecutor = unionExecutor;
+		return this;
+	}
+
+	/**
+	 * Limit the work of each check of the built AccessControl.
+	 * 
+	 * @param checkBudget the limits of each check.
+	 * @return this builder.
+	 * @see AccessControl#setCheckBudget(CheckBudget)
+	 */
+	public AccessControlBuilder checkBudget(CheckBudget checkBudget)
+	{
+		this.checkBudget = checkBudget;
+		return this;
+	}
+
 	public boolean containsRelation(String relation, String objectName)
 	{
 		ObjectDefinitionBuilder builder = objectBuilders.get(objectName);
@@ -30,8 +90,11 @@ public class AccessControlBuilder
 
 	public AccessControl build()
 	{
-		AccessControl acl = new AccessControl();
+		AccessControl acl = new AccessControl(tupleStore != null ? tupleStore : new SimpleTupleStore());
+		acl.setDecisionCache(decisionCache);
+		acl.setUnionExecutor(unionExecutor);
+		acl.setCheckBudget(checkBudget);
 		objectBuilders.values().stream().forEach(b -> b.build(acl));
-		return acl;
+		return acl.compile();
 	}
 }
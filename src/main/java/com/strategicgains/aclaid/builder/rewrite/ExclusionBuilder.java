@@ -0,0 +1,31 @@
+package com.strategicgains.aclaid.builder.rewrite;
+
+import com.strategicgains.aclaid.domain.RelationDefinition;
+import com.strategicgains.aclaid.domain.rewrite.Exclusion;
+import com.strategicgains.aclaid.domain.rewrite.RewriteRule;
+
+public class ExclusionBuilder
+implements SetOperationBuilder
+{
+	private RewriteRuleBuilder base;
+	private RewriteRuleBuilder excluded;
+
+	protected ExclusionBuilder(RewriteRuleBuilder base, RewriteRuleBuilder excluded)
+	{
+		super();
+
+		if (base == null || excluded == null)
+		{
+			throw new IllegalArgumentException("Both a base and an excluded rule builder are required.");
+		}
+
+		this.base = base;
+		this.excluded = excluded;
+	}
+
+	@Override
+	public RewriteRule build(RelationDefinition relation)
+	{
+		return new Exclusion(base.build(relation), excluded.build(relation));
+	}
+}
@@ -12,6 +12,20 @@ public abstract class Rewrites
 		return new UnionBuilder(ruleBuilders);
 	}
 
+	public static IntersectionBuilder intersection(RewriteRuleBuilder... ruleBuilders)
+	{
+		return new IntersectionBuilder(ruleBuilders);
+	}
+
+	/**
+	 * The users of the base rule that are not users of the excluded rule, e.g.
+	 * exclusion(computedUserSet("editor"), computedUserSet("banned")).
+	 */
+	public static ExclusionBuilder exclusion(RewriteRuleBuilder base, RewriteRuleBuilder excluded)
+	{
+		return new ExclusionBuilder(base, excluded);
+	}
+
 	public static ComputedUserSetBuilder computedUserSet(String relation)
 	{
 		return new ComputedUserSetBuilder().relation(relation);
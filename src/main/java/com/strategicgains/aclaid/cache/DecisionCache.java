@@ -0,0 +1,304 @@
+package com.strategicgains.aclaid.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+
+/**
+ * A bounded, concurrent cache of check decisions keyed by (UserSet, relation, ObjectId).
+ *
+ * Each decision is tagged with the TupleStore revision it was computed at. A lookup states the minimum
+ * revision the caller will accept; older decisions are invalidated and reported as a miss, so a cached
+ * result is never staler than the caller's consistency requirement. Passing the store's current revision
+ * accepts only decisions computed since the last write.
+ *
+ * Expiring tuples disappear without a write, so a decision may also carry an expiry: the earliest expiry
+ * of the tuples it may depend on. It is evicted once that passes, whatever the revision.
+ *
+ * Entries are also evicted once they are older than the time-to-live, and least-recently-used entries
+ * are evicted once the cache exceeds its maximum size. The cache is split into independently locked
+ * segments, each holding an equal share of the maximum size, to reduce contention.
+ */
+public class DecisionCache
+{
+	public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments;
+	private final long ttlNanos;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	public DecisionCache()
+	{
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of cached decisions.
+	 * @param ttl how long a decision may be cached, regardless of revision. Zero or less disables time-based eviction.
+	 * @param unit the unit of ttl.
+	 */
+	public DecisionCache(int maximumSize, long ttl, TimeUnit unit)
+	{
+		super();
+
+		if (maximumSize < 1) throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+
+		int segmentSize = Math.max(1, (maximumSize + SEGMENTS - 1) / SEGMENTS);
+		this.segments = new Segment[SEGMENTS];
+		this.ttlNanos = (ttl > 0 ? unit.toNanos(ttl) : 0);
+
+		for (int i = 0; i < SEGMENTS; i++)
+		{
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * Answer the cached decision if it was computed at or after minRevision and has not expired.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param minRevision the oldest TupleStore revision the caller accepts.
+	 * @return the cached decision or null on a miss.
+	 */
+	public Boolean get(UserSet userset, String relation, ObjectId objectId, long minRevision)
+	{
+		Key key = new Key(userset, relation, objectId);
+		Segment segment = segmentFor(key);
+		Decision decision;
+
+		synchronized (segment)
+		{
+			decision = segment.get(key);
+
+			if (decision != null)
+			{
+				if (decision.revision < minRevision)
+				{
+					segment.remove(key);
+					invalidations.increment();
+					decision = null;
+				}
+				else if (isExpired(decision))
+				{
+					segment.remove(key);
+					evictions.increment();
+					decision = null;
+				}
+			}
+		}
+
+		if (decision == null)
+		{
+			misses.increment();
+			return null;
+		}
+
+		hits.increment();
+		return decision.allowed;
+	}
+
+	/**
+	 * Cache a decision computed at the given TupleStore revision. The revision should be read from the store
+	 * before the decision is computed, so a concurrent write leaves the entry conservatively stale.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param allowed the decision.
+	 * @param revision the TupleStore revision the decision was computed at.
+	 */
+	public void put(UserSet userset, String relation, ObjectId objectId, boolean allowed, long revision)
+	{
+		put(userset, relation, objectId, allowed, revision, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Cache a decision computed at the given TupleStore revision that holds until the given instant, e.g.
+	 * the {@link com.strategicgains.aclaid.domain.TupleStore#getNextExpiry() next expiry} of the store's
+	 * tuples, read before the decision is computed. A decision that no longer holds is not cached.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param allowed the decision.
+	 * @param revision the TupleStore revision the decision was computed at.
+	 * @param expiresAt the last instant, in epoch milliseconds, at which the decision holds.
+	 */
+	public void put(UserSet userset, String relation, ObjectId objectId, boolean allowed, long revision, long expiresAt)
+	{
+		if (expiresAt < System.currentTimeMillis()) return;
+
+		Key key = new Key(new UserSet(userset), relation, new ObjectId(objectId));
+		Segment segment = segmentFor(key);
+
+		synchronized (segment)
+		{
+			Decision existing = segment.get(key);
+
+			// Never replace a decision with one computed at an older revision.
+			if (existing != null && existing.revision > revision) return;
+
+			segment.put(key, new Decision(allowed, revision, System.nanoTime(), expiresAt));
+		}
+	}
+
+	public void invalidateAll()
+	{
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+
+	public long size()
+	{
+		long size = 0;
+
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of decisions evicted for size or age.
+	 */
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the number of decisions discarded because the store advanced past their revision.
+	 */
+	public long getInvalidations()
+	{
+		return invalidations.sum();
+	}
+
+	private boolean isExpired(Decision decision)
+	{
+		return ((ttlNanos > 0 && System.nanoTime() - decision.createdAt > ttlNanos)
+			|| (decision.expiresAt != Long.MAX_VALUE && decision.expiresAt < System.currentTimeMillis()));
+	}
+
+	private Segment segmentFor(Key key)
+	{
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * An access-ordered map that evicts its least-recently-used entry once it exceeds its capacity.
+	 */
+	private final class Segment
+	extends LinkedHashMap<Key, Decision>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		private Segment(int capacity)
+		{
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Decision> eldest)
+		{
+			if (size() <= capacity) return false;
+
+			evictions.increment();
+			return true;
+		}
+	}
+
+	private static final class Decision
+	{
+		private final boolean allowed;
+		private final long revision;
+		private final long createdAt;
+		private final long expiresAt;
+
+		private Decision(boolean allowed, long revision, long createdAt, long expiresAt)
+		{
+			super();
+			this.allowed = allowed;
+			this.revision = revision;
+			this.createdAt = createdAt;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static final class Key
+	{
+		private final UserSet userset;
+		private final String relation;
+		private final ObjectId objectId;
+		private final int hash;
+
+		private Key(UserSet userset, String relation, ObjectId objectId)
+		{
+			super();
+			this.userset = userset;
+			this.relation = relation;
+			this.objectId = objectId;
+
+			// Same value as Objects.hash(userset, relation, objectId), without allocating its varargs array.
+			int h = 31 + Objects.hashCode(userset);
+			h = 31 * h + Objects.hashCode(relation);
+			this.hash = 31 * h + Objects.hashCode(objectId);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object)
+		{
+			if (this == object) return true;
+			if (!(object instanceof Key)) return false;
+
+			Key that = (Key) object;
+			return (Objects.equals(this.relation, that.relation)
+				&& Objects.equals(this.objectId, that.objectId)
+				&& Objects.equals(this.userset, that.userset));
+		}
+	}
+}
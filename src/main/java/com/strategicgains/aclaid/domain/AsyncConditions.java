@@ -0,0 +1,111 @@
+package com.strategicgains.aclaid.domain;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.IntFunction;
+
+/**
+ * Short-circuiting boolean composition of asynchronous conditions, used by the asynchronous check path.
+ *
+ * Conditions are started one at a time, in order, and the next only once the previous has completed
+ * without deciding the result. Conditions that complete immediately (e.g. from an in-memory TupleStore or
+ * the memo) are consumed in a loop rather than by chaining stages, so long operand lists do not deepen the
+ * stack.
+ */
+public final class AsyncConditions
+{
+	private static final CompletionStage<Boolean> TRUE = CompletableFuture.completedStage(Boolean.TRUE);
+	private static final CompletionStage<Boolean> FALSE = CompletableFuture.completedStage(Boolean.FALSE);
+
+	private AsyncConditions()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * @return a completed stage holding the value.
+	 */
+	public static CompletionStage<Boolean> of(boolean value)
+	{
+		return (value ? TRUE : FALSE);
+	}
+
+	/**
+	 * Answer whether any of the conditions is true, stopping at the first that is.
+	 *
+	 * @param count the number of conditions.
+	 * @param condition starts the condition at an index.
+	 * @return a stage completing with true if any condition is true, false if there are none.
+	 */
+	public static CompletionStage<Boolean> anyOf(int count, IntFunction<? extends CompletionStage<Boolean>> condition)
+	{
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		evaluate(0, count, condition, true, result);
+		return result;
+	}
+
+	/**
+	 * Answer whether all of the conditions are true, stopping at the first that is not.
+	 *
+	 * @param count the number of conditions.
+	 * @param condition starts the condition at an index.
+	 * @return a stage completing with true if every condition is true, including when there are none.
+	 */
+	public static CompletionStage<Boolean> allOf(int count, IntFunction<? extends CompletionStage<Boolean>> condition)
+	{
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		evaluate(0, count, condition, false, result);
+		return result;
+	}
+
+	/**
+	 * Evaluate the conditions from index on until one answers the deciding value, completing the result
+	 * with it, or with its opposite once all have been evaluated.
+	 */
+	private static void evaluate(int index, int count, IntFunction<? extends CompletionStage<Boolean>> condition, boolean deciding, CompletableFuture<Boolean> result)
+	{
+		for (int i = index; i < count; i++)
+		{
+			CompletableFuture<Boolean> stage;
+
+			try
+			{
+				stage = condition.apply(i).toCompletableFuture();
+			}
+			catch (RuntimeException e)
+			{
+				result.completeExceptionally(e);
+				return;
+			}
+
+			if (!stage.isDone())
+			{
+				int next = i + 1;
+				stage.whenComplete((value, e) -> {
+					if (e != null) result.completeExceptionally(e);
+					else if (value == deciding) result.complete(deciding);
+					else evaluate(next, count, condition, deciding, result);
+				});
+				return;
+			}
+
+			try
+			{
+				if (stage.join() == deciding)
+				{
+					result.complete(deciding);
+					return;
+				}
+			}
+			catch (CompletionException | CancellationException e)
+			{
+				result.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+				return;
+			}
+		}
+
+		result.complete(!deciding);
+	}
+}
@@ -0,0 +1,60 @@
+package com.strategicgains.aclaid.domain;
+
+/**
+ * Limits on the work one check may do, so a pathological graph (e.g. an object with 100k parents, or a
+ * deep chain of computed usersets) cannot hold a request thread. A check that exceeds any limit stops
+ * with a {@link com.strategicgains.aclaid.exception.BudgetExceededException} and is answered as
+ * {@link CheckResult#INDETERMINATE}.
+ * <ul>
+ * <li>maxDepth - the most nested relation checks through rewrite rules, e.g. parent folders walked.</li>
+ * <li>maxTuples - the most tuples read, counting each stored relation check as one.</li>
+ * <li>maxMillis - the wall time from the start of the check. It is tested between steps, so a single
+ * blocking TupleStore call is not interrupted.</li>
+ * </ul>
+ */
+public final class CheckBudget
+{
+	public static final CheckBudget UNLIMITED = new CheckBudget(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private final int maxDepth;
+	private final long maxTuples;
+	private final long maxMillis;
+
+	/**
+	 * @param maxDepth the most nested relation checks.
+	 * @param maxTuples the most tuples read.
+	 * @param maxMillis the most wall time, in milliseconds.
+	 */
+	public CheckBudget(int maxDepth, long maxTuples, long maxMillis)
+	{
+		super();
+		if (maxDepth < 1) throw new IllegalArgumentException("Maximum depth must be positive: " + maxDepth);
+		if (maxTuples < 1) throw new IllegalArgumentException("Maximum tuples must be positive: " + maxTuples);
+		if (maxMillis < 1) throw new IllegalArgumentException("Maximum time must be positive: " + maxMillis);
+
+		this.maxDepth = maxDepth;
+		this.maxTuples = maxTuples;
+		this.maxMillis = maxMillis;
+	}
+
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	public long getMaxTuples()
+	{
+		return maxTuples;
+	}
+
+	public long getMaxMillis()
+	{
+		return maxMillis;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("maxDepth=%d, maxTuples=%d, maxMillis=%d", maxDepth, maxTuples, maxMillis);
+	}
+}
@@ -0,0 +1,810 @@
+package com.strategicgains.aclaid.domain;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.exception.BudgetExceededException;
+
+/**
+ * Request-scoped state for a top-level check, batch of checks or expand. It is threaded through
+ * {@link RewritePlan#evaluate(CheckContext, ObjectId, UserSet)} so identical sub-problems, e.g. the
+ * 'owner' leaf reached through both 'viewer' -> 'editor' -> 'owner' and a parent folder's 'viewer',
+ * are computed once per request.
+ *
+ * Two kinds of sub-problems are memoized: stored relation checks against the TupleStore (the
+ * _this leaves) and full relation checks that apply the rewrite rules of the object's definition
+ * (computed usersets on another object). Hit and miss counters expose how effective the memo is.
+ *
+ * While a relation check is being evaluated it is marked in progress, and a cyclic rewrite (e.g. a folder
+ * that is its own ancestor) that reaches it again answers false instead of recursing. That answer is only
+ * an assumption until the check in progress completes, so a result that depended on it is not memoized;
+ * it is recomputed if asked again outside the cycle.
+ *
+ * Given a union executor, unions evaluate their branches concurrently (see {@link #anyOf(List)}), e.g. so a
+ * slow parent folder walk does not hold back a direct grant. Each branch runs in a fork of the context that
+ * reads this context's memo and keeps its own; the memos of branches that finish are merged back. The
+ * TupleStore must then support concurrent reads.
+ *
+ * The asynchronous methods ({@link #checkAsync(UserSet, String, ObjectId)}) compose the same evaluation from
+ * the TupleStore's asynchronous checks and reads, one step at a time, and evaluate unions sequentially. An
+ * asynchronous check must complete before the context is used again.
+ *
+ * Given a {@link CheckBudget}, the checks made through the context (and its forks) share one allowance of
+ * depth, tuples read and wall time, starting when the budget is set. Once it is exceeded, every later check
+ * throws BudgetExceededException, so the context cannot be reused.
+ *
+ * Not thread-safe. Create one per request.
+ */
+public class CheckContext
+{
+	private TupleStore tuples;
+	private Function<String, ObjectDefinition> objectDefinitions;
+	private Executor unionExecutor;
+	private Map<Key, Boolean> memo;
+	private Map<UserSet, UsersetTree> expansions = new HashMap<>();
+	private long hits;
+	private long misses;
+
+	// The budget being spent, or null if unlimited, and the depth of nested relation checks.
+	private Spending spending;
+	private int depth;
+
+	// The relation checks being evaluated, by their depth, and the shallowest of them that a result
+	// evaluated since the current check started has assumed false.
+	private Map<Key, Integer> inProgress;
+	private int assumedDepth = Integer.MAX_VALUE;
+
+	// Likewise for expansions, by their position in the stack of expansions being evaluated.
+	private Map<UserSet, Integer> expanding = new HashMap<>();
+	private int assumedExpansion = Integer.MAX_VALUE;
+
+	// For a fork evaluating one branch of a parallel union: the forking context, and whether the union
+	// has been decided so the branch can stop.
+	private CheckContext parent;
+	private volatile boolean cancelled;
+	private volatile boolean completed;
+
+	/**
+	 * Create a context that only evaluates stored relations. Computed usersets on other objects
+	 * are checked directly against the TupleStore.
+	 *
+	 * @param tuples the TupleStore to check against.
+	 */
+	public CheckContext(TupleStore tuples)
+	{
+		this(tuples, null);
+	}
+
+	/**
+	 * Create a context that resolves computed usersets on other objects through their definitions.
+	 *
+	 * @param tuples the TupleStore to check against.
+	 * @param objectDefinitions answers the ObjectDefinition for an object type, or null if not defined.
+	 */
+	public CheckContext(TupleStore tuples, Function<String, ObjectDefinition> objectDefinitions)
+	{
+		this(tuples, objectDefinitions, null);
+	}
+
+	/**
+	 * Create a context that resolves computed usersets through their definitions and, given an executor,
+	 * evaluates the branches of unions concurrently.
+	 *
+	 * @param tuples the TupleStore to check against.
+	 * @param objectDefinitions answers the ObjectDefinition for an object type, or null if not defined.
+	 * @param unionExecutor runs the branches of parallel unions, or null to evaluate unions sequentially.
+	 */
+	public CheckContext(TupleStore tuples, Function<String, ObjectDefinition> objectDefinitions, Executor unionExecutor)
+	{
+		super();
+		this.tuples = tuples;
+		this.objectDefinitions = objectDefinitions;
+		this.unionExecutor = unionExecutor;
+
+		// Forks read the memo while this context goes on after a union is decided.
+		this.memo = (unionExecutor != null ? new ConcurrentHashMap<>() : new HashMap<>());
+		this.inProgress = (unionExecutor != null ? new ConcurrentHashMap<>() : new HashMap<>());
+	}
+
+	private CheckContext(CheckContext parent)
+	{
+		super();
+		this.tuples = parent.tuples;
+		this.objectDefinitions = parent.objectDefinitions;
+		this.memo = new HashMap<>();
+		this.inProgress = new HashMap<>();
+		this.parent = parent;
+		this.spending = parent.spending;
+		this.depth = parent.depth;
+	}
+
+	/**
+	 * Create an executor for parallel unions: one virtual thread per branch where the runtime has them,
+	 * otherwise a cached pool of daemon threads.
+	 */
+	public static Executor newUnionExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (Executor) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(r -> {
+				Thread thread = new Thread(r, "union-branch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	public TupleStore getTuples()
+	{
+		return tuples;
+	}
+
+	/**
+	 * Limit the work of the checks made through this context, starting the clock on its wall time.
+	 *
+	 * @param budget the limits, or null for none.
+	 * @return this context.
+	 */
+	public CheckContext setBudget(CheckBudget budget)
+	{
+		this.spending = (budget == null || budget == CheckBudget.UNLIMITED ? null : new Spending(budget));
+		return this;
+	}
+
+	/**
+	 * Read the tuples of the tupleset, counting them against the budget.
+	 *
+	 * @param tupleSet
+	 * @return the matching tuples.
+	 * @throws BudgetExceededException if the budget is exceeded.
+	 */
+	public Collection<Tuple> read(TupleSet tupleSet)
+	{
+		verifyBudget();
+		Collection<Tuple> found = tuples.read(tupleSet);
+		spend(found.size());
+		return found;
+	}
+
+	/**
+	 * Asynchronously read the tuples of the tupleset, counting them against the budget.
+	 *
+	 * @param tupleSet
+	 * @return a stage completing with the matching tuples, or failing with BudgetExceededException.
+	 */
+	public CompletionStage<Collection<Tuple>> readAsync(TupleSet tupleSet)
+	{
+		try
+		{
+			verifyBudget();
+		}
+		catch (BudgetExceededException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+
+		return tuples.readAsync(tupleSet).thenApply(found -> {
+			spend(found.size());
+			return found;
+		});
+	}
+
+	/**
+	 * Answer whether the relation tuples (and their nested usersets) relate the userset to the objectId.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return true if the relation is stored.
+	 */
+	public boolean checkTuples(UserSet userset, String relation, ObjectId objectId)
+	{
+		if (parent != null) stopIfCancelled();
+		verifyBudget();
+
+		Key key = new Key(userset, relation, objectId, false);
+		Boolean result = recall(key);
+
+		if (result != null)
+		{
+			hits++;
+			return result;
+		}
+
+		misses++;
+		spend(1);
+		boolean allowed = tuples.check(userset, relation, objectId);
+		memo.put(key, allowed);
+		return allowed;
+	}
+
+	/**
+	 * Asynchronously answer whether the relation tuples (and their nested usersets) relate the userset to the
+	 * objectId, memoized with {@link #checkTuples(UserSet, String, ObjectId)}.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return a stage completing with true if the relation is stored.
+	 */
+	public CompletionStage<Boolean> checkTuplesAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		Key key = new Key(userset, relation, objectId, false);
+		Boolean result;
+
+		try
+		{
+			verifyBudget();
+			result = recall(key);
+			if (result == null) spend(1);
+		}
+		catch (BudgetExceededException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+
+		if (result != null)
+		{
+			hits++;
+			return AsyncConditions.of(result);
+		}
+
+		misses++;
+		return tuples.checkAsync(userset, relation, objectId).thenApply(allowed -> {
+			memo.put(key, allowed);
+			return allowed;
+		});
+	}
+
+	/**
+	 * Check the stored relation from the userset to each of the objects in one batched TupleStore
+	 * call and memoize the results for {@link #checkTuples(UserSet, String, ObjectId)}.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectIds
+	 */
+	public void prefetchTuples(UserSet userset, String relation, List<ObjectId> objectIds)
+	{
+		BitSet allowed = tuples.checkAll(userset, relation, objectIds);
+
+		for (int i = 0; i < objectIds.size(); i++)
+		{
+			if (memo.putIfAbsent(new Key(userset, relation, objectIds.get(i), false), allowed.get(i)) == null)
+			{
+				misses++;
+			}
+		}
+	}
+
+	/**
+	 * Answer whether the userset has the relation to the objectId, applying the rewrite rules defined
+	 * for the object's type. Falls back to {@link #checkTuples(UserSet, String, ObjectId)} when the
+	 * type or relation is not defined.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return true if the relation is allowed.
+	 */
+	public boolean check(UserSet userset, String relation, ObjectId objectId)
+	{
+		RelationDefinition definition = getRelationDefinition(relation, objectId);
+		if (definition == null) return checkTuples(userset, relation, objectId);
+
+		return check(userset, definition, objectId);
+	}
+
+	/**
+	 * Answer whether the userset has the given relation to the objectId, applying its rewrite rules. The
+	 * check is memoized and cycle-guarded with {@link #check(UserSet, String, ObjectId)}.
+	 *
+	 * @param userset
+	 * @param definition the relation to check.
+	 * @param objectId
+	 * @return true if the relation is allowed.
+	 */
+	public boolean check(UserSet userset, RelationDefinition definition, ObjectId objectId)
+	{
+		if (parent != null) stopIfCancelled();
+		verifyBudget();
+
+		Key key = new Key(userset, definition.getName(), objectId, true);
+		Integer cycle = inProgressDepth(key);
+
+		if (cycle != null)
+		{
+			assumedDepth = Math.min(assumedDepth, cycle);
+			return false;
+		}
+
+		Boolean result = recall(key);
+
+		if (result != null)
+		{
+			hits++;
+			return result;
+		}
+
+		misses++;
+		int outerAssumed = assumedDepth;
+		assumedDepth = Integer.MAX_VALUE;
+		boolean allowed;
+
+		try
+		{
+			enter();
+			inProgress.put(key, depth);
+			allowed = definition.getPlan().evaluate(this, objectId, userset);
+			if (assumedDepth >= depth) memo.put(key, allowed);
+		}
+		finally
+		{
+			leave(key, outerAssumed);
+		}
+
+		return allowed;
+	}
+
+	/**
+	 * Asynchronously answer whether the userset has the relation to the objectId, applying the rewrite rules
+	 * defined for the object's type, memoized with {@link #check(UserSet, String, ObjectId)}.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return a stage completing with true if the relation is allowed.
+	 */
+	public CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		RelationDefinition definition = getRelationDefinition(relation, objectId);
+		if (definition == null) return checkTuplesAsync(userset, relation, objectId);
+
+		return checkAsync(userset, definition, objectId);
+	}
+
+	/**
+	 * Asynchronously answer whether the userset has the given relation to the objectId, applying its rewrite
+	 * rules, memoized with {@link #check(UserSet, String, ObjectId)}.
+	 *
+	 * @param userset
+	 * @param definition the relation to check.
+	 * @param objectId
+	 * @return a stage completing with true if the relation is allowed.
+	 */
+	public CompletionStage<Boolean> checkAsync(UserSet userset, RelationDefinition definition, ObjectId objectId)
+	{
+		try
+		{
+			verifyBudget();
+		}
+		catch (BudgetExceededException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+
+		Key key = new Key(userset, definition.getName(), objectId, true);
+		Integer cycle = inProgressDepth(key);
+
+		if (cycle != null)
+		{
+			assumedDepth = Math.min(assumedDepth, cycle);
+			return AsyncConditions.of(false);
+		}
+
+		Boolean result = recall(key);
+
+		if (result != null)
+		{
+			hits++;
+			return AsyncConditions.of(result);
+		}
+
+		misses++;
+		int outerAssumed = assumedDepth;
+		assumedDepth = Integer.MAX_VALUE;
+		CompletionStage<Boolean> evaluation;
+
+		try
+		{
+			enter();
+			inProgress.put(key, depth);
+			evaluation = definition.getPlan().evaluateAsync(this, objectId, userset);
+		}
+		catch (RuntimeException e)
+		{
+			evaluation = CompletableFuture.failedFuture(e);
+		}
+
+		// Evaluation is sequential, so nothing else runs in this context until the stage completes.
+		return evaluation.whenComplete((allowed, e) -> {
+			if (allowed != null && assumedDepth >= depth) memo.put(key, allowed);
+			leave(key, outerAssumed);
+		});
+	}
+
+	/**
+	 * Answer whether any of the branches is true for this context, e.g. the children of a union.
+	 *
+	 * When this context {@link #isParallel()}, the branches are evaluated concurrently on the union
+	 * executor, each in its own fork of this context. The first branch found true decides the result and
+	 * the others are cancelled: they stop at their next check through their fork. A branch that throws
+	 * fails the union only if no branch is true. Otherwise the branches are evaluated in order until one
+	 * is true.
+	 *
+	 * @param branches the conditions to evaluate.
+	 * @return true if any branch is true.
+	 */
+	public boolean anyOf(List<Predicate<CheckContext>> branches)
+	{
+		if (!isParallel() || branches.size() < 2)
+		{
+			for (Predicate<CheckContext> branch : branches)
+			{
+				if (branch.test(this)) return true;
+			}
+
+			return false;
+		}
+
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(branches.size());
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		List<CheckContext> forks = new ArrayList<>(branches.size());
+
+		for (Predicate<CheckContext> branch : branches)
+		{
+			CheckContext fork = new CheckContext(this);
+			forks.add(fork);
+			Runnable task = () -> {
+				try
+				{
+					boolean allowed = branch.test(fork);
+					fork.completed = true;
+					if (allowed) result.complete(Boolean.TRUE);
+				}
+				catch (CancellationException e)
+				{
+					// A sibling branch was true.
+				}
+				catch (RuntimeException e)
+				{
+					failure.compareAndSet(null, e);
+				}
+				finally
+				{
+					if (pending.decrementAndGet() == 0)
+					{
+						if (failure.get() != null) result.completeExceptionally(failure.get());
+						else result.complete(Boolean.FALSE);
+					}
+				}
+			};
+
+			try
+			{
+				unionExecutor.execute(task);
+			}
+			catch (RejectedExecutionException e)
+			{
+				task.run();
+			}
+		}
+
+		try
+		{
+			return result.join();
+		}
+		catch (CompletionException e)
+		{
+			throw (RuntimeException) e.getCause();
+		}
+		finally
+		{
+			forks.forEach(fork -> fork.cancelled = true);
+			forks.stream().filter(fork -> fork.completed).forEach(this::merge);
+		}
+	}
+
+	/**
+	 * @return true if unions evaluated in this context run their branches concurrently. Forks evaluate
+	 * nested unions sequentially, so a check forks once and cannot starve a bounded executor.
+	 */
+	public boolean isParallel()
+	{
+		return (unionExecutor != null);
+	}
+
+	/**
+	 * Expand the userset of the objectId's relation into a tree, applying the rewrite rules defined for the
+	 * object's type. Falls back to {@link #expandTuples(ObjectId, String)} when the type or relation is not
+	 * defined. Expansions are memoized, so a parent shared by several objects is expanded once.
+	 *
+	 * While a relation is being expanded, a cyclic rewrite (e.g. a folder that is its own ancestor) that
+	 * reaches it again expands it as an empty leaf instead of recursing. Expansions that contain such a leaf
+	 * for a relation further up are not memoized.
+	 *
+	 * @param objectId
+	 * @param relation
+	 * @return the userset tree of objectId#relation.
+	 */
+	public UsersetTree expand(ObjectId objectId, String relation)
+	{
+		RelationDefinition definition = getRelationDefinition(relation, objectId);
+		if (definition == null) return expandTuples(objectId, relation);
+
+		return expand(objectId, definition);
+	}
+
+	/**
+	 * Expand the userset of the objectId's given relation into a tree, applying its rewrite rules. The
+	 * expansion is memoized and cycle-guarded with {@link #expand(ObjectId, String)}.
+	 *
+	 * @param objectId
+	 * @param definition the relation to expand.
+	 * @return the userset tree of objectId#relation.
+	 */
+	public UsersetTree expand(ObjectId objectId, RelationDefinition definition)
+	{
+		UserSet userset = new UserSet(objectId, definition.getName());
+		UsersetTree tree = expansions.get(userset);
+		if (tree != null) return tree;
+
+		Integer cycle = expanding.get(userset);
+
+		if (cycle != null)
+		{
+			assumedExpansion = Math.min(assumedExpansion, cycle);
+			return UsersetTree.leaf(userset, Collections.emptyList());
+		}
+
+		int outerAssumed = assumedExpansion;
+		int position = expanding.size();
+		assumedExpansion = Integer.MAX_VALUE;
+		expanding.put(userset, position);
+
+		try
+		{
+			tree = definition.getPlan().expand(this, objectId);
+			if (tree.getUserset() == null) tree.setUserset(userset);
+			if (assumedExpansion >= position) expansions.put(userset, tree);
+		}
+		finally
+		{
+			expanding.remove(userset);
+			assumedExpansion = Math.min(outerAssumed, (assumedExpansion < position ? assumedExpansion : Integer.MAX_VALUE));
+		}
+
+		return tree;
+	}
+
+	/**
+	 * Answer the users and usersets stored for the objectId's relation, including those stored for all
+	 * objects of its type (e.g. 'app:doc/*'), as a leaf.
+	 *
+	 * @param objectId
+	 * @param relation
+	 * @return a leaf of the stored subjects.
+	 */
+	public UsersetTree expandTuples(ObjectId objectId, String relation)
+	{
+		Set<UserSet> subjects = new LinkedHashSet<>();
+		tuples.read(new TupleSet(relation, objectId)).forEach(t -> subjects.add(t.getUserset()));
+
+		if (!objectId.isIdentifierWildcard())
+		{
+			ObjectId wildcard = new ObjectId(objectId.getNamespace(), objectId.getType(), ObjectPath.WILDCARD);
+			tuples.read(new TupleSet(relation, wildcard)).forEach(t -> subjects.add(t.getUserset()));
+		}
+
+		return UsersetTree.leaf(new UserSet(objectId, relation), subjects);
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return the fraction of memoized lookups answered from the memo, or zero if there were none.
+	 */
+	public double getHitRatio()
+	{
+		long lookups = hits + misses;
+		return (lookups == 0 ? 0.0 : (double) hits / lookups);
+	}
+
+	/**
+	 * Answer the memoized result from this context or, for a fork, the contexts it was forked from.
+	 */
+	private Boolean recall(Key key)
+	{
+		for (CheckContext context = this; context != null; context = context.parent)
+		{
+			Boolean result = context.memo.get(key);
+			if (result != null) return result;
+		}
+
+		return null;
+	}
+
+	private void merge(CheckContext fork)
+	{
+		fork.memo.forEach(memo::putIfAbsent);
+		assumedDepth = Math.min(assumedDepth, fork.assumedDepth);
+		hits += fork.hits;
+		misses += fork.misses;
+	}
+
+	/**
+	 * Enter a nested relation check, stopping if it is deeper than the budget allows. The caller leaves it
+	 * by decrementing the depth, even if this throws.
+	 */
+	private void enter()
+	{
+		depth++;
+		if (spending != null && depth > spending.budget.getMaxDepth()) spending.exceed("Check exceeded its depth budget of " + spending.budget.getMaxDepth());
+	}
+
+	/**
+	 * Leave the relation check entered with {@link #enter()}, passing on to the enclosing check any
+	 * assumption made about a check further up.
+	 */
+	private void leave(Key key, int outerAssumed)
+	{
+		inProgress.remove(key);
+		assumedDepth = Math.min(outerAssumed, (assumedDepth < depth ? assumedDepth : Integer.MAX_VALUE));
+		depth--;
+	}
+
+	/**
+	 * Answer the depth of the relation check if it is being evaluated by this context or, for a fork, the
+	 * contexts it was forked from; otherwise null.
+	 */
+	private Integer inProgressDepth(Key key)
+	{
+		for (CheckContext context = this; context != null; context = context.parent)
+		{
+			Integer result = context.inProgress.get(key);
+			if (result != null) return result;
+		}
+
+		return null;
+	}
+
+	private void verifyBudget()
+	{
+		if (spending != null) spending.verify();
+	}
+
+	private void spend(long tupleCount)
+	{
+		if (spending != null) spending.spend(tupleCount);
+	}
+
+	private void stopIfCancelled()
+	{
+		if (cancelled) throw new CancellationException("A sibling branch of the union was allowed.");
+	}
+
+	private RelationDefinition getRelationDefinition(String relation, ObjectId objectId)
+	{
+		if (objectDefinitions == null) return null;
+
+		ObjectDefinition definition = objectDefinitions.apply(objectId.getType());
+		return (definition == null ? null : definition.getRelation(relation));
+	}
+
+	/**
+	 * The tuples read and time left of a budget, shared by a context and its forks.
+	 */
+	private static final class Spending
+	{
+		private final CheckBudget budget;
+		private final long deadline;
+		private final AtomicLong tuplesRead = new AtomicLong();
+		private volatile String exceeded;
+
+		private Spending(CheckBudget budget)
+		{
+			super();
+			this.budget = budget;
+			long millis = Math.min(budget.getMaxMillis(), Long.MAX_VALUE / 1_000_000L);
+			this.deadline = System.nanoTime() + millis * 1_000_000L;
+		}
+
+		private void verify()
+		{
+			if (exceeded != null) throw new BudgetExceededException(exceeded);
+			if (System.nanoTime() - deadline > 0) exceed("Check exceeded its time budget of " + budget.getMaxMillis() + "ms");
+		}
+
+		private void spend(long tupleCount)
+		{
+			if (tuplesRead.addAndGet(tupleCount) > budget.getMaxTuples()) exceed("Check exceeded its budget of " + budget.getMaxTuples() + " tuples read");
+			verify();
+		}
+
+		private void exceed(String reason)
+		{
+			exceeded = reason;
+			throw new BudgetExceededException(reason);
+		}
+	}
+
+	private static final class Key
+	{
+		private final UserSet userset;
+		private final String relation;
+		private final ObjectId objectId;
+		private final boolean rewritten;
+		private final int hash;
+
+		private Key(UserSet userset, String relation, ObjectId objectId, boolean rewritten)
+		{
+			super();
+			this.userset = userset;
+			this.relation = relation;
+			this.objectId = objectId;
+			this.rewritten = rewritten;
+
+			// Computed once per key, as Objects.hash(...) would, without its varargs array.
+			int h = 31 + Objects.hashCode(userset);
+			h = 31 * h + Objects.hashCode(relation);
+			h = 31 * h + Objects.hashCode(objectId);
+			this.hash = 31 * h + Boolean.hashCode(rewritten);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object)
+		{
+			if (this == object) return true;
+			if (!(object instanceof Key)) return false;
+
+			Key that = (Key) object;
+			return (this.rewritten == that.rewritten
+				&& Objects.equals(this.relation, that.relation)
+				&& Objects.equals(this.objectId, that.objectId)
+				&& Objects.equals(this.userset, that.userset));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.strategicgains.aclaid.domain;
+
+import java.text.ParseException;
+
+/**
+ * A single (userset, relation, objectId) question for a batch check.
+ *
+ * @see com.strategicgains.aclaid.AccessControl#checkAll(java.util.List)
+ */
+public class CheckRequest
+{
+	private UserSet userset;
+	private String relation;
+	private ObjectId objectId;
+
+	public CheckRequest(String userset, String relation, String objectId)
+	throws ParseException
+	{
+		this(UserSet.parse(userset), relation, new ObjectId(objectId));
+	}
+
+	public CheckRequest(UserSet userset, String relation, ObjectId objectId)
+	{
+		super();
+		this.userset = userset;
+		this.relation = relation;
+		this.objectId = objectId;
+	}
+
+	public UserSet getUserset()
+	{
+		return userset;
+	}
+
+	public String getRelation()
+	{
+		return relation;
+	}
+
+	public ObjectId getObjectId()
+	{
+		return objectId;
+	}
+
+	public boolean isValid()
+	{
+		return (userset != null && relation != null && objectId != null);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s@%s#%s", userset, relation, objectId);
+	}
+}
@@ -0,0 +1,24 @@
+package com.strategicgains.aclaid.domain;
+
+/**
+ * The decision of a check. INDETERMINATE means the check exceeded its {@link CheckBudget} before it
+ * could be decided, so neither answer is known.
+ *
+ * @see com.strategicgains.aclaid.AccessControl#decide(UserSet, String, ObjectId)
+ */
+public enum CheckResult
+{
+	ALLOWED,
+	DENIED,
+	INDETERMINATE;
+
+	public static CheckResult of(boolean allowed)
+	{
+		return (allowed ? ALLOWED : DENIED);
+	}
+
+	public boolean isAllowed()
+	{
+		return (this == ALLOWED);
+	}
+}
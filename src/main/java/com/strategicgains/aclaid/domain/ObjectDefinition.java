@@ -2,6 +2,8 @@ package com.strategicgains.aclaid.domain;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
 
 public class ObjectDefinition
 {
@@ -29,6 +31,11 @@ public class ObjectDefinition
 		return relationsByName.get(relation);
 	}
 
+	public Stream<RelationDefinition> relations()
+	{
+		return relationsByName.values().stream();
+	}
+
 	public String getName()
 	{
 		return name;
@@ -40,14 +47,31 @@ public class ObjectDefinition
 	}
 
 	public boolean check(TupleStore tuples, UserSet userset, String relation, ObjectId objectId)
+	{
+		return check(new CheckContext(tuples), userset, relation, objectId);
+	}
+
+	public boolean check(CheckContext context, UserSet userset, String relation, ObjectId objectId)
 	{
 		RelationDefinition r = relationsByName.get(relation);
 
 		if (r != null)
 		{
-			return r.check(tuples, userset, objectId);
+			return r.check(context, userset, objectId);
 		}
 
 		return false;
 	}
+
+	public CompletionStage<Boolean> checkAsync(CheckContext context, UserSet userset, String relation, ObjectId objectId)
+	{
+		RelationDefinition r = relationsByName.get(relation);
+
+		if (r != null)
+		{
+			return r.checkAsync(context, userset, objectId);
+		}
+
+		return AsyncConditions.of(false);
+	}
 }
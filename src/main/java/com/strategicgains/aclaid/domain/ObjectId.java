@@ -115,15 +115,16 @@ public class ObjectId
 	//TODO: What about additional segments?
 	public boolean equals(ObjectId that)
 	{
-		if (!this.getNamespace().equals(that.getNamespace())) return false;
+		if (!Objects.equals(this.getNamespace(), that.getNamespace())) return false;
 
-		return (!Objects.equals(this.getPath(), that.getPath()));
+		return Objects.equals(this.getPath(), that.getPath());
 	}
 
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(getNamespace(), getPath());
+		// Same value as Objects.hash(getNamespace(), getPath()), without allocating its varargs array.
+		return 31 * (31 + Objects.hashCode(getNamespace())) + Objects.hashCode(getPath());
 	}
 
 	public String toString()
@@ -6,7 +6,7 @@ import java.util.Objects;
 public class ObjectPath
 {
 	private static final String SEPARATOR = "/";
-	private static final String WILDCARD = "*";
+	public static final String WILDCARD = "*";
 
 	private String type;
 	private String identifier;
@@ -77,13 +77,14 @@ public class ObjectPath
 	{
 		if (!(Objects.equals(this.getType(), that.getType()))) return false;
 
-		return (!(Objects.equals(this.getIdentifier(), that.getIdentifier())));
+		return Objects.equals(this.getIdentifier(), that.getIdentifier());
 	}
 
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(getType(), getIdentifier());
+		// Same value as Objects.hash(getType(), getIdentifier()), without allocating its varargs array.
+		return 31 * (31 + Objects.hashCode(getType())) + Objects.hashCode(getIdentifier());
 	}
 
 	public boolean matches(ObjectPath that)
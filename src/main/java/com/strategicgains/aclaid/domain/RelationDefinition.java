@@ -1,8 +1,12 @@
 package com.strategicgains.aclaid.domain;
 
+import java.util.concurrent.CompletionStage;
+
 import com.strategicgains.aclaid.domain.rewrite.RewriteRule;
-import com.strategicgains.aclaid.domain.rewrite.This;
+import com.strategicgains.aclaid.domain.rewrite.expression.PlanExpression;
 import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.ThisPlan;
 
 public class RelationDefinition
 {
@@ -10,6 +14,9 @@ public class RelationDefinition
 	private String name;
 	private RewriteRule rewriteRules;
 
+	// The compiled rewrite rules, or null until compiled.
+	private volatile RewritePlan plan;
+
 	public RelationDefinition(ObjectDefinition objectDefinition, String name)
 	{
 		super();
@@ -25,6 +32,7 @@ public class RelationDefinition
 	public void setName(String name)
 	{
 		this.name = name;
+		invalidatePlans();
 	}
 
 	public ObjectDefinition getObjectDefinition()
@@ -54,9 +62,15 @@ public class RelationDefinition
 		return String.format("Relation: %s", name);
 	}
 
+	public RewriteRule getRewriteRules()
+	{
+		return rewriteRules;
+	}
+
 	public void setRewriteRules(RewriteRule expression)
 	{
 		this.rewriteRules = expression;
+		invalidatePlans();
 	}
 
 	public boolean hasRewriteRules()
@@ -66,17 +80,51 @@ public class RelationDefinition
 
 	public boolean check(TupleStore tuples, UserSet userset, ObjectId objectId)
 	{
-		UsersetExpression rewrites = rewrite(objectId);
-		return rewrites.evaluate(tuples, userset);
+		return check(new CheckContext(tuples), userset, objectId);
+	}
+
+	public boolean check(CheckContext context, UserSet userset, ObjectId objectId)
+	{
+		return getPlan().evaluate(context, objectId, userset);
+	}
+
+	public CompletionStage<Boolean> checkAsync(CheckContext context, UserSet userset, ObjectId objectId)
+	{
+		return getPlan().evaluateAsync(context, objectId, userset);
+	}
+
+	/**
+	 * Answer the compiled rewrite rules. AccessControlBuilder compiles them when it builds; definitions
+	 * created or changed by hand compile on first use.
+	 */
+	public RewritePlan getPlan()
+	{
+		RewritePlan compiled = plan;
+		return (compiled != null ? compiled : compile());
+	}
+
+	/**
+	 * Compile the rewrite rules (or _this, when there are none) into the plan used by checks and expands.
+	 * Computed usersets check the sibling relations they name through the check context.
+	 */
+	public RewritePlan compile()
+	{
+		RewritePlan compiled = (hasRewriteRules() ? rewriteRules.compile() : new ThisPlan(name));
+		plan = compiled;
+		return compiled;
 	}
 
 	public UsersetExpression rewrite(ObjectId objectId)
 	{
-		if (hasRewriteRules())
-		{
-			return rewriteRules.rewrite(objectId);
-		}
+		return new PlanExpression(getPlan(), objectId);
+	}
 
-		return This.rewrite(this, objectId);
+	/**
+	 * Sibling plans may name this relation, so they are recompiled too.
+	 */
+	private void invalidatePlans()
+	{
+		plan = null;
+		if (objectDefinition != null) objectDefinition.relations().forEach(r -> r.plan = null);
 	}
 }
@@ -0,0 +1,199 @@
+package com.strategicgains.aclaid.domain;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.strategicgains.aclaid.domain.rewrite.ComputedUserSet;
+import com.strategicgains.aclaid.domain.rewrite.Exclusion;
+import com.strategicgains.aclaid.domain.rewrite.Intersection;
+import com.strategicgains.aclaid.domain.rewrite.RewriteRule;
+import com.strategicgains.aclaid.domain.rewrite.TupleToUserSet;
+import com.strategicgains.aclaid.domain.rewrite.Union;
+
+/**
+ * Answers the objects of a type to which a userset has a relation (Zanzibar's LookupResources) by walking
+ * the relation tuples and rewrite rules backwards from the userset, instead of checking every known object.
+ *
+ * Starting at the userset (and its wildcard user), each reached userset ⟨object#relation⟩ is expanded to:
+ * 1) The usersets of the stored tuples naming it as their user, using the TupleStore's userset index,
+ * 2) The relations on the same object that include it as a computed userset, and
+ * 3) For a tuple-to-userset rule (e.g. a document inheriting its parent folder's viewers), the usersets of
+ *    the objects whose tupleset relation points at it.
+ *
+ * The walk yields a superset of the answer, so each candidate of the requested type and relation is confirmed
+ * with a check in the given CheckContext before it is returned. Every operand of an intersection is walked, but
+ * only the base of an exclusion, as the excluded operand never grants the relation. Results are produced
+ * lazily, one candidate at a time, so a caller that only needs the first page does not pay for the full walk.
+ *
+ * Not thread-safe. Create one per request.
+ */
+public class ResourceLookup
+implements Iterator<ObjectId>
+{
+	private CheckContext context;
+	private UserSet userset;
+	private String relation;
+	private String objectType;
+
+	/**
+	 * Reverse computed userset edges: object type, then computed relation, then the relations that include it.
+	 */
+	private Map<String, Map<String, List<String>>> computedEdges = new HashMap<>();
+
+	/**
+	 * Reverse tuple-to-userset edges keyed by the relation computed on the tupleset object.
+	 */
+	private Map<String, List<TupleToUserSetEdge>> tupleToUserSetEdges = new HashMap<>();
+
+	private Set<UserSet> visited = new HashSet<>();
+	private Deque<UserSet> queue = new ArrayDeque<>();
+	private ObjectId next;
+
+	/**
+	 * @param context the CheckContext used to confirm candidates.
+	 * @param definitions the object definitions whose rewrite rules are walked backwards.
+	 * @param userset the userset to find objects for.
+	 * @param relation the relation the userset must have to the objects.
+	 * @param objectType the type of the objects to find.
+	 */
+	public ResourceLookup(CheckContext context, Collection<ObjectDefinition> definitions, UserSet userset, String relation, String objectType)
+	{
+		super();
+		this.context = context;
+		this.userset = userset;
+		this.relation = relation;
+		this.objectType = objectType;
+
+		definitions.forEach(d -> d.relations().forEach(r -> addReverseEdges(d.getName(), r.getName(), r.getRewriteRules())));
+		enqueue(userset);
+
+		ObjectId actor = userset.getObjectId();
+
+		if (!userset.hasRelation() && actor != null && !actor.isIdentifierWildcard())
+		{
+			enqueue(new UserSet(new ObjectId(actor.getNamespace(), actor.getType(), ObjectPath.WILDCARD)));
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		while (next == null && !queue.isEmpty())
+		{
+			UserSet node = queue.poll();
+			expand(node);
+
+			if (isCandidate(node) && context.check(userset, relation, node.getObjectId()))
+			{
+				next = new ObjectId(node.getObjectId());
+			}
+		}
+
+		return (next != null);
+	}
+
+	@Override
+	public ObjectId next()
+	{
+		if (!hasNext()) throw new NoSuchElementException();
+
+		ObjectId result = next;
+		next = null;
+		return result;
+	}
+
+	private boolean isCandidate(UserSet node)
+	{
+		return (relation.equals(node.getRelation()) && objectType.equals(node.getObjectId().getType()));
+	}
+
+	private void expand(UserSet node)
+	{
+		for (Tuple tuple : context.getTuples().read(new TupleSet(node)))
+		{
+			enqueue(new UserSet(tuple.getObjectId(), tuple.getRelation()));
+		}
+
+		if (!node.hasRelation()) return;
+
+		ObjectId objectId = node.getObjectId();
+		Map<String, List<String>> byRelation = computedEdges.getOrDefault(objectId.getType(), Collections.emptyMap());
+
+		for (String including : byRelation.getOrDefault(node.getRelation(), Collections.emptyList()))
+		{
+			enqueue(new UserSet(objectId, including));
+		}
+
+		for (TupleToUserSetEdge edge : tupleToUserSetEdges.getOrDefault(node.getRelation(), Collections.emptyList()))
+		{
+			for (Tuple tuple : context.getTuples().read(new TupleSet(new UserSet(objectId), edge.tuplesetRelation)))
+			{
+				if (edge.objectType.equals(tuple.getObjectId().getType()))
+				{
+					enqueue(new UserSet(tuple.getObjectId(), edge.relation));
+				}
+			}
+		}
+	}
+
+	private void enqueue(UserSet node)
+	{
+		if (visited.add(node)) queue.add(node);
+	}
+
+	private void addReverseEdges(String type, String relation, RewriteRule rule)
+	{
+		if (rule instanceof Union)
+		{
+			((Union) rule).children().forEach(child -> addReverseEdges(type, relation, child));
+		}
+		else if (rule instanceof Intersection)
+		{
+			((Intersection) rule).children().forEach(child -> addReverseEdges(type, relation, child));
+		}
+		else if (rule instanceof Exclusion)
+		{
+			addReverseEdges(type, relation, ((Exclusion) rule).getLRule());
+		}
+		else if (rule instanceof TupleToUserSet)
+		{
+			TupleToUserSet tupleToUserSet = (TupleToUserSet) rule;
+			tupleToUserSetEdges.computeIfAbsent(tupleToUserSet.getComputedUserSet().getRelation().getName(), r -> new ArrayList<>())
+				.add(new TupleToUserSetEdge(type, tupleToUserSet.getRelation(), relation));
+		}
+		else if (rule instanceof ComputedUserSet)
+		{
+			ComputedUserSet computed = (ComputedUserSet) rule;
+			if (!computed.hasRelation() || (computed.hasObjectToken() && computed.getObjectToken().startsWith("$"))) return;
+
+			computedEdges.computeIfAbsent(type, t -> new HashMap<>())
+				.computeIfAbsent(computed.getRelation().getName(), r -> new ArrayList<>())
+				.add(relation);
+		}
+	}
+
+	private static final class TupleToUserSetEdge
+	{
+		private final String objectType;
+		private final String tuplesetRelation;
+		private final String relation;
+
+		private TupleToUserSetEdge(String objectType, String tuplesetRelation, String relation)
+		{
+			super();
+			this.objectType = objectType;
+			this.tuplesetRelation = tuplesetRelation;
+			this.relation = relation;
+		}
+	}
+}
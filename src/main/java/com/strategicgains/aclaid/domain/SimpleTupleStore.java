@@ -1,17 +1,36 @@
 package com.strategicgains.aclaid.domain;
 
+import java.lang.ref.WeakReference;
 import java.text.ParseException;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.strategicgains.aclaid.domain.leopard.LeopardIndex;
 import com.strategicgains.aclaid.exception.InvalidTupleException;
 
 /**
@@ -22,41 +41,165 @@ import com.strategicgains.aclaid.exception.InvalidTupleException;
  * the Carta example:
  * https://medium.com/building-carta/user-authorization-in-less-than-10-milliseconds-f20d277fec47
  * 
+ * It is safe for concurrent use and uses multi-version concurrency control. Each write or remove call is
+ * a batch that commits atomically under the next revision: its tuples are indexed as versions that stay
+ * invisible until every earlier batch has committed and the batch's revision is published. Reads never
+ * lock, and only see versions at or before the revision they read at.
+ * 
+ * Unpinned calls (check(), read(), ...) read at the latest committed revision when they start. Callers
+ * that need several calls, or a long traversal, to see one revision use {@link #snapshot()}, which pins
+ * its revision until closed. Removed tuples, and versions older than every pinned revision, are
+ * garbage-collected once no snapshot can still read them.
+ * 
+ * Tuples with an expiresAt are ignored by check() and read() once that time has passed; the clock is
+ * only read for such tuples. Expiring tuples are also kept in a hierarchical {@link TimerWheel}, and a
+ * background reaper purges them from the tuples and all four indexes about a tick after they expire, in
+ * work proportional to the tuples expiring. Expiry does not advance the revision: an expired tuple is
+ * already invisible to every reader, so purging it changes no result. Writing a present tuple again with
+ * a different expiresAt is a change, which replaces its expiry.
+ * 
  * @author Todd Fredrich
  */
 public class SimpleTupleStore
 implements TupleStore
 {
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * Write batches of at least this many tuples skip the check for a batch that changes nothing.
+	 */
+	private static final int BULK_THRESHOLD = 64;
+
+	/**
+	 * Bulk batches of at least this many tuples build the four indexes in parallel.
+	 */
+	private static final int PARALLEL_THRESHOLD = 16_384;
+
+	/**
+	 * The resolution of the expiration timer wheel, and how often the reaper runs.
+	 */
+	static final long EXPIRATION_TICK_MILLIS = 1000;
+
+	/**
+	 * Runs the reapers of every store. Its thread is a daemon, and a reaper stops once its store has been
+	 * garbage-collected.
+	 */
+	private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "tuple-expiration-reaper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	/**
-	 * Index: MEMBER2GROUP containing only direct relations from a User.
+	 * Index: MEMBER2GROUP containing only direct relations from a User, keyed by
+	 * user, then relation, then the related object so a direct relation is a single probe.
 	 */
-	private Map<ObjectId, Map<String, Set<Tuple>>> memberToGroup = new ConcurrentHashMap<>();
+	private Map<ObjectId, Map<String, Map<ObjectId, VersionedTuple>>> memberToGroup = new ConcurrentHashMap<>();
 
 	/**
-	 * Index: GROUP2GROUP containing only indirect relations from a UserSet.
+	 * Index: GROUP2GROUP containing only indirect relations to an object, keyed by
+	 * object, then relation, then the related userset so a userset tuple is also a single probe.
 	 */
-	private Map<UserSet, Map<String, Set<Tuple>>> groupToGroup = new ConcurrentHashMap<>();
+	private Map<ObjectId, Map<String, Map<UserSet, VersionedTuple>>> groupToGroup = new ConcurrentHashMap<>();
 
 	/**
 	 * Index: containing all tuples by objectId and relation.
 	 * This is used to quickly find all tuples related to a specific objectId.
 	 */
-	private Map<ObjectId, Map<String, Set<Tuple>>> tuplesByObjectId = new ConcurrentHashMap<>();
+	private Map<ObjectId, Map<String, Map<UserSet, VersionedTuple>>> tuplesByObjectId = new ConcurrentHashMap<>();
 
 	/**
 	 * Index: containing all tuples by userset and relation.
 	 * This is used to quickly find all tuples related to a specific userset.
 	 */
-	private Map<UserSet, Map<String, Set<Tuple>>> tuplesByUserSet = new ConcurrentHashMap<>();
+	private Map<UserSet, Map<String, Map<ObjectId, VersionedTuple>>> tuplesByUserSet = new ConcurrentHashMap<>();
+
+	/**
+	 * The versioned tuples in this set, including removed ones not yet garbage-collected.
+	 */
+	private Map<Tuple, VersionedTuple> tuples = new ConcurrentHashMap<>();
+
+	/**
+	 * Numbers new tuples in write order, so exports list tuples in a stable order.
+	 */
+	private AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Counts of indexed tuples with a wildcard object or a wildcard direct user. While both are
+	 * zero, check() answers with exact index probes only.
+	 */
+	private AtomicInteger wildcardObjects = new AtomicInteger();
+	private AtomicInteger wildcardUsers = new AtomicInteger();
+
+	/**
+	 * The maximum number of userset levels check() will follow from the target object.
+	 */
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+
+	/**
+	 * The last revision handed to a write batch, and the last committed one. Batches commit in
+	 * revision order, so every revision up to the committed one is complete.
+	 */
+	private AtomicLong nextRevision = new AtomicLong();
+	private volatile long revision;
+	private Object commitLock = new Object();
+
+	/**
+	 * The number of tuples present as of the last committed revision, expired or not, so isEmpty() does
+	 * not scan the tuples. Replaced at each commit.
+	 */
+	private volatile Census census = new Census(0, 0, 0);
+
+	/**
+	 * Revisions pinned by open snapshots, with the number of snapshots on each.
+	 */
+	private TreeMap<Long, Integer> pins = new TreeMap<>();
+
+	/**
+	 * Removed tuples, with the revision of the remove, waiting for every reader to move past it.
+	 */
+	private Queue<Garbage> garbage = new ConcurrentLinkedQueue<>();
 
 	/**
-	 * The collection of tuples in this set.
+	 * Striped locks serializing the writes and removes of equal tuples, so a tuple's versions and its
+	 * index entries agree. Mutations of different tuples only meet inside the concurrent index maps.
 	 */
-	private List<Tuple> tuples = new ArrayList<>();
+	private Object[] locks = new Object[LOCK_STRIPES];
+
+	/**
+	 * Optional transitive group membership index. When present, check() answers with a single
+	 * set intersection instead of walking the GROUP2GROUP index. Each change publishes a new index,
+	 * so a published one is never changed and is read without locking.
+	 */
+	private volatile LeopardIndex leopardIndex;
+
+	/**
+	 * Expiring tuples by expiry, the number of them, and whether the reaper has been started.
+	 */
+	private final Clock clock;
+	private final TimerWheel<VersionedTuple> expirations;
+	private volatile int pendingExpirations;
+	private volatile long nextExpiry = VersionedTuple.NEVER;
+	private AtomicBoolean isReaping = new AtomicBoolean();
 
 	public SimpleTupleStore()
+	{
+		this(Clock.systemUTC());
+	}
+
+	/**
+	 * Create a store that decides expiry by the given clock.
+	 */
+	SimpleTupleStore(Clock clock)
 	{
 		super();
+		this.clock = clock;
+		this.expirations = new TimerWheel<>(EXPIRATION_TICK_MILLIS, clock.millis());
+
+		for (int i = 0; i < LOCK_STRIPES; i++)
+		{
+			locks[i] = new Object();
+		}
 	}
 
 	public SimpleTupleStore(ObjectId objectId, String relation, Set<UserSet> usersets)
@@ -86,7 +229,7 @@ implements TupleStore
 	public SimpleTupleStore(SimpleTupleStore that)
 	throws InvalidTupleException
 	{
-		this(that.tuples);
+		this(that.tuplesAt(that.revision));
 	}
 
 	public SimpleTupleStore(Collection<Tuple> tuples)
@@ -128,70 +271,148 @@ implements TupleStore
 	{
 		if (actor == null || relation == null || objectId == null) return false;
 
-		Set<Tuple> direct = getDirectTuples(actor.getObjectId());
-		if (hasDirectRelation(direct, relation, objectId)) return true;
+		LeopardIndex index = leopardIndex;
+
+		if (index != null && wildcardObjects.get() == 0)
+		{
+			ObjectId actorId = actor.getObjectId();
+
+			boolean isMember = index.check(actorId, relation, objectId)
+				|| (hasWildcardUser(actorId) && index.check(wildcardOf(actorId), relation, objectId));
+
+			// The index may still hold tuples that have expired but not yet been purged.
+			if (!isMember || pendingExpirations == 0) return isMember;
+		}
 
-		Set<Tuple> indirect = getIndirectTuples(objectId, relation);
-		return intersects(direct, indirect);
+		return check(actor, relation, objectId, revision);
 	}
 
+	/**
+	 * Check the relation from the actor to each of the objects, probing the actor's direct objects for the
+	 * relation once and sharing the nodes already found not to contain the actor across the objects.
+	 */
 	@Override
-	public boolean isEmpty()
+	public BitSet checkAll(UserSet actor, String relation, List<ObjectId> objectIds)
 	{
-		return tuples.isEmpty();
+		if (leopardIndex != null)
+		{
+			return TupleStore.super.checkAll(actor, relation, objectIds);
+		}
+
+		return checkAll(actor, relation, objectIds, revision);
 	}
 
-	@Override
-	public Collection<Tuple> read(TupleSet tupleSet)
+	public int getMaxDepth()
 	{
-		if (tupleSet == null) throw new IllegalArgumentException("TupleSet cannot be null.");
-		else if (tupleSet.isEmpty() || !tupleSet.isValid()) throw new IllegalArgumentException("Invalid TupleSet: " + tupleSet);
+		return maxDepth;
+	}
 
-		Set<Tuple> results = new HashSet<>();
+	public void setMaxDepth(int maxDepth)
+	{
+		this.maxDepth = maxDepth;
+	}
 
-		if (tupleSet.isSingleTupleKey())
+	/**
+	 * Build a {@link LeopardIndex} over the current tuples and keep it up to date as each write batch commits.
+	 * Trades write amplification for checks that are a single set intersection regardless of group
+	 * nesting depth. Such checks are not bounded by maxDepth. The index is bypassed while any tuple has
+	 * a wildcard object, and by snapshots, since it only reflects the latest committed revision.
+	 * 
+	 * The LeopardIndex is not thread-safe, so it is maintained copy-on-write: each committed batch that
+	 * changes it publishes an updated copy, and checks read whichever index was last published.
+	 * 
+	 * @return this SimpleTupleStore instance for method chaining.
+	 */
+	public SimpleTupleStore enableLeopardIndex()
+	{
+		synchronized (commitLock)
 		{
-			Tuple tuple = readOne(tupleSet.getUserset(), tupleSet.getRelation(), tupleSet.getObject());
+			if (leopardIndex != null) return this;
 
-			if (tuple != null)
-			{
-				results.add(tuple);
-			}
+			LeopardIndex index = new LeopardIndex();
+			tuplesAt(revision).forEach(index::add);
+			this.leopardIndex = index;
 		}
-		else if (tupleSet.hasObject())
+
+		return this;
+	}
+
+	public SimpleTupleStore disableLeopardIndex()
+	{
+		synchronized (commitLock)
 		{
-			if (tupleSet.hasRelation())
-			{
-				results.addAll(readAll(tupleSet.getObject(), tupleSet.getRelation()));
-			}
-			else
-			{
-				results.addAll(readAll(tupleSet.getObject()));
-			}
+			this.leopardIndex = null;
 		}
-		else if (tupleSet.hasUserset())
+
+		return this;
+	}
+
+	public boolean hasLeopardIndex()
+	{
+		return (leopardIndex != null);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return isEmpty(revision);
+	}
+
+	/**
+	 * Answer the latest committed revision.
+	 */
+	@Override
+	public long getRevision()
+	{
+		return revision;
+	}
+
+	/**
+	 * Answer the earliest expiry still scheduled. It may be that of a tuple since removed or written again
+	 * with a later expiry, so it is never later than the true one.
+	 */
+	@Override
+	public long getNextExpiry()
+	{
+		return nextExpiry;
+	}
+
+	/**
+	 * Commit empty batches up to the given revision. Readers see no change.
+	 */
+	@Override
+	public boolean advanceRevision(long revision)
+	{
+		while (getRevision() < revision)
 		{
-			if (tupleSet.hasRelation())
-			{
-				results.addAll(readAll(tupleSet.getUserset(), tupleSet.getRelation()));
-			}
-			else
-			{
-				results.addAll(readAll(tupleSet.getUserset()));
-			}
+			commit(nextRevision.incrementAndGet(), Collections.emptyList());
 		}
 
-		return results;
+		return true;
+	}
+
+	/**
+	 * Pin the latest committed revision and answer a read-only view of the tuples as of that revision.
+	 * Later writes and removes are not visible through the snapshot, and the versions it reads are not
+	 * garbage-collected until it is closed.
+	 * 
+	 * @return an open Snapshot. Close it when done.
+	 */
+	public Snapshot snapshot()
+	{
+		return new Snapshot(pin());
 	}
 
 	@Override
-	public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+	public Collection<Tuple> read(TupleSet tupleSet)
 	{
-		if (tupleSets == null || tupleSets.isEmpty()) return Collections.emptySet();
+		return read(tupleSet, revision);
+	}
 
-		Set<Tuple> results = new HashSet<>();
-		tupleSets.stream().forEach(ts -> results.addAll(read(ts)));
-		return results;
+	@Override
+	public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+	{
+		return read(tupleSets, revision);
 	}
 
 	public Tuple readOne(String userset, String relation, String objectId)
@@ -202,68 +423,37 @@ implements TupleStore
 
 	public Tuple readOne(UserSet userset, String relation, ObjectId objectId)
 	{
-		if (userset == null || relation == null || objectId == null) return null;
-
-		Map<String, Set<Tuple>> relationSubtree = memberToGroup.get(userset.getObjectId());
-		if (relationSubtree == null) return null;
-
-		Set<Tuple> relationTuples = relationSubtree.get(relation);
-		if (relationTuples == null || relationTuples.isEmpty()) return null;
-
-		return relationTuples.stream()
-			.filter(t -> t.appliesTo(objectId))
-			.collect(Collectors.toSet())
-			.stream().findFirst().orElse(null);
+		return readOne(userset, relation, objectId, revision);
 	}
 
 	public Collection<Tuple> readAll(ObjectId objectId, String relation)
 	{
-		if (objectId == null || relation == null) return Collections.emptySet();
-
-		Map<String, Set<Tuple>> relationSubtree = tuplesByObjectId.get(objectId);
-		if (relationSubtree == null) return Collections.emptySet();
-
-		Set<Tuple> relationTuples = relationSubtree.get(relation);
-		if (relationTuples == null || relationTuples.isEmpty()) return Collections.emptySet();
-
-		return relationTuples;
+		return readAll(objectId, relation, revision);
 	}
 
 	public Collection<Tuple> readAll(ObjectId objectId)
 	{
-		if (objectId == null) return Collections.emptySet();
-
-		Map<String, Set<Tuple>> relationSubtree = tuplesByObjectId.get(objectId);
-		if (relationSubtree == null) return Collections.emptySet();
-
-		return relationSubtree.values().stream()
-			.flatMap(s -> s.stream())
-			.collect(Collectors.toSet());
+		return readAll(objectId, revision);
 	}
 
 	public Collection<Tuple> readAll(UserSet userset, String relation)
 	{
-		if (userset == null || relation == null) return Collections.emptySet();
-
-		Map<String, Set<Tuple>> relationSubtree = tuplesByUserSet.get(userset);
-		if (relationSubtree == null) return Collections.emptySet();
-
-		Set<Tuple> relationTuples = relationSubtree.get(relation);
-		if (relationTuples == null || relationTuples.isEmpty()) return Collections.emptySet();
-
-		return relationTuples;
+		return readAll(userset, relation, revision);
 	}
 
 	public Collection<Tuple> readAll(UserSet userset)
 	{
-		if (userset == null) return Collections.emptySet();
-
-		Map<String, Set<Tuple>> relationSubtree = tuplesByUserSet.get(userset);
-		if (relationSubtree == null) return Collections.emptySet();
+		return readAll(userset, revision);
+	}
 
-		return relationSubtree.values().stream()
-			.flatMap(s -> s.stream())
-			.collect(Collectors.toSet());
+	/**
+	 * Answer all of the tuples, in the order they were written.
+	 * 
+	 * @return a new list of the tuples.
+	 */
+	public List<Tuple> readAll()
+	{
+		return tuplesAt(revision);
 	}
 
 	/**
@@ -308,25 +498,16 @@ implements TupleStore
 	public SimpleTupleStore write(Tuple tuple)
 	throws InvalidTupleException
 	{
-		if (tuple == null)
-		{
-			throw new InvalidTupleException("Tuple cannot be null.");
-		}
-		else if (!tuple.isValid())
-		{
-			throw new InvalidTupleException("Invalid tuple: " + tuple);
-		}
-
-		tuples.add(tuple);
-		addMemberToGroup(tuple);
-		addGroupToGroup(tuple);
-		addTupleByObjectId(tuple);
-		addTupleByUserSet(tuple);
-		return this;
+		return write(Collections.singletonList(tuple));
 	}
 
 	/**
-	 * Add a collection of tuples to this tuple set.
+	 * Add a collection of tuples to this tuple set as one batch. Readers see either none or all of the
+	 * batch. If any tuple is invalid, none are written.
+	 * 
+	 * Large batches (e.g. a cold load) are indexed in bulk: each index is extended in one pass over the
+	 * new tuples, with one update per run of tuples sharing a key and relation, and the four indexes are
+	 * built in parallel.
 	 * 
 	 * @param tuples A collection of tuples to be added to the tuple store.
 	 * @return this SimpleTupleStore instance for method chaining.
@@ -337,25 +518,65 @@ implements TupleStore
 	{
 		if (tuples == null || tuples.isEmpty()) return this;
 
+		boolean isBulk = (tuples.size() >= BULK_THRESHOLD);
+		boolean isChanged = isBulk;
+
+		for (Tuple tuple : tuples)
+		{
+			if (tuple == null)
+			{
+				throw new InvalidTupleException("Tuple cannot be null.");
+			}
+			else if (!tuple.isValid())
+			{
+				throw new InvalidTupleException("Invalid tuple: " + tuple);
+			}
+
+			if (!isChanged)
+			{
+				VersionedTuple entry = this.tuples.get(tuple);
+				isChanged = (entry == null || !entry.isPresent() || entry.getExpiresAt() != expiresAtOf(tuple));
+			}
+		}
+
+		if (!isChanged) return this;
+
+		long next = nextRevision.incrementAndGet();
+		long horizon = horizon();
+		List<VersionedTuple> batch = new ArrayList<>(tuples.size());
+		List<VersionedTuple> created = new ArrayList<>(isBulk ? tuples.size() : 1);
+		List<VersionedTuple> expiring = null;
+
 		try
 		{
-			tuples.stream().forEach(t -> {
-				try
-				{
-					write(t);
-				}
-				catch (InvalidTupleException e)
+			for (Tuple tuple : tuples)
+			{
+				VersionedTuple entry = record(tuple, true, next, horizon, created);
+				batch.add(entry);
+
+				if (tuple.expires())
 				{
-					throw new LocalInvalidTupleException("Invalid tuple in SimpleTupleStore constructor: " + t, e);
+					if (expiring == null) expiring = new ArrayList<>();
+					expiring.add(entry);
 				}
-			});
+			}
+
+			// New tuples are invisible until the commit, and cannot be dropped before it, so they are indexed here.
+			index(created);
+		}
+		catch (RuntimeException | Error e)
+		{
+			rollBack(next, tuples);
+			batch.clear();
+			throw e;
 		}
-		catch (LocalInvalidTupleException e)
+		finally
 		{
-			// Rethrow the original exception.
-			throw (InvalidTupleException) e.getCause();
+			// Later batches wait for this revision, so it is committed even if it ends up empty.
+			commit(next, batch);
 		}
 
+		if (expiring != null) scheduleExpirations(expiring);
 		return this;
 	}
 
@@ -370,16 +591,12 @@ implements TupleStore
 	{
 		if (tuple == null) return this;
 
-		tuples.remove(tuple);
-		removeMemberToGroup(tuple);
-		removeGroupToGroup(tuple);
-		removeTupleByObjectId(tuple);
-		removeTupleByUserSet(tuple);
-		return this;
+		return remove(tuples.get(tuple));
 	}
 
 	/**
-	 * Remove a tuple from this tuple set using the given userset, relation and resource.
+	 * Remove a tuple from this tuple set using the given userset, relation and resource. The tuple is
+	 * found with a single index probe, without creating a Tuple.
 	 * 
 	 * @param userset  The UserSet to remove.
 	 * @param relation The relation to remove.
@@ -389,186 +606,1056 @@ implements TupleStore
 	@Override
 	public SimpleTupleStore remove(UserSet userset, String relation, ObjectId resource)
 	{
-		return remove(new Tuple(userset, relation, resource));
+		if (userset == null || relation == null || resource == null) return this;
+
+		return remove(find(userset, relation, resource));
 	}
 
-	private void addMemberToGroup(Tuple tuple)
+	/**
+	 * Remove a collection of tuples from this tuple set as one batch. Readers see either none or all of
+	 * the removes. The removed tuples are dropped from the indexes in bulk once no reader can see them.
+	 * 
+	 * @param tuples The tuples to remove. Tuples not in the set are ignored.
+	 * @return this SimpleTupleStore instance for method chaining.
+	 */
+	@Override
+	public SimpleTupleStore remove(Collection<Tuple> tuples)
 	{
-		if (!tuple.isDirectRelation()) return;
+		if (tuples == null || tuples.isEmpty()) return this;
 
-		Map<String, Set<Tuple>> relationSubtree = memberToGroup.computeIfAbsent(tuple.getUsersetObjectId(), t -> new ConcurrentHashMap<>());
-		Set<Tuple> resources = relationSubtree.computeIfAbsent(tuple.getRelation(), s -> new HashSet<>());
-		resources.add(tuple);
-	}
+		List<VersionedTuple> entries = new ArrayList<>(tuples.size());
 
-	private void addGroupToGroup(Tuple tuple)
-	{
-		if (tuple.isDirectRelation()) return;
+		for (Tuple tuple : tuples)
+		{
+			VersionedTuple entry = (tuple == null ? null : this.tuples.get(tuple));
+			if (entry != null && entry.isPresent()) entries.add(entry);
+		}
 
-		Map<String, Set<Tuple>> relationSubtree = groupToGroup.computeIfAbsent(new UserSet(tuple.getObjectId()), t -> new HashMap<>());
-		Set<Tuple> usersets = relationSubtree.computeIfAbsent(tuple.getRelation(), s -> new HashSet<>());
-		usersets.add(tuple);
+		return remove(entries);
 	}
 
-	private void addTupleByObjectId(Tuple tuple)
+	private SimpleTupleStore remove(VersionedTuple entry)
 	{
-		Map<String, Set<Tuple>> relationSubtree = tuplesByObjectId.computeIfAbsent(tuple.getObjectId(), t -> new ConcurrentHashMap<>());
-		Set<Tuple> resources = relationSubtree.computeIfAbsent(tuple.getRelation(), s -> new HashSet<>());
-		resources.add(tuple);
-	}
+		if (entry == null || !entry.isPresent()) return this;
 
-	private void addTupleByUserSet(Tuple tuple)
-	{
-		Map<String, Set<Tuple>> relationSubtree = tuplesByUserSet.computeIfAbsent(tuple.getUserset(), t -> new HashMap<>());
-		Set<Tuple> usersets = relationSubtree.computeIfAbsent(tuple.getRelation(), s -> new HashSet<>());
-		usersets.add(tuple);
+		return remove(Collections.singletonList(entry));
 	}
 
-	private void removeMemberToGroup(Tuple tuple)
+	private SimpleTupleStore remove(List<VersionedTuple> entries)
 	{
-		Map<String, Set<Tuple>> relationSubtree = memberToGroup.get(tuple.getUsersetObjectId());
-
-		if (relationSubtree == null) return;
-
-		Set<Tuple> resources = relationSubtree.get(tuple.getRelation());
+		if (entries.isEmpty()) return this;
 
-		if (resources == null) return;
+		long next = nextRevision.incrementAndGet();
+		long horizon = horizon();
+		List<VersionedTuple> batch = new ArrayList<>(entries.size());
 
-		resources.remove(tuple);
-
-		// If we just removed the last ObjectId in the set, prune the branch.
-		if (resources.isEmpty())
+		try
+		{
+			for (VersionedTuple entry : entries)
+			{
+				VersionedTuple removed = record(entry.getTuple(), false, next, horizon, null);
+				if (removed != null) batch.add(removed);
+			}
+		}
+		catch (RuntimeException | Error e)
+		{
+			rollBack(next, entries.stream().map(VersionedTuple::getTuple).collect(Collectors.toList()));
+			batch.clear();
+			throw e;
+		}
+		finally
 		{
-			relationSubtree.remove(tuple.getRelation());
+			commit(next, batch);
 		}
+
+		return this;
 	}
 
-	private void removeGroupToGroup(Tuple tuple)
+	/**
+	 * Undo the versions a failed batch recorded at its uncommitted revision, dropping the tuples it
+	 * created, so committing the revision changes nothing.
+	 */
+	private void rollBack(long next, Collection<Tuple> tuples)
 	{
-		Map<String, Set<Tuple>> relationSubtree = groupToGroup.get(new UserSet(tuple.getObjectId()));
+		List<VersionedTuple> dropped = new ArrayList<>();
 
-		if (relationSubtree == null) return;
-
-		Set<Tuple> usersets = relationSubtree.get(tuple.getRelation());
+		for (Tuple tuple : tuples)
+		{
+			synchronized (lockFor(tuple))
+			{
+				VersionedTuple entry = this.tuples.get(tuple);
+				if (entry == null || entry.undo(next)) continue;
 
-		if (usersets == null) return;
+				this.tuples.remove(tuple);
+				countWildcards(tuple, -1);
+				dropped.add(entry);
+			}
+		}
 
-		usersets.remove(tuple);
+		unindex(dropped);
+	}
 
-		// If we just removed the last UserSet in the set, prune the branch.
-		if (usersets.isEmpty())
+	/**
+	 * Answer the entry of the tuple with exactly the given components, visible or not, or null.
+	 */
+	private VersionedTuple find(UserSet userset, String relation, ObjectId objectId)
+	{
+		if (userset.isObject())
 		{
-			relationSubtree.remove(tuple.getRelation());
+			Map<ObjectId, VersionedTuple> resources = getDirectObjects(userset.getObjectId(), relation);
+			return (resources == null ? null : resources.get(objectId));
 		}
+
+		Map<UserSet, VersionedTuple> usersets = getUsersets(objectId, relation);
+		return (usersets == null ? null : usersets.get(userset));
 	}
 
-	private void removeTupleByObjectId(Tuple tuple)
+	private boolean check(UserSet actor, String relation, ObjectId objectId, long revision)
 	{
-		Map<String, Set<Tuple>> relationSubtree = tuplesByObjectId.get(tuple.getObjectId());
-
-		if (relationSubtree == null) return;
+		if (actor == null || relation == null || objectId == null) return false;
 
-		Set<Tuple> resources = relationSubtree.get(tuple.getRelation());
+		ObjectId actorId = actor.getObjectId();
 
-		if (resources == null) return;
+		if (hasDirectRelation(actorId, relation, objectId, revision)) return true;
 
-		resources.remove(tuple);
+		// Ensure at least one userset has the relation to the object before allocating the visited nodes.
+		if (getUsersets(objectId, relation) == null) return false;
 
-		// If we just removed the last ObjectId in the set, prune the branch.
-		if (resources.isEmpty())
-		{
-			relationSubtree.remove(tuple.getRelation());
-		}
+		return isIndirectMember(actorId, relation, objectId, new HashMap<>(), 1, revision);
 	}
 
-	private void removeTupleByUserSet(Tuple tuple)
+	private BitSet checkAll(UserSet actor, String relation, List<ObjectId> objectIds, long revision)
 	{
-		Map<String, Set<Tuple>> relationSubtree = tuplesByUserSet.get(tuple.getUserset());
-
-		if (relationSubtree == null) return;
-
-		Set<Tuple> usersets = relationSubtree.get(tuple.getRelation());
+		BitSet results = new BitSet(objectIds.size());
+		if (actor == null || relation == null) return results;
 
-		if (usersets == null) return;
+		if (wildcardObjects.get() > 0)
+		{
+			for (int i = 0; i < objectIds.size(); i++)
+			{
+				if (check(actor, relation, objectIds.get(i), revision)) results.set(i);
+			}
 
-		usersets.remove(tuple);
+			return results;
+		}
+
+		ObjectId actorId = actor.getObjectId();
+		Map<ObjectId, VersionedTuple> direct = getDirectObjects(actorId, relation);
+		Map<ObjectId, VersionedTuple> wildcardDirect = (hasWildcardUser(actorId) ? getDirectObjects(wildcardOf(actorId), relation) : null);
+		Map<UserSet, Integer> visited = null;
 
-		// If we just removed the last UserSet in the set, prune the branch.
-		if (usersets.isEmpty())
+		for (int i = 0; i < objectIds.size(); i++)
 		{
-			relationSubtree.remove(tuple.getRelation());
+			ObjectId objectId = objectIds.get(i);
+			if (objectId == null) continue;
+
+			if (isVisible(direct, objectId, revision) || isVisible(wildcardDirect, objectId, revision))
+			{
+				results.set(i);
+				continue;
+			}
+
+			if (getUsersets(objectId, relation) == null) continue;
+			if (visited == null) visited = new HashMap<>();
+
+			if (isIndirectMember(actorId, relation, objectId, visited, 1, revision))
+			{
+				results.set(i);
+
+				// Nodes on the positive path were expanded but do not mean "not a member".
+				visited.clear();
+			}
 		}
+
+		return results;
 	}
 
-	/**
-	 * Answer the set of tuples that have direct relations from the actor (as an object ID).
-	 * Used for the check() method and leverages the MEMBER2GROUP index.
-	 * 
-	 * @param objectId The ID of the actor.
-	 * @return The set of tuples that have direct relations from the actor.
-	 */
-	private Set<Tuple> getDirectTuples(ObjectId objectId)
+	private boolean isEmpty(long revision)
+	{
+		Census counts = census;
+
+		if (counts.revision == revision)
+		{
+			if (counts.present == 0) return true;
+
+			// Only when every present tuple expires does the clock decide.
+			if (counts.present > counts.expiring) return false;
+		}
+
+		return tuples.values().stream().noneMatch(e -> e.isVisible(revision, clock));
+	}
+
+	private Collection<Tuple> read(TupleSet tupleSet, long revision)
+	{
+		if (tupleSet == null) throw new IllegalArgumentException("TupleSet cannot be null.");
+		else if (tupleSet.isEmpty() || !tupleSet.isValid()) throw new IllegalArgumentException("Invalid TupleSet: " + tupleSet);
+
+		Set<Tuple> results = new HashSet<>();
+
+		if (tupleSet.isSingleTupleKey())
+		{
+			Tuple tuple = readOne(tupleSet.getUserset(), tupleSet.getRelation(), tupleSet.getObject(), revision);
+
+			if (tuple != null)
+			{
+				results.add(tuple);
+			}
+		}
+		else if (tupleSet.hasObject())
+		{
+			if (tupleSet.hasRelation())
+			{
+				results.addAll(readAll(tupleSet.getObject(), tupleSet.getRelation(), revision));
+			}
+			else
+			{
+				results.addAll(readAll(tupleSet.getObject(), revision));
+			}
+		}
+		else if (tupleSet.hasUserset())
+		{
+			if (tupleSet.hasRelation())
+			{
+				results.addAll(readAll(tupleSet.getUserset(), tupleSet.getRelation(), revision));
+			}
+			else
+			{
+				results.addAll(readAll(tupleSet.getUserset(), revision));
+			}
+		}
+
+		return results;
+	}
+
+	private Collection<Tuple> read(Collection<TupleSet> tupleSets, long revision)
+	{
+		if (tupleSets == null || tupleSets.isEmpty()) return Collections.emptySet();
+
+		Set<Tuple> results = new HashSet<>();
+		tupleSets.stream().forEach(ts -> results.addAll(read(ts, revision)));
+		return results;
+	}
+
+	private Tuple readOne(UserSet userset, String relation, ObjectId objectId, long revision)
+	{
+		if (userset == null || relation == null || objectId == null) return null;
+
+		return findDirect(userset.getObjectId(), relation, objectId, revision);
+	}
+
+	private Collection<Tuple> readAll(ObjectId objectId, String relation, long revision)
+	{
+		if (objectId == null || relation == null) return Collections.emptySet();
+
+		Map<String, Map<UserSet, VersionedTuple>> relationSubtree = tuplesByObjectId.get(objectId);
+		if (relationSubtree == null) return Collections.emptySet();
+
+		return visible(relationSubtree.get(relation), revision);
+	}
+
+	private Collection<Tuple> readAll(ObjectId objectId, long revision)
 	{
-		Map<String, Set<Tuple>> relationSubtree = memberToGroup.get(objectId);
+		if (objectId == null) return Collections.emptySet();
+
+		Map<String, Map<UserSet, VersionedTuple>> relationSubtree = tuplesByObjectId.get(objectId);
 		if (relationSubtree == null) return Collections.emptySet();
 
 		return relationSubtree.values().stream()
-			.flatMap(s -> s.stream())
+			.flatMap(m -> m.values().stream())
+			.map(e -> e.getTuple(revision, clock))
+			.filter(Objects::nonNull)
 			.collect(Collectors.toSet());
 	}
 
+	private Collection<Tuple> readAll(UserSet userset, String relation, long revision)
+	{
+		if (userset == null || relation == null) return Collections.emptySet();
+
+		Map<String, Map<ObjectId, VersionedTuple>> relationSubtree = tuplesByUserSet.get(userset);
+		if (relationSubtree == null) return Collections.emptySet();
+
+		return visible(relationSubtree.get(relation), revision);
+	}
+
+	private Collection<Tuple> readAll(UserSet userset, long revision)
+	{
+		if (userset == null) return Collections.emptySet();
+
+		Map<String, Map<ObjectId, VersionedTuple>> relationSubtree = tuplesByUserSet.get(userset);
+		if (relationSubtree == null) return Collections.emptySet();
+
+		return relationSubtree.values().stream()
+			.flatMap(m -> m.values().stream())
+			.map(e -> e.getTuple(revision, clock))
+			.filter(Objects::nonNull)
+			.collect(Collectors.toSet());
+	}
+
+	private Collection<Tuple> visible(Map<?, VersionedTuple> entries, long revision)
+	{
+		if (entries == null || entries.isEmpty()) return Collections.emptySet();
+
+		return entries.values().stream()
+			.map(e -> e.getTuple(revision, clock))
+			.filter(Objects::nonNull)
+			.collect(Collectors.toSet());
+	}
+
+	private List<Tuple> tuplesAt(long revision)
+	{
+		return tuples.values().stream()
+			.sorted(Comparator.comparingLong(VersionedTuple::getSequence))
+			.map(e -> e.getTuple(revision, clock))
+			.filter(Objects::nonNull)
+			.collect(Collectors.toList());
+	}
+
 	/**
-	 * Answer the set of tuples that have indirect relations from the actor.
+	 * Record a version of the tuple at the (uncommitted) revision, creating its entry if it is new. A
+	 * written version keeps the tuple, and its expiry, for reads at that version. An expiring tuple is
+	 * copied first, so the caller cannot change the expiry of the stored version.
 	 * 
-	 * @param actor The UserSet acting on the objectId.
-	 * @return The set of tuples that have indirect relations from the actor.
+	 * @param created collects the new entries, which the caller indexes before committing.
+	 * @return the tuple's entry, or null when removing a tuple that was never written.
 	 */
-	private Set<Tuple> getIndirectTuples(ObjectId target, String relation)
+	private VersionedTuple record(Tuple tuple, boolean present, long revision, long horizon, List<VersionedTuple> created)
 	{
-		Map<String, Set<Tuple>> targetSubtree = groupToGroup.get(new UserSet(target));
-		if (targetSubtree == null) return Collections.emptySet();
+		Tuple written = (present ? (tuple.expires() ? copyOf(tuple) : tuple) : null);
 
-		// Ensure at least on relation exists to the object.
-		Set<Tuple> relationTuples = targetSubtree.get(relation);
-		if (relationTuples == null || relationTuples.isEmpty()) return Collections.emptySet();
+		synchronized (lockFor(tuple))
+		{
+			VersionedTuple entry = tuples.get(tuple);
 
-		return targetSubtree.values().stream()
-			.flatMap(s -> s.stream())
-			.collect(Collectors.toSet());
+			if (entry == null)
+			{
+				if (!present) return null;
+
+				entry = new VersionedTuple(written, sequence.incrementAndGet());
+				entry.put(revision, written, horizon);
+				tuples.put(written, entry);
+				countWildcards(written, 1);
+				created.add(entry);
+				return entry;
+			}
+
+			entry.put(revision, written, horizon);
+			if (!present) garbage.add(new Garbage(entry, revision));
+			return entry;
+		}
+	}
+
+	private static Tuple copyOf(Tuple tuple)
+	{
+		Tuple copy = new Tuple(tuple);
+		copy.setExpiresAt(tuple.getExpiresAt());
+		return copy;
+	}
+
+	private static long expiresAtOf(Tuple tuple)
+	{
+		return (tuple.expires() ? tuple.getExpiresAt().getTime() : VersionedTuple.NEVER);
+	}
+
+	/**
+	 * Publish the batch's revision once every earlier batch has committed, applying the batch's changes
+	 * to the LeopardIndex first so it always reflects the committed revision.
+	 */
+	private void commit(long next, List<VersionedTuple> batch)
+	{
+		synchronized (commitLock)
+		{
+			boolean isInterrupted = false;
+
+			while (revision != next - 1)
+			{
+				try
+				{
+					commitLock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					isInterrupted = true;
+				}
+			}
+
+			updateLeopardIndex(batch, next);
+			updateCensus(batch, next);
+			revision = next;
+			commitLock.notifyAll();
+
+			if (isInterrupted) Thread.currentThread().interrupt();
+		}
+
+		collectGarbage();
+	}
+
+	/**
+	 * Count the tuples the batch adds or removes as of its revision. Called holding the commitLock.
+	 */
+	private void updateCensus(List<VersionedTuple> batch, long next)
+	{
+		Census counts = census;
+		int present = counts.present;
+		int expiring = counts.expiring;
+
+		for (VersionedTuple entry : (batch.size() > 1 ? new HashSet<>(batch) : batch))
+		{
+			present += (entry.isPresent(next) ? 1 : 0) - (entry.isPresent(next - 1) ? 1 : 0);
+			expiring += (entry.expires(next) ? 1 : 0) - (entry.expires(next - 1) ? 1 : 0);
+		}
+
+		census = new Census(next, present, expiring);
+	}
+
+	/**
+	 * Publish a copy of the LeopardIndex with the batch's changes applied. Called holding the commitLock,
+	 * which serializes every change to the index.
+	 */
+	private void updateLeopardIndex(List<VersionedTuple> batch, long next)
+	{
+		LeopardIndex index = leopardIndex;
+		if (index == null) return;
+
+		LeopardIndex updated = null;
+
+		for (VersionedTuple entry : batch)
+		{
+			boolean isPresent = entry.isVisible(next, clock);
+			if (isPresent == entry.isVisible(next - 1, clock)) continue;
+
+			if (updated == null) updated = index.copy();
+			if (isPresent) updated.add(entry.getTuple());
+			else updated.remove(entry.getTuple());
+		}
+
+		if (updated != null) leopardIndex = updated;
+	}
+
+	private long pin()
+	{
+		synchronized (pins)
+		{
+			long pinned = revision;
+			pins.merge(pinned, 1, Integer::sum);
+			return pinned;
+		}
+	}
+
+	private void unpin(long pinned)
+	{
+		synchronized (pins)
+		{
+			pins.computeIfPresent(pinned, (r, count) -> (count == 1 ? null : count - 1));
+		}
+
+		collectGarbage();
+	}
+
+	/**
+	 * Answer the oldest revision any snapshot may still read at. Versions older than the newest one at
+	 * or before the horizon are invisible to every reader.
+	 */
+	private long horizon()
+	{
+		synchronized (pins)
+		{
+			return (pins.isEmpty() ? revision : pins.firstKey());
+		}
+	}
+
+	/**
+	 * Drop the removed tuples that no reader can see anymore from the tuples and the indexes.
+	 */
+	private void collectGarbage()
+	{
+		if (garbage.isEmpty()) return;
+
+		long horizon = horizon();
+		List<VersionedTuple> dropped = null;
+		Garbage item;
+
+		while ((item = garbage.poll()) != null)
+		{
+			if (item.revision > horizon)
+			{
+				garbage.add(item);
+				break;
+			}
+
+			if (drop(item.entry, horizon))
+			{
+				if (dropped == null) dropped = new ArrayList<>();
+				dropped.add(item.entry);
+			}
+		}
+
+		// Index entries are removed by identity, so an entry written again meanwhile is left in place.
+		if (dropped != null) unindex(dropped);
+	}
+
+	private boolean drop(VersionedTuple entry, long horizon)
+	{
+		Tuple tuple = entry.getTuple();
+
+		synchronized (lockFor(tuple))
+		{
+			// The tuple may have been written again since it was removed.
+			if (tuples.get(tuple) != entry || !entry.isRemovable(horizon)) return false;
+
+			tuples.remove(tuple);
+			countWildcards(tuple, -1);
+			return true;
+		}
+	}
+
+	/**
+	 * Purge the tuples that have expired from the tuples and the indexes, without changing the revision.
+	 * The background reaper calls this every tick once a tuple with an expiry has been written.
+	 * 
+	 * @return the number of tuples purged.
+	 */
+	public int reapExpired()
+	{
+		long now = clock.millis();
+		List<VersionedTuple> due;
+
+		synchronized (expirations)
+		{
+			due = expirations.advance(now);
+			pendingExpirations = expirations.size();
+			nextExpiry = nextExpiryOf(expirations);
+		}
+
+		if (due.isEmpty()) return 0;
+
+		long horizon = horizon();
+		List<VersionedTuple> purged = new ArrayList<>();
+
+		for (VersionedTuple entry : due)
+		{
+			if (purge(entry, horizon, now)) purged.add(entry);
+		}
+
+		if (purged.isEmpty()) return 0;
+
+		unindex(purged);
+
+		synchronized (commitLock)
+		{
+			Census counts = census;
+			census = new Census(counts.revision, counts.present - purged.size(), counts.expiring - purged.size());
+			LeopardIndex index = leopardIndex;
+
+			if (index != null)
+			{
+				LeopardIndex updated = index.copy();
+				purged.forEach(entry -> updated.remove(entry.getTuple()));
+				leopardIndex = updated;
+			}
+		}
+
+		return purged.size();
+	}
+
+	private boolean purge(VersionedTuple entry, long horizon, long now)
+	{
+		Tuple tuple = entry.getTuple();
+
+		synchronized (lockFor(tuple))
+		{
+			// The tuple may have been removed, or written again with a later expiry, since it was scheduled.
+			if (tuples.get(tuple) != entry) return false;
+
+			if (entry.isPurgeable(horizon, now))
+			{
+				tuples.remove(tuple);
+				countWildcards(tuple, -1);
+				return true;
+			}
+
+			// Expired, but a snapshot or uncommitted write may still need an earlier version.
+			if (entry.isPresent() && entry.getExpiresAt() < now)
+			{
+				scheduleExpirations(Collections.singletonList(entry));
+			}
+
+			return false;
+		}
+	}
+
+	private void scheduleExpirations(List<VersionedTuple> entries)
+	{
+		synchronized (expirations)
+		{
+			for (VersionedTuple entry : entries)
+			{
+				long expiresAt = entry.getExpiresAt();
+				if (expiresAt != VersionedTuple.NEVER) expirations.schedule(entry, expiresAt + 1);
+			}
+
+			pendingExpirations = expirations.size();
+			nextExpiry = nextExpiryOf(expirations);
+		}
+
+		if (isReaping.compareAndSet(false, true))
+		{
+			Reaper reaper = new Reaper(this);
+			reaper.future = REAPER.scheduleWithFixedDelay(reaper, EXPIRATION_TICK_MILLIS, EXPIRATION_TICK_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Expirations are scheduled a millisecond after the tuple's expiry, when it is first no longer live.
+	 */
+	private static long nextExpiryOf(TimerWheel<VersionedTuple> expirations)
+	{
+		long deadline = expirations.nextDeadline();
+		return (deadline == Long.MAX_VALUE ? VersionedTuple.NEVER : deadline - 1);
+	}
+
+	private Object lockFor(Tuple tuple)
+	{
+		int h = tuple.hashCode();
+		return locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+	}
+
+	private void countWildcards(Tuple tuple, int delta)
+	{
+		if (tuple.getObjectId().isWildcard()) wildcardObjects.addAndGet(delta);
+		if (tuple.isDirectRelation() && tuple.getUsersetObjectId().isWildcard()) wildcardUsers.addAndGet(delta);
+	}
+
+	/*
+	 * Index maintenance adds to and prunes a relation's entry inside ConcurrentHashMap.compute(), which
+	 * is atomic per key, so an add never lands in an entry that a concurrent remove is pruning.
+	 */
+
+	private void index(List<VersionedTuple> entries)
+	{
+		maintainIndexes(entries, true);
+	}
+
+	private void unindex(List<VersionedTuple> entries)
+	{
+		maintainIndexes(entries, false);
+	}
+
+	private void maintainIndexes(List<VersionedTuple> entries, boolean isAdd)
+	{
+		if (entries.isEmpty()) return;
+
+		if (entries.size() >= PARALLEL_THRESHOLD)
+		{
+			Stream.<Runnable>of(
+				() -> update(memberToGroup, entries, Tuple::isDirectRelation, Tuple::getUsersetObjectId, Tuple::getObjectId, isAdd),
+				() -> update(groupToGroup, entries, SimpleTupleStore::isUsersetRelation, Tuple::getObjectId, Tuple::getUserset, isAdd),
+				() -> update(tuplesByObjectId, entries, SimpleTupleStore::isAny, Tuple::getObjectId, Tuple::getUserset, isAdd),
+				() -> update(tuplesByUserSet, entries, SimpleTupleStore::isAny, Tuple::getUserset, Tuple::getObjectId, isAdd))
+			.parallel()
+			.forEach(Runnable::run);
+
+			return;
+		}
+
+		update(memberToGroup, entries, Tuple::isDirectRelation, Tuple::getUsersetObjectId, Tuple::getObjectId, isAdd);
+		update(groupToGroup, entries, SimpleTupleStore::isUsersetRelation, Tuple::getObjectId, Tuple::getUserset, isAdd);
+		update(tuplesByObjectId, entries, SimpleTupleStore::isAny, Tuple::getObjectId, Tuple::getUserset, isAdd);
+		update(tuplesByUserSet, entries, SimpleTupleStore::isAny, Tuple::getUserset, Tuple::getObjectId, isAdd);
+	}
+
+	private static boolean isUsersetRelation(Tuple tuple)
+	{
+		return !tuple.isDirectRelation();
+	}
+
+	private static boolean isAny(Tuple tuple)
+	{
+		return true;
+	}
+
+	/**
+	 * Add the entries to, or remove them from, an index of key, then relation, then the tuple's remaining
+	 * component, pruning emptied relations. Consecutive entries with the same key and relation (e.g. a
+	 * bulk load ordered by object) are applied with a single update, without grouping them first.
+	 */
+	private static <K, V> void update(Map<K, Map<String, Map<V, VersionedTuple>>> index, List<VersionedTuple> entries,
+		Predicate<Tuple> isIndexed, Function<Tuple, K> keyOf, Function<Tuple, V> componentOf, boolean isAdd)
+	{
+		int size = entries.size();
+		int start = 0;
+
+		while (start < size)
+		{
+			Tuple first = entries.get(start).getTuple();
+
+			if (!isIndexed.test(first))
+			{
+				start++;
+				continue;
+			}
+
+			K key = keyOf.apply(first);
+			String relation = first.getRelation();
+			int end = start + 1;
+
+			while (end < size && isRun(entries.get(end).getTuple(), key, relation, isIndexed, keyOf))
+			{
+				end++;
+			}
+
+			update(index, key, relation, entries, start, end, componentOf, isAdd);
+			start = end;
+		}
+	}
+
+	private static <K> boolean isRun(Tuple tuple, K key, String relation, Predicate<Tuple> isIndexed, Function<Tuple, K> keyOf)
+	{
+		return (relation.equals(tuple.getRelation()) && isIndexed.test(tuple) && key.equals(keyOf.apply(tuple)));
+	}
+
+	/**
+	 * Add or remove entries[start, end), which share the key and relation, with a single update.
+	 */
+	private static <K, V> void update(Map<K, Map<String, Map<V, VersionedTuple>>> index, K key, String relation, List<VersionedTuple> entries,
+		int start, int end, Function<Tuple, V> componentOf, boolean isAdd)
+	{
+		if (isAdd)
+		{
+			index.computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+				.compute(relation, (r, components) -> {
+					if (components == null) components = new ConcurrentHashMap<>();
+					for (int i = start; i < end; i++) components.put(componentOf.apply(entries.get(i).getTuple()), entries.get(i));
+					return components;
+				});
+
+			return;
+		}
+
+		Map<String, Map<V, VersionedTuple>> relationSubtree = index.get(key);
+		if (relationSubtree == null) return;
+
+		// If we just removed the last component in the relation, prune the branch.
+		relationSubtree.computeIfPresent(relation, (r, components) -> {
+			for (int i = start; i < end; i++) components.remove(componentOf.apply(entries.get(i).getTuple()), entries.get(i));
+			return (components.isEmpty() ? null : components);
+		});
+	}
+
+	/**
+	 * Depth-first search of the GROUP2GROUP index for a userset, related to the objectId, that contains
+	 * the actor. All of a node's usersets are probed for a direct relation before descending, so the
+	 * search ends at the shallowest positive path found under each node.
+	 * 
+	 * Nodes (objectId#relation) are memoized per check with the depth they were first expanded at.
+	 * A node is only expanded again when reached at a shallower depth, which also breaks cycles.
+	 * 
+	 * @param actor    The ObjectId of the actor.
+	 * @param relation The relation to check.
+	 * @param objectId The ObjectId to check.
+	 * @param visited  The nodes expanded so far in this check, with their depth.
+	 * @param depth    The current depth, starting at 1.
+	 * @param revision The revision to read at.
+	 * @return true if a path from the actor to objectId#relation exists within maxDepth levels.
+	 */
+	private boolean isIndirectMember(ObjectId actor, String relation, ObjectId objectId, Map<UserSet, Integer> visited, int depth, long revision)
+	{
+		if (depth > maxDepth) return false;
+
+		Map<UserSet, VersionedTuple> usersets = getUsersets(objectId, relation);
+		if (usersets == null) return false;
+
+		UserSet node = new UserSet(objectId, relation);
+		Integer expanded = visited.get(node);
+		if (expanded != null && expanded <= depth) return false;
+		visited.put(node, depth);
+
+		for (VersionedTuple entry : usersets.values())
+		{
+			Tuple tuple = entry.getTuple();
+			if (entry.isVisible(revision, clock) && hasDirectRelation(actor, tuple.getUsersetRelation(), tuple.getUsersetObjectId(), revision)) return true;
+		}
+
+		for (VersionedTuple entry : usersets.values())
+		{
+			Tuple tuple = entry.getTuple();
+			if (entry.isVisible(revision, clock) && isIndirectMember(actor, tuple.getUsersetRelation(), tuple.getUsersetObjectId(), visited, depth + 1, revision)) return true;
+		}
+
+		return false;
 	}
 
 	/**
-	 * Answer whether the direct relations contain a relation to the given objectId.
+	 * Answer the userset tuples indexed with the relation to the objectId, or null if there are none.
+	 * The tuples may include versions not visible at the revision being read.
+	 */
+	private Map<UserSet, VersionedTuple> getUsersets(ObjectId objectId, String relation)
+	{
+		Map<String, Map<UserSet, VersionedTuple>> relationSubtree = groupToGroup.get(objectId);
+		if (relationSubtree == null) return null;
+
+		Map<UserSet, VersionedTuple> usersets = relationSubtree.get(relation);
+		return (usersets == null || usersets.isEmpty() ? null : usersets);
+	}
+
+	/**
+	 * Answer whether the actor has a direct relation to the objectId, also considering
+	 * wildcard users (e.g. 'app:user/*') when any have been written.
 	 * 
-	 * @param direct   UserSets of direct relations.
+	 * @param actor    The ObjectId of the actor.
 	 * @param relation The relation to check.
 	 * @param objectId The ObjectId to check.
+	 * @param revision The revision to read at.
 	 * @return true if the relation exists.
 	 */
-	private boolean hasDirectRelation(Set<Tuple> direct, String relation, ObjectId objectId)
+	private boolean hasDirectRelation(ObjectId actor, String relation, ObjectId objectId, long revision)
+	{
+		if (findDirect(actor, relation, objectId, revision) != null) return true;
+		if (!hasWildcardUser(actor)) return false;
+
+		return (findDirect(wildcardOf(actor), relation, objectId, revision) != null);
+	}
+
+	private boolean hasWildcardUser(ObjectId actor)
+	{
+		return (wildcardUsers.get() > 0 && !actor.isIdentifierWildcard());
+	}
+
+	private ObjectId wildcardOf(ObjectId actor)
 	{
-		return direct.stream().anyMatch(t -> t.appliesTo(objectId) && t.getRelation().equals(relation));
+		return new ObjectId(actor.getNamespace(), actor.getType(), ObjectPath.WILDCARD);
+	}
+
+	private Map<ObjectId, VersionedTuple> getDirectObjects(ObjectId actor, String relation)
+	{
+		Map<String, Map<ObjectId, VersionedTuple>> relationSubtree = memberToGroup.get(actor);
+		return (relationSubtree == null ? null : relationSubtree.get(relation));
+	}
+
+	private boolean isVisible(Map<ObjectId, VersionedTuple> resources, ObjectId objectId, long revision)
+	{
+		if (resources == null) return false;
+
+		VersionedTuple entry = resources.get(objectId);
+		return (entry != null && entry.isVisible(revision, clock));
 	}
 
 	/**
-	 * Answer whether the two sets intersect.
+	 * Answer the direct relation tuple from the actor to the objectId using the MEMBER2GROUP index.
+	 * This is a single probe of the actor's relation entry unless wildcard objects are involved,
+	 * in which case the actor's objects for the relation are matched one by one.
 	 * 
-	 * @param direct Tuples of direct relations.
-	 * @param indirect Tuples of indirect relations.
-	 * @return true if there is an intersection.
+	 * @param actor    The ObjectId of the actor.
+	 * @param relation The relation to check.
+	 * @param objectId The ObjectId to check.
+	 * @param revision The revision to read at.
+	 * @return the direct tuple or null.
+	 */
+	private Tuple findDirect(ObjectId actor, String relation, ObjectId objectId, long revision)
+	{
+		Map<ObjectId, VersionedTuple> resources = getDirectObjects(actor, relation);
+		if (resources == null || resources.isEmpty()) return null;
+
+		if (wildcardObjects.get() == 0 && !objectId.isWildcard())
+		{
+			VersionedTuple entry = resources.get(objectId);
+			return (entry != null ? entry.getTuple(revision, clock) : null);
+		}
+
+		for (VersionedTuple entry : resources.values())
+		{
+			Tuple tuple = (entry.getTuple().appliesTo(objectId) ? entry.getTuple(revision, clock) : null);
+			if (tuple != null) return tuple;
+		}
+
+		return null;
+	}
+
+	/**
+	 * A read-only view of a SimpleTupleStore pinned to the revision that was committed when it was
+	 * taken. Not affected by later writes and removes. Close it to let the store garbage-collect the
+	 * versions it holds.
+	 */
+	public class Snapshot
+	implements TupleStore, AutoCloseable
+	{
+		private final long revision;
+		private final AtomicBoolean isOpen = new AtomicBoolean(true);
+
+		private Snapshot(long revision)
+		{
+			super();
+			this.revision = revision;
+		}
+
+		@Override
+		public long getRevision()
+		{
+			return revision;
+		}
+
+		@Override
+		public long getNextExpiry()
+		{
+			return SimpleTupleStore.this.getNextExpiry();
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			ensureOpen();
+			return SimpleTupleStore.this.isEmpty(revision);
+		}
+
+		@Override
+		public boolean check(UserSet actor, String relation, ObjectId objectId)
+		{
+			ensureOpen();
+			return SimpleTupleStore.this.check(actor, relation, objectId, revision);
+		}
+
+		/**
+		 * Check at the snapshot's revision if it satisfies the Zookie, otherwise at the store's latest.
+		 */
+		@Override
+		public boolean check(UserSet actor, String relation, ObjectId objectId, Zookie zookie)
+		{
+			if (zookie == null || zookie.isSatisfiedBy(revision)) return check(actor, relation, objectId);
+			return SimpleTupleStore.this.check(actor, relation, objectId);
+		}
+
+		@Override
+		public BitSet checkAll(UserSet actor, String relation, List<ObjectId> objectIds)
+		{
+			ensureOpen();
+			return SimpleTupleStore.this.checkAll(actor, relation, objectIds, revision);
+		}
+
+		@Override
+		public Collection<Tuple> read(TupleSet tupleSet)
+		{
+			ensureOpen();
+			return SimpleTupleStore.this.read(tupleSet, revision);
+		}
+
+		/**
+		 * Read at the snapshot's revision if it satisfies the Zookie, otherwise at the store's latest.
+		 */
+		@Override
+		public Collection<Tuple> read(TupleSet tupleSet, Zookie zookie)
+		{
+			if (zookie == null || zookie.isSatisfiedBy(revision)) return read(tupleSet);
+			return SimpleTupleStore.this.read(tupleSet);
+		}
+
+		@Override
+		public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+		{
+			ensureOpen();
+			return SimpleTupleStore.this.read(tupleSets, revision);
+		}
+
+		@Override
+		public TupleStore write(Tuple tuple)
+		{
+			throw new UnsupportedOperationException("Snapshots are read-only.");
+		}
+
+		@Override
+		public TupleStore write(Collection<Tuple> tuples)
+		{
+			throw new UnsupportedOperationException("Snapshots are read-only.");
+		}
+
+		@Override
+		public TupleStore write(UserSet userset, String relation, ObjectId objectId)
+		{
+			throw new UnsupportedOperationException("Snapshots are read-only.");
+		}
+
+		@Override
+		public TupleStore remove(Tuple tuple)
+		{
+			throw new UnsupportedOperationException("Snapshots are read-only.");
+		}
+
+		@Override
+		public TupleStore remove(UserSet userset, String relation, ObjectId objectId)
+		{
+			throw new UnsupportedOperationException("Snapshots are read-only.");
+		}
+
+		/**
+		 * Release the snapshot's revision. Closing more than once has no effect.
+		 */
+		@Override
+		public void close()
+		{
+			if (isOpen.compareAndSet(true, false)) unpin(revision);
+		}
+
+		private void ensureOpen()
+		{
+			if (!isOpen.get()) throw new IllegalStateException("Snapshot is closed: revision " + revision);
+		}
+	}
+
+	/**
+	 * Reaps a store's expired tuples on the shared reaper thread, holding the store weakly so an unused
+	 * store can still be garbage-collected.
 	 */
-	private boolean intersects(Set<Tuple> direct, Set<Tuple> indirect)
+	private static final class Reaper
+	implements Runnable
 	{
-		return direct.stream().anyMatch(d -> indirect.stream().anyMatch(i -> i.getUserset().matches(d.getObjectId(), d.getRelation())));
+		private final WeakReference<SimpleTupleStore> store;
+		private volatile ScheduledFuture<?> future;
+
+		private Reaper(SimpleTupleStore store)
+		{
+			super();
+			this.store = new WeakReference<>(store);
+		}
+
+		@Override
+		public void run()
+		{
+			SimpleTupleStore tuples = store.get();
+
+			if (tuples == null)
+			{
+				ScheduledFuture<?> scheduled = future;
+				if (scheduled != null) scheduled.cancel(false);
+				return;
+			}
+
+			tuples.reapExpired();
+		}
 	}
 
-	private class LocalInvalidTupleException
-	extends RuntimeException
+	private static final class Census
 	{
-		private static final long serialVersionUID = 1626686686288754534L;
+		private final long revision;
+		private final int present;
+		private final int expiring;
 
-		public LocalInvalidTupleException(String message, Throwable cause) {
-			super(message, cause);
+		private Census(long revision, int present, int expiring)
+		{
+			super();
+			this.revision = revision;
+			this.present = present;
+			this.expiring = expiring;
+		}
+	}
+
+	private static final class Garbage
+	{
+		private final VersionedTuple entry;
+		private final long revision;
+
+		private Garbage(VersionedTuple entry, long revision)
+		{
+			super();
+			this.entry = entry;
+			this.revision = revision;
 		}
 	}
 }
@@ -0,0 +1,108 @@
+package com.strategicgains.aclaid.domain;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Answers the users that have a relation to an object (Zanzibar's LookupSubjects) by expanding the
+ * ⟨object#relation⟩ pair and, breadth-first, every nested userset found in the leaves of its tree
+ * (e.g. 'app:group/eng#member'). Each user is returned once.
+ *
+ * Nested usersets are followed up to a maximum depth, the ⟨object#relation⟩ pair itself being depth 1.
+ * Users reached through an intersection or exclusion are only candidates, so each is confirmed with a
+ * check of the ⟨object#relation⟩ pair before it is returned; users reached through unions alone are not.
+ * Results are produced lazily, one userset expansion at a time, so a caller that stops early does not
+ * pay for expanding every group.
+ *
+ * Not thread-safe. Create one per request.
+ */
+public class SubjectLookup
+implements Iterator<UserSet>
+{
+	private CheckContext context;
+	private ObjectId objectId;
+	private String relation;
+	private int maxDepth;
+
+	private Map<UserSet, Integer> depths = new HashMap<>();
+	private Set<UserSet> candidates = new HashSet<>();
+	private Deque<UserSet> queue = new ArrayDeque<>();
+	private Set<UserSet> found = new HashSet<>();
+	private Iterator<UserSet> leaves;
+	private int depth;
+	private boolean confirming;
+	private UserSet next;
+
+	/**
+	 * @param context the CheckContext used to expand usersets.
+	 * @param objectId the object whose subjects are found.
+	 * @param relation the relation the subjects have to the object.
+	 * @param maxDepth the maximum number of userset levels to expand.
+	 */
+	public SubjectLookup(CheckContext context, ObjectId objectId, String relation, int maxDepth)
+	{
+		super();
+		this.context = context;
+		this.objectId = objectId;
+		this.relation = relation;
+		this.maxDepth = maxDepth;
+		enqueue(new UserSet(objectId, relation), 1, false);
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		while (next == null)
+		{
+			if (leaves == null || !leaves.hasNext())
+			{
+				if (queue.isEmpty()) return false;
+
+				UserSet userset = queue.poll();
+				depth = depths.get(userset);
+				UsersetTree tree = context.expand(userset.getObjectId(), userset.getRelation());
+				confirming = (candidates.contains(userset) || !tree.isExact());
+				leaves = tree.leaves().iterator();
+				continue;
+			}
+
+			UserSet subject = leaves.next();
+
+			if (subject.hasRelation())
+			{
+				enqueue(subject, depth + 1, confirming);
+			}
+			else if (found.add(subject) && (!confirming || context.check(subject, relation, objectId)))
+			{
+				next = new UserSet(subject);
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public UserSet next()
+	{
+		if (!hasNext()) throw new NoSuchElementException();
+
+		UserSet result = next;
+		next = null;
+		return result;
+	}
+
+	private void enqueue(UserSet userset, int level, boolean candidate)
+	{
+		if (level > maxDepth || depths.containsKey(userset)) return;
+
+		depths.put(userset, level);
+		if (candidate) candidates.add(userset);
+		queue.add(userset);
+	}
+}
@@ -0,0 +1,175 @@
+package com.strategicgains.aclaid.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A hierarchical timer wheel of items due at a deadline, used by {@link SimpleTupleStore} to find
+ * expired tuples without scanning them all.
+ *
+ * Time is divided into ticks of tickMillis. Each of the LEVELS wheels has SLOTS slots; a slot on level
+ * n spans SLOTS^n ticks, so four levels of 64 slots cover 64^4 ticks (about 194 days at one second per
+ * tick). Later deadlines wait on the top level and are re-placed each time it comes round. Scheduling
+ * is O(1) and advancing costs O(1) per tick, plus each item is moved down at most once per level
+ * before it is due.
+ *
+ * An item is never returned before its deadline, but may be returned up to a tick after it. The exact
+ * deadlines pending are also counted in a sorted map, at O(log n) per item, so the next one is known
+ * without a scan.
+ *
+ * Not thread-safe.
+ */
+final class TimerWheel<T>
+{
+	private static final int LEVELS = 4;
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	private final long tickMillis;
+	private final Timer<T>[][] wheels;
+
+	// The next tick to process; every earlier tick has been.
+	private long currentTick;
+	private int size;
+
+	// The number of items pending at each deadline.
+	private final TreeMap<Long, Integer> deadlines = new TreeMap<>();
+
+	TimerWheel(long tickMillis, long nowMillis)
+	{
+		super();
+		if (tickMillis < 1) throw new IllegalArgumentException("Tick must be at least one millisecond: " + tickMillis);
+
+		@SuppressWarnings({"rawtypes", "unchecked"})
+		Timer<T>[][] wheels = new Timer[LEVELS][SLOTS];
+
+		this.tickMillis = tickMillis;
+		this.wheels = wheels;
+		this.currentTick = nowMillis / tickMillis;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return (size == 0);
+	}
+
+	/**
+	 * Answer the earliest deadline still pending, or Long.MAX_VALUE if none is.
+	 */
+	long nextDeadline()
+	{
+		return (deadlines.isEmpty() ? Long.MAX_VALUE : deadlines.firstKey());
+	}
+
+	/**
+	 * Schedule the item to be returned by {@link #advance(long)} once the deadline has passed.
+	 */
+	void schedule(T item, long deadlineMillis)
+	{
+		// Round up, so an item is never due before its deadline.
+		long tick = Math.floorDiv(deadlineMillis, tickMillis) + (Math.floorMod(deadlineMillis, tickMillis) == 0 ? 0 : 1);
+		place(new Timer<>(item, tick, deadlineMillis));
+		deadlines.merge(deadlineMillis, 1, Integer::sum);
+		size++;
+	}
+
+	/**
+	 * Advance to the given time, answering the items whose deadlines have passed.
+	 */
+	List<T> advance(long nowMillis)
+	{
+		long target = nowMillis / tickMillis;
+		List<T> due = new ArrayList<>();
+
+		if (size == 0)
+		{
+			currentTick = Math.max(currentTick, target + 1);
+			return due;
+		}
+
+		while (currentTick <= target && size > 0)
+		{
+			cascade();
+			int slot = (int) (currentTick & SLOT_MASK);
+			Timer<T> timer = wheels[0][slot];
+			wheels[0][slot] = null;
+
+			while (timer != null)
+			{
+				due.add(timer.item);
+				deadlines.computeIfPresent(timer.deadlineMillis, (d, count) -> (count == 1 ? null : count - 1));
+				size--;
+				timer = timer.next;
+			}
+
+			currentTick++;
+		}
+
+		if (size == 0) currentTick = Math.max(currentTick, target + 1);
+		return due;
+	}
+
+	/**
+	 * Move the timers of each higher-level slot that starts at the current tick down to lower levels.
+	 * Higher levels go first, so a timer can move down several levels in one tick.
+	 */
+	private void cascade()
+	{
+		for (int level = LEVELS - 1; level > 0; level--)
+		{
+			int shift = SLOT_BITS * level;
+			if ((currentTick & ((1L << shift) - 1)) != 0) continue;
+
+			int slot = (int) ((currentTick >>> shift) & SLOT_MASK);
+			Timer<T> timer = wheels[level][slot];
+			wheels[level][slot] = null;
+
+			while (timer != null)
+			{
+				Timer<T> next = timer.next;
+				place(timer);
+				timer = next;
+			}
+		}
+	}
+
+	private void place(Timer<T> timer)
+	{
+		long delta = timer.tick - currentTick;
+		int level = 0;
+
+		while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1))))
+		{
+			level++;
+		}
+
+		// Overdue timers fire at the current tick.
+		long tick = Math.max(timer.tick, currentTick);
+		int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+		timer.next = wheels[level][slot];
+		wheels[level][slot] = timer;
+	}
+
+	private static final class Timer<T>
+	{
+		private final T item;
+		private final long tick;
+		private final long deadlineMillis;
+		private Timer<T> next;
+
+		private Timer(T item, long tick, long deadlineMillis)
+		{
+			super();
+			this.item = item;
+			this.tick = tick;
+			this.deadlineMillis = deadlineMillis;
+		}
+	}
+}
@@ -286,12 +286,12 @@ public class Tuple
 
 	public String getUsersetRelation()
 	{
-		return (hasUserset() ? getUserset().getRelation() : null);
+		return (hasUserset() ? userset.getRelation() : null);
 	}
 
 	public ObjectId getUsersetObjectId()
 	{
-		return (hasUserset() ? getUserset().getObjectId() : null);
+		return (hasUserset() ? userset.getObjectId() : null);
 	}
 
 	public boolean isDirectRelation()
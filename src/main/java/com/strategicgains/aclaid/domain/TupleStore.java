@@ -1,6 +1,10 @@
 package com.strategicgains.aclaid.domain;
 
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import com.strategicgains.aclaid.exception.InvalidTupleException;
 
@@ -12,8 +16,57 @@ import com.strategicgains.aclaid.exception.InvalidTupleException;
  */
 public interface TupleStore
 {
+	/**
+	 * The default maximum number of nested userset levels followed by check().
+	 */
+	int DEFAULT_MAX_DEPTH = 32;
+
 	boolean isEmpty();
 
+	/**
+	 * Answer the current write revision of this store. The revision advances on every write or remove that
+	 * changes the store, so any result computed at an older revision may be stale.
+	 * 
+	 * @return a monotonically increasing revision number.
+	 */
+	long getRevision();
+
+	/**
+	 * Answer the last instant, in epoch milliseconds, at which every tuple in the store that expires is
+	 * still live. Expiry does not change the revision, so a result computed now may change after it.
+	 * By default no tuple expires.
+	 * 
+	 * @return the earliest expiry of the store's tuples, or Long.MAX_VALUE if none expires.
+	 */
+	default long getNextExpiry()
+	{
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Advance the revision to the given one without changing any tuple, e.g. so a replayed log restores the
+	 * revision of a change that no longer changes anything. A revision at or before the current one is
+	 * ignored. By default the revision only advances with changes, so it is left as is.
+	 * 
+	 * @param revision the revision to advance to.
+	 * @return true if the store is now at or past the revision.
+	 */
+	default boolean advanceRevision(long revision)
+	{
+		return (getRevision() >= revision);
+	}
+
+	/**
+	 * Answer a consistency token for the current revision. A Zookie taken after a write or remove
+	 * covers that change.
+	 * 
+	 * @return a Zookie for {@link #getRevision()}.
+	 */
+	default Zookie getZookie()
+	{
+		return new Zookie(getRevision());
+	}
+
 	/**
 	 * Check if the provided user has the relation to the object in this tuple set.
 	 * 
@@ -21,6 +74,9 @@ public interface TupleStore
 	 * A check request specifies a userset, represented by ⟨object#relation⟩, a
 	 * putative user, often represented by an authentication token.
 	 * 
+	 * Nested usersets (e.g. group:eng#member@group:backend#member) are followed up to
+	 * a bounded depth.
+	 * 
 	 * @param userset
 	 * @param relation
 	 * @param objectId
@@ -28,6 +84,65 @@ public interface TupleStore
 	 */
 	boolean check(UserSet userset, String relation, ObjectId objectId);
 
+	/**
+	 * Check if the provided user has the relation to the object, as of a revision at least as fresh as
+	 * the Zookie. By default the store's latest revision is read, which always satisfies a Zookie the
+	 * store issued. Implementations that may read older revisions (e.g. snapshots) override this.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @param zookie the oldest acceptable revision.
+	 * @return
+	 */
+	default boolean check(UserSet userset, String relation, ObjectId objectId, Zookie zookie)
+	{
+		return check(userset, relation, objectId);
+	}
+
+	/**
+	 * Check if the provided user has the relation to the object without blocking the caller, e.g. for a store
+	 * backed by a remote database. By default the check is made synchronously and its result returned as a
+	 * completed stage, which suits in-memory stores.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return a stage completing with the result of {@link #check(UserSet, String, ObjectId)}.
+	 */
+	default CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		try
+		{
+			return CompletableFuture.completedFuture(check(userset, relation, objectId));
+		}
+		catch (RuntimeException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Check if the provided user has the relation to each of the objects. Implementations may share
+	 * index lookups for the user and relation across all of the objects.
+	 * 
+	 * @param userset
+	 * @param relation
+	 * @param objectIds
+	 * @return a BitSet with bit i set if the user has the relation to objectIds.get(i).
+	 */
+	default BitSet checkAll(UserSet userset, String relation, List<ObjectId> objectIds)
+	{
+		BitSet results = new BitSet(objectIds.size());
+
+		for (int i = 0; i < objectIds.size(); i++)
+		{
+			if (check(userset, relation, objectIds.get(i))) results.set(i);
+		}
+
+		return results;
+	}
+
 	/**
 	 * Perform a single read operation against the tuple store using the provided tuple set.
 	 * This is used to retrieve tuples that match the criteria specified in the tuple set.
@@ -37,6 +152,38 @@ public interface TupleStore
 	 */
 	Collection<Tuple> read(TupleSet tupleSet);
 
+	/**
+	 * Perform a single read operation without blocking the caller. By default the read is made
+	 * synchronously and its result returned as a completed stage.
+	 * 
+	 * @param tupleSet A tuple set that defines the criteria for the read operation.
+	 * @return a stage completing with the result of {@link #read(TupleSet)}.
+	 */
+	default CompletionStage<Collection<Tuple>> readAsync(TupleSet tupleSet)
+	{
+		try
+		{
+			return CompletableFuture.completedFuture(read(tupleSet));
+		}
+		catch (RuntimeException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Perform a single read operation as of a revision at least as fresh as the Zookie.
+	 * 
+	 * @param tupleSet A tuple set that defines the criteria for the read operation.
+	 * @param zookie the oldest acceptable revision.
+	 * @return a collection of tuples that match the criteria defined in the tuple set.
+	 * @see #check(UserSet, String, ObjectId, Zookie)
+	 */
+	default Collection<Tuple> read(TupleSet tupleSet, Zookie zookie)
+	{
+		return read(tupleSet);
+	}
+
 	/**
 	 * Perform one or more read operations against the tuple store using the provided tuple sets.
 	 * This is used to retrieve tuples that match the criteria specified in the tuple sets.
@@ -84,6 +231,24 @@ public interface TupleStore
 	 */
 	TupleStore remove(Tuple tuple);
 
+	/**
+	 * Remove a collection of tuples from this tuple set. Implementations may remove them as one batch.
+	 * 
+	 * @param tuples the tuples to remove. Tuples not in the set are ignored.
+	 * @return
+	 */
+	default TupleStore remove(Collection<Tuple> tuples)
+	{
+		if (tuples == null) return this;
+
+		for (Tuple tuple : tuples)
+		{
+			remove(tuple);
+		}
+
+		return this;
+	}
+
 	/**
 	 * Remove a tuple from this tuple set using the given object ID, relation and userset.
 	 * 
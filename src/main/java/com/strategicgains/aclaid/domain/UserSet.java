@@ -146,10 +146,11 @@ public class UserSet
 	@Override
 	public int hashCode()
 	{
+		// Same values as Objects.hash(...), without allocating its varargs array on every lookup.
 		if (hasRelation()) {
-			return Objects.hash(relation, getObjectId());
+			return 31 * (31 + relation.hashCode()) + Objects.hashCode(getObjectId());
 		}
-		else return Objects.hash(getObjectId());
+		else return 31 + Objects.hashCode(getObjectId());
 	}
 
 	@Override
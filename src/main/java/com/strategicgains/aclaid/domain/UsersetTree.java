@@ -0,0 +1,160 @@
+package com.strategicgains.aclaid.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The result of a Zanzibar Expand request: the effective userset of an ⟨object#relation⟩ pair as a tree.
+ *
+ * From the Zanzibar document:
+ * The result is represented by a userset tree whose leaf nodes are user IDs or usersets pointing to other
+ * ⟨object#relation⟩ pairs, and intermediate nodes represent union, intersection, or exclusion operators.
+ * Expand is crucial for our clients to reason about the complete set of users and groups that have access
+ * to their objects, which allows them to build efficient search indices for access-controlled content.
+ *
+ * Nested usersets in the leaves are not expanded further; see {@link SubjectLookup} for the flattened users.
+ */
+public class UsersetTree
+{
+	public enum Kind
+	{
+		LEAF,
+		UNION,
+		INTERSECTION,
+		EXCLUSION
+	}
+
+	private UserSet userset;
+	private Kind kind;
+	private List<UserSet> subjects;
+	private List<UsersetTree> children;
+
+	private UsersetTree(UserSet userset, Kind kind, List<UserSet> subjects, List<UsersetTree> children)
+	{
+		super();
+		this.userset = userset;
+		this.kind = kind;
+		this.subjects = subjects;
+		this.children = children;
+	}
+
+	/**
+	 * Create a leaf node holding the stored subjects of an ⟨object#relation⟩ pair.
+	 *
+	 * @param userset the ⟨object#relation⟩ pair.
+	 * @param subjects the users and usersets stored for the pair.
+	 * @return a new leaf node.
+	 */
+	public static UsersetTree leaf(UserSet userset, Collection<UserSet> subjects)
+	{
+		return new UsersetTree(userset, Kind.LEAF, new ArrayList<>(subjects), Collections.emptyList());
+	}
+
+	/**
+	 * Create a union node of the given children.
+	 *
+	 * @param userset the ⟨object#relation⟩ pair this node expands, or null if it is part of a larger rewrite.
+	 * @param children the expanded operands.
+	 * @return a new union node.
+	 */
+	public static UsersetTree union(UserSet userset, List<UsersetTree> children)
+	{
+		return new UsersetTree(userset, Kind.UNION, Collections.emptyList(), new ArrayList<>(children));
+	}
+
+	/**
+	 * Create an intersection node of the given children.
+	 *
+	 * @param userset the ⟨object#relation⟩ pair this node expands, or null if it is part of a larger rewrite.
+	 * @param children the expanded operands.
+	 * @return a new intersection node.
+	 */
+	public static UsersetTree intersection(UserSet userset, List<UsersetTree> children)
+	{
+		return new UsersetTree(userset, Kind.INTERSECTION, Collections.emptyList(), new ArrayList<>(children));
+	}
+
+	/**
+	 * Create an exclusion node, whose children are the base and the excluded operand, in that order.
+	 *
+	 * @param userset the ⟨object#relation⟩ pair this node expands, or null if it is part of a larger rewrite.
+	 * @param base the expanded base operand.
+	 * @param excluded the expanded operand excluded from the base.
+	 * @return a new exclusion node.
+	 */
+	public static UsersetTree exclusion(UserSet userset, UsersetTree base, UsersetTree excluded)
+	{
+		return new UsersetTree(userset, Kind.EXCLUSION, Collections.emptyList(), List.of(base, excluded));
+	}
+
+	/**
+	 * @return the ⟨object#relation⟩ pair this node expands, or null for an operator inside a rewrite.
+	 */
+	public UserSet getUserset()
+	{
+		return userset;
+	}
+
+	void setUserset(UserSet userset)
+	{
+		this.userset = userset;
+	}
+
+	public Kind getKind()
+	{
+		return kind;
+	}
+
+	public boolean isLeaf()
+	{
+		return (kind == Kind.LEAF);
+	}
+
+	/**
+	 * @return the users and usersets of a leaf node, empty for an operator node.
+	 */
+	public List<UserSet> getSubjects()
+	{
+		return Collections.unmodifiableList(subjects);
+	}
+
+	public List<UsersetTree> getChildren()
+	{
+		return Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * Answer the subjects of every leaf in this tree that can contribute users, depth-first: every operand of
+	 * a union or intersection, but only the base of an exclusion. May contain duplicates.
+	 *
+	 * Unless the tree {@link #isExact()}, these are candidates, a superset of the tree's users.
+	 */
+	public Stream<UserSet> leaves()
+	{
+		if (isLeaf()) return subjects.stream();
+		if (kind == Kind.EXCLUSION) return children.get(0).leaves();
+
+		return children.stream().flatMap(UsersetTree::leaves);
+	}
+
+	/**
+	 * @return true if the tree has only unions and leaves, so {@link #leaves()} are exactly its subjects.
+	 */
+	public boolean isExact()
+	{
+		if (isLeaf()) return true;
+
+		return (kind == Kind.UNION && children.stream().allMatch(UsersetTree::isExact));
+	}
+
+	@Override
+	public String toString()
+	{
+		if (isLeaf()) return String.format("%s%s", (userset == null ? "" : userset + "="), subjects);
+
+		return String.format("%s%s%s", (userset == null ? "" : userset + "="), kind.name().toLowerCase(), children);
+	}
+}
@@ -0,0 +1,235 @@
+package com.strategicgains.aclaid.domain;
+
+import java.time.Clock;
+
+/**
+ * A Tuple with its history of writes and removes, used by {@link SimpleTupleStore} for multi-version
+ * concurrency control. Each version records whether the tuple is present as of a revision, and the tuple
+ * as that version wrote it, including when it expires. Versions are kept newest first, so the common case (a single committed
+ * version) is decided by the head. The clock is only read for versions that expire.
+ *
+ * Readers are lock-free. Versions are only added or trimmed while holding the tuple's write lock.
+ */
+final class VersionedTuple
+{
+	/**
+	 * The expiry of a version that never expires.
+	 */
+	static final long NEVER = Long.MAX_VALUE;
+
+	private final Tuple tuple;
+	private final long sequence;
+	private volatile Version head;
+
+	VersionedTuple(Tuple tuple, long sequence)
+	{
+		super();
+		this.tuple = tuple;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Answer the tuple as first written, which identifies the entry. Its expiry may be out of date; see
+	 * {@link #getTuple(long, Clock)}.
+	 */
+	Tuple getTuple()
+	{
+		return tuple;
+	}
+
+	/**
+	 * Answer the tuple as written by the version visible at the revision, or null if it is not visible.
+	 */
+	Tuple getTuple(long revision, Clock clock)
+	{
+		Version version = versionAt(revision);
+		return (version != null && version.isLive(clock) ? version.tuple : null);
+	}
+
+	/**
+	 * Answer the order in which the tuple was first written, relative to the store's other tuples.
+	 */
+	long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * Answer whether the tuple is present, and not expired, as of the revision. Versions older than every
+	 * open snapshot may have been trimmed; if only newer versions remain, the oldest remaining one is used.
+	 */
+	boolean isVisible(long revision, Clock clock)
+	{
+		Version version = versionAt(revision);
+		return (version != null && version.isLive(clock));
+	}
+
+	/**
+	 * Answer whether the tuple is present as of the revision, expired or not.
+	 */
+	boolean isPresent(long revision)
+	{
+		Version version = versionAt(revision);
+		return (version != null && version.present);
+	}
+
+	/**
+	 * Answer whether the tuple is present as of the revision with an expiry.
+	 */
+	boolean expires(long revision)
+	{
+		Version version = versionAt(revision);
+		return (version != null && version.present && version.expiresAt != NEVER);
+	}
+
+	/**
+	 * Record the tuple as present or removed as of the revision. Revisions may arrive out of order when
+	 * write batches run concurrently, so the version is inserted in revision order. Versions no longer
+	 * visible to any reader at or after the horizon are dropped.
+	 *
+	 * @param revision the revision of the write or remove.
+	 * @param written the tuple as written, which the version keeps and takes its expiry from, or null
+	 * for a remove.
+	 * @param horizon the oldest revision any reader may still read at.
+	 */
+	void put(long revision, Tuple written, long horizon)
+	{
+		Version newer = null;
+		Version older = head;
+
+		while (older != null && older.revision > revision)
+		{
+			newer = older;
+			older = older.previous;
+		}
+
+		Version version = new Version(revision, written, older);
+		if (newer == null) head = version;
+		else newer.previous = version;
+
+		trim(horizon);
+	}
+
+	/**
+	 * Drop the version recorded at the revision, undoing a write or remove that will not be committed.
+	 *
+	 * @return true if any version remains.
+	 */
+	boolean undo(long revision)
+	{
+		Version newer = null;
+		Version version = head;
+
+		while (version != null && version.revision > revision)
+		{
+			newer = version;
+			version = version.previous;
+		}
+
+		if (version != null && version.revision == revision)
+		{
+			if (newer == null) head = version.previous;
+			else newer.previous = version.previous;
+		}
+
+		return (head != null);
+	}
+
+	/**
+	 * Answer whether the tuple's latest version is a remove that every reader at or after the horizon
+	 * sees, in which case it can be dropped from the indexes.
+	 */
+	boolean isRemovable(long horizon)
+	{
+		Version version = head;
+		return (version != null && !version.present && version.revision <= horizon);
+	}
+
+	/**
+	 * Answer whether the tuple's latest version is present but expired and every reader at or after the
+	 * horizon sees it, in which case it can be purged from the indexes without changing any result.
+	 */
+	boolean isPurgeable(long horizon, long now)
+	{
+		Version version = head;
+		return (version != null && version.present && version.expiresAt < now && version.revision <= horizon);
+	}
+
+	/**
+	 * Answer the latest recorded state, committed or not.
+	 */
+	boolean isPresent()
+	{
+		Version version = head;
+		return (version != null && version.present);
+	}
+
+	/**
+	 * Answer when the latest recorded version expires, or NEVER.
+	 */
+	long getExpiresAt()
+	{
+		Version version = head;
+		return (version != null ? version.expiresAt : NEVER);
+	}
+
+	private Version versionAt(long revision)
+	{
+		Version version = head;
+		Version oldest = null;
+
+		while (version != null)
+		{
+			if (version.revision <= revision) return version;
+
+			oldest = version;
+			version = version.previous;
+		}
+
+		return (oldest != null && oldest.trimmed ? oldest : null);
+	}
+
+	/**
+	 * Drop the versions older than the newest one at or before the horizon.
+	 */
+	private void trim(long horizon)
+	{
+		Version version = head;
+
+		while (version != null && version.revision > horizon)
+		{
+			version = version.previous;
+		}
+
+		if (version != null && version.previous != null)
+		{
+			version.trimmed = true;
+			version.previous = null;
+		}
+	}
+
+	private static final class Version
+	{
+		private final long revision;
+		private final Tuple tuple;
+		private final boolean present;
+		private final long expiresAt;
+		private volatile Version previous;
+		private volatile boolean trimmed;
+
+		private Version(long revision, Tuple tuple, Version previous)
+		{
+			super();
+			this.revision = revision;
+			this.tuple = tuple;
+			this.present = (tuple != null);
+			this.expiresAt = (tuple != null && tuple.expires() ? tuple.getExpiresAt().getTime() : NEVER);
+			this.previous = previous;
+		}
+
+		private boolean isLive(Clock clock)
+		{
+			return (present && (expiresAt == NEVER || expiresAt >= clock.millis()));
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.strategicgains.aclaid.domain;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Base64;
+
+/**
+ * An opaque consistency token, as returned by Zanzibar for each write. A check or read given a Zookie
+ * is evaluated at a TupleStore revision at least as fresh as the one the Zookie was issued at, so a
+ * client that saves the Zookie of a change (e.g. removing a user from a document's ACL) never has that
+ * change missed by a later check (the "new enemy" problem). Any cached decision or snapshot at least
+ * that fresh may answer, so only clients holding a recent Zookie pay for reading the latest revision.
+ *
+ * Clients should store and pass around the encoded form only.
+ *
+ * @see TupleStore#getZookie()
+ */
+public final class Zookie
+implements Comparable<Zookie>
+{
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final long revision;
+
+	public Zookie(long revision)
+	{
+		super();
+		if (revision < 0) throw new IllegalArgumentException("Revision cannot be negative: " + revision);
+		this.revision = revision;
+	}
+
+	/**
+	 * Decode a Zookie from its encoded form.
+	 *
+	 * @param encoded a string produced by {@link #encode()}.
+	 * @return the Zookie.
+	 * @throws ParseException if the string is not an encoded Zookie.
+	 */
+	public static Zookie decode(String encoded)
+	throws ParseException
+	{
+		if (encoded == null) throw new ParseException("Zookie cannot be null", 0);
+
+		byte[] bytes;
+
+		try
+		{
+			bytes = DECODER.decode(encoded);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ParseException("Invalid Zookie: " + encoded, 0);
+		}
+
+		if (bytes.length != Long.BYTES) throw new ParseException("Invalid Zookie: " + encoded, 0);
+
+		long revision = ByteBuffer.wrap(bytes).getLong();
+		if (revision < 0) throw new ParseException("Invalid Zookie: " + encoded, 0);
+
+		return new Zookie(revision);
+	}
+
+	/**
+	 * Answer the TupleStore revision this Zookie was issued at. For use by TupleStore implementations
+	 * and caches; clients treat Zookies as opaque.
+	 */
+	public long getRevision()
+	{
+		return revision;
+	}
+
+	/**
+	 * Answer whether a result computed at the given revision is fresh enough for this Zookie.
+	 */
+	public boolean isSatisfiedBy(long revision)
+	{
+		return (revision >= this.revision);
+	}
+
+	public String encode()
+	{
+		return ENCODER.encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(revision).array());
+	}
+
+	@Override
+	public int compareTo(Zookie that)
+	{
+		return Long.compare(this.revision, that.revision);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Long.hashCode(revision);
+	}
+
+	@Override
+	public boolean equals(Object that)
+	{
+		if (this == that) return true;
+		if (that == null || getClass() != that.getClass()) return false;
+		return (revision == ((Zookie) that).revision);
+	}
+
+	@Override
+	public String toString()
+	{
+		return encode();
+	}
+}
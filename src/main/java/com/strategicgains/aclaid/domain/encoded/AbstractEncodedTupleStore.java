@@ -0,0 +1,860 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import static com.strategicgains.aclaid.domain.encoded.LongIntHashMap.pack;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * A dictionary-encoded TupleStore that answers the same queries as {@link SimpleTupleStore}, over
+ * storage supplied by the subclass as {@link IntColumn}s and {@link LongIntMap}s.
+ *
+ * Namespaces, types, identifiers and relation names are interned into int ids and each ObjectId is
+ * interned into an int ordinal (see {@link ObjectDictionary}). A tuple is then stored as a row of four
+ * int columns: object, relation, userset object and userset relation (NONE for a direct relation).
+ *
+ * Rows are indexed by intrusive, doubly-linked chains whose heads live in primitive-keyed hash maps:
+ *
+ *   OBJECT:  object -> rows, equivalent to tuplesByObjectId.
+ *   GROUP:   (object, relation) -> rows with a userset relation, equivalent to GROUP2GROUP.
+ *   USERSET: (userset object, userset relation) -> rows, equivalent to tuplesByUserSet (and MEMBER2GROUP
+ *            when the userset relation is NONE).
+ *
+ * An additional open-addressing table over all four columns supports exact tuple lookups, so checks
+ * for direct relations are a single probe and the check path does not allocate unless wildcards are
+ * involved.
+ *
+ * Not thread-safe.
+ */
+public abstract class AbstractEncodedTupleStore<T extends AbstractEncodedTupleStore<T>>
+implements TupleStore
+{
+	private static final int NONE = StringDictionary.NONE;
+	private static final int INITIAL_CAPACITY = 16;
+
+	// The largest power-of-two tuple table; past half of it the table fills beyond its usual load.
+	private static final int MAX_TABLE_CAPACITY = 1 << 30;
+
+	private final IntFunction<IntColumn> columns;
+	private final Supplier<LongIntMap> maps;
+	private StringDictionary strings = new StringDictionary();
+	private ObjectDictionary objects = new ObjectDictionary(strings);
+
+	// Tuple rows, one int column per tuple component.
+	private IntColumn rowObjects;
+	private IntColumn rowRelations;
+	private IntColumn rowUsers;
+	private IntColumn rowUserRelations;
+	private int rowCount;	// high-water mark of allocated rows.
+	private int size;		// live rows.
+	private int freeRows = NONE;	// removed rows, linked through rowObjects.
+
+	private RowChain byObject;
+	private RowChain byGroup;
+	private RowChain byUserset;
+
+	// Open-addressing table of (row + 1) keyed by all four columns; zero marks an empty slot.
+	private IntColumn tupleTable;
+
+	// Number of live rows whose object is a wildcard, which forces the matching fallback.
+	private int wildcardObjectRows;
+
+	// Number of live direct rows whose user is a wildcard (e.g. 'app:user/*'), which adds a second probe.
+	private int wildcardUserRows;
+
+	// Advances on every added or removed row.
+	private volatile long revision;
+
+	// The maximum number of userset levels check() will follow from the target object.
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+
+	/**
+	 * @param columns creates an int column of the given capacity.
+	 * @param maps    creates an empty map for the chain heads.
+	 */
+	AbstractEncodedTupleStore(IntFunction<IntColumn> columns, Supplier<LongIntMap> maps)
+	{
+		super();
+		this.columns = columns;
+		this.maps = maps;
+		this.rowObjects = columns.apply(INITIAL_CAPACITY);
+		this.rowRelations = columns.apply(INITIAL_CAPACITY);
+		this.rowUsers = columns.apply(INITIAL_CAPACITY);
+		this.rowUserRelations = columns.apply(INITIAL_CAPACITY);
+		this.tupleTable = columns.apply(INITIAL_CAPACITY * 2);
+
+		this.byObject = new RowChain()
+		{
+			@Override
+			long keyOf(int row)
+			{
+				return rowObjects.get(row);
+			}
+		};
+
+		this.byGroup = new RowChain()
+		{
+			@Override
+			long keyOf(int row)
+			{
+				return pack(rowObjects.get(row), rowRelations.get(row));
+			}
+		};
+
+		this.byUserset = new RowChain()
+		{
+			@Override
+			long keyOf(int row)
+			{
+				return pack(rowUsers.get(row), rowUserRelations.get(row));
+			}
+		};
+	}
+
+	/**
+	 * Answer whether the actor has the given relation to the objectId. Parses the actor and objectId
+	 * strings before calling {@link #check(UserSet, String, ObjectId)}.
+	 *
+	 * @param actor    The UserSet acting on the objectId.
+	 * @param relation The relation to check.
+	 * @param objectId The ObjectId to check.
+	 * @return true if the relation exists.
+	 */
+	public boolean check(String actor, String relation, String objectId)
+	throws ParseException
+	{
+		return check(UserSet.parse(actor), relation, new ObjectId(objectId));
+	}
+
+	/**
+	 * Answer whether the actor has the given relation to the objectId, either directly or through
+	 * the target's usersets, following nested usersets up to maxDepth levels.
+	 *
+	 * @param actor    The UserSet acting on the objectId.
+	 * @param relation The relation to check.
+	 * @param objectId The ObjectId to check.
+	 * @return true if the relation exists.
+	 */
+	@Override
+	public boolean check(UserSet actor, String relation, ObjectId objectId)
+	{
+		if (actor == null || relation == null || objectId == null) return false;
+
+		ObjectId actorId = actor.getObjectId();
+		int rel = strings.lookup(relation);
+		if (rel == NONE) return false;
+
+		int user = objects.lookup(actorId);
+		int wildcard = (wildcardUserRows > 0 && !actorId.isIdentifierWildcard() ? objects.lookupWildcard(actorId) : NONE);
+		if (user == NONE && wildcard == NONE) return false;
+
+		if (findDirect(user, rel, objectId) != NONE || findDirect(wildcard, rel, objectId) != NONE) return true;
+
+		int target = objects.lookup(objectId);
+		if (target == NONE || byGroup.head(pack(target, rel)) == NONE) return false;
+
+		return isIndirectMember(user, wildcard, rel, target, new LongIntHashMap(), 1);
+	}
+
+	/**
+	 * Check the relation from the actor to each of the objects, encoding the actor and relation once and
+	 * sharing the nodes already found not to contain the actor across the objects.
+	 */
+	@Override
+	public BitSet checkAll(UserSet actor, String relation, List<ObjectId> objectIds)
+	{
+		BitSet results = new BitSet(objectIds.size());
+		if (actor == null || relation == null) return results;
+
+		ObjectId actorId = actor.getObjectId();
+		int rel = strings.lookup(relation);
+		if (rel == NONE) return results;
+
+		int user = objects.lookup(actorId);
+		int wildcard = (wildcardUserRows > 0 && !actorId.isIdentifierWildcard() ? objects.lookupWildcard(actorId) : NONE);
+		if (user == NONE && wildcard == NONE) return results;
+
+		LongIntHashMap visited = null;
+
+		for (int i = 0; i < objectIds.size(); i++)
+		{
+			ObjectId objectId = objectIds.get(i);
+			if (objectId == null) continue;
+
+			if (findDirect(user, rel, objectId) != NONE || findDirect(wildcard, rel, objectId) != NONE)
+			{
+				results.set(i);
+				continue;
+			}
+
+			int target = objects.lookup(objectId);
+			if (target == NONE || byGroup.head(pack(target, rel)) == NONE) continue;
+			if (visited == null) visited = new LongIntHashMap();
+
+			if (isIndirectMember(user, wildcard, rel, target, visited, 1))
+			{
+				results.set(i);
+
+				// Nodes on the positive path were expanded but do not mean "not a member".
+				visited.clear();
+			}
+		}
+
+		return results;
+	}
+
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	public void setMaxDepth(int maxDepth)
+	{
+		this.maxDepth = maxDepth;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return (size == 0);
+	}
+
+	@Override
+	public long getRevision()
+	{
+		return revision;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public Collection<Tuple> read(TupleSet tupleSet)
+	{
+		if (tupleSet == null) throw new IllegalArgumentException("TupleSet cannot be null.");
+		else if (tupleSet.isEmpty() || !tupleSet.isValid()) throw new IllegalArgumentException("Invalid TupleSet: " + tupleSet);
+
+		if (tupleSet.isSingleTupleKey())
+		{
+			Tuple tuple = readOne(tupleSet.getUserset(), tupleSet.getRelation(), tupleSet.getObject());
+			return (tuple != null ? Collections.singleton(tuple) : Collections.emptySet());
+		}
+		else if (tupleSet.hasObject())
+		{
+			return (tupleSet.hasRelation() ? readAll(tupleSet.getObject(), tupleSet.getRelation()) : readAll(tupleSet.getObject()));
+		}
+
+		return (tupleSet.hasRelation() ? readAll(tupleSet.getUserset(), tupleSet.getRelation()) : readAll(tupleSet.getUserset()));
+	}
+
+	@Override
+	public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+	{
+		if (tupleSets == null || tupleSets.isEmpty()) return Collections.emptySet();
+
+		Set<Tuple> results = new HashSet<>();
+		tupleSets.stream().forEach(ts -> results.addAll(read(ts)));
+		return results;
+	}
+
+	public Tuple readOne(String userset, String relation, String objectId)
+	throws ParseException
+	{
+		return readOne(UserSet.parse(userset), relation, new ObjectId(objectId));
+	}
+
+	/**
+	 * Read a direct relation tuple for the userset's object, as {@link SimpleTupleStore#readOne(UserSet, String, ObjectId)}.
+	 *
+	 * @param userset
+	 * @param relation
+	 * @param objectId
+	 * @return the tuple or null if not found.
+	 */
+	public Tuple readOne(UserSet userset, String relation, ObjectId objectId)
+	{
+		if (userset == null || relation == null || objectId == null) return null;
+
+		int user = objects.lookup(userset.getObjectId());
+		int rel = strings.lookup(relation);
+		if (user == NONE || rel == NONE) return null;
+
+		int row = findDirect(user, rel, objectId);
+		return (row == NONE ? null : decode(row));
+	}
+
+	public Collection<Tuple> readAll(ObjectId objectId, String relation)
+	{
+		if (objectId == null || relation == null) return Collections.emptySet();
+
+		int object = objects.lookup(objectId);
+		int rel = strings.lookup(relation);
+		if (object == NONE || rel == NONE) return Collections.emptySet();
+
+		List<Tuple> results = new ArrayList<>();
+
+		for (int row = byObject.head(object); row != NONE; row = byObject.next(row))
+		{
+			if (rowRelations.get(row) == rel) results.add(decode(row));
+		}
+
+		return results;
+	}
+
+	public Collection<Tuple> readAll(ObjectId objectId)
+	{
+		if (objectId == null) return Collections.emptySet();
+
+		int object = objects.lookup(objectId);
+		if (object == NONE) return Collections.emptySet();
+
+		List<Tuple> results = new ArrayList<>();
+
+		for (int row = byObject.head(object); row != NONE; row = byObject.next(row))
+		{
+			results.add(decode(row));
+		}
+
+		return results;
+	}
+
+	public Collection<Tuple> readAll(UserSet userset, String relation)
+	{
+		if (userset == null || relation == null) return Collections.emptySet();
+
+		long key = lookupUsersetKey(userset);
+		int rel = strings.lookup(relation);
+		if (key == NONE || rel == NONE) return Collections.emptySet();
+
+		List<Tuple> results = new ArrayList<>();
+
+		for (int row = byUserset.head(key); row != NONE; row = byUserset.next(row))
+		{
+			if (rowRelations.get(row) == rel) results.add(decode(row));
+		}
+
+		return results;
+	}
+
+	public Collection<Tuple> readAll(UserSet userset)
+	{
+		if (userset == null) return Collections.emptySet();
+
+		long key = lookupUsersetKey(userset);
+		if (key == NONE) return Collections.emptySet();
+
+		List<Tuple> results = new ArrayList<>();
+
+		for (int row = byUserset.head(key); row != NONE; row = byUserset.next(row))
+		{
+			results.add(decode(row));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Create a new tuple using the given userset, relation and resource strings then add it to the tuple store.
+	 *
+	 * @param userset  The UserSet to write.
+	 * @param relation The relation to write.
+	 * @param resource The ObjectId to write.
+	 * @return this store for method chaining.
+	 * @throws ParseException if the userset is invalid.
+	 * @throws InvalidTupleException if the tuple is invalid.
+	 */
+	public T write(String userset, String relation, String resource)
+	throws ParseException, InvalidTupleException
+	{
+		return write(UserSet.parse(userset), relation, new ObjectId(resource));
+	}
+
+	@Override
+	public T write(UserSet userset, String relation, ObjectId resource)
+	throws InvalidTupleException
+	{
+		return write(new Tuple(userset, relation, resource));
+	}
+
+	@Override
+	public T write(Tuple tuple)
+	throws InvalidTupleException
+	{
+		validate(tuple);
+		return add(tuple);
+	}
+
+	/**
+	 * Add a collection of tuples. The whole collection is validated first, so an invalid tuple leaves the
+	 * store unchanged, and the row columns and tuple table are grown once for the collection rather than
+	 * doubling repeatedly during a bulk load.
+	 */
+	@Override
+	public T write(Collection<Tuple> tuples)
+	throws InvalidTupleException
+	{
+		if (tuples == null || tuples.isEmpty()) return self();
+
+		for (Tuple tuple : tuples)
+		{
+			validate(tuple);
+		}
+
+		ensureCapacity(size + tuples.size());
+
+		for (Tuple tuple : tuples)
+		{
+			add(tuple);
+		}
+
+		return self();
+	}
+
+	private void validate(Tuple tuple)
+	throws InvalidTupleException
+	{
+		if (tuple == null)
+		{
+			throw new InvalidTupleException("Tuple cannot be null.");
+		}
+		else if (!tuple.isValid())
+		{
+			throw new InvalidTupleException("Invalid tuple: " + tuple);
+		}
+		else if (tuple.expires())
+		{
+			// Rows have no expiry, so the tuple would be stored as permanent.
+			throw new InvalidTupleException("Expiring tuples are not supported: " + tuple);
+		}
+	}
+
+	private T add(Tuple tuple)
+	{
+		int object = objects.intern(tuple.getObjectId());
+		int rel = strings.intern(tuple.getRelation());
+		int user = objects.intern(tuple.getUsersetObjectId());
+		int userRel = strings.intern(tuple.getUsersetRelation());
+
+		if (findRow(object, rel, user, userRel) == NONE)
+		{
+			addRow(object, rel, user, userRel);
+		}
+
+		return self();
+	}
+
+	@Override
+	public T remove(Tuple tuple)
+	{
+		if (tuple == null || !tuple.isValid()) return self();
+
+		return remove(tuple.getUsersetObjectId(), tuple.getUsersetRelation(), tuple.getRelation(), tuple.getObjectId());
+	}
+
+	/**
+	 * Remove the tuple with the given components. The row is found by dictionary lookups and a single
+	 * tuple table probe, without creating a Tuple.
+	 */
+	@Override
+	public T remove(UserSet userset, String relation, ObjectId resource)
+	{
+		if (userset == null || relation == null || resource == null) return self();
+
+		return remove(userset.getObjectId(), userset.getRelation(), relation, resource);
+	}
+
+	private T remove(ObjectId userId, String userRelation, String relation, ObjectId objectId)
+	{
+		if (userId == null) return self();
+
+		int object = objects.lookup(objectId);
+		int rel = strings.lookup(relation);
+		int user = objects.lookup(userId);
+		int userRel = strings.lookup(userRelation);
+
+		if (object == NONE || rel == NONE || user == NONE || (userRel == NONE && userRelation != null)) return self();
+
+		int row = findRow(object, rel, user, userRel);
+
+		if (row != NONE)
+		{
+			removeRow(row);
+		}
+
+		return self();
+	}
+
+	/**
+	 * Answer the row of a direct relation from the user to an object matching the objectId. Probes the
+	 * tuple table when no wildcards are involved, otherwise falls back to scanning the user's direct rows.
+	 */
+	private int findDirect(int user, int rel, ObjectId objectId)
+	{
+		if (user == NONE) return NONE;
+
+		if (wildcardObjectRows == 0 && objectId.hasNamespace() && !objectId.isWildcard())
+		{
+			int object = objects.lookup(objectId);
+			return (object == NONE ? NONE : findRow(object, rel, user, NONE));
+		}
+
+		for (int row = byUserset.head(pack(user, NONE)); row != NONE; row = byUserset.next(row))
+		{
+			if (rowRelations.get(row) == rel && objects.get(rowObjects.get(row)).matches(objectId))
+			{
+				return row;
+			}
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Depth-first search of the byGroup chains for a userset, related to the group, that contains the
+	 * user (or its wildcard). Nodes are memoized per check as pack(group, rel) with the depth they were
+	 * first expanded at, and only expanded again when reached at a shallower depth.
+	 */
+	private boolean isIndirectMember(int user, int wildcard, int rel, int group, LongIntHashMap visited, int depth)
+	{
+		if (depth > maxDepth) return false;
+
+		long node = pack(group, rel);
+		int head = byGroup.head(node);
+		if (head == NONE) return false;
+
+		int expanded = visited.get(node);
+		if (expanded != NONE && expanded <= depth) return false;
+		visited.put(node, depth);
+
+		for (int row = head; row != NONE; row = byGroup.next(row))
+		{
+			if (isDirectMember(user, rowUserRelations.get(row), rowUsers.get(row))
+				|| isDirectMember(wildcard, rowUserRelations.get(row), rowUsers.get(row)))
+			{
+				return true;
+			}
+		}
+
+		for (int row = head; row != NONE; row = byGroup.next(row))
+		{
+			if (isIndirectMember(user, wildcard, rowUserRelations.get(row), rowUsers.get(row), visited, depth + 1)) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Answer whether the user has a direct relation to the group object.
+	 */
+	private boolean isDirectMember(int user, int rel, int group)
+	{
+		if (user == NONE) return false;
+
+		if (wildcardObjectRows == 0 && !objects.isWildcard(group))
+		{
+			return (findRow(group, rel, user, NONE) != NONE);
+		}
+
+		return (findDirect(user, rel, objects.get(group)) != NONE);
+	}
+
+	private long lookupUsersetKey(UserSet userset)
+	{
+		int user = objects.lookup(userset.getObjectId());
+		int userRel = strings.lookup(userset.getRelation());
+
+		if (user == NONE || (userRel == NONE && userset.hasRelation())) return NONE;
+
+		return pack(user, userRel);
+	}
+
+	private Tuple decode(int row)
+	{
+		UserSet userset = new UserSet(objects.get(rowUsers.get(row)), strings.get(rowUserRelations.get(row)));
+		return new Tuple(userset, strings.get(rowRelations.get(row)), objects.get(rowObjects.get(row)));
+	}
+
+	private void addRow(int object, int rel, int user, int userRel)
+	{
+		int row = allocateRow();
+		rowObjects.set(row, object);
+		rowRelations.set(row, rel);
+		rowUsers.set(row, user);
+		rowUserRelations.set(row, userRel);
+		size++;
+		revision++;
+
+		if (objects.isWildcard(object)) wildcardObjectRows++;
+		if (userRel == NONE && objects.isWildcard(user)) wildcardUserRows++;
+
+		insertTupleTable(row);
+		byObject.link(row);
+		byUserset.link(row);
+
+		if (userRel != NONE)
+		{
+			byGroup.link(row);
+		}
+	}
+
+	private void removeRow(int row)
+	{
+		byObject.unlink(row);
+		byUserset.unlink(row);
+
+		if (rowUserRelations.get(row) != NONE)
+		{
+			byGroup.unlink(row);
+		}
+
+		removeTupleTable(row);
+
+		if (objects.isWildcard(rowObjects.get(row))) wildcardObjectRows--;
+		if (rowUserRelations.get(row) == NONE && objects.isWildcard(rowUsers.get(row))) wildcardUserRows--;
+
+		rowRelations.set(row, NONE);
+		rowObjects.set(row, freeRows);
+		freeRows = row;
+		size--;
+		revision++;
+	}
+
+	private int allocateRow()
+	{
+		if (freeRows != NONE)
+		{
+			int row = freeRows;
+			freeRows = rowObjects.get(row);
+			return row;
+		}
+
+		if (rowCount == rowObjects.capacity())
+		{
+			growRows(rowCapacity(rowCount + 1));
+		}
+
+		return rowCount++;
+	}
+
+	/**
+	 * Grow the row columns and the tuple table to hold the given number of live rows.
+	 */
+	private void ensureCapacity(int rows)
+	{
+		if (rows > rowObjects.capacity())
+		{
+			growRows(rowCapacity(rows));
+		}
+
+		if (rows * 2L > tupleTable.capacity() && tupleTable.capacity() < MAX_TABLE_CAPACITY)
+		{
+			rehashTupleTable((int) Math.min(Long.highestOneBit(rows * 2L - 1) << 1, MAX_TABLE_CAPACITY));
+		}
+	}
+
+	/**
+	 * Answer the capacity to grow the row columns to so they hold the given number of rows: by default
+	 * the next power of two.
+	 */
+	int rowCapacity(int rows)
+	{
+		return Integer.highestOneBit(rows - 1) << 1;
+	}
+
+	private void growRows(int capacity)
+	{
+		rowObjects.grow(capacity);
+		rowRelations.grow(capacity);
+		rowUsers.grow(capacity);
+		rowUserRelations.grow(capacity);
+		byObject.grow(capacity);
+		byGroup.grow(capacity);
+		byUserset.grow(capacity);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T self()
+	{
+		return (T) this;
+	}
+
+	private int findRow(int object, int rel, int user, int userRel)
+	{
+		int mask = tupleTable.capacity() - 1;
+		int slot = hash(object, rel, user, userRel) & mask;
+
+		while (tupleTable.get(slot) != 0)
+		{
+			int row = tupleTable.get(slot) - 1;
+
+			if (rowObjects.get(row) == object && rowRelations.get(row) == rel && rowUsers.get(row) == user && rowUserRelations.get(row) == userRel)
+			{
+				return row;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return NONE;
+	}
+
+	private void insertTupleTable(int row)
+	{
+		if (size * 2L > tupleTable.capacity() && tupleTable.capacity() < MAX_TABLE_CAPACITY)
+		{
+			rehashTupleTable(tupleTable.capacity() << 1);
+		}
+
+		placeInTupleTable(row);
+	}
+
+	private void placeInTupleTable(int row)
+	{
+		int mask = tupleTable.capacity() - 1;
+		int slot = rowHash(row) & mask;
+
+		while (tupleTable.get(slot) != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		tupleTable.set(slot, row + 1);
+	}
+
+	private void removeTupleTable(int row)
+	{
+		int mask = tupleTable.capacity() - 1;
+		int slot = rowHash(row) & mask;
+
+		while (tupleTable.get(slot) != row + 1)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		// Backward-shift deletion keeps probe sequences intact without tombstones.
+		int gap = slot;
+		int next = (gap + 1) & mask;
+
+		while (tupleTable.get(next) != 0)
+		{
+			int ideal = rowHash(tupleTable.get(next) - 1) & mask;
+
+			if (((next - ideal) & mask) >= ((next - gap) & mask))
+			{
+				tupleTable.set(gap, tupleTable.get(next));
+				gap = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		tupleTable.set(gap, 0);
+	}
+
+	private void rehashTupleTable(int capacity)
+	{
+		IntColumn old = tupleTable;
+		tupleTable = columns.apply(capacity);
+
+		for (int i = 0; i < old.capacity(); i++)
+		{
+			int entry = old.get(i);
+			if (entry != 0) placeInTupleTable(entry - 1);
+		}
+	}
+
+	private int rowHash(int row)
+	{
+		return hash(rowObjects.get(row), rowRelations.get(row), rowUsers.get(row), rowUserRelations.get(row));
+	}
+
+	private static int hash(int object, int rel, int user, int userRel)
+	{
+		int h = object * 0x9E3779B1;
+		h = (h ^ rel) * 0x85EBCA6B;
+		h = (h ^ user) * 0xC2B2AE35;
+		h = (h ^ userRel) * 0x27D4EB2F;
+		return h ^ (h >>> 15);
+	}
+
+	/**
+	 * An intrusive, doubly-linked index over rows. Heads are kept in a primitive map keyed by
+	 * the row's index key; the links live in parallel int columns indexed by row.
+	 */
+	private abstract class RowChain
+	{
+		private LongIntMap heads = maps.get();
+		private IntColumn previous = columns.apply(INITIAL_CAPACITY);
+		private IntColumn next = columns.apply(INITIAL_CAPACITY);
+
+		abstract long keyOf(int row);
+
+		int head(long key)
+		{
+			return heads.get(key);
+		}
+
+		int next(int row)
+		{
+			return next.get(row);
+		}
+
+		void link(int row)
+		{
+			long key = keyOf(row);
+			int head = heads.put(key, row);
+			previous.set(row, NONE);
+			next.set(row, head);
+
+			if (head != NONE)
+			{
+				previous.set(head, row);
+			}
+		}
+
+		void unlink(int row)
+		{
+			int before = previous.get(row);
+			int after = next.get(row);
+
+			if (before == NONE)
+			{
+				if (after == NONE) heads.remove(keyOf(row));
+				else heads.put(keyOf(row), after);
+			}
+			else
+			{
+				next.set(before, after);
+			}
+
+			if (after != NONE)
+			{
+				previous.set(after, before);
+			}
+		}
+
+		void grow(int capacity)
+		{
+			previous.grow(capacity);
+			next.grow(capacity);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.util.Collection;
+
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * A dictionary-encoded, in-memory TupleStore that answers the same queries as {@link SimpleTupleStore}
+ * with an order of magnitude less memory per tuple.
+ *
+ * The rows, chain links and tuple table are int[] columns ({@link IntArray}) and the chain heads are
+ * {@link LongIntHashMap}s, all on the heap. See {@link AbstractEncodedTupleStore} for the layout.
+ *
+ * Not thread-safe.
+ */
+public class DictionaryTupleStore
+extends AbstractEncodedTupleStore<DictionaryTupleStore>
+{
+	public DictionaryTupleStore()
+	{
+		super(IntArray::new, LongIntHashMap::new);
+	}
+
+	public DictionaryTupleStore(Collection<Tuple> tuples)
+	throws InvalidTupleException
+	{
+		this();
+		if (tuples == null || tuples.isEmpty()) return;
+		write(tuples);
+	}
+}
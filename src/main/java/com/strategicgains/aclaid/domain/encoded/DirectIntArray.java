@@ -0,0 +1,118 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable int array stored off-heap in pages of direct, native-ordered ByteBuffers.
+ *
+ * Growing past one page adds pages rather than copying, so an array may hold up to
+ * Integer.MAX_VALUE ints (well past the 2GB limit of a single ByteBuffer) and the heap only holds
+ * the page references. Until the first page is full it is reallocated at double the size, so small
+ * arrays stay small. New elements are zero.
+ *
+ * Direct memory is released when the array becomes unreachable and is collected, so the JVM's
+ * -XX:MaxDirectMemorySize must allow for it.
+ *
+ * Not thread-safe.
+ */
+final class DirectIntArray
+implements IntColumn
+{
+	static final int DEFAULT_PAGE_SHIFT = 20;	// 1M ints (4MB) per page.
+
+	private final int pageShift;
+	private final int pageSize;
+	private final int pageMask;
+	private IntBuffer[] pages = new IntBuffer[0];
+	private int capacity;
+
+	DirectIntArray(int capacity)
+	{
+		this(capacity, DEFAULT_PAGE_SHIFT);
+	}
+
+	DirectIntArray(int capacity, int pageShift)
+	{
+		super();
+		this.pageShift = pageShift;
+		this.pageSize = 1 << pageShift;
+		this.pageMask = pageSize - 1;
+		grow(capacity);
+	}
+
+	@Override
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public int get(int index)
+	{
+		return pages[index >>> pageShift].get(index & pageMask);
+	}
+
+	@Override
+	public void set(int index, int value)
+	{
+		pages[index >>> pageShift].put(index & pageMask, value);
+	}
+
+	/**
+	 * Grow the array to hold at least the given number of ints, preserving its contents.
+	 */
+	@Override
+	public void grow(int capacity)
+	{
+		if (capacity <= this.capacity) return;
+
+		if (capacity <= pageSize)
+		{
+			resizeFirstPage(capacity);
+			return;
+		}
+
+		if (this.capacity < pageSize)
+		{
+			resizeFirstPage(pageSize);
+		}
+
+		int pageCount = (int) (((long) capacity + pageMask) >>> pageShift);
+		int existing = pages.length;
+		pages = Arrays.copyOf(pages, pageCount);
+
+		for (int i = existing; i < pageCount; i++)
+		{
+			pages[i] = allocate(pageSize);
+		}
+
+		this.capacity = (int) Math.min((long) pageCount << pageShift, Integer.MAX_VALUE);
+	}
+
+	private void resizeFirstPage(int size)
+	{
+		IntBuffer page = allocate(size);
+
+		if (pages.length > 0)
+		{
+			page.put(pages[0]);
+			pages[0].clear();
+			page.clear();
+		}
+		else
+		{
+			pages = new IntBuffer[1];
+		}
+
+		pages[0] = page;
+		capacity = size;
+	}
+
+	private static IntBuffer allocate(int ints)
+	{
+		return ByteBuffer.allocateDirect(ints * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+}
@@ -0,0 +1,165 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+/**
+ * An open-addressing (linear probing) hash map from long keys to int values, stored off-heap in a
+ * {@link DirectIntArray}. The off-heap counterpart of {@link LongIntHashMap}, with the same semantics.
+ *
+ * Each slot is three ints: the key's high half plus one (zero marks an empty slot), the key's low half
+ * and the value. Keys whose high half is -1 are therefore not supported, which holds for the packed
+ * (ordinal, id) keys the encoded tuple stores use.
+ *
+ * Not thread-safe.
+ */
+final class DirectLongIntHashMap
+implements LongIntMap
+{
+	static final int NONE = LongIntHashMap.NONE;
+
+	private static final int SLOT_INTS = 3;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private final int pageShift;
+	private DirectIntArray slots;
+	private int capacity;
+	private int size;
+	private int threshold;
+
+	DirectLongIntHashMap(int pageShift)
+	{
+		super();
+		this.pageShift = pageShift;
+		allocate(LongIntHashMap.tableSizeFor(0));
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	@Override
+	public int get(long key)
+	{
+		int slot = find(key);
+		return (slot < 0 ? NONE : slots.get(slot * SLOT_INTS + 2));
+	}
+
+	/**
+	 * Map the key to the value, replacing any existing mapping.
+	 *
+	 * @return the previous value or NONE.
+	 */
+	@Override
+	public int put(long key, int value)
+	{
+		int mask = capacity - 1;
+		int slot = LongIntHashMap.hash(key) & mask;
+		int high = LongIntHashMap.high(key) + 1;
+		int low = LongIntHashMap.low(key);
+
+		while (slots.get(slot * SLOT_INTS) != 0)
+		{
+			if (slots.get(slot * SLOT_INTS) == high && slots.get(slot * SLOT_INTS + 1) == low)
+			{
+				int previous = slots.get(slot * SLOT_INTS + 2);
+				slots.set(slot * SLOT_INTS + 2, value);
+				return previous;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		slots.set(slot * SLOT_INTS, high);
+		slots.set(slot * SLOT_INTS + 1, low);
+		slots.set(slot * SLOT_INTS + 2, value);
+
+		if (++size > threshold)
+		{
+			rehash(capacity << 1);
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Remove the mapping for the key, if present, using backward-shift deletion.
+	 *
+	 * @return the removed value or NONE.
+	 */
+	@Override
+	public int remove(long key)
+	{
+		int slot = find(key);
+		if (slot < 0) return NONE;
+
+		int previous = slots.get(slot * SLOT_INTS + 2);
+		int mask = capacity - 1;
+		int gap = slot;
+		int next = (gap + 1) & mask;
+
+		while (slots.get(next * SLOT_INTS) != 0)
+		{
+			int ideal = LongIntHashMap.hash(keyAt(next)) & mask;
+
+			// Move the entry into the gap if its ideal slot does not lie cyclically in (gap, next].
+			if (((next - ideal) & mask) >= ((next - gap) & mask))
+			{
+				for (int i = 0; i < SLOT_INTS; i++)
+				{
+					slots.set(gap * SLOT_INTS + i, slots.get(next * SLOT_INTS + i));
+				}
+
+				gap = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		slots.set(gap * SLOT_INTS, 0);
+		size--;
+		return previous;
+	}
+
+	private int find(long key)
+	{
+		int mask = capacity - 1;
+		int slot = LongIntHashMap.hash(key) & mask;
+		int high = LongIntHashMap.high(key) + 1;
+		int low = LongIntHashMap.low(key);
+
+		while (slots.get(slot * SLOT_INTS) != 0)
+		{
+			if (slots.get(slot * SLOT_INTS) == high && slots.get(slot * SLOT_INTS + 1) == low) return slot;
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	private long keyAt(int slot)
+	{
+		return LongIntHashMap.pack(slots.get(slot * SLOT_INTS) - 1, slots.get(slot * SLOT_INTS + 1));
+	}
+
+	private void rehash(int newCapacity)
+	{
+		DirectIntArray old = slots;
+		int oldCapacity = capacity;
+		allocate(newCapacity);
+		size = 0;
+
+		for (int i = 0; i < oldCapacity; i++)
+		{
+			if (old.get(i * SLOT_INTS) != 0)
+			{
+				put(LongIntHashMap.pack(old.get(i * SLOT_INTS) - 1, old.get(i * SLOT_INTS + 1)), old.get(i * SLOT_INTS + 2));
+			}
+		}
+	}
+
+	private void allocate(int newCapacity)
+	{
+		slots = new DirectIntArray(newCapacity * SLOT_INTS, pageShift);
+		capacity = newCapacity;
+		threshold = (int) (newCapacity * LOAD_FACTOR);
+	}
+}
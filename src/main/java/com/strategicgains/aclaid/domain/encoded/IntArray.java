@@ -0,0 +1,47 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.util.Arrays;
+
+/**
+ * An {@link IntColumn} over a plain int[], copied to the new size when it grows.
+ *
+ * Not thread-safe.
+ */
+final class IntArray
+implements IntColumn
+{
+	private int[] values;
+
+	IntArray(int capacity)
+	{
+		super();
+		this.values = new int[capacity];
+	}
+
+	@Override
+	public int capacity()
+	{
+		return values.length;
+	}
+
+	@Override
+	public int get(int index)
+	{
+		return values[index];
+	}
+
+	@Override
+	public void set(int index, int value)
+	{
+		values[index] = value;
+	}
+
+	@Override
+	public void grow(int capacity)
+	{
+		if (capacity > values.length)
+		{
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+}
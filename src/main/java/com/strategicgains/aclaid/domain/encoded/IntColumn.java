@@ -0,0 +1,21 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+/**
+ * A growable column of ints indexed by row, the storage the encoded tuple stores keep their rows,
+ * chain links and tuple table in. New elements are zero.
+ *
+ * Implemented on the heap by {@link IntArray} and off-heap by {@link DirectIntArray}.
+ */
+interface IntColumn
+{
+	int capacity();
+
+	int get(int index);
+
+	void set(int index, int value);
+
+	/**
+	 * Grow the column to hold at least the given number of ints, preserving its contents.
+	 */
+	void grow(int capacity);
+}
@@ -0,0 +1,226 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing (linear probing) hash map from primitive long keys to primitive int values.
+ *
+ * Used by the encoded tuple stores to map packed index keys (e.g. object ordinal and relation id)
+ * to the head row of an index chain without boxing either the key or the value.
+ *
+ * Not thread-safe.
+ */
+public class LongIntHashMap
+implements LongIntMap
+{
+	public static final int NONE = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int threshold;
+
+	public LongIntHashMap()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongIntHashMap(int expectedSize)
+	{
+		super();
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Pack two ints into a single long key.
+	 *
+	 * @param high the value stored in the upper 32 bits.
+	 * @param low the value stored in the lower 32 bits.
+	 * @return a packed long key.
+	 */
+	public static long pack(int high, int low)
+	{
+		return (((long) high) << 32) | (low & 0xffffffffL);
+	}
+
+	public static int high(long key)
+	{
+		return (int) (key >>> 32);
+	}
+
+	public static int low(long key)
+	{
+		return (int) key;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return (size == 0);
+	}
+
+	/**
+	 * Answer the value mapped to the key, or NONE if the key is not present.
+	 *
+	 * @param key
+	 * @return the value or NONE.
+	 */
+	@Override
+	public int get(long key)
+	{
+		int slot = find(key);
+		return (slot < 0 ? NONE : values[slot]);
+	}
+
+	public boolean containsKey(long key)
+	{
+		return (find(key) >= 0);
+	}
+
+	/**
+	 * Map the key to the value, replacing any existing mapping.
+	 *
+	 * @param key
+	 * @param value
+	 * @return the previous value or NONE.
+	 */
+	@Override
+	public int put(long key, int value)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (used[slot])
+		{
+			if (keys[slot] == key)
+			{
+				int previous = values[slot];
+				values[slot] = value;
+				return previous;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		used[slot] = true;
+		keys[slot] = key;
+		values[slot] = value;
+
+		if (++size > threshold)
+		{
+			rehash(keys.length << 1);
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Remove the mapping for the key, if present. Uses backward-shift deletion so
+	 * no tombstones accumulate in the table.
+	 *
+	 * @param key
+	 * @return the removed value or NONE.
+	 */
+	@Override
+	public int remove(long key)
+	{
+		int slot = find(key);
+		if (slot < 0) return NONE;
+
+		int previous = values[slot];
+		int mask = keys.length - 1;
+		int gap = slot;
+		int next = (gap + 1) & mask;
+
+		while (used[next])
+		{
+			int ideal = hash(keys[next]) & mask;
+
+			// Move the entry into the gap if its ideal slot does not lie cyclically in (gap, next].
+			if (((next - ideal) & mask) >= ((next - gap) & mask))
+			{
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		used[gap] = false;
+		size--;
+		return previous;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	private int find(long key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (used[slot])
+		{
+			if (keys[slot] == key) return slot;
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldUsed[i])
+			{
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	static int tableSizeFor(int expectedSize)
+	{
+		int capacity = DEFAULT_CAPACITY;
+		long needed = (long) (expectedSize / LOAD_FACTOR) + 1;
+
+		while (capacity < needed && capacity < (1 << 30))
+		{
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+}
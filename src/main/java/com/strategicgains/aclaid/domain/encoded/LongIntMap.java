@@ -0,0 +1,26 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+/**
+ * A map from primitive long keys to primitive int values, as the encoded tuple stores use to find
+ * the head row of an index chain. Absent keys map to {@link LongIntHashMap#NONE}.
+ *
+ * Implemented on the heap by {@link LongIntHashMap} and off-heap by {@link DirectLongIntHashMap}.
+ */
+interface LongIntMap
+{
+	int get(long key);
+
+	/**
+	 * Map the key to the value, replacing any existing mapping.
+	 *
+	 * @return the previous value or NONE.
+	 */
+	int put(long key, int value);
+
+	/**
+	 * Remove the mapping for the key, if present.
+	 *
+	 * @return the removed value or NONE.
+	 */
+	int remove(long key);
+}
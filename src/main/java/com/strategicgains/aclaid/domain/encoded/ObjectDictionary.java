@@ -0,0 +1,226 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.util.Arrays;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.ObjectPath;
+
+/**
+ * Interns ObjectId instances into dense int ordinals. Each ordinal is backed by three
+ * int columns (namespace, type and identifier ids from a {@link StringDictionary}), so
+ * no ObjectId or ObjectPath instances are retained once an object has been interned.
+ *
+ * Ordinals are assigned in insertion order and are never reused.
+ *
+ * Not thread-safe.
+ */
+public class ObjectDictionary
+{
+	public static final int NONE = -1;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private StringDictionary strings;
+	private int[] namespaces = new int[INITIAL_CAPACITY];
+	private int[] types = new int[INITIAL_CAPACITY];
+	private int[] identifiers = new int[INITIAL_CAPACITY];
+	private boolean[] wildcards = new boolean[INITIAL_CAPACITY];
+	private int size;
+
+	// Open-addressing table of (ordinal + 1); zero marks an empty slot.
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+
+	public ObjectDictionary(StringDictionary strings)
+	{
+		super();
+		this.strings = strings;
+	}
+
+	public StringDictionary getStrings()
+	{
+		return strings;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Answer the ordinal for the ObjectId, assigning a new one if it has not been seen before.
+	 *
+	 * @param objectId
+	 * @return the ordinal or NONE if the objectId is null.
+	 */
+	public int intern(ObjectId objectId)
+	{
+		if (objectId == null) return NONE;
+
+		int namespace = strings.intern(objectId.getNamespace());
+		int type = strings.intern(objectId.getType());
+		int identifier = strings.intern(identifierOf(objectId));
+		int ordinal = find(namespace, type, identifier);
+
+		if (ordinal != NONE) return ordinal;
+
+		return add(namespace, type, identifier, objectId.isWildcard());
+	}
+
+	/**
+	 * Answer the ordinal for the ObjectId without assigning one.
+	 *
+	 * @param objectId
+	 * @return the ordinal or NONE if the objectId is null or unknown.
+	 */
+	public int lookup(ObjectId objectId)
+	{
+		if (objectId == null) return NONE;
+
+		int namespace = strings.lookup(objectId.getNamespace());
+		if (namespace == NONE && objectId.hasNamespace()) return NONE;
+
+		int type = strings.lookup(objectId.getType());
+		if (type == NONE && objectId.getType() != null) return NONE;
+
+		String id = identifierOf(objectId);
+		int identifier = strings.lookup(id);
+		if (identifier == NONE && id != null) return NONE;
+
+		return find(namespace, type, identifier);
+	}
+
+	/**
+	 * Answer the ordinal of the identifier wildcard for the ObjectId's namespace and type
+	 * (e.g. 'app:user/*' for 'app:user/kim') without assigning one.
+	 *
+	 * @param objectId
+	 * @return the ordinal or NONE if no such wildcard has been interned.
+	 */
+	public int lookupWildcard(ObjectId objectId)
+	{
+		if (objectId == null || objectId.getType() == null) return NONE;
+
+		int namespace = strings.lookup(objectId.getNamespace());
+		if (namespace == NONE && objectId.hasNamespace()) return NONE;
+
+		int type = strings.lookup(objectId.getType());
+		int identifier = strings.lookup(ObjectPath.WILDCARD);
+		if (type == NONE || identifier == NONE) return NONE;
+
+		return find(namespace, type, identifier);
+	}
+
+	/**
+	 * Answer a new ObjectId instance for the ordinal.
+	 *
+	 * @param ordinal
+	 * @return a new ObjectId or null if the ordinal is NONE.
+	 */
+	public ObjectId get(int ordinal)
+	{
+		if (ordinal == NONE) return null;
+
+		return new ObjectId(strings.get(namespaces[ordinal]),
+			new ObjectPath(strings.get(types[ordinal]), strings.get(identifiers[ordinal])));
+	}
+
+	public boolean isWildcard(int ordinal)
+	{
+		return wildcards[ordinal];
+	}
+
+	public int getNamespace(int ordinal)
+	{
+		return namespaces[ordinal];
+	}
+
+	public int getType(int ordinal)
+	{
+		return types[ordinal];
+	}
+
+	public int getIdentifier(int ordinal)
+	{
+		return identifiers[ordinal];
+	}
+
+	private int find(int namespace, int type, int identifier)
+	{
+		int mask = table.length - 1;
+		int slot = hash(namespace, type, identifier) & mask;
+
+		while (table[slot] != 0)
+		{
+			int ordinal = table[slot] - 1;
+
+			if (namespaces[ordinal] == namespace && types[ordinal] == type && identifiers[ordinal] == identifier)
+			{
+				return ordinal;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return NONE;
+	}
+
+	private int add(int namespace, int type, int identifier, boolean wildcard)
+	{
+		if (size == namespaces.length)
+		{
+			int capacity = size << 1;
+			namespaces = Arrays.copyOf(namespaces, capacity);
+			types = Arrays.copyOf(types, capacity);
+			identifiers = Arrays.copyOf(identifiers, capacity);
+			wildcards = Arrays.copyOf(wildcards, capacity);
+		}
+
+		int ordinal = size++;
+		namespaces[ordinal] = namespace;
+		types[ordinal] = type;
+		identifiers[ordinal] = identifier;
+		wildcards[ordinal] = wildcard;
+
+		if (size * 2 > table.length)
+		{
+			table = new int[table.length << 1];
+
+			for (int i = 0; i < size; i++)
+			{
+				insert(i);
+			}
+		}
+		else
+		{
+			insert(ordinal);
+		}
+
+		return ordinal;
+	}
+
+	private void insert(int ordinal)
+	{
+		int mask = table.length - 1;
+		int slot = hash(namespaces[ordinal], types[ordinal], identifiers[ordinal]) & mask;
+
+		while (table[slot] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		table[slot] = ordinal + 1;
+	}
+
+	private static String identifierOf(ObjectId objectId)
+	{
+		return (objectId.hasPath() ? objectId.getPath().getIdentifier() : null);
+	}
+
+	static int hash(int namespace, int type, int identifier)
+	{
+		int h = namespace * 0x9E3779B1;
+		h = (h ^ type) * 0x85EBCA6B;
+		h = (h ^ identifier) * 0xC2B2AE35;
+		return h ^ (h >>> 16);
+	}
+}
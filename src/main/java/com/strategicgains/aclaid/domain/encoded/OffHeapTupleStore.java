@@ -0,0 +1,59 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.util.Collection;
+
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * A dictionary-encoded TupleStore, with the same check and read semantics as {@link DictionaryTupleStore},
+ * whose tuple rows and index structures live off-heap so very large namespaces do not grow the Java heap
+ * or the garbage collector's work.
+ *
+ * The layout is that of {@link AbstractEncodedTupleStore}, but the columns, chain links, chain heads and
+ * tuple table are {@link DirectIntArray}s and {@link DirectLongIntHashMap}s in paged direct ByteBuffers,
+ * so growing the store adds pages instead of copying arrays. Only the string and object dictionaries and
+ * the small objects a single query creates (decoded tuples and the visited map of an indirect check) are
+ * on the heap.
+ *
+ * Off-heap memory is released when the store is collected; size -XX:MaxDirectMemorySize for roughly
+ * 48 bytes per tuple.
+ *
+ * Not thread-safe.
+ */
+public class OffHeapTupleStore
+extends AbstractEncodedTupleStore<OffHeapTupleStore>
+{
+	private final int pageShift;
+
+	public OffHeapTupleStore()
+	{
+		this(DirectIntArray.DEFAULT_PAGE_SHIFT);
+	}
+
+	public OffHeapTupleStore(Collection<Tuple> tuples)
+	throws InvalidTupleException
+	{
+		this();
+		if (tuples == null || tuples.isEmpty()) return;
+		write(tuples);
+	}
+
+	/**
+	 * Create a store whose off-heap arrays use pages of 2^pageShift ints.
+	 */
+	OffHeapTupleStore(int pageShift)
+	{
+		super(capacity -> new DirectIntArray(capacity, pageShift), () -> new DirectLongIntHashMap(pageShift));
+		this.pageShift = pageShift;
+	}
+
+	/**
+	 * Double within the first page, then add a page at a time.
+	 */
+	@Override
+	int rowCapacity(int rows)
+	{
+		return (rows < (1 << pageShift) ? super.rowCapacity(rows) : rows);
+	}
+}
@@ -0,0 +1,73 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns strings (namespaces, types, identifiers and relation names) into dense int ids.
+ * Ids are assigned in insertion order starting at zero and are never reused, so an id
+ * remains valid for the lifetime of the dictionary.
+ *
+ * A null string is always encoded as NONE.
+ */
+public class StringDictionary
+{
+	public static final int NONE = -1;
+
+	private Map<String, Integer> idsByString = new HashMap<>();
+	private List<String> strings = new ArrayList<>();
+
+	/**
+	 * Answer the id for the string, assigning a new one if it has not been seen before.
+	 *
+	 * @param string
+	 * @return the id of the string or NONE if the string is null.
+	 */
+	public int intern(String string)
+	{
+		if (string == null) return NONE;
+
+		Integer id = idsByString.get(string);
+
+		if (id == null)
+		{
+			id = strings.size();
+			strings.add(string);
+			idsByString.put(string, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Answer the id for the string without assigning one.
+	 *
+	 * @param string
+	 * @return the id of the string or NONE if the string is null or unknown.
+	 */
+	public int lookup(String string)
+	{
+		if (string == null) return NONE;
+
+		Integer id = idsByString.get(string);
+		return (id == null ? NONE : id);
+	}
+
+	/**
+	 * Answer the string for the given id.
+	 *
+	 * @param id
+	 * @return the string or null if the id is NONE.
+	 */
+	public String get(int id)
+	{
+		return (id == NONE ? null : strings.get(id));
+	}
+
+	public int size()
+	{
+		return strings.size();
+	}
+}
@@ -0,0 +1,727 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import static com.strategicgains.aclaid.domain.encoded.LongIntHashMap.pack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.ObjectPath;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * A read-only TupleStore backed by a memory-mapped snapshot file, answering the same queries as
+ * {@link DictionaryTupleStore}. Opening a snapshot maps its sections and reads the header; the
+ * dictionaries, rows and indexes are then probed in place, so a store of any size is ready to serve
+ * as soon as it is mapped and its pages are faulted in on first use.
+ *
+ * A snapshot file (format version 1, little-endian) is a fixed header followed by 8-byte aligned
+ * sections, which the header locates by offset and length:
+ *
+ *   STRING_BYTES, STRING_OFFSETS, STRING_TABLE: the UTF-8 bytes of each string id, the offset of each
+ *       string in the bytes, and an open-addressing table of (id + 1) keyed by String.hashCode().
+ *   OBJECT_NAMESPACES, OBJECT_TYPES, OBJECT_IDENTIFIERS, OBJECT_WILDCARDS, OBJECT_TABLE: the string ids
+ *       of each ObjectId ordinal, whether it is a wildcard, and an open-addressing table of (ordinal + 1).
+ *   ROW_OBJECTS, ROW_RELATIONS, ROW_USERS, ROW_USER_RELATIONS: one int column per tuple component, with
+ *       rows sorted by object, relation, userset relation and userset object.
+ *   OBJECT_INDEX: for each object ordinal, the offset of its first row, so an object's rows (and within
+ *       them a relation's, or a group's usersets) are a contiguous, binary-searchable range.
+ *   USERSET_INDEX, USERSET_ROWS: the rows sorted by userset object, userset relation, relation and object,
+ *       and for each object ordinal the offset of its first row in that order.
+ *
+ * Snapshots are written with {@link #write(Path, Collection, long)}. The mapping is released when the
+ * TupleSnapshot is garbage collected. Each section is limited to 2GB.
+ *
+ * Immutable, so safe for concurrent readers.
+ */
+public class TupleSnapshot
+implements TupleStore
+{
+	static final int MAGIC = 0x41434C53; // "ACLS"
+	static final int FORMAT_VERSION = 1;
+
+	static final int STRING_BYTES = 0;
+	static final int STRING_OFFSETS = 1;
+	static final int STRING_TABLE = 2;
+	static final int OBJECT_NAMESPACES = 3;
+	static final int OBJECT_TYPES = 4;
+	static final int OBJECT_IDENTIFIERS = 5;
+	static final int OBJECT_WILDCARDS = 6;
+	static final int OBJECT_TABLE = 7;
+	static final int ROW_OBJECTS = 8;
+	static final int ROW_RELATIONS = 9;
+	static final int ROW_USERS = 10;
+	static final int ROW_USER_RELATIONS = 11;
+	static final int OBJECT_INDEX = 12;
+	static final int USERSET_INDEX = 13;
+	static final int USERSET_ROWS = 14;
+	static final int SECTION_COUNT = 15;
+
+	// magic, version, revision, string count, object count, row count, wildcard counts, section count, sections.
+	static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + 6 * Integer.BYTES + SECTION_COUNT * 2 * Long.BYTES;
+
+	private static final int NONE = StringDictionary.NONE;
+
+	private final long revision;
+	private final int stringCount;
+	private final int objectCount;
+	private final int rowCount;
+	private final int wildcardObjectRows;
+	private final int wildcardUserRows;
+
+	private final ByteBuffer stringBytes;
+	private final IntBuffer stringOffsets;
+	private final IntBuffer stringTable;
+	private final IntBuffer objectNamespaces;
+	private final IntBuffer objectTypes;
+	private final IntBuffer objectIdentifiers;
+	private final ByteBuffer objectWildcards;
+	private final IntBuffer objectTable;
+	private final IntBuffer rowObjects;
+	private final IntBuffer rowRelations;
+	private final IntBuffer rowUsers;
+	private final IntBuffer rowUserRelations;
+	private final IntBuffer objectIndex;
+	private final IntBuffer usersetIndex;
+	private final IntBuffer usersetRows;
+
+	// The maximum number of userset levels check() will follow from the target object.
+	private volatile int maxDepth = DEFAULT_MAX_DEPTH;
+
+	private TupleSnapshot(FileChannel channel)
+	throws IOException
+	{
+		super();
+		long size = channel.size();
+		if (size < HEADER_SIZE) throw new IOException("Not a tuple snapshot: too short");
+
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt() != MAGIC) throw new IOException("Not a tuple snapshot");
+
+		int version = header.getInt();
+		if (version != FORMAT_VERSION) throw new IOException("Unsupported tuple snapshot version: " + version);
+
+		this.revision = header.getLong();
+		this.stringCount = header.getInt();
+		this.objectCount = header.getInt();
+		this.rowCount = header.getInt();
+		this.wildcardObjectRows = header.getInt();
+		this.wildcardUserRows = header.getInt();
+		if (header.getInt() != SECTION_COUNT) throw new IOException("Corrupt tuple snapshot: section count");
+
+		ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+
+		for (int i = 0; i < SECTION_COUNT; i++)
+		{
+			long offset = header.getLong();
+			long length = header.getLong();
+
+			if (offset < HEADER_SIZE || length < 0 || length > Integer.MAX_VALUE || offset + length > size)
+			{
+				throw new IOException("Corrupt tuple snapshot: section " + i);
+			}
+
+			sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		this.stringBytes = sections[STRING_BYTES];
+		this.stringOffsets = ints(sections, STRING_OFFSETS, stringCount + 1);
+		this.stringTable = ints(sections, STRING_TABLE, -1);
+		this.objectNamespaces = ints(sections, OBJECT_NAMESPACES, objectCount);
+		this.objectTypes = ints(sections, OBJECT_TYPES, objectCount);
+		this.objectIdentifiers = ints(sections, OBJECT_IDENTIFIERS, objectCount);
+		this.objectWildcards = sections[OBJECT_WILDCARDS];
+		this.objectTable = ints(sections, OBJECT_TABLE, -1);
+		this.rowObjects = ints(sections, ROW_OBJECTS, rowCount);
+		this.rowRelations = ints(sections, ROW_RELATIONS, rowCount);
+		this.rowUsers = ints(sections, ROW_USERS, rowCount);
+		this.rowUserRelations = ints(sections, ROW_USER_RELATIONS, rowCount);
+		this.objectIndex = ints(sections, OBJECT_INDEX, objectCount + 1);
+		this.usersetIndex = ints(sections, USERSET_INDEX, objectCount + 1);
+		this.usersetRows = ints(sections, USERSET_ROWS, rowCount);
+
+		if (objectWildcards.capacity() != objectCount || Integer.bitCount(stringTable.capacity()) != 1 || Integer.bitCount(objectTable.capacity()) != 1)
+		{
+			throw new IOException("Corrupt tuple snapshot: dictionary sizes");
+		}
+	}
+
+	/**
+	 * Map a snapshot file.
+	 *
+	 * @param path a file written by {@link #write(Path, Collection, long)}.
+	 * @return the snapshot.
+	 * @throws IOException if the file cannot be read or is not a snapshot in a supported format version.
+	 */
+	public static TupleSnapshot open(Path path)
+	throws IOException
+	{
+		// The mappings remain valid after the channel is closed.
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return new TupleSnapshot(channel);
+		}
+	}
+
+	/**
+	 * Write the tuples as a snapshot file, replacing the file atomically once it is complete and synced.
+	 * Duplicate tuples are written once.
+	 *
+	 * @param path the snapshot file.
+	 * @param tuples the tuples, e.g. read from a SimpleTupleStore snapshot.
+	 * @param revision the TupleStore revision the tuples were read at, answered by the snapshot's getRevision().
+	 * @throws InvalidTupleException if a tuple is invalid or expires, in which case nothing is written.
+	 */
+	public static void write(Path path, Collection<Tuple> tuples, long revision)
+	throws IOException, InvalidTupleException
+	{
+		new TupleSnapshotWriter(tuples).write(path, revision);
+	}
+
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	public void setMaxDepth(int maxDepth)
+	{
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Answer the revision of the store the snapshot was written from.
+	 */
+	@Override
+	public long getRevision()
+	{
+		return revision;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return (rowCount == 0);
+	}
+
+	public int size()
+	{
+		return rowCount;
+	}
+
+	@Override
+	public boolean check(UserSet actor, String relation, ObjectId objectId)
+	{
+		if (actor == null || relation == null || objectId == null) return false;
+
+		ObjectId actorId = actor.getObjectId();
+		int rel = lookupString(relation);
+		if (rel == NONE) return false;
+
+		int user = lookupObject(actorId);
+		int wildcard = (wildcardUserRows > 0 && !actorId.isIdentifierWildcard() ? lookupWildcard(actorId) : NONE);
+		if (user == NONE && wildcard == NONE) return false;
+
+		if (findDirect(user, rel, objectId) != NONE || findDirect(wildcard, rel, objectId) != NONE) return true;
+
+		int target = lookupObject(objectId);
+		if (target == NONE || !hasUsersets(target, rel)) return false;
+
+		return isIndirectMember(user, wildcard, rel, target, new LongIntHashMap(), 1);
+	}
+
+	@Override
+	public BitSet checkAll(UserSet actor, String relation, List<ObjectId> objectIds)
+	{
+		BitSet results = new BitSet(objectIds.size());
+		if (actor == null || relation == null) return results;
+
+		ObjectId actorId = actor.getObjectId();
+		int rel = lookupString(relation);
+		if (rel == NONE) return results;
+
+		int user = lookupObject(actorId);
+		int wildcard = (wildcardUserRows > 0 && !actorId.isIdentifierWildcard() ? lookupWildcard(actorId) : NONE);
+		if (user == NONE && wildcard == NONE) return results;
+
+		LongIntHashMap visited = null;
+
+		for (int i = 0; i < objectIds.size(); i++)
+		{
+			ObjectId objectId = objectIds.get(i);
+			if (objectId == null) continue;
+
+			if (findDirect(user, rel, objectId) != NONE || findDirect(wildcard, rel, objectId) != NONE)
+			{
+				results.set(i);
+				continue;
+			}
+
+			int target = lookupObject(objectId);
+			if (target == NONE || !hasUsersets(target, rel)) continue;
+			if (visited == null) visited = new LongIntHashMap();
+
+			if (isIndirectMember(user, wildcard, rel, target, visited, 1))
+			{
+				results.set(i);
+
+				// Nodes on the positive path were expanded but do not mean "not a member".
+				visited.clear();
+			}
+		}
+
+		return results;
+	}
+
+	@Override
+	public Collection<Tuple> read(TupleSet tupleSet)
+	{
+		if (tupleSet == null) throw new IllegalArgumentException("TupleSet cannot be null.");
+		else if (tupleSet.isEmpty() || !tupleSet.isValid()) throw new IllegalArgumentException("Invalid TupleSet: " + tupleSet);
+
+		if (tupleSet.isSingleTupleKey())
+		{
+			Tuple tuple = readOne(tupleSet.getUserset(), tupleSet.getRelation(), tupleSet.getObject());
+			return (tuple != null ? Collections.singleton(tuple) : Collections.emptySet());
+		}
+		else if (tupleSet.hasObject())
+		{
+			return (tupleSet.hasRelation() ? readAll(tupleSet.getObject(), tupleSet.getRelation()) : readAll(tupleSet.getObject()));
+		}
+
+		return (tupleSet.hasRelation() ? readAll(tupleSet.getUserset(), tupleSet.getRelation()) : readAll(tupleSet.getUserset()));
+	}
+
+	@Override
+	public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+	{
+		if (tupleSets == null || tupleSets.isEmpty()) return Collections.emptySet();
+
+		Set<Tuple> results = new HashSet<>();
+		tupleSets.stream().forEach(ts -> results.addAll(read(ts)));
+		return results;
+	}
+
+	/**
+	 * Read a direct relation tuple for the userset's object, as {@link DictionaryTupleStore#readOne(UserSet, String, ObjectId)}.
+	 */
+	public Tuple readOne(UserSet userset, String relation, ObjectId objectId)
+	{
+		if (userset == null || relation == null || objectId == null) return null;
+
+		int user = lookupObject(userset.getObjectId());
+		int rel = lookupString(relation);
+		if (user == NONE || rel == NONE) return null;
+
+		int row = findDirect(user, rel, objectId);
+		return (row == NONE ? null : decode(row));
+	}
+
+	public Collection<Tuple> readAll(ObjectId objectId, String relation)
+	{
+		if (objectId == null || relation == null) return Collections.emptySet();
+
+		int object = lookupObject(objectId);
+		int rel = lookupString(relation);
+		if (object == NONE || rel == NONE) return Collections.emptySet();
+
+		int start = objectIndex.get(object);
+		int end = objectIndex.get(object + 1);
+		return decode(lowerBound(start, end, rel, Integer.MIN_VALUE), lowerBound(start, end, rel + 1, Integer.MIN_VALUE));
+	}
+
+	public Collection<Tuple> readAll(ObjectId objectId)
+	{
+		if (objectId == null) return Collections.emptySet();
+
+		int object = lookupObject(objectId);
+		if (object == NONE) return Collections.emptySet();
+
+		return decode(objectIndex.get(object), objectIndex.get(object + 1));
+	}
+
+	public Collection<Tuple> readAll(UserSet userset, String relation)
+	{
+		if (userset == null || relation == null) return Collections.emptySet();
+
+		int rel = lookupString(relation);
+		if (rel == NONE) return Collections.emptySet();
+
+		List<Tuple> results = new ArrayList<>();
+		int end = usersetEnd(userset);
+
+		for (int i = usersetStart(userset); i < end; i++)
+		{
+			int row = usersetRows.get(i);
+			if (rowRelations.get(row) == rel) results.add(decode(row));
+		}
+
+		return results;
+	}
+
+	public Collection<Tuple> readAll(UserSet userset)
+	{
+		if (userset == null) return Collections.emptySet();
+
+		List<Tuple> results = new ArrayList<>();
+		int end = usersetEnd(userset);
+
+		for (int i = usersetStart(userset); i < end; i++)
+		{
+			results.add(decode(usersetRows.get(i)));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Decode every tuple, e.g. to load the snapshot into a writable store.
+	 */
+	public List<Tuple> readAll()
+	{
+		return decode(0, rowCount);
+	}
+
+	@Override
+	public TupleStore write(Tuple tuple)
+	{
+		throw new UnsupportedOperationException("Snapshots are read-only.");
+	}
+
+	@Override
+	public TupleStore write(Collection<Tuple> tuples)
+	{
+		throw new UnsupportedOperationException("Snapshots are read-only.");
+	}
+
+	@Override
+	public TupleStore write(UserSet userset, String relation, ObjectId objectId)
+	{
+		throw new UnsupportedOperationException("Snapshots are read-only.");
+	}
+
+	@Override
+	public TupleStore remove(Tuple tuple)
+	{
+		throw new UnsupportedOperationException("Snapshots are read-only.");
+	}
+
+	@Override
+	public TupleStore remove(UserSet userset, String relation, ObjectId objectId)
+	{
+		throw new UnsupportedOperationException("Snapshots are read-only.");
+	}
+
+	/**
+	 * Answer the row of a direct relation from the user to an object matching the objectId. Searches the
+	 * object's rows when no wildcards are involved, otherwise scans the user's direct rows.
+	 */
+	private int findDirect(int user, int rel, ObjectId objectId)
+	{
+		if (user == NONE) return NONE;
+
+		if (wildcardObjectRows == 0 && objectId.hasNamespace() && !objectId.isWildcard())
+		{
+			int object = lookupObject(objectId);
+			return (object == NONE ? NONE : findRow(object, rel, user, NONE));
+		}
+
+		int end = usersetIndex.get(user + 1);
+
+		for (int i = usersetIndex.get(user); i < end; i++)
+		{
+			int row = usersetRows.get(i);
+			if (rowUserRelations.get(row) != NONE) break;
+
+			if (rowRelations.get(row) == rel && getObject(rowObjects.get(row)).matches(objectId)) return row;
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Depth-first search of the group's userset rows for one that contains the user (or its wildcard), as
+	 * DictionaryTupleStore does over its byGroup chains.
+	 */
+	private boolean isIndirectMember(int user, int wildcard, int rel, int group, LongIntHashMap visited, int depth)
+	{
+		if (depth > maxDepth) return false;
+
+		int start = objectIndex.get(group);
+		int end = objectIndex.get(group + 1);
+		int first = lowerBound(start, end, rel, 0);
+		int last = lowerBound(first, end, rel + 1, Integer.MIN_VALUE);
+		if (first == last) return false;
+
+		long node = pack(group, rel);
+		int expanded = visited.get(node);
+		if (expanded != NONE && expanded <= depth) return false;
+		visited.put(node, depth);
+
+		for (int row = first; row < last; row++)
+		{
+			if (isDirectMember(user, rowUserRelations.get(row), rowUsers.get(row))
+				|| isDirectMember(wildcard, rowUserRelations.get(row), rowUsers.get(row)))
+			{
+				return true;
+			}
+		}
+
+		for (int row = first; row < last; row++)
+		{
+			if (isIndirectMember(user, wildcard, rowUserRelations.get(row), rowUsers.get(row), visited, depth + 1)) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Answer whether the group has any userset rows for the relation.
+	 */
+	private boolean hasUsersets(int group, int rel)
+	{
+		int end = objectIndex.get(group + 1);
+		int row = lowerBound(objectIndex.get(group), end, rel, 0);
+		return (row < end && rowRelations.get(row) == rel);
+	}
+
+	private boolean isDirectMember(int user, int rel, int group)
+	{
+		if (user == NONE) return false;
+
+		if (wildcardObjectRows == 0 && !isWildcard(group))
+		{
+			return (findRow(group, rel, user, NONE) != NONE);
+		}
+
+		return (findDirect(user, rel, getObject(group)) != NONE);
+	}
+
+	private int findRow(int object, int rel, int user, int userRel)
+	{
+		int end = objectIndex.get(object + 1);
+		int row = lowerBound(objectIndex.get(object), end, rel, userRel, user);
+
+		return (row < end && rowRelations.get(row) == rel && rowUserRelations.get(row) == userRel && rowUsers.get(row) == user ? row : NONE);
+	}
+
+	private int lowerBound(int from, int to, int rel, int userRel)
+	{
+		return lowerBound(from, to, rel, userRel, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Answer the first row in [from, to) of one object that is not before (rel, userRel, user).
+	 */
+	private int lowerBound(int from, int to, int rel, int userRel, int user)
+	{
+		int low = from;
+		int high = to;
+
+		while (low < high)
+		{
+			int row = (low + high) >>> 1;
+			int c = Integer.compare(rowRelations.get(row), rel);
+			if (c == 0) c = Integer.compare(rowUserRelations.get(row), userRel);
+			if (c == 0) c = Integer.compare(rowUsers.get(row), user);
+
+			if (c < 0) low = row + 1;
+			else high = row;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Answer the start of the userset's rows in USERSET_ROWS.
+	 */
+	private int usersetStart(UserSet userset)
+	{
+		int user = lookupObject(userset.getObjectId());
+		int userRel = lookupString(userset.getRelation());
+		if (user == NONE || (userRel == NONE && userset.hasRelation())) return 0;
+
+		return usersetBound(user, userRel);
+	}
+
+	private int usersetEnd(UserSet userset)
+	{
+		int user = lookupObject(userset.getObjectId());
+		int userRel = lookupString(userset.getRelation());
+		if (user == NONE || (userRel == NONE && userset.hasRelation())) return 0;
+
+		return usersetBound(user, userRel + 1);
+	}
+
+	/**
+	 * Answer the first of the user's rows in USERSET_ROWS whose userset relation is not before userRel.
+	 */
+	private int usersetBound(int user, int userRel)
+	{
+		int low = usersetIndex.get(user);
+		int high = usersetIndex.get(user + 1);
+
+		while (low < high)
+		{
+			int i = (low + high) >>> 1;
+
+			if (rowUserRelations.get(usersetRows.get(i)) < userRel) low = i + 1;
+			else high = i;
+		}
+
+		return low;
+	}
+
+	private List<Tuple> decode(int from, int to)
+	{
+		List<Tuple> results = new ArrayList<>(to - from);
+
+		for (int row = from; row < to; row++)
+		{
+			results.add(decode(row));
+		}
+
+		return results;
+	}
+
+	private Tuple decode(int row)
+	{
+		UserSet userset = new UserSet(getObject(rowUsers.get(row)), getString(rowUserRelations.get(row)));
+		return new Tuple(userset, getString(rowRelations.get(row)), getObject(rowObjects.get(row)));
+	}
+
+	private int lookupString(String string)
+	{
+		if (string == null) return NONE;
+
+		byte[] bytes = null;
+		int mask = stringTable.capacity() - 1;
+
+		for (int slot = stringHash(string) & mask; ; slot = (slot + 1) & mask)
+		{
+			int id = stringTable.get(slot) - 1;
+			if (id == NONE) return NONE;
+
+			if (bytes == null) bytes = string.getBytes(StandardCharsets.UTF_8);
+			if (stringEquals(id, bytes)) return id;
+		}
+	}
+
+	private boolean stringEquals(int id, byte[] bytes)
+	{
+		int offset = stringOffsets.get(id);
+		if (stringOffsets.get(id + 1) - offset != bytes.length) return false;
+
+		for (int i = 0; i < bytes.length; i++)
+		{
+			if (stringBytes.get(offset + i) != bytes[i]) return false;
+		}
+
+		return true;
+	}
+
+	private String getString(int id)
+	{
+		if (id == NONE) return null;
+
+		int offset = stringOffsets.get(id);
+		byte[] bytes = new byte[stringOffsets.get(id + 1) - offset];
+		ByteBuffer source = stringBytes.duplicate();
+		source.position(offset);
+		source.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int lookupObject(ObjectId objectId)
+	{
+		if (objectId == null) return NONE;
+
+		int namespace = lookupString(objectId.getNamespace());
+		if (namespace == NONE && objectId.hasNamespace()) return NONE;
+
+		int type = lookupString(objectId.getType());
+		if (type == NONE && objectId.getType() != null) return NONE;
+
+		String id = (objectId.hasPath() ? objectId.getPath().getIdentifier() : null);
+		int identifier = lookupString(id);
+		if (identifier == NONE && id != null) return NONE;
+
+		return findObject(namespace, type, identifier);
+	}
+
+	private int lookupWildcard(ObjectId objectId)
+	{
+		if (objectId == null || objectId.getType() == null) return NONE;
+
+		int namespace = lookupString(objectId.getNamespace());
+		if (namespace == NONE && objectId.hasNamespace()) return NONE;
+
+		int type = lookupString(objectId.getType());
+		int identifier = lookupString(ObjectPath.WILDCARD);
+		if (type == NONE || identifier == NONE) return NONE;
+
+		return findObject(namespace, type, identifier);
+	}
+
+	private int findObject(int namespace, int type, int identifier)
+	{
+		int mask = objectTable.capacity() - 1;
+
+		for (int slot = ObjectDictionary.hash(namespace, type, identifier) & mask; ; slot = (slot + 1) & mask)
+		{
+			int ordinal = objectTable.get(slot) - 1;
+			if (ordinal == NONE) return NONE;
+
+			if (objectNamespaces.get(ordinal) == namespace && objectTypes.get(ordinal) == type && objectIdentifiers.get(ordinal) == identifier)
+			{
+				return ordinal;
+			}
+		}
+	}
+
+	private ObjectId getObject(int ordinal)
+	{
+		return new ObjectId(getString(objectNamespaces.get(ordinal)),
+			new ObjectPath(getString(objectTypes.get(ordinal)), getString(objectIdentifiers.get(ordinal))));
+	}
+
+	private boolean isWildcard(int ordinal)
+	{
+		return (objectWildcards.get(ordinal) != 0);
+	}
+
+	static int stringHash(String string)
+	{
+		int h = string.hashCode() * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+
+	private static IntBuffer ints(ByteBuffer[] sections, int section, int count)
+	throws IOException
+	{
+		IntBuffer ints = sections[section].asIntBuffer();
+
+		if (count >= 0 && ints.capacity() != count)
+		{
+			throw new IOException("Corrupt tuple snapshot: section " + section + " has " + ints.capacity() + " ints, expected " + count);
+		}
+
+		return ints;
+	}
+}
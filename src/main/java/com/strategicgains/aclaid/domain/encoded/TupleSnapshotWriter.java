@@ -0,0 +1,431 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.FORMAT_VERSION;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.HEADER_SIZE;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.MAGIC;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.OBJECT_IDENTIFIERS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.OBJECT_INDEX;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.OBJECT_NAMESPACES;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.OBJECT_TABLE;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.OBJECT_TYPES;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.OBJECT_WILDCARDS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.ROW_OBJECTS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.ROW_RELATIONS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.ROW_USERS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.ROW_USER_RELATIONS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.SECTION_COUNT;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.STRING_BYTES;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.STRING_OFFSETS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.STRING_TABLE;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.USERSET_INDEX;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.USERSET_ROWS;
+import static com.strategicgains.aclaid.domain.encoded.TupleSnapshot.stringHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.IntBinaryOperator;
+
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * Encodes tuples into the {@link TupleSnapshot} file format: the tuples are dictionary-encoded, sorted
+ * into row order and deduplicated, then every section is written after a header that locates them.
+ */
+final class TupleSnapshotWriter
+{
+	private static final int NONE = StringDictionary.NONE;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final StringDictionary strings = new StringDictionary();
+	private final ObjectDictionary objects = new ObjectDictionary(strings);
+	private int[] rowObjects;
+	private int[] rowRelations;
+	private int[] rowUsers;
+	private int[] rowUserRelations;
+	private int rowCount;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long position;
+	private final long[] sections = new long[SECTION_COUNT * 2];
+
+	TupleSnapshotWriter(Collection<Tuple> tuples)
+	throws InvalidTupleException
+	{
+		super();
+		int n = tuples.size();
+		int[] objectColumn = new int[n];
+		int[] relationColumn = new int[n];
+		int[] userColumn = new int[n];
+		int[] userRelationColumn = new int[n];
+		int i = 0;
+
+		for (Tuple tuple : tuples)
+		{
+			if (tuple == null)
+			{
+				throw new InvalidTupleException("Tuple cannot be null.");
+			}
+			else if (!tuple.isValid())
+			{
+				throw new InvalidTupleException("Invalid tuple: " + tuple);
+			}
+			else if (tuple.expires())
+			{
+				// The snapshot format has no expiry, so the tuple would be loaded as permanent.
+				throw new InvalidTupleException("Expiring tuples are not supported: " + tuple);
+			}
+
+			objectColumn[i] = objects.intern(tuple.getObjectId());
+			relationColumn[i] = strings.intern(tuple.getRelation());
+			userColumn[i] = objects.intern(tuple.getUsersetObjectId());
+			userRelationColumn[i] = strings.intern(tuple.getUsersetRelation());
+			i++;
+		}
+
+		// Row order: object, relation, userset relation, userset object.
+		int[] order = identity(n);
+		sort(order, (a, b) -> {
+			int c = Integer.compare(objectColumn[a], objectColumn[b]);
+			if (c == 0) c = Integer.compare(relationColumn[a], relationColumn[b]);
+			if (c == 0) c = Integer.compare(userRelationColumn[a], userRelationColumn[b]);
+			return (c != 0 ? c : Integer.compare(userColumn[a], userColumn[b]));
+		});
+
+		rowObjects = new int[n];
+		rowRelations = new int[n];
+		rowUsers = new int[n];
+		rowUserRelations = new int[n];
+
+		for (int row : order)
+		{
+			int count = rowCount;
+
+			if (count > 0 && rowObjects[count - 1] == objectColumn[row] && rowRelations[count - 1] == relationColumn[row]
+				&& rowUserRelations[count - 1] == userRelationColumn[row] && rowUsers[count - 1] == userColumn[row])
+			{
+				continue;
+			}
+
+			rowObjects[count] = objectColumn[row];
+			rowRelations[count] = relationColumn[row];
+			rowUsers[count] = userColumn[row];
+			rowUserRelations[count] = userRelationColumn[row];
+			rowCount++;
+		}
+	}
+
+	/**
+	 * Write the snapshot to a temporary file beside the path, fsync it and move it into place, so the path
+	 * holds either the previous snapshot or the complete new one.
+	 */
+	void write(Path path, long revision)
+	throws IOException
+	{
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			this.position = HEADER_SIZE;
+			channel.position(HEADER_SIZE);
+
+			writeStrings();
+			writeObjects();
+			writeRows();
+			flush();
+			writeHeader(revision);
+			channel.force(true);
+		}
+
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void writeStrings()
+	throws IOException
+	{
+		int count = strings.size();
+		int[] offsets = new int[count + 1];
+		int[] table = new int[tableSizeFor(count)];
+		int mask = table.length - 1;
+
+		begin(STRING_BYTES);
+
+		for (int id = 0; id < count; id++)
+		{
+			String string = strings.get(id);
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			putBytes(bytes);
+			offsets[id + 1] = offsets[id] + bytes.length;
+
+			int slot = stringHash(string) & mask;
+			while (table[slot] != 0) slot = (slot + 1) & mask;
+			table[slot] = id + 1;
+		}
+
+		end(STRING_BYTES);
+		writeInts(STRING_OFFSETS, offsets, offsets.length);
+		writeInts(STRING_TABLE, table, table.length);
+	}
+
+	private void writeObjects()
+	throws IOException
+	{
+		int count = objects.size();
+		int[] namespaces = new int[count];
+		int[] types = new int[count];
+		int[] identifiers = new int[count];
+		int[] table = new int[tableSizeFor(count)];
+		int mask = table.length - 1;
+
+		begin(OBJECT_WILDCARDS);
+
+		for (int ordinal = 0; ordinal < count; ordinal++)
+		{
+			namespaces[ordinal] = objects.getNamespace(ordinal);
+			types[ordinal] = objects.getType(ordinal);
+			identifiers[ordinal] = objects.getIdentifier(ordinal);
+			putByte(objects.isWildcard(ordinal) ? 1 : 0);
+
+			int slot = ObjectDictionary.hash(namespaces[ordinal], types[ordinal], identifiers[ordinal]) & mask;
+			while (table[slot] != 0) slot = (slot + 1) & mask;
+			table[slot] = ordinal + 1;
+		}
+
+		end(OBJECT_WILDCARDS);
+		writeInts(OBJECT_NAMESPACES, namespaces, count);
+		writeInts(OBJECT_TYPES, types, count);
+		writeInts(OBJECT_IDENTIFIERS, identifiers, count);
+		writeInts(OBJECT_TABLE, table, table.length);
+	}
+
+	private void writeRows()
+	throws IOException
+	{
+		writeInts(ROW_OBJECTS, rowObjects, rowCount);
+		writeInts(ROW_RELATIONS, rowRelations, rowCount);
+		writeInts(ROW_USERS, rowUsers, rowCount);
+		writeInts(ROW_USER_RELATIONS, rowUserRelations, rowCount);
+
+		// Rows are already in object order, so the object index is a prefix sum of the rows per object.
+		writeInts(OBJECT_INDEX, offsets(rowObjects), objects.size() + 1);
+
+		// The userset index is a permutation of the rows in userset object, userset relation, relation and
+		// object order, with a prefix sum of the rows per userset object.
+		int[] byUserset = identity(rowCount);
+		sort(byUserset, (a, b) -> {
+			int c = Integer.compare(rowUsers[a], rowUsers[b]);
+			if (c == 0) c = Integer.compare(rowUserRelations[a], rowUserRelations[b]);
+			if (c == 0) c = Integer.compare(rowRelations[a], rowRelations[b]);
+			return (c != 0 ? c : Integer.compare(rowObjects[a], rowObjects[b]));
+		});
+
+		writeInts(USERSET_INDEX, offsets(rowUsers), objects.size() + 1);
+		writeInts(USERSET_ROWS, byUserset, rowCount);
+	}
+
+	private void writeHeader(long revision)
+	throws IOException
+	{
+		int wildcardObjectRows = 0;
+		int wildcardUserRows = 0;
+
+		for (int row = 0; row < rowCount; row++)
+		{
+			if (objects.isWildcard(rowObjects[row])) wildcardObjectRows++;
+			if (rowUserRelations[row] == NONE && objects.isWildcard(rowUsers[row])) wildcardUserRows++;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+			.putInt(MAGIC)
+			.putInt(FORMAT_VERSION)
+			.putLong(revision)
+			.putInt(strings.size())
+			.putInt(objects.size())
+			.putInt(rowCount)
+			.putInt(wildcardObjectRows)
+			.putInt(wildcardUserRows)
+			.putInt(SECTION_COUNT);
+
+		for (long value : sections)
+		{
+			header.putLong(value);
+		}
+
+		header.flip();
+		long at = 0;
+
+		while (header.hasRemaining())
+		{
+			at += channel.write(header, at);
+		}
+	}
+
+	private int[] offsets(int[] column)
+	{
+		int[] offsets = new int[objects.size() + 1];
+
+		for (int row = 0; row < rowCount; row++)
+		{
+			offsets[column[row] + 1]++;
+		}
+
+		for (int i = 1; i < offsets.length; i++)
+		{
+			offsets[i] += offsets[i - 1];
+		}
+
+		return offsets;
+	}
+
+	private void writeInts(int section, int[] values, int count)
+	throws IOException
+	{
+		begin(section);
+
+		for (int i = 0; i < count; i++)
+		{
+			if (buffer.remaining() < Integer.BYTES) flush();
+			buffer.putInt(values[i]);
+		}
+
+		position += (long) count * Integer.BYTES;
+		end(section);
+	}
+
+	private void putBytes(byte[] bytes)
+	throws IOException
+	{
+		for (int i = 0; i < bytes.length; )
+		{
+			if (!buffer.hasRemaining()) flush();
+			int length = Math.min(bytes.length - i, buffer.remaining());
+			buffer.put(bytes, i, length);
+			i += length;
+		}
+
+		position += bytes.length;
+	}
+
+	private void putByte(int value)
+	throws IOException
+	{
+		if (!buffer.hasRemaining()) flush();
+		buffer.put((byte) value);
+		position++;
+	}
+
+	/**
+	 * Start a section on an 8-byte boundary.
+	 */
+	private void begin(int section)
+	throws IOException
+	{
+		while ((position & 7) != 0)
+		{
+			putByte(0);
+		}
+
+		sections[section * 2] = position;
+	}
+
+	private void end(int section)
+	{
+		sections[section * 2 + 1] = position - sections[section * 2];
+	}
+
+	private void flush()
+	throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	private static int tableSizeFor(int count)
+	{
+		return Math.max(2, Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1);
+	}
+
+	private static int[] identity(int n)
+	{
+		int[] values = new int[n];
+
+		for (int i = 0; i < n; i++)
+		{
+			values[i] = i;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Stable merge sort of row numbers by the given order, without boxing.
+	 */
+	private static void sort(int[] rows, IntBinaryOperator order)
+	{
+		int[] scratch = rows.clone();
+		mergeSort(scratch, rows, 0, rows.length, order);
+	}
+
+	private static void mergeSort(int[] source, int[] target, int from, int to, IntBinaryOperator order)
+	{
+		if (to - from <= INSERTION_SORT_THRESHOLD)
+		{
+			for (int i = from + 1; i < to; i++)
+			{
+				int row = target[i];
+				int j = i - 1;
+
+				while (j >= from && order.applyAsInt(target[j], row) > 0)
+				{
+					target[j + 1] = target[j];
+					j--;
+				}
+
+				target[j + 1] = row;
+			}
+
+			return;
+		}
+
+		// Sort each half of target into source, then merge the halves back into target.
+		int middle = (from + to) >>> 1;
+		mergeSort(target, source, from, middle, order);
+		mergeSort(target, source, middle, to, order);
+
+		if (order.applyAsInt(source[middle - 1], source[middle]) <= 0)
+		{
+			System.arraycopy(source, from, target, from, to - from);
+			return;
+		}
+
+		for (int i = from, left = from, right = middle; i < to; i++)
+		{
+			if (right >= to || (left < middle && order.applyAsInt(source[left], source[right]) <= 0))
+			{
+				target[i] = source[left++];
+			}
+			else
+			{
+				target[i] = source[right++];
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.strategicgains.aclaid.domain.leopard;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+
+/**
+ * A transitive group membership index modeled on Zanzibar's Leopard indexing system.
+ *
+ * Every set (an objectId#relation node) is assigned an int id. The index keeps two kinds of
+ * sorted int arrays:
+ *   MEMBER2GROUP(u) - the sets user u is a direct member of.
+ *   GROUP2GROUP(s)  - the descendant sets of s (including s itself): every set whose members are
+ *                     also members of s through nested usersets.
+ *
+ * A user is then a member of s, at any depth, when MEMBER2GROUP(u) ∩ GROUP2GROUP(s) is not empty.
+ * Both arrays are maintained incrementally as tuples are added and removed: adding a nested userset
+ * merges the child's descendants into the parent and all of its ancestors; removing one recomputes
+ * the closure of the parent and its ancestors.
+ *
+ * Not thread-safe. {@link #copy()} answers an index that can be changed while this one is still read, so
+ * a writer can publish a new index per change and readers never wait on it.
+ */
+public class LeopardIndex
+{
+	// Set ids, keyed by object then relation. Ids are assigned in insertion order and never reused.
+	private Map<ObjectId, Map<String, Integer>> setIds = new HashMap<>();
+	private List<int[]> descendants = new ArrayList<>();
+	private List<Set<Integer>> children = new ArrayList<>();
+	private List<Set<Integer>> parents = new ArrayList<>();
+
+	private Map<ObjectId, int[]> memberToGroup = new HashMap<>();
+
+	// The nested maps and sets this index may change in place; the rest are shared with the index it was
+	// copied from, and are copied on their first change.
+	private Set<ObjectId> ownedSetIds = new HashSet<>();
+	private BitSet ownedChildren = new BitSet();
+	private BitSet ownedParents = new BitSet();
+
+	public LeopardIndex()
+	{
+		super();
+	}
+
+	private LeopardIndex(LeopardIndex that)
+	{
+		this();
+		this.setIds = new HashMap<>(that.setIds);
+		this.descendants = new ArrayList<>(that.descendants);
+		this.children = new ArrayList<>(that.children);
+		this.parents = new ArrayList<>(that.parents);
+		this.memberToGroup = new HashMap<>(that.memberToGroup);
+	}
+
+	/**
+	 * Answer a copy of this index that can be changed without changing this one. The sets of ids are
+	 * immutable arrays and are shared; the other nested collections are copied as the copy changes them,
+	 * so a copy costs the size of the top-level collections plus what is changed.
+	 */
+	public LeopardIndex copy()
+	{
+		return new LeopardIndex(this);
+	}
+
+	/**
+	 * Answer whether the user is a member of objectId#relation, either directly or through nested usersets.
+	 *
+	 * @param user     The ObjectId of the user.
+	 * @param relation The relation to check.
+	 * @param objectId The ObjectId to check.
+	 * @return true if the user is a member.
+	 */
+	public boolean check(ObjectId user, String relation, ObjectId objectId)
+	{
+		int[] groups = memberToGroup.get(user);
+		if (groups == null) return false;
+
+		int set = lookup(objectId, relation);
+		if (set < 0) return false;
+
+		return SortedIntArrays.intersects(groups, descendants.get(set));
+	}
+
+	public void add(Tuple tuple)
+	{
+		int parent = intern(tuple.getObjectId(), tuple.getRelation());
+
+		if (tuple.isDirectRelation())
+		{
+			memberToGroup.merge(tuple.getUsersetObjectId(), new int[] {parent}, SortedIntArrays::union);
+			return;
+		}
+
+		int child = intern(tuple.getUsersetObjectId(), tuple.getUsersetRelation());
+		if (children.get(parent).contains(child)) return;
+
+		ownChildren(parent).add(child);
+		ownParents(child).add(parent);
+		int[] added = descendants.get(child);
+
+		for (int ancestor : ancestorsOf(parent))
+		{
+			descendants.set(ancestor, SortedIntArrays.union(descendants.get(ancestor), added));
+		}
+	}
+
+	public void remove(Tuple tuple)
+	{
+		int parent = lookup(tuple.getObjectId(), tuple.getRelation());
+		if (parent < 0) return;
+
+		if (tuple.isDirectRelation())
+		{
+			memberToGroup.computeIfPresent(tuple.getUsersetObjectId(), (u, groups) -> {
+				int[] remaining = SortedIntArrays.remove(groups, parent);
+				return (remaining.length == 0 ? null : remaining);
+			});
+			return;
+		}
+
+		int child = lookup(tuple.getUsersetObjectId(), tuple.getUsersetRelation());
+		if (child < 0 || !children.get(parent).contains(child)) return;
+
+		ownChildren(parent).remove(child);
+		ownParents(child).remove(parent);
+
+		for (int ancestor : ancestorsOf(parent))
+		{
+			descendants.set(ancestor, closureOf(ancestor));
+		}
+	}
+
+	public void clear()
+	{
+		setIds.clear();
+		descendants.clear();
+		children.clear();
+		parents.clear();
+		memberToGroup.clear();
+		ownedSetIds.clear();
+		ownedChildren.clear();
+		ownedParents.clear();
+	}
+
+	private int lookup(ObjectId objectId, String relation)
+	{
+		Map<String, Integer> relations = setIds.get(objectId);
+		if (relations == null) return -1;
+
+		Integer id = relations.get(relation);
+		return (id == null ? -1 : id);
+	}
+
+	private int intern(ObjectId objectId, String relation)
+	{
+		int id = lookup(objectId, relation);
+		if (id >= 0) return id;
+
+		Map<String, Integer> relations = setIds.get(objectId);
+
+		if (relations == null || !ownedSetIds.contains(objectId))
+		{
+			relations = (relations == null ? new HashMap<>() : new HashMap<>(relations));
+			setIds.put(objectId, relations);
+			ownedSetIds.add(objectId);
+		}
+
+		id = descendants.size();
+		relations.put(relation, id);
+		descendants.add(new int[] {id});
+		children.add(new HashSet<>());
+		parents.add(new HashSet<>());
+		ownedChildren.set(id);
+		ownedParents.set(id);
+		return id;
+	}
+
+	private Set<Integer> ownChildren(int set)
+	{
+		return own(children, ownedChildren, set);
+	}
+
+	private Set<Integer> ownParents(int set)
+	{
+		return own(parents, ownedParents, set);
+	}
+
+	private static Set<Integer> own(List<Set<Integer>> edges, BitSet owned, int set)
+	{
+		if (!owned.get(set))
+		{
+			edges.set(set, new HashSet<>(edges.get(set)));
+			owned.set(set);
+		}
+
+		return edges.get(set);
+	}
+
+	/**
+	 * Answer the set and every set that (transitively) contains it.
+	 */
+	private Set<Integer> ancestorsOf(int set)
+	{
+		return reachable(set, parents);
+	}
+
+	private int[] closureOf(int set)
+	{
+		return reachable(set, children).stream().mapToInt(Integer::intValue).sorted().toArray();
+	}
+
+	private static Set<Integer> reachable(int start, List<Set<Integer>> edges)
+	{
+		Set<Integer> visited = new HashSet<>();
+		Deque<Integer> pending = new ArrayDeque<>();
+		visited.add(start);
+		pending.push(start);
+
+		while (!pending.isEmpty())
+		{
+			for (Integer next : edges.get(pending.pop()))
+			{
+				if (visited.add(next)) pending.push(next);
+			}
+		}
+
+		return visited;
+	}
+}
@@ -0,0 +1,113 @@
+package com.strategicgains.aclaid.domain.leopard;
+
+import java.util.Arrays;
+
+/**
+ * Set operations on sorted, duplicate-free int arrays. Arrays are treated as immutable: every
+ * modifying operation answers a new array (or the same one if nothing changed).
+ */
+public final class SortedIntArrays
+{
+	public static final int[] EMPTY = new int[0];
+
+	// Below this size ratio, a linear merge beats binary searching the larger array.
+	private static final int GALLOP_RATIO = 8;
+
+	private SortedIntArrays()
+	{
+		// prevents instantiation.
+	}
+
+	public static boolean contains(int[] values, int value)
+	{
+		return (Arrays.binarySearch(values, value) >= 0);
+	}
+
+	public static int[] insert(int[] values, int value)
+	{
+		int index = Arrays.binarySearch(values, value);
+		if (index >= 0) return values;
+
+		index = -(index + 1);
+		int[] result = new int[values.length + 1];
+		System.arraycopy(values, 0, result, 0, index);
+		result[index] = value;
+		System.arraycopy(values, index, result, index + 1, values.length - index);
+		return result;
+	}
+
+	public static int[] remove(int[] values, int value)
+	{
+		int index = Arrays.binarySearch(values, value);
+		if (index < 0) return values;
+
+		int[] result = new int[values.length - 1];
+		System.arraycopy(values, 0, result, 0, index);
+		System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+		return result;
+	}
+
+	public static int[] union(int[] a, int[] b)
+	{
+		if (b.length == 0) return a;
+		if (a.length == 0) return b;
+
+		int[] result = new int[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+
+		while (i < a.length && j < b.length)
+		{
+			if (a[i] < b[j]) result[k++] = a[i++];
+			else if (a[i] > b[j]) result[k++] = b[j++];
+			else
+			{
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+
+		while (i < a.length) result[k++] = a[i++];
+		while (j < b.length) result[k++] = b[j++];
+
+		if (k == a.length) return a;
+		return (k == result.length ? result : Arrays.copyOf(result, k));
+	}
+
+	/**
+	 * Answer whether the two arrays share at least one value. Merges when the sizes are similar,
+	 * otherwise binary searches the larger array for each value of the smaller one.
+	 */
+	public static boolean intersects(int[] a, int[] b)
+	{
+		if (a.length > b.length) return intersects(b, a);
+		if (a.length == 0) return false;
+		if (a[a.length - 1] < b[0] || b[b.length - 1] < a[0]) return false;
+
+		if (b.length / a.length >= GALLOP_RATIO)
+		{
+			int from = 0;
+
+			for (int value : a)
+			{
+				int index = Arrays.binarySearch(b, from, b.length, value);
+				if (index >= 0) return true;
+
+				from = -(index + 1);
+				if (from == b.length) return false;
+			}
+
+			return false;
+		}
+
+		int i = 0, j = 0;
+
+		while (i < a.length && j < b.length)
+		{
+			if (a[i] < b[j]) i++;
+			else if (a[i] > b[j]) j++;
+			else return true;
+		}
+
+		return false;
+	}
+}
@@ -1,7 +1,5 @@
 package com.strategicgains.aclaid.domain.rewrite;
 
-import com.strategicgains.aclaid.domain.TupleStore;
-
 public abstract class BinaryRewriteRule
 implements RewriteRule
 {
@@ -19,7 +17,7 @@ implements RewriteRule
 		setRRule(right);
 	}
 
-	protected RewriteRule getLRule()
+	public RewriteRule getLRule()
 	{
 		return lRule;
 	}
@@ -30,7 +28,7 @@ implements RewriteRule
 		return this;
 	}
 
-	protected RewriteRule getRRule()
+	public RewriteRule getRRule()
 	{
 		return rRule;
 	}
@@ -40,6 +38,4 @@ implements RewriteRule
 		this.rRule = operand;
 		return this;
 	}
-
-	protected abstract TupleStore evaluate(TupleStore left, TupleStore right);
 }
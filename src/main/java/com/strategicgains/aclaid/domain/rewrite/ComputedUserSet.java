@@ -1,9 +1,11 @@
 package com.strategicgains.aclaid.domain.rewrite;
 
-import com.strategicgains.aclaid.domain.ObjectId;
+import java.util.Collections;
+
 import com.strategicgains.aclaid.domain.RelationDefinition;
-import com.strategicgains.aclaid.domain.rewrite.expression.ComputedUserSetExpression;
-import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.ComputedUserSetPlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.UnionPlan;
 
 /**
  * From the Zanzibar document:
@@ -32,7 +34,7 @@ implements RewriteRuleLeaf
 		setObjectToken(objectToken);
 	}
 
-	protected String getObjectToken()
+	public String getObjectToken()
 	{
 		return objectToken;
 	}
@@ -47,6 +49,11 @@ implements RewriteRuleLeaf
 		this.objectToken = objectToken;
 	}
 
+	public RelationDefinition getRelation()
+	{
+		return relation;
+	}
+
 	public boolean hasRelation()
 	{
 		return (relation != null);
@@ -69,14 +76,18 @@ implements RewriteRuleLeaf
 		return this;
 	}
 
+	/**
+	 * Checks the computed relation through the context, so cyclic definitions end in its cycle guard. Outside
+	 * a tuple-to-userset there is no tuple to take a $-token object from, so such a computed userset is empty.
+	 */
 	@Override
-	public UsersetExpression rewrite(ObjectId objectId)
+	public RewritePlan compile()
 	{
 		if (hasObjectToken() && getObjectToken().startsWith("$"))
 		{
-			return new ComputedUserSetExpression(objectId, relation.getName(), getObjectToken());
+			return new UnionPlan(Collections.emptyList());
 		}
 
-		return relation.rewrite(objectId);
+		return new ComputedUserSetPlan(relation);
 	}
 }
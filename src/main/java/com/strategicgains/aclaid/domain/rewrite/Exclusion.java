@@ -1,8 +1,7 @@
 package com.strategicgains.aclaid.domain.rewrite;
 
-import com.strategicgains.aclaid.domain.ObjectId;
-import com.strategicgains.aclaid.domain.TupleStore;
-import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.ExclusionPlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
 
 /**
  * The returned set contains only elements that are members of the first set but not the second set.
@@ -19,6 +18,9 @@ import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
  *
  *   B.exclusion(A) would return:
  *   {5, 6}
+ *
+ * The left rule is the base set and the right rule the set excluded from it, e.g. 'viewer = editor but not
+ * banned' is new Exclusion(editor, banned).
  */
 public class Exclusion
 extends BinaryRewriteRule
@@ -34,21 +36,8 @@ extends BinaryRewriteRule
 	}
 
 	@Override
-	public TupleStore evaluate(TupleStore left, TupleStore right)
-	{
-		return exclusion(left, right);
-	}
-
-	private TupleStore exclusion(TupleStore left, TupleStore right)
-	{
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public UsersetExpression rewrite(ObjectId objectId)
+	public RewritePlan compile()
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return new ExclusionPlan(getLRule().compile(), getRRule().compile());
 	}
 }
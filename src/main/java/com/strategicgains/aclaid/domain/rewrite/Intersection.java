@@ -1,11 +1,14 @@
 package com.strategicgains.aclaid.domain.rewrite;
 
-import com.strategicgains.aclaid.domain.ObjectId;
-import com.strategicgains.aclaid.domain.TupleStore;
-import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.strategicgains.aclaid.domain.rewrite.plan.IntersectionPlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
 
 /**
- * The returned set contains only elements that are members of both input sets.
+ * The returned set contains only elements that are members of all input sets.
  * If there are no common elements, the intersection is an empty set.
  * It is commutative - A.intersection(B) equals B.intersection(A).
  * It is associative - (A.intersection(B)).intersection(C) equals A.intersection(B.intersection(C)).
@@ -18,8 +21,10 @@ import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
  *   {3, 4}
  */
 public class Intersection
-extends BinaryRewriteRule
+implements RewriteRule
 {
+	private List<RewriteRule> children = new ArrayList<>();
+
 	public Intersection()
 	{
 		super();
@@ -27,25 +32,42 @@ extends BinaryRewriteRule
 
 	public Intersection(RewriteRule left, RewriteRule right)
 	{
-		super(left, right);
+		this();
+		addChild(left);
+		addChild(right);
 	}
 
-	@Override
-	public TupleStore evaluate(TupleStore left, TupleStore right)
+	public Intersection(List<RewriteRule> children)
+	{
+		this();
+		setChildren(children);
+	}
+
+	public Intersection addChild(RewriteRule child)
 	{
-		return intersection(left, right);
+		this.children.add(child);
+		return this;
 	}
 
-	private TupleStore intersection(TupleStore left, TupleStore right)
+	public Stream<RewriteRule> children()
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return children.stream();
+	}
+
+	public void setChildren(List<RewriteRule> children)
+	{
+		if (children == null && !this.children.isEmpty())
+		{
+			this.children.clear();
+			return;
+		}
+
+		this.children = new ArrayList<>(children);
 	}
 
 	@Override
-	public UsersetExpression rewrite(ObjectId objectId)
+	public RewritePlan compile()
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return new IntersectionPlan(children().map(RewriteRule::compile).toList());
 	}
 }
@@ -1,7 +1,9 @@
 package com.strategicgains.aclaid.domain.rewrite;
 
 import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.rewrite.expression.PlanExpression;
 import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
 
 /**
  * In Zanzibar, Userset rewrite rules are defined per relation in a namespace.
@@ -76,5 +78,21 @@ public interface RewriteRule
 		return false;
 	}
 
-	UsersetExpression rewrite(ObjectId objectId);
+	/**
+	 * Binds the rule's compiled plan to the given object ID.
+	 *
+	 * @param objectId the object whose userset is rewritten.
+	 * @return an expression evaluating the compiled plan for that object.
+	 */
+	default UsersetExpression rewrite(ObjectId objectId)
+	{
+		return new PlanExpression(compile(), objectId);
+	}
+
+	/**
+	 * Compiles the rule into an evaluation plan for any object ID, so checks need not rewrite it per object.
+	 *
+	 * @return an immutable plan.
+	 */
+	RewritePlan compile();
 }
@@ -2,8 +2,10 @@ package com.strategicgains.aclaid.domain.rewrite;
 
 import com.strategicgains.aclaid.domain.ObjectId;
 import com.strategicgains.aclaid.domain.RelationDefinition;
-import com.strategicgains.aclaid.domain.rewrite.expression.ThisExpression;
+import com.strategicgains.aclaid.domain.rewrite.expression.PlanExpression;
 import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.ThisPlan;
 
 /**
  * From the Zanzibar document: Returns all users from stored relation tuples for the ⟨object#relation⟩ pair, including
@@ -21,13 +23,13 @@ implements RewriteRuleLeaf
 	}
 
 	@Override
-	public UsersetExpression rewrite(ObjectId objectId)
+	public RewritePlan compile()
 	{
-		return new ThisExpression(objectId, relation.getName());
+		return new ThisPlan(relation.getName());
 	}
 
 	public static UsersetExpression rewrite(RelationDefinition relation, ObjectId objectId)
 	{
-		return new ThisExpression(objectId, relation.getName());
+		return new PlanExpression(new ThisPlan(relation.getName()), objectId);
 	}
 }
@@ -1,8 +1,8 @@
 package com.strategicgains.aclaid.domain.rewrite;
 
-import com.strategicgains.aclaid.domain.ObjectId;
-import com.strategicgains.aclaid.domain.rewrite.expression.TupleToUserSetExpression;
-import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.TupleToUserSetPlan;
 
 /**
  * From the Zanzibar document:
@@ -25,9 +25,20 @@ implements RewriteRuleLeaf
 		this.computedUserSet = computedUserSet;
 	}
 
+	public String getRelation()
+	{
+		return relation;
+	}
+
+	public ComputedUserSet getComputedUserSet()
+	{
+		return computedUserSet;
+	}
+
 	@Override
-	public UsersetExpression rewrite(ObjectId objectId)
+	public RewritePlan compile()
 	{
-		return new TupleToUserSetExpression(objectId, relation, computedUserSet.rewrite(objectId));
+		boolean fromUsersetObject = Tuple.USERSET_OBJECT.equals(computedUserSet.getObjectToken());
+		return new TupleToUserSetPlan(relation, computedUserSet.getRelation().getName(), fromUsersetObject);
 	}
 }
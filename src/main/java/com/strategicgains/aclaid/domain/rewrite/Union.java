@@ -4,9 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
 
-import com.strategicgains.aclaid.domain.ObjectId;
-import com.strategicgains.aclaid.domain.rewrite.expression.UnionExpression;
-import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+import com.strategicgains.aclaid.domain.rewrite.plan.UnionPlan;
 
 /**
  * It takes two (or more) sets as input and returns a new set as output.
@@ -61,8 +60,8 @@ implements RewriteRule
 	}
 
 	@Override
-	public UsersetExpression rewrite(ObjectId objectId)
+	public RewritePlan compile()
 	{
-		return new UnionExpression(children().map(child -> child.rewrite(objectId)).toList());
+		return new UnionPlan(children().map(RewriteRule::compile).toList());
 	}
 }
@@ -0,0 +1,52 @@
+package com.strategicgains.aclaid.domain.rewrite.expression;
+
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
+
+/**
+ * A compiled rewrite plan bound to one object ID. Evaluating or expanding it runs the plan for that object.
+ */
+public class PlanExpression
+implements UsersetExpression
+{
+	private final RewritePlan plan;
+	private final ObjectId objectId;
+
+	public PlanExpression(RewritePlan plan, ObjectId objectId)
+	{
+		super();
+		this.plan = plan;
+		this.objectId = objectId;
+	}
+
+	public RewritePlan getPlan()
+	{
+		return plan;
+	}
+
+	public ObjectId getObjectId()
+	{
+		return objectId;
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, UserSet userset)
+	{
+		return plan.evaluate(context, objectId, userset);
+	}
+
+	@Override
+	public UsersetTree expand(CheckContext context)
+	{
+		return plan.expand(context, objectId);
+	}
+
+	@Override
+	public int cost()
+	{
+		return plan.cost();
+	}
+}
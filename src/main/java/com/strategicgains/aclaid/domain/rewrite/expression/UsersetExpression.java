@@ -1,13 +1,15 @@
 package com.strategicgains.aclaid.domain.rewrite.expression;
 
+import com.strategicgains.aclaid.domain.CheckContext;
 import com.strategicgains.aclaid.domain.TupleStore;
 import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
 
 /**
  * Userset rewrite rules are also translated to boolean expressions as part of check evaluation.
  * 
- * Rewrite rules, when rewritten given an object ID, they produce a userset expression tree. Which
- * in turn can be evaluated against the relation tuples for the user being authorized. 
+ * Rewrite rules, when rewritten given an object ID, bind their compiled plan to it. The resulting
+ * expression can in turn be evaluated against the relation tuples for the user being authorized.
  */
 public interface UsersetExpression
 {
@@ -18,5 +20,38 @@ public interface UsersetExpression
 	 * @param userset The user to evaluate against the tuples.
 	 * @return true if the expression evaluates to true for the given tuple set, false otherwise.
 	 */
-	boolean evaluate(TupleStore tuples, UserSet userset);
+	default boolean evaluate(TupleStore tuples, UserSet userset)
+	{
+		return evaluate(new CheckContext(tuples), userset);
+	}
+
+	/**
+	 * Evaluates the expression for the given user within a check, sharing memoized sub-problems
+	 * with every other expression evaluated in the same context.
+	 *
+	 * @param context The request-scoped check context holding the tuple set to evaluate against.
+	 * @param userset The user to evaluate against the tuples.
+	 * @return true if the expression evaluates to true, false otherwise.
+	 */
+	boolean evaluate(CheckContext context, UserSet userset);
+
+	/**
+	 * Expands the expression into the tree of users and usersets it denotes, without following the
+	 * usersets stored in its leaves.
+	 *
+	 * @param context The request-scoped context holding the tuple set to read from.
+	 * @return the expanded userset tree.
+	 */
+	UsersetTree expand(CheckContext context);
+
+	/**
+	 * Estimates the relative work to evaluate the expression, so intersections and exclusions can
+	 * evaluate their cheaper operands first and skip the rest when those decide the result.
+	 *
+	 * @return the estimated cost, one being a single stored relation check.
+	 */
+	default int cost()
+	{
+		return 1;
+	}
 }
@@ -0,0 +1,54 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.RelationDefinition;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+
+/**
+ * The users of another relation on the same object, e.g. the editors of a document as some of its viewers.
+ *
+ * The relation is checked through the {@link CheckContext}, not by inlining its plan, so each computed check
+ * is memoized once per request and relations that compute each other end in the context's cycle guard.
+ */
+public final class ComputedUserSetPlan
+implements RewritePlan
+{
+	// A memoized check of a relation whose own rules are not weighed at compile time.
+	private static final int COST = 2;
+
+	private final RelationDefinition relation;
+
+	public ComputedUserSetPlan(RelationDefinition relation)
+	{
+		super();
+		this.relation = relation;
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		return context.check(userset, relation, objectId);
+	}
+
+	@Override
+	public CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		return context.checkAsync(userset, relation, objectId);
+	}
+
+	@Override
+	public UsersetTree expand(CheckContext context, ObjectId objectId)
+	{
+		return context.expand(objectId, relation);
+	}
+
+	@Override
+	public int cost()
+	{
+		return COST;
+	}
+}
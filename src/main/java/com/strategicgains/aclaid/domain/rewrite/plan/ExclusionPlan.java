@@ -0,0 +1,65 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.AsyncConditions;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+
+/**
+ * The users of the base operand that are not users of the excluded operand. Either operand can deny alone, so
+ * the cheaper one, chosen when the plan is compiled, is evaluated first.
+ */
+public final class ExclusionPlan
+implements RewritePlan
+{
+	private final RewritePlan base;
+	private final RewritePlan excluded;
+	private final boolean excludedFirst;
+
+	public ExclusionPlan(RewritePlan base, RewritePlan excluded)
+	{
+		super();
+		this.base = base;
+		this.excluded = excluded;
+		this.excludedFirst = (excluded.cost() < base.cost());
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		if (excludedFirst)
+		{
+			return (!excluded.evaluate(context, objectId, userset) && base.evaluate(context, objectId, userset));
+		}
+
+		return (base.evaluate(context, objectId, userset) && !excluded.evaluate(context, objectId, userset));
+	}
+
+	@Override
+	public CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		if (excludedFirst)
+		{
+			return excluded.evaluateAsync(context, objectId, userset)
+				.thenCompose(isExcluded -> (isExcluded ? AsyncConditions.of(false) : base.evaluateAsync(context, objectId, userset)));
+		}
+
+		return base.evaluateAsync(context, objectId, userset)
+			.thenCompose(inBase -> (inBase ? excluded.evaluateAsync(context, objectId, userset).thenApply(isExcluded -> !isExcluded) : AsyncConditions.of(false)));
+	}
+
+	@Override
+	public UsersetTree expand(CheckContext context, ObjectId objectId)
+	{
+		return UsersetTree.exclusion(null, base.expand(context, objectId), excluded.expand(context, objectId));
+	}
+
+	@Override
+	public int cost()
+	{
+		return base.cost() + excluded.cost();
+	}
+}
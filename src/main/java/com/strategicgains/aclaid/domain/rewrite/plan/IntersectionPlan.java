@@ -0,0 +1,78 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.AsyncConditions;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+
+/**
+ * The users of every operand. The operands are ordered cheapest first when the plan is compiled, and
+ * evaluation stops at the first one the user is not in. An intersection of no operands is empty.
+ */
+public final class IntersectionPlan
+implements RewritePlan
+{
+	private final RewritePlan[] children;
+
+	// The children in ascending cost, the order they are evaluated in.
+	private final RewritePlan[] ordered;
+	private final int cost;
+
+	public IntersectionPlan(List<RewritePlan> children)
+	{
+		super();
+		this.children = children.toArray(new RewritePlan[0]);
+		this.ordered = children.toArray(new RewritePlan[0]);
+
+		// A stable sort, so operands of equal cost keep their declared order.
+		Arrays.sort(ordered, Comparator.comparingInt(RewritePlan::cost));
+		this.cost = children.stream().mapToInt(RewritePlan::cost).sum();
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		if (ordered.length == 0) return false;
+
+		for (RewritePlan child : ordered)
+		{
+			if (!child.evaluate(context, objectId, userset)) return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		if (ordered.length == 0) return AsyncConditions.of(false);
+
+		return AsyncConditions.allOf(ordered.length, i -> ordered[i].evaluateAsync(context, objectId, userset));
+	}
+
+	@Override
+	public UsersetTree expand(CheckContext context, ObjectId objectId)
+	{
+		List<UsersetTree> trees = new ArrayList<>(children.length);
+
+		for (RewritePlan child : children)
+		{
+			trees.add(child.expand(context, objectId));
+		}
+
+		return UsersetTree.intersection(null, trees);
+	}
+
+	@Override
+	public int cost()
+	{
+		return cost;
+	}
+}
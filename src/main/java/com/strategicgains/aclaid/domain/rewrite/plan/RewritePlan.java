@@ -0,0 +1,60 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+import com.strategicgains.aclaid.domain.rewrite.RewriteRule;
+
+/**
+ * A relation's rewrite rules compiled once into an immutable evaluation plan, parameterized by the object ID.
+ *
+ * A plan is built when the relation is defined and shared by every check, so checks allocate no tree.
+ * {@link RewriteRule#rewrite(ObjectId)} merely binds it to one object ID. Plans are thread-safe.
+ */
+public interface RewritePlan
+{
+	/**
+	 * Evaluates the plan for the given object and user.
+	 *
+	 * @param context The request-scoped check context holding the tuple set to evaluate against.
+	 * @param objectId The object whose relation is checked.
+	 * @param userset The user to evaluate against the tuples.
+	 * @return true if the user has the relation to the object, false otherwise.
+	 */
+	boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset);
+
+	/**
+	 * Evaluates the plan like {@link #evaluate(CheckContext, ObjectId, UserSet)}, composing the TupleStore's
+	 * asynchronous checks and reads instead of blocking on them.
+	 *
+	 * @param context The request-scoped check context holding the tuple set to evaluate against.
+	 * @param objectId The object whose relation is checked.
+	 * @param userset The user to evaluate against the tuples.
+	 * @return a stage completing with true if the user has the relation to the object.
+	 */
+	CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset);
+
+	/**
+	 * Expands the plan for the given object into the tree of users and usersets it denotes, without following
+	 * the usersets stored in its leaves.
+	 *
+	 * @param context The request-scoped context holding the tuple set to read from.
+	 * @param objectId The object whose relation is expanded.
+	 * @return the expanded userset tree.
+	 */
+	UsersetTree expand(CheckContext context, ObjectId objectId);
+
+	/**
+	 * Estimates the relative work to evaluate the plan, so intersections and exclusions can evaluate their
+	 * cheaper operands first.
+	 *
+	 * @return the estimated cost, one being a single stored relation check.
+	 */
+	default int cost()
+	{
+		return 1;
+	}
+}
@@ -0,0 +1,42 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+
+/**
+ * The users of the stored relation tuples for the ⟨object#relation⟩ pair, including indirect ACLs
+ * referenced by usersets from the tuples.
+ */
+public final class ThisPlan
+implements RewritePlan
+{
+	private final String relation;
+
+	public ThisPlan(String relation)
+	{
+		super();
+		this.relation = relation;
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		return context.checkTuples(userset, relation, objectId);
+	}
+
+	@Override
+	public CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		return context.checkTuplesAsync(userset, relation, objectId);
+	}
+
+	@Override
+	public UsersetTree expand(CheckContext context, ObjectId objectId)
+	{
+		return context.expandTuples(objectId, relation);
+	}
+}
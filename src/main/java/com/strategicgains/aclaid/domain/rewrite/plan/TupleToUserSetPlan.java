@@ -0,0 +1,95 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.AsyncConditions;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+
+/**
+ * Reads the tupleset relation of the object and checks the computed relation on every object it names, e.g.
+ * the viewers of a document's parent folders.
+ */
+public final class TupleToUserSetPlan
+implements RewritePlan
+{
+	// A tupleset read, then a full relation check on every object it names.
+	private static final int COST = 10;
+
+	private final String tuplesetRelation;
+	private final String relation;
+	private final boolean fromUsersetObject;
+
+	/**
+	 * @param tuplesetRelation the relation whose tuples name the objects to check.
+	 * @param relation the relation computed on those objects.
+	 * @param fromUsersetObject true to check the object named by each tuple's userset ($TUPLE_USERSET_OBJECT),
+	 * false to check the object of the user being checked.
+	 */
+	public TupleToUserSetPlan(String tuplesetRelation, String relation, boolean fromUsersetObject)
+	{
+		super();
+		this.tuplesetRelation = tuplesetRelation;
+		this.relation = relation;
+		this.fromUsersetObject = fromUsersetObject;
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		for (Tuple tuple : context.read(new TupleSet(tuplesetRelation, objectId)))
+		{
+			if (context.check(userset, relation, targetOf(tuple, userset.getObjectId()))) return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		return context.readAsync(new TupleSet(tuplesetRelation, objectId)).thenCompose(tuples -> {
+			Tuple[] found = tuples.toArray(new Tuple[0]);
+			return AsyncConditions.anyOf(found.length, i -> context.checkAsync(userset, relation, targetOf(found[i], userset.getObjectId())));
+		});
+	}
+
+	/**
+	 * Expands to the union of the computed relation on every object referenced by the tupleset. Without a user
+	 * to take the object from, a plan that does not check the tuples' usersets expands to an empty union.
+	 */
+	@Override
+	public UsersetTree expand(CheckContext context, ObjectId objectId)
+	{
+		List<UsersetTree> children = new ArrayList<>();
+
+		if (!fromUsersetObject)
+		{
+			return UsersetTree.union(null, children);
+		}
+
+		for (Tuple tuple : context.read(new TupleSet(tuplesetRelation, objectId)))
+		{
+			children.add(context.expand(targetOf(tuple, null), relation));
+		}
+
+		return UsersetTree.union(null, children);
+	}
+
+	@Override
+	public int cost()
+	{
+		return COST;
+	}
+
+	private ObjectId targetOf(Tuple tuple, ObjectId userObjectId)
+	{
+		return (fromUsersetObject ? tuple.getUsersetObjectId() : userObjectId);
+	}
+}
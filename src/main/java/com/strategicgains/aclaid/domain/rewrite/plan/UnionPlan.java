@@ -0,0 +1,84 @@
+package com.strategicgains.aclaid.domain.rewrite.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Predicate;
+
+import com.strategicgains.aclaid.domain.AsyncConditions;
+import com.strategicgains.aclaid.domain.CheckContext;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
+
+/**
+ * The users of any of the operands, evaluated in their declared order until one allows the user. A union of no
+ * operands is empty.
+ *
+ * In a parallel {@link CheckContext}, a union with an operand costlier than a single stored relation check
+ * evaluates its operands concurrently instead, and is decided by the first to allow the user.
+ */
+public final class UnionPlan
+implements RewritePlan
+{
+	private final RewritePlan[] children;
+	private final int cost;
+
+	public UnionPlan(List<RewritePlan> children)
+	{
+		super();
+		this.children = children.toArray(new RewritePlan[0]);
+		this.cost = children.stream().mapToInt(RewritePlan::cost).sum();
+	}
+
+	@Override
+	public boolean evaluate(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		if (context.isParallel() && cost > children.length)
+		{
+			List<Predicate<CheckContext>> branches = new ArrayList<>(children.length);
+
+			for (RewritePlan child : children)
+			{
+				branches.add(c -> child.evaluate(c, objectId, userset));
+			}
+
+			return context.anyOf(branches);
+		}
+
+		for (RewritePlan child : children)
+		{
+			if (child.evaluate(context, objectId, userset)) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Evaluates the operands in order, even in a parallel context.
+	 */
+	@Override
+	public CompletionStage<Boolean> evaluateAsync(CheckContext context, ObjectId objectId, UserSet userset)
+	{
+		return AsyncConditions.anyOf(children.length, i -> children[i].evaluateAsync(context, objectId, userset));
+	}
+
+	@Override
+	public UsersetTree expand(CheckContext context, ObjectId objectId)
+	{
+		List<UsersetTree> trees = new ArrayList<>(children.length);
+
+		for (RewritePlan child : children)
+		{
+			trees.add(child.expand(context, objectId));
+		}
+
+		return UsersetTree.union(null, trees);
+	}
+
+	@Override
+	public int cost()
+	{
+		return cost;
+	}
+}
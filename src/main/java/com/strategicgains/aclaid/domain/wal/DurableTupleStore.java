@@ -0,0 +1,353 @@
+package com.strategicgains.aclaid.domain.wal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.Zookie;
+import com.strategicgains.aclaid.domain.wal.WriteAheadLog.Operation;
+import com.strategicgains.aclaid.domain.wal.WriteAheadLog.Record;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * A TupleStore that persists every write and remove to a {@link WriteAheadLog} and replays the log into
+ * an in-memory TupleStore on startup, so a restart no longer needs a full reload.
+ *
+ * A change is appended to the log, with the revision it is made at, and then applied to the in-memory
+ * store in one step, so the log holds changes in the order they were applied and replay rebuilds the same
+ * state at the same revision, even where expiry makes a replayed change no longer change anything; Zookies
+ * issued before a restart remain valid after it. A change the log refuses is never applied.
+ * A change that leaves the store unchanged (e.g. re-writing a present tuple) is retracted from the log,
+ * unless a concurrent group commit has already written it; replaying it changes nothing either. The
+ * write or remove then returns once the log's fsync policy is met. Only that wait happens outside the
+ * lock, so concurrent writers share a group commit. Readers may see a change slightly before it is
+ * durable.
+ *
+ * Reads are answered by the in-memory store. A batch the in-memory store refuses as invalid (e.g. expiring
+ * tuples, for a store that cannot expire them) is retracted and its InvalidTupleException thrown; the log
+ * stays usable. An I/O error while logging is thrown as an UncheckedIOException and fails the log, so every
+ * later change is refused. So does any other failure to apply a logged change, since the log may no longer
+ * match the store.
+ */
+public class DurableTupleStore
+implements TupleStore, Closeable
+{
+	private final TupleStore tuples;
+	private final WriteAheadLog log;
+	private final Object writeLock = new Object();
+
+	// While replaying, the last record read, applied once the next record shows whether it changed anything.
+	private Record replayed;
+
+	/**
+	 * Open a durable SimpleTupleStore logged in the given directory with the ALWAYS fsync policy.
+	 */
+	public DurableTupleStore(Path directory)
+	throws IOException
+	{
+		this(new SimpleTupleStore(), new WriteAheadLog(directory));
+	}
+
+	/**
+	 * Replay the log into the (empty) store, then log every later change to it.
+	 *
+	 * @param tuples the in-memory store that answers reads.
+	 * @param log the log to replay and append to.
+	 * @throws IOException if the log cannot be replayed.
+	 */
+	public DurableTupleStore(TupleStore tuples, WriteAheadLog log)
+	throws IOException
+	{
+		super();
+		this.tuples = tuples;
+		this.log = log;
+		log.replay(this::replay);
+		if (replayed != null) apply(replayed);
+		replayed = null;
+	}
+
+	/**
+	 * Answer the in-memory store. Changes made to it directly are not logged.
+	 */
+	public TupleStore getTupleStore()
+	{
+		return tuples;
+	}
+
+	/**
+	 * Write and fsync every logged change, regardless of the fsync policy.
+	 */
+	public void sync()
+	throws IOException
+	{
+		log.sync();
+	}
+
+	@Override
+	public void close()
+	throws IOException
+	{
+		log.close();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return tuples.isEmpty();
+	}
+
+	@Override
+	public long getRevision()
+	{
+		return tuples.getRevision();
+	}
+
+	@Override
+	public long getNextExpiry()
+	{
+		return tuples.getNextExpiry();
+	}
+
+	@Override
+	public Zookie getZookie()
+	{
+		return tuples.getZookie();
+	}
+
+	@Override
+	public boolean check(UserSet userset, String relation, ObjectId objectId)
+	{
+		return tuples.check(userset, relation, objectId);
+	}
+
+	@Override
+	public boolean check(UserSet userset, String relation, ObjectId objectId, Zookie zookie)
+	{
+		return tuples.check(userset, relation, objectId, zookie);
+	}
+
+	@Override
+	public CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		return tuples.checkAsync(userset, relation, objectId);
+	}
+
+	@Override
+	public BitSet checkAll(UserSet userset, String relation, List<ObjectId> objectIds)
+	{
+		return tuples.checkAll(userset, relation, objectIds);
+	}
+
+	@Override
+	public Collection<Tuple> read(TupleSet tupleSet)
+	{
+		return tuples.read(tupleSet);
+	}
+
+	@Override
+	public CompletionStage<Collection<Tuple>> readAsync(TupleSet tupleSet)
+	{
+		return tuples.readAsync(tupleSet);
+	}
+
+	@Override
+	public Collection<Tuple> read(TupleSet tupleSet, Zookie zookie)
+	{
+		return tuples.read(tupleSet, zookie);
+	}
+
+	@Override
+	public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+	{
+		return tuples.read(tupleSets);
+	}
+
+	@Override
+	public DurableTupleStore write(Tuple tuple)
+	throws InvalidTupleException
+	{
+		return write(Collections.singletonList(tuple));
+	}
+
+	@Override
+	public DurableTupleStore write(Collection<Tuple> tuples)
+	throws InvalidTupleException
+	{
+		if (tuples == null || tuples.isEmpty()) return this;
+
+		for (Tuple tuple : tuples)
+		{
+			if (tuple == null)
+			{
+				throw new InvalidTupleException("Tuple cannot be null.");
+			}
+			else if (!tuple.isValid())
+			{
+				throw new InvalidTupleException("Invalid tuple: " + tuple);
+			}
+		}
+
+		long sequence;
+
+		synchronized (writeLock)
+		{
+			long revision = this.tuples.getRevision();
+			sequence = append(Operation.WRITE, revision + 1, tuples);
+
+			try
+			{
+				this.tuples.write(tuples);
+			}
+			catch (InvalidTupleException e)
+			{
+				// The store refuses a batch before changing anything, so only the record is taken back.
+				log.retract(sequence);
+				throw e;
+			}
+			catch (RuntimeException | Error e)
+			{
+				log.fail(e);
+				throw e;
+			}
+
+			if (this.tuples.getRevision() == revision)
+			{
+				log.retract(sequence);
+				return this;
+			}
+		}
+
+		return flush(sequence);
+	}
+
+	@Override
+	public DurableTupleStore write(UserSet userset, String relation, ObjectId objectId)
+	throws InvalidTupleException
+	{
+		return write(new Tuple(userset, relation, objectId));
+	}
+
+	@Override
+	public DurableTupleStore remove(Tuple tuple)
+	{
+		if (tuple == null) return this;
+
+		return remove(Collections.singletonList(tuple));
+	}
+
+	@Override
+	public DurableTupleStore remove(Collection<Tuple> tuples)
+	{
+		if (tuples == null || tuples.isEmpty()) return this;
+
+		long sequence;
+
+		synchronized (writeLock)
+		{
+			long revision = this.tuples.getRevision();
+			sequence = append(Operation.REMOVE, revision + 1, tuples);
+
+			try
+			{
+				this.tuples.remove(tuples);
+			}
+			catch (RuntimeException | Error e)
+			{
+				log.fail(e);
+				throw e;
+			}
+
+			if (this.tuples.getRevision() == revision)
+			{
+				log.retract(sequence);
+				return this;
+			}
+		}
+
+		return flush(sequence);
+	}
+
+	@Override
+	public DurableTupleStore remove(UserSet userset, String relation, ObjectId objectId)
+	{
+		if (userset == null || relation == null || objectId == null) return this;
+
+		return remove(new Tuple(userset, relation, objectId));
+	}
+
+	private long append(Operation operation, long revision, Collection<Tuple> tuples)
+	{
+		try
+		{
+			return log.append(operation, revision, tuples);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private DurableTupleStore flush(long sequence)
+	{
+		try
+		{
+			log.flush(sequence);
+			return this;
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Hold back each record until the next one is read. A record made at the same revision as the next one
+	 * changed nothing: it was written by a group commit before it could be retracted, so it is skipped.
+	 */
+	private void replay(Record record)
+	{
+		if (replayed != null && replayed.getRevision() != record.getRevision()) apply(replayed);
+		replayed = record;
+	}
+
+	/**
+	 * Apply a replayed record to the in-memory store as its own batch, as it was originally, then restore
+	 * the revision it was made at. A change may no longer change anything when replayed, e.g. the remove of
+	 * a tuple that has expired since, or a write the reaper had made a change by removing the expired tuple
+	 * it re-wrote; the store's revision is advanced past it all the same.
+	 */
+	private void apply(Record record)
+	{
+		try
+		{
+			if (record.getOperation() == Operation.WRITE)
+			{
+				tuples.write(record.getTuples());
+			}
+			else
+			{
+				tuples.remove(record.getTuples());
+			}
+		}
+		catch (InvalidTupleException e)
+		{
+			// A batch the store refused, written by a group commit before it could be retracted. It changed
+			// nothing then and is refused again now.
+			return;
+		}
+
+		tuples.advanceRevision(record.getRevision());
+	}
+}
@@ -0,0 +1,672 @@
+package com.strategicgains.aclaid.domain.wal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+
+/**
+ * A segmented, append-only log of TupleStore writes and removes on local disk.
+ *
+ * Each record holds one batch of tuples and is framed as [length][CRC32C][payload], so a record torn
+ * by a crash is detected on replay and truncated. The log is split into numbered segment files of
+ * about the configured size; a new segment is started once the current one is full, and on every
+ * open, so a replayed segment is never appended to.
+ *
+ * Appending only copies the record into a buffer. {@link #flush(long)} then writes it to the segment
+ * with group commit: one thread writes (and fsyncs) everything appended so far while the others wait,
+ * so concurrent writers share a single write and fsync. When the fsync happens depends on the policy:
+ * <ul>
+ * <li>ALWAYS - before flush() returns. No acknowledged write is lost on power failure.</li>
+ * <li>PERIODIC - every fsync interval, in the background. flush() returns once the record has reached
+ * the operating system, so writes survive a process crash but the last interval may be lost on
+ * power failure.</li>
+ * <li>NEVER - only when a segment is completed or the log is closed.</li>
+ * </ul>
+ *
+ * An I/O error while writing or syncing fails the log: the record may or may not be on disk, so every
+ * later append and flush throws rather than acknowledging writes that may not survive a restart.
+ */
+public class WriteAheadLog
+implements Closeable
+{
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+	public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 10;
+
+	static final String SEGMENT_SUFFIX = ".wal";
+	private static final int MAGIC = 0x41434C57; // "ACLW"
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_SIZE = 2 * Integer.BYTES;
+	private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	private static final int NULL_LENGTH = -1;
+
+	public enum FsyncPolicy
+	{
+		ALWAYS,
+		PERIODIC,
+		NEVER
+	}
+
+	public enum Operation
+	{
+		WRITE,
+		REMOVE
+	}
+
+	/**
+	 * A logged batch and the revision it was made at.
+	 */
+	public static final class Record
+	{
+		private final Operation operation;
+		private final long revision;
+		private final List<Tuple> tuples;
+
+		private Record(Operation operation, long revision, List<Tuple> tuples)
+		{
+			super();
+			this.operation = operation;
+			this.revision = revision;
+			this.tuples = Collections.unmodifiableList(tuples);
+		}
+
+		public Operation getOperation()
+		{
+			return operation;
+		}
+
+		public long getRevision()
+		{
+			return revision;
+		}
+
+		public List<Tuple> getTuples()
+		{
+			return tuples;
+		}
+	}
+
+	private final Path directory;
+	private final FsyncPolicy policy;
+	private final long segmentSize;
+	private final ScheduledExecutorService syncer;
+
+	// Guarded by appendLock.
+	private final Object appendLock = new Object();
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private long appended;
+
+	// The buffer holding the last appended record, and where the record starts in it, until it is written.
+	private ByteBuffer lastBuffer;
+	private int lastPosition;
+
+	// Guarded by flushLock.
+	private final Object flushLock = new Object();
+	private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private FileChannel segment;
+	private long segmentPosition;
+	private long nextSegment;
+
+	private volatile long written;
+	private volatile long synced;
+	private volatile IOException failure;
+	private volatile boolean isClosed;
+
+	/**
+	 * Open the log in the given directory with the ALWAYS fsync policy, creating the directory if needed.
+	 */
+	public WriteAheadLog(Path directory)
+	throws IOException
+	{
+		this(directory, FsyncPolicy.ALWAYS, DEFAULT_FSYNC_INTERVAL_MILLIS, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param directory the directory holding the segment files. Created if needed.
+	 * @param policy when appended records are fsynced.
+	 * @param fsyncIntervalMillis how often the PERIODIC policy fsyncs. Ignored by the other policies.
+	 * @param segmentSize the size at which a segment is completed and a new one started.
+	 */
+	public WriteAheadLog(Path directory, FsyncPolicy policy, long fsyncIntervalMillis, long segmentSize)
+	throws IOException
+	{
+		super();
+
+		if (policy == null) throw new IllegalArgumentException("Fsync policy cannot be null");
+		if (segmentSize < HEADER_SIZE) throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+		if (policy == FsyncPolicy.PERIODIC && fsyncIntervalMillis < 1) throw new IllegalArgumentException("Fsync interval must be positive: " + fsyncIntervalMillis);
+
+		this.directory = Files.createDirectories(directory);
+		this.policy = policy;
+		this.segmentSize = segmentSize;
+		List<Path> segments = segments();
+		this.nextSegment = (segments.isEmpty() ? 1 : indexOf(segments.get(segments.size() - 1)) + 1);
+
+		if (policy == FsyncPolicy.PERIODIC)
+		{
+			this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "wal-fsync-" + directory.getFileName());
+				thread.setDaemon(true);
+				return thread;
+			});
+			syncer.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			this.syncer = null;
+		}
+	}
+
+	public FsyncPolicy getFsyncPolicy()
+	{
+		return policy;
+	}
+
+	/**
+	 * Read every record in the log, oldest first. A torn record at the end of the newest segment (a write
+	 * interrupted by a crash, which was never acknowledged) is truncated. Call before the first append.
+	 *
+	 * @param handler receives each record in log order.
+	 * @return the number of records replayed.
+	 * @throws IOException if a segment cannot be read, or is corrupt anywhere but its tail.
+	 */
+	public long replay(Consumer<Record> handler)
+	throws IOException
+	{
+		List<Path> segments = segments();
+		long count = 0;
+
+		for (int i = 0; i < segments.size(); i++)
+		{
+			count += replay(segments.get(i), (i == segments.size() - 1), handler);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Append a batch to the log. The record is not durable until {@link #flush(long)} returns for the
+	 * answered sequence number.
+	 *
+	 * @param operation
+	 * @param revision the store revision the batch is made at.
+	 * @param tuples the batch. Its tuples must be valid.
+	 * @return the record's sequence number.
+	 * @throws IOException if the log has failed or is closed.
+	 */
+	public long append(Operation operation, long revision, Collection<Tuple> tuples)
+	throws IOException
+	{
+		byte[] record = encode(operation, revision, tuples);
+
+		synchronized (appendLock)
+		{
+			ensureWritable();
+
+			if (buffer.remaining() < record.length)
+			{
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() << 1, buffer.position() + record.length));
+				buffer.flip();
+				buffer = larger.put(buffer);
+			}
+
+			lastBuffer = buffer;
+			lastPosition = buffer.position();
+			buffer.put(record);
+			return ++appended;
+		}
+	}
+
+	/**
+	 * Take back the last appended record if it has not been written yet, e.g. because the change it
+	 * describes turned out to change nothing. A record that was already written stays in the log.
+	 *
+	 * @param sequence the sequence number answered by {@link #append(Operation, long, Collection)}.
+	 * @return true if the record was taken back.
+	 */
+	public boolean retract(long sequence)
+	{
+		synchronized (appendLock)
+		{
+			if (sequence != appended || lastBuffer != buffer) return false;
+
+			buffer.position(lastPosition);
+			lastBuffer = null;
+			appended--;
+			return true;
+		}
+	}
+
+	/**
+	 * Make the record with the given sequence number, and all before it, as durable as the fsync policy
+	 * requires. Records appended by other threads are written (and fsynced) with it.
+	 *
+	 * @param sequence a sequence number answered by {@link #append(Operation, long, Collection)}.
+	 * @throws IOException if the log has failed or is closed.
+	 */
+	public void flush(long sequence)
+	throws IOException
+	{
+		flush(sequence, (policy == FsyncPolicy.ALWAYS));
+	}
+
+	/**
+	 * Write and fsync every record appended so far, regardless of the fsync policy.
+	 */
+	public void sync()
+	throws IOException
+	{
+		long sequence;
+
+		synchronized (appendLock)
+		{
+			sequence = appended;
+		}
+
+		flush(sequence, true);
+	}
+
+	/**
+	 * Write and fsync every appended record, then close the current segment. Later appends fail.
+	 */
+	@Override
+	public void close()
+	throws IOException
+	{
+		if (isClosed) return;
+
+		if (syncer != null)
+		{
+			// Not shutdownNow(): interrupting a sync in progress would close the segment's channel.
+			syncer.shutdown();
+
+			try
+			{
+				syncer.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		try
+		{
+			if (failure == null) sync();
+		}
+		finally
+		{
+			isClosed = true;
+
+			synchronized (flushLock)
+			{
+				if (segment != null) segment.close();
+				segment = null;
+			}
+		}
+	}
+
+	private void flush(long sequence, boolean isSync)
+	throws IOException
+	{
+		if (isSync ? synced >= sequence : written >= sequence) return;
+
+		synchronized (flushLock)
+		{
+			ensureWritable();
+
+			try
+			{
+				if (written < sequence)
+				{
+					write();
+				}
+
+				if (isSync && synced < sequence)
+				{
+					long upTo = written;
+					segment.force(false);
+					synced = upTo;
+				}
+			}
+			catch (IOException e)
+			{
+				failure = e;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Write everything appended so far to the current segment. Called holding the flushLock.
+	 */
+	private void write()
+	throws IOException
+	{
+		ByteBuffer pending;
+		long upTo;
+
+		synchronized (appendLock)
+		{
+			pending = buffer;
+			buffer = spare;
+			upTo = appended;
+			lastBuffer = null;
+		}
+
+		pending.flip();
+
+		if (segment == null || (segmentPosition > HEADER_SIZE && segmentPosition + pending.remaining() > segmentSize))
+		{
+			roll();
+		}
+
+		while (pending.hasRemaining())
+		{
+			segmentPosition += segment.write(pending);
+		}
+
+		pending.clear();
+		spare = pending;
+		written = upTo;
+	}
+
+	/**
+	 * Complete the current segment, if any, and start the next one. Called holding the flushLock.
+	 */
+	private void roll()
+	throws IOException
+	{
+		if (segment != null)
+		{
+			// Only the newest segment may end in a torn record.
+			segment.force(false);
+			synced = written;
+			segment.close();
+		}
+
+		Path path = directory.resolve(String.format("%020d%s", nextSegment++, SEGMENT_SUFFIX));
+		segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION);
+		header.flip();
+
+		while (header.hasRemaining())
+		{
+			segment.write(header);
+		}
+
+		segmentPosition = HEADER_SIZE;
+		if (policy != FsyncPolicy.NEVER) syncDirectory();
+	}
+
+	/**
+	 * Fsync the directory so a new segment's file entry survives a power failure.
+	 */
+	private void syncDirectory()
+	{
+		try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			dir.force(true);
+		}
+		catch (IOException e)
+		{
+			// Not supported on every platform (e.g. Windows). The segment's contents are still fsynced.
+		}
+	}
+
+	/**
+	 * Fail the log because an appended record no longer matches the state it describes, e.g. the store
+	 * it was appended for could not apply it. Every later append and flush throws.
+	 */
+	void fail(Throwable cause)
+	{
+		synchronized (flushLock)
+		{
+			if (failure == null) failure = new IOException("Appended record could not be applied", cause);
+		}
+	}
+
+	private void syncQuietly()
+	{
+		try
+		{
+			if (!isClosed) sync();
+		}
+		catch (IOException e)
+		{
+			// Recorded as the log's failure and thrown to the next writer.
+		}
+	}
+
+	private void ensureWritable()
+	throws IOException
+	{
+		if (failure != null) throw new IOException("Write-ahead log failed", failure);
+		if (isClosed) throw new IOException("Write-ahead log is closed");
+	}
+
+	private long replay(Path path, boolean isLast, Consumer<Record> handler)
+	throws IOException
+	{
+		long size = Files.size(path);
+
+		if (size < HEADER_SIZE)
+		{
+			// A crash while starting the segment, before anything was appended to it.
+			if (!isLast) throw new IOException("Truncated write-ahead log segment: " + path);
+			Files.delete(path);
+			return 0;
+		}
+
+		long position = HEADER_SIZE;
+		long count = 0;
+		CRC32C crc = new CRC32C();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), INITIAL_BUFFER_SIZE)))
+		{
+			if (in.readInt() != MAGIC) throw new IOException("Not a write-ahead log segment: " + path);
+			int version = in.readInt();
+			if (version != FORMAT_VERSION) throw new IOException("Unsupported write-ahead log version " + version + ": " + path);
+
+			while (position < size)
+			{
+				Record record = null;
+				long remaining = size - position - RECORD_HEADER_SIZE;
+				int length = (remaining >= 0 ? in.readInt() : -1);
+
+				if (length >= 0 && length <= remaining)
+				{
+					int checksum = in.readInt();
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+					crc.reset();
+					crc.update(payload);
+					if ((int) crc.getValue() == checksum) record = decode(payload);
+				}
+
+				if (record == null)
+				{
+					if (!isLast) throw new IOException("Corrupt write-ahead log segment at " + position + ": " + path);
+					break;
+				}
+
+				handler.accept(record);
+				position += RECORD_HEADER_SIZE + length;
+				count++;
+			}
+		}
+
+		if (position < size)
+		{
+			// A torn record that was never acknowledged. Drop it so it is not read as corruption once this
+			// segment is no longer the newest.
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+			{
+				channel.truncate(position);
+				channel.force(false);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Encode a batch as a framed record: [length][CRC32C][payload], where the payload is the operation, the
+	 * revision, the tuple count and each tuple's userset object, userset relation, relation, object and expiry.
+	 */
+	private static byte[] encode(Operation operation, long revision, Collection<Tuple> tuples)
+	{
+		List<byte[]> strings = new ArrayList<>(tuples.size() * 4);
+		int length = 1 + Long.BYTES + Integer.BYTES;
+
+		for (Tuple tuple : tuples)
+		{
+			length += utf8(strings, tuple.getUsersetObjectId().toString())
+				+ utf8(strings, tuple.getUsersetRelation())
+				+ utf8(strings, tuple.getRelation())
+				+ utf8(strings, tuple.getObjectId().toString())
+				+ 1 + (tuple.expires() ? Long.BYTES : 0);
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+		record.position(RECORD_HEADER_SIZE);
+		record.put((byte) operation.ordinal());
+		record.putLong(revision);
+		record.putInt(tuples.size());
+		int i = 0;
+
+		for (Tuple tuple : tuples)
+		{
+			for (int end = i + 4; i < end; i++)
+			{
+				putString(record, strings.get(i));
+			}
+
+			if (tuple.expires())
+			{
+				record.put((byte) 1);
+				record.putLong(tuple.getExpiresAt().getTime());
+			}
+			else
+			{
+				record.put((byte) 0);
+			}
+		}
+
+		CRC32C crc = new CRC32C();
+		crc.update(record.array(), RECORD_HEADER_SIZE, length);
+		record.putInt(0, length);
+		record.putInt(Integer.BYTES, (int) crc.getValue());
+		return record.array();
+	}
+
+	private static int utf8(List<byte[]> strings, String string)
+	{
+		byte[] bytes = (string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+		strings.add(bytes);
+		return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] bytes)
+	{
+		if (bytes == null)
+		{
+			buffer.putInt(NULL_LENGTH);
+		}
+		else
+		{
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	/**
+	 * Decode a record's payload, answering null if it is malformed.
+	 */
+	private static Record decode(byte[] payload)
+	{
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(payload);
+			int operation = buffer.get();
+			if (operation < 0 || operation >= Operation.values().length) return null;
+
+			long revision = buffer.getLong();
+			int count = buffer.getInt();
+			if (count < 0) return null;
+
+			List<Tuple> tuples = new ArrayList<>(Math.min(count, payload.length));
+
+			for (int i = 0; i < count; i++)
+			{
+				UserSet userset = new UserSet(new ObjectId(getString(buffer)), getString(buffer));
+				Tuple tuple = new Tuple(userset, getString(buffer), new ObjectId(getString(buffer)));
+				if (buffer.get() != 0) tuple.setExpiresAt(new Date(buffer.getLong()));
+				tuples.add(tuple);
+			}
+
+			return (buffer.hasRemaining() ? null : new Record(Operation.values()[operation], revision, tuples));
+		}
+		catch (ParseException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	private static String getString(ByteBuffer buffer)
+	{
+		int length = buffer.getInt();
+		if (length == NULL_LENGTH) return null;
+
+		String string = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return string;
+	}
+
+	private static long indexOf(Path segment)
+	{
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private List<Path> segments()
+	throws IOException
+	{
+		List<Path> segments = new ArrayList<>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX))
+		{
+			for (Path file : files)
+			{
+				segments.add(file);
+			}
+		}
+
+		// Names are zero-padded, so name order is segment order.
+		Collections.sort(segments);
+		return segments;
+	}
+}
@@ -0,0 +1,49 @@
+package com.strategicgains.aclaid.domain.watch;
+
+import com.strategicgains.aclaid.domain.Tuple;
+
+/**
+ * A tuple written to or removed from a {@link WatchableTupleStore}, with the store revision the change
+ * was made at. Events of one batch share a revision.
+ */
+public final class ChangeEvent
+{
+	public enum Type
+	{
+		WRITE,
+		REMOVE
+	}
+
+	private final Type type;
+	private final Tuple tuple;
+	private final long revision;
+
+	public ChangeEvent(Type type, Tuple tuple, long revision)
+	{
+		super();
+		this.type = type;
+		this.tuple = tuple;
+		this.revision = revision;
+	}
+
+	public Type getType()
+	{
+		return type;
+	}
+
+	public Tuple getTuple()
+	{
+		return tuple;
+	}
+
+	public long getRevision()
+	{
+		return revision;
+	}
+
+	@Override
+	public String toString()
+	{
+		return type + " " + tuple + " @" + revision;
+	}
+}
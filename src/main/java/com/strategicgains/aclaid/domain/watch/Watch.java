@@ -0,0 +1,78 @@
+package com.strategicgains.aclaid.domain.watch;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.strategicgains.aclaid.exception.RevisionExpiredException;
+
+/**
+ * An ordered stream of the changes made to a {@link WatchableTupleStore} after a revision.
+ *
+ * A Watch is a cursor into the store's bounded change history: events are not copied per watch, and
+ * the consumer pulls them at its own pace with {@link #poll(int, long, TimeUnit)}. A consumer that
+ * falls behind either holds back writers or has its watch expire, depending on the store's overflow
+ * policy. An expired (or closed) watch can be resumed without missing or repeating changes by
+ * watching again from {@link #getRevision()}.
+ *
+ * A Watch is intended for a single consuming thread.
+ */
+public class Watch
+implements Closeable
+{
+	private final WatchableTupleStore store;
+
+	// Guarded by the store's lock.
+	long cursor;
+	boolean closed;
+	boolean expired;
+
+	// The revision through which every change has been delivered.
+	volatile long revision;
+
+	Watch(WatchableTupleStore store, long cursor, long revision)
+	{
+		super();
+		this.store = store;
+		this.cursor = cursor;
+		this.revision = revision;
+	}
+
+	/**
+	 * Answer up to maxEvents of the next changes, in the order they were made, waiting up to the timeout
+	 * for the first one.
+	 *
+	 * @param maxEvents the most events to return.
+	 * @param timeout how long to wait when no change is pending.
+	 * @param unit the unit of the timeout.
+	 * @return the next changes, or an empty list if none were made in time or the watch is closed.
+	 * @throws IllegalArgumentException if maxEvents is less than one.
+	 * @throws RevisionExpiredException if the changes after this watch's revision are no longer retained.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public List<ChangeEvent> poll(int maxEvents, long timeout, TimeUnit unit)
+	throws RevisionExpiredException, InterruptedException
+	{
+		if (maxEvents < 1) throw new IllegalArgumentException("Maximum events must be positive: " + maxEvents);
+
+		return store.poll(this, maxEvents, timeout, unit);
+	}
+
+	/**
+	 * Answer the revision through which every change has been delivered by this watch. The events of a
+	 * batch share a revision, so this only advances once the whole batch has been delivered.
+	 */
+	public long getRevision()
+	{
+		return revision;
+	}
+
+	/**
+	 * Stop watching. A writer waiting on this watch under the BLOCK overflow policy is released.
+	 */
+	@Override
+	public void close()
+	{
+		store.close(this);
+	}
+}
@@ -0,0 +1,485 @@
+package com.strategicgains.aclaid.domain.watch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.TupleStore;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.Zookie;
+import com.strategicgains.aclaid.domain.watch.ChangeEvent.Type;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+import com.strategicgains.aclaid.exception.RevisionExpiredException;
+
+/**
+ * A TupleStore that records every write and remove made through it as ordered {@link ChangeEvent}s, in
+ * the spirit of Zanzibar's Watch API, so caches and indexes derived from the tuples can be updated
+ * incrementally instead of polling reads.
+ *
+ * A change is applied to the wrapped store and recorded in one step, so events are in the order the
+ * changes were applied and carry the revision the store reached. A batch that changes the store is
+ * recorded in full, as its tuples were given, so consumers should treat events as idempotent (a batch
+ * may re-write a present tuple). Changes that leave the store unchanged are not recorded, nor are
+ * changes made to the wrapped store directly.
+ *
+ * Events are kept in a bounded ring of the most recent historySize changes, shared by every
+ * {@link Watch}. When it is full and a watch has not consumed the oldest event, the overflow policy
+ * decides:
+ * <ul>
+ * <li>BLOCK - writers wait until the slowest watch catches up (backpressure). A watch must therefore
+ * not be consumed by a thread that also writes to this store. A single batch larger than the history
+ * still expires watches that have not caught up.</li>
+ * <li>EXPIRE - the oldest event is dropped and the lagging watch expires; the consumer rebuilds or
+ * resumes from its last complete revision.</li>
+ * </ul>
+ *
+ * Reads are answered by the wrapped store.
+ */
+public class WatchableTupleStore
+implements TupleStore
+{
+	public static final int DEFAULT_HISTORY_SIZE = 10_000;
+
+	public enum OverflowPolicy
+	{
+		BLOCK,
+		EXPIRE
+	}
+
+	private final TupleStore tuples;
+	private final OverflowPolicy policy;
+	private final ChangeEvent[] history;
+	private final List<Watch> watches = new ArrayList<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition recorded = lock.newCondition();
+	private final Condition consumed = lock.newCondition();
+
+	// Sequence numbers of the oldest retained event and of the next event.
+	private long head;
+	private long tail;
+
+	// Changes at or before this revision may no longer be retained.
+	private long expiredRevision;
+
+	public WatchableTupleStore(TupleStore tuples)
+	{
+		this(tuples, DEFAULT_HISTORY_SIZE, OverflowPolicy.EXPIRE);
+	}
+
+	/**
+	 * @param tuples the store to apply changes to and answer reads from.
+	 * @param historySize the number of recent change events retained for watches.
+	 * @param policy what to do when a watch falls historySize events behind.
+	 */
+	public WatchableTupleStore(TupleStore tuples, int historySize, OverflowPolicy policy)
+	{
+		super();
+		if (historySize < 1) throw new IllegalArgumentException("History size must be positive: " + historySize);
+
+		this.tuples = tuples;
+		this.policy = policy;
+		this.history = new ChangeEvent[historySize];
+		this.expiredRevision = tuples.getRevision();
+	}
+
+	/**
+	 * Answer the wrapped store. Changes made to it directly are not watched.
+	 */
+	public TupleStore getTupleStore()
+	{
+		return tuples;
+	}
+
+	/**
+	 * Watch the changes made after the current revision.
+	 */
+	public Watch watch()
+	{
+		lock.lock();
+
+		try
+		{
+			return open(tail, tuples.getRevision());
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Watch the changes made after the Zookie's revision.
+	 *
+	 * @throws RevisionExpiredException if changes after that revision are no longer retained.
+	 */
+	public Watch watch(Zookie zookie)
+	throws RevisionExpiredException
+	{
+		return watch(zookie.getRevision());
+	}
+
+	/**
+	 * Watch the changes made after the given revision, starting with those still in the history.
+	 *
+	 * @param revision e.g. the revision a derived cache was built at.
+	 * @throws RevisionExpiredException if changes after that revision are no longer retained.
+	 */
+	public Watch watch(long revision)
+	throws RevisionExpiredException
+	{
+		lock.lock();
+
+		try
+		{
+			if (revision < expiredRevision)
+			{
+				throw new RevisionExpiredException("Changes after revision " + revision + " are no longer retained; the oldest watchable revision is " + expiredRevision);
+			}
+
+			return open(firstAfter(revision), revision);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return tuples.isEmpty();
+	}
+
+	@Override
+	public long getRevision()
+	{
+		return tuples.getRevision();
+	}
+
+	@Override
+	public long getNextExpiry()
+	{
+		return tuples.getNextExpiry();
+	}
+
+	/**
+	 * Advance the wrapped store's revision. Watches see no event for the skipped revisions.
+	 */
+	@Override
+	public boolean advanceRevision(long revision)
+	{
+		lock.lock();
+
+		try
+		{
+			return tuples.advanceRevision(revision);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Zookie getZookie()
+	{
+		return tuples.getZookie();
+	}
+
+	@Override
+	public boolean check(UserSet userset, String relation, ObjectId objectId)
+	{
+		return tuples.check(userset, relation, objectId);
+	}
+
+	@Override
+	public boolean check(UserSet userset, String relation, ObjectId objectId, Zookie zookie)
+	{
+		return tuples.check(userset, relation, objectId, zookie);
+	}
+
+	@Override
+	public CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId)
+	{
+		return tuples.checkAsync(userset, relation, objectId);
+	}
+
+	@Override
+	public BitSet checkAll(UserSet userset, String relation, List<ObjectId> objectIds)
+	{
+		return tuples.checkAll(userset, relation, objectIds);
+	}
+
+	@Override
+	public Collection<Tuple> read(TupleSet tupleSet)
+	{
+		return tuples.read(tupleSet);
+	}
+
+	@Override
+	public CompletionStage<Collection<Tuple>> readAsync(TupleSet tupleSet)
+	{
+		return tuples.readAsync(tupleSet);
+	}
+
+	@Override
+	public Collection<Tuple> read(TupleSet tupleSet, Zookie zookie)
+	{
+		return tuples.read(tupleSet, zookie);
+	}
+
+	@Override
+	public Collection<Tuple> read(Collection<TupleSet> tupleSets)
+	{
+		return tuples.read(tupleSets);
+	}
+
+	@Override
+	public WatchableTupleStore write(Tuple tuple)
+	throws InvalidTupleException
+	{
+		return write(Collections.singletonList(tuple));
+	}
+
+	@Override
+	public WatchableTupleStore write(Collection<Tuple> tuples)
+	throws InvalidTupleException
+	{
+		if (tuples == null || tuples.isEmpty()) return this;
+
+		for (Tuple tuple : tuples)
+		{
+			if (tuple == null)
+			{
+				throw new InvalidTupleException("Tuple cannot be null.");
+			}
+			else if (!tuple.isValid())
+			{
+				throw new InvalidTupleException("Invalid tuple: " + tuple);
+			}
+		}
+
+		lock.lock();
+
+		try
+		{
+			awaitCapacity(tuples.size());
+			long revision = this.tuples.getRevision();
+			this.tuples.write(tuples);
+			record(Type.WRITE, tuples, revision);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		return this;
+	}
+
+	@Override
+	public WatchableTupleStore write(UserSet userset, String relation, ObjectId objectId)
+	throws InvalidTupleException
+	{
+		return write(new Tuple(userset, relation, objectId));
+	}
+
+	@Override
+	public WatchableTupleStore remove(Tuple tuple)
+	{
+		if (tuple == null) return this;
+
+		return remove(Collections.singletonList(tuple));
+	}
+
+	@Override
+	public WatchableTupleStore remove(Collection<Tuple> tuples)
+	{
+		if (tuples == null || tuples.isEmpty()) return this;
+
+		lock.lock();
+
+		try
+		{
+			awaitCapacity(tuples.size());
+			long revision = this.tuples.getRevision();
+			this.tuples.remove(tuples);
+			record(Type.REMOVE, tuples, revision);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		return this;
+	}
+
+	@Override
+	public WatchableTupleStore remove(UserSet userset, String relation, ObjectId objectId)
+	{
+		if (userset == null || relation == null || objectId == null) return this;
+
+		return remove(new Tuple(userset, relation, objectId));
+	}
+
+	List<ChangeEvent> poll(Watch watch, int maxEvents, long timeout, TimeUnit unit)
+	throws RevisionExpiredException, InterruptedException
+	{
+		long nanos = unit.toNanos(timeout);
+		lock.lock();
+
+		try
+		{
+			while (!watch.closed && watch.cursor == tail && nanos > 0)
+			{
+				nanos = recorded.awaitNanos(nanos);
+			}
+
+			if (watch.expired || (!watch.closed && watch.cursor < head))
+			{
+				expire(watch);
+				throw new RevisionExpiredException("Watch fell more than " + history.length + " changes behind; resume from revision " + watch.revision);
+			}
+
+			if (watch.closed || watch.cursor == tail) return Collections.emptyList();
+
+			int count = (int) Math.min(maxEvents, tail - watch.cursor);
+			List<ChangeEvent> events = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++)
+			{
+				events.add(eventAt(watch.cursor++));
+			}
+
+			// Batches are recorded whole, so the last revision is complete unless the next event shares it.
+			long last = events.get(count - 1).getRevision();
+
+			if (watch.cursor == tail || eventAt(watch.cursor).getRevision() != last)
+			{
+				watch.revision = last;
+			}
+
+			consumed.signalAll();
+			return events;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	void close(Watch watch)
+	{
+		lock.lock();
+
+		try
+		{
+			watch.closed = true;
+			watches.remove(watch);
+			recorded.signalAll();
+			consumed.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private Watch open(long cursor, long revision)
+	{
+		Watch watch = new Watch(this, cursor, revision);
+		watches.add(watch);
+		return watch;
+	}
+
+	private void expire(Watch watch)
+	{
+		watch.expired = true;
+		watches.remove(watch);
+		consumed.signalAll();
+	}
+
+	/**
+	 * Answer the sequence of the first retained event after the revision, or tail if there is none.
+	 * Revisions never decrease along the history, so this is a binary search.
+	 */
+	private long firstAfter(long revision)
+	{
+		long low = head;
+		long high = tail;
+
+		while (low < high)
+		{
+			long middle = (low + high) >>> 1;
+
+			if (eventAt(middle).getRevision() <= revision) low = middle + 1;
+			else high = middle;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Under the BLOCK policy, wait until every open watch has room for the batch in the history.
+	 */
+	private void awaitCapacity(int count)
+	{
+		if (policy != OverflowPolicy.BLOCK) return;
+
+		long needed = Math.min(count, history.length);
+
+		while (lagging(needed))
+		{
+			consumed.awaitUninterruptibly();
+		}
+	}
+
+	private boolean lagging(long needed)
+	{
+		for (Watch watch : watches)
+		{
+			if (watch.cursor >= head && (tail - watch.cursor) + needed > history.length) return true;
+		}
+
+		return false;
+	}
+
+	private void record(Type type, Collection<Tuple> tuples, long previousRevision)
+	{
+		long revision = this.tuples.getRevision();
+		if (revision == previousRevision) return;
+
+		for (Tuple tuple : tuples)
+		{
+			if (tuple == null) continue;
+
+			if (tail - head == history.length)
+			{
+				expiredRevision = eventAt(head).getRevision();
+				history[index(head++)] = null;
+			}
+
+			history[index(tail++)] = new ChangeEvent(type, tuple, revision);
+		}
+
+		recorded.signalAll();
+	}
+
+	private ChangeEvent eventAt(long sequence)
+	{
+		return history[index(sequence)];
+	}
+
+	private int index(long sequence)
+	{
+		return (int) (sequence % history.length);
+	}
+}
@@ -0,0 +1,21 @@
+package com.strategicgains.aclaid.exception;
+
+/**
+ * Thrown when a check exceeds its {@link com.strategicgains.aclaid.domain.CheckBudget}. Unchecked, so it
+ * unwinds through the rewrite evaluation to the top-level check, which answers it as indeterminate.
+ */
+public class BudgetExceededException
+extends RuntimeException
+{
+	private static final long serialVersionUID = 6417205834139756230L;
+
+	public BudgetExceededException()
+	{
+		super();
+	}
+
+	public BudgetExceededException(String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,26 @@
+package com.strategicgains.aclaid.exception;
+
+/**
+ * Thrown when changes after a revision are requested but that revision is older than the retained
+ * change history, so some of the changes can no longer be delivered.
+ */
+public class RevisionExpiredException
+extends Exception
+{
+	private static final long serialVersionUID = -3109243587130745923L;
+
+	public RevisionExpiredException()
+	{
+		super();
+	}
+
+	public RevisionExpiredException(String message)
+	{
+		super(message);
+	}
+
+	public RevisionExpiredException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
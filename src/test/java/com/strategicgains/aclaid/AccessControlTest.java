@@ -1,14 +1,19 @@
 package com.strategicgains.aclaid;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.domain.CheckRequest;
 import com.strategicgains.aclaid.exception.InvalidTupleException;
 
 public class AccessControlTest
@@ -165,6 +170,35 @@ public class AccessControlTest
 		assertTrue(acl.check(SALLY, ADMINISTRATOR_RELATION, DOC_5678));
 	}
 
+	@Test
+	public void testCheckAllMatchesCheck()
+	throws ParseException
+	{
+		String[] users = {TODD, JASMINE, BETTY, BOB, SALLY, SAM};
+		String[] relations = {OWNER_RELATION, VIEWER_RELATION, ADMINISTRATOR_RELATION, MEMBER_RELATION};
+		String[] objects = {DOC_1234, DOC_5678, FOLDER_DOCUMENTS, FOLDER_PLANNING, ADMINS_GROUP, EVERYONE_GROUP};
+		List<CheckRequest> requests = new ArrayList<>();
+
+		for (String user : users)
+		{
+			for (String relation : relations)
+			{
+				for (String object : objects)
+				{
+					requests.add(new CheckRequest(user, relation, object));
+				}
+			}
+		}
+
+		BitSet results = acl.checkAll(requests);
+
+		for (int i = 0; i < requests.size(); i++)
+		{
+			CheckRequest request = requests.get(i);
+			assertEquals(request.toString(), acl.check(request.getUserset(), request.getRelation(), request.getObjectId()), results.get(i));
+		}
+	}
+
 	@Test(expected = InvalidTupleException.class)
 	public void testInvalidResourceWithWildcard()
 	throws ParseException, InvalidTupleException
@@ -1,6 +1,9 @@
 package com.strategicgains.aclaid;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.text.ParseException;
@@ -9,18 +12,24 @@ import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.strategicgains.aclaid.domain.CheckContext;
 import com.strategicgains.aclaid.domain.ObjectDefinition;
 import com.strategicgains.aclaid.domain.ObjectId;
 import com.strategicgains.aclaid.domain.RelationDefinition;
 import com.strategicgains.aclaid.domain.SimpleTupleStore;
 import com.strategicgains.aclaid.domain.Tuple;
 import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.UsersetTree;
 import com.strategicgains.aclaid.domain.rewrite.ComputedUserSet;
+import com.strategicgains.aclaid.domain.rewrite.Exclusion;
+import com.strategicgains.aclaid.domain.rewrite.Intersection;
 import com.strategicgains.aclaid.domain.rewrite.RewriteRule;
 import com.strategicgains.aclaid.domain.rewrite.This;
 import com.strategicgains.aclaid.domain.rewrite.TupleToUserSet;
 import com.strategicgains.aclaid.domain.rewrite.Union;
+import com.strategicgains.aclaid.domain.rewrite.expression.PlanExpression;
 import com.strategicgains.aclaid.domain.rewrite.expression.UsersetExpression;
+import com.strategicgains.aclaid.domain.rewrite.plan.RewritePlan;
 import com.strategicgains.aclaid.exception.InvalidTupleException;
 
 public class RewriteRuleTest
@@ -153,4 +162,93 @@ public class RewriteRuleTest
 		assertTrue(rewrite.evaluate(tuples, UserSet.parse(KIM)));
 		assertTrue(rewrite.evaluate(tuples, UserSet.parse(BEN)));
 	}
+
+	@Test
+	public void testIntersection()
+	throws ParseException, InvalidTupleException
+	{
+		SimpleTupleStore local = new SimpleTupleStore(tuples);
+		local.write(KIM, EDITOR_TEXT, DOC_ROADMAP);
+		RewriteRule rule = new Intersection(new ComputedUserSet(EDITOR), new This(OWNER));
+
+		UsersetExpression rewrite = rule.rewrite(new ObjectId(DOC_ROADMAP));
+		assertTrue(rewrite.evaluate(local, UserSet.parse(KIM)));
+		assertFalse(rewrite.evaluate(local, UserSet.parse(BEN)));
+		assertFalse(rewrite.evaluate(local, UserSet.parse(CARL)));
+	}
+
+	@Test
+	public void testExclusion()
+	throws ParseException, InvalidTupleException
+	{
+		SimpleTupleStore local = new SimpleTupleStore(tuples);
+		local.write(KIM, EDITOR_TEXT, DOC_ROADMAP);
+		RewriteRule rule = new Exclusion(new ComputedUserSet(EDITOR), new This(OWNER));
+
+		UsersetExpression rewrite = rule.rewrite(new ObjectId(DOC_ROADMAP));
+		assertTrue(rewrite.evaluate(local, UserSet.parse(BEN)));
+		assertFalse(rewrite.evaluate(local, UserSet.parse(KIM)));
+		assertFalse(rewrite.evaluate(local, UserSet.parse(CARL)));
+	}
+
+	@Test
+	public void testCheaperOperandShortCircuits()
+	throws ParseException
+	{
+		RewriteRule parentViewer = new TupleToUserSet(PARENT_TEXT, new ComputedUserSet(VIEWER).withToken(Tuple.USERSET_OBJECT));
+		ObjectId roadmap = new ObjectId(DOC_ROADMAP);
+
+		// The _this leaf is evaluated first, although declared last, and decides both results alone.
+		CheckContext context = new CheckContext(tuples);
+		assertFalse(new Intersection(parentViewer, new This(OWNER)).rewrite(roadmap).evaluate(context, UserSet.parse(CARL)));
+		assertEquals(1, context.getMisses());
+
+		context = new CheckContext(tuples);
+		assertFalse(new Exclusion(parentViewer, new This(OWNER)).rewrite(roadmap).evaluate(context, UserSet.parse(KIM)));
+		assertEquals(1, context.getMisses());
+	}
+
+	@Test
+	public void testRewriteBindsCompiledPlan()
+	throws ParseException
+	{
+		ObjectId roadmap = new ObjectId(DOC_ROADMAP);
+		UsersetExpression rewrite = VIEWER.rewrite(roadmap);
+		assertTrue(rewrite instanceof PlanExpression);
+		assertSame(VIEWER.getPlan(), ((PlanExpression) rewrite).getPlan());
+		assertEquals(roadmap, ((PlanExpression) rewrite).getObjectId());
+	}
+
+	@Test
+	public void testTupleToUserSetExpandsTuplesetObjects()
+	throws ParseException
+	{
+		ObjectId roadmap = new ObjectId(DOC_ROADMAP);
+		CheckContext context = new CheckContext(tuples);
+
+		UsersetTree tree = new TupleToUserSet(PARENT_TEXT, new ComputedUserSet(VIEWER).withToken(Tuple.USERSET_OBJECT)).rewrite(roadmap).expand(context);
+		assertEquals(1, tree.getChildren().size());
+
+		// Without $TUPLE_USERSET_OBJECT the object is the checked user's, and an expand has no user.
+		tree = new TupleToUserSet(PARENT_TEXT, new ComputedUserSet(VIEWER)).rewrite(roadmap).expand(context);
+		assertTrue(tree.getChildren().isEmpty());
+	}
+
+	@Test
+	public void testPlanIsCompiledOnce()
+	{
+		ObjectDefinition document = new ObjectDefinition(DOCUMENT_OBJECT);
+		RelationDefinition owner = new RelationDefinition(document, OWNER_TEXT);
+		RelationDefinition viewer = new RelationDefinition(document, VIEWER_TEXT);
+		document.addRelation(owner);
+		document.addRelation(viewer);
+		viewer.setRewriteRules(new Union(Arrays.asList(new This(viewer), new ComputedUserSet(owner))));
+
+		RewritePlan plan = viewer.getPlan();
+		assertSame(plan, viewer.getPlan());
+
+		// Changing a relation's rules recompiles the plans that may include it.
+		owner.setRewriteRules(new This(viewer));
+		assertNotSame(plan, viewer.getPlan());
+	}
 }
@@ -355,9 +355,9 @@ public class ZanzibarAcademyTest
 		assertFalse(acl.check(FOLDER_ENGINEERING, PARENT, FOLDER_PLANNING));
 
 		// Add Dana to org:contoso, org:contoso#member editor of folder:engineering, folder:engineering parent of folder:planning.
-		acl.addTuple(DANA, MEMBER, CONTOSO)
-			.addTuple(CONTOSO + "#" + MEMBER, EDITOR, FOLDER_ENGINEERING)
-			.addTuple(FOLDER_ENGINEERING, PARENT, FOLDER_PLANNING);
+		acl.addTuple(DANA, MEMBER, CONTOSO);
+		acl.addTuple(CONTOSO + "#" + MEMBER, EDITOR, FOLDER_ENGINEERING);
+		acl.addTuple(FOLDER_ENGINEERING, PARENT, FOLDER_PLANNING);
 
 		assertTrue(acl.check(DANA, MEMBER, CONTOSO));
 		assertTrue(acl.check(DANA, EDITOR, FOLDER_ENGINEERING));
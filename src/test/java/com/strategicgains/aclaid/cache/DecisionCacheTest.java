@@ -0,0 +1,204 @@
+package com.strategicgains.aclaid.cache;
+
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites._this;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.computedUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.union;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.Zookie;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class DecisionCacheTest
+{
+	private static final String KIM = "app:user/kim";
+	private static final String BEN = "app:user/ben";
+	private static final String ROADMAP = "app:doc/roadmap";
+	private static final String OWNER = "owner";
+	private static final String VIEWER = "viewer";
+
+	@Test
+	public void testRevisionInvalidation()
+	throws ParseException
+	{
+		DecisionCache cache = new DecisionCache();
+		UserSet kim = UserSet.parse(KIM);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+
+		assertNull(cache.get(kim, VIEWER, roadmap, 3));
+		cache.put(kim, VIEWER, roadmap, true, 3);
+		assertTrue(cache.get(kim, VIEWER, roadmap, 3));
+		assertTrue(cache.get(kim, VIEWER, roadmap, 2));
+		assertNull(cache.get(kim, VIEWER, roadmap, 4));
+		assertNull(cache.get(kim, VIEWER, roadmap, 3));
+
+		assertEquals(2, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(1, cache.getInvalidations());
+	}
+
+	@Test
+	public void testOlderDecisionDoesNotReplaceNewer()
+	throws ParseException
+	{
+		DecisionCache cache = new DecisionCache();
+		UserSet kim = UserSet.parse(KIM);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+
+		cache.put(kim, VIEWER, roadmap, false, 5);
+		cache.put(kim, VIEWER, roadmap, true, 4);
+		assertFalse(cache.get(kim, VIEWER, roadmap, 5));
+	}
+
+	@Test
+	public void testSizeEviction()
+	throws ParseException
+	{
+		DecisionCache cache = new DecisionCache(32, 0, TimeUnit.MILLISECONDS);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+
+		for (int i = 0; i < 1000; i++)
+		{
+			cache.put(UserSet.parse("app:user/u" + i), VIEWER, roadmap, true, 0);
+		}
+
+		assertTrue(cache.size() <= 32);
+		assertEquals(1000 - cache.size(), cache.getEvictions());
+	}
+
+	@Test
+	public void testTimeEviction()
+	throws ParseException, InterruptedException
+	{
+		DecisionCache cache = new DecisionCache(100, 1, TimeUnit.NANOSECONDS);
+		UserSet kim = UserSet.parse(KIM);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+
+		cache.put(kim, VIEWER, roadmap, true, 0);
+		Thread.sleep(1);
+		assertNull(cache.get(kim, VIEWER, roadmap, 0));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiringDecision()
+	throws ParseException, InterruptedException
+	{
+		DecisionCache cache = new DecisionCache();
+		UserSet kim = UserSet.parse(KIM);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+
+		cache.put(kim, VIEWER, roadmap, true, 0, System.currentTimeMillis() - 1);
+		assertNull(cache.get(kim, VIEWER, roadmap, 0));
+
+		cache.put(kim, VIEWER, roadmap, true, 0, System.currentTimeMillis() + 50);
+		assertTrue(cache.get(kim, VIEWER, roadmap, 0));
+		Thread.sleep(60);
+		assertNull(cache.get(kim, VIEWER, roadmap, 0));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void testExpiringTupleIsNotServedFromCache()
+	throws ParseException, InvalidTupleException, InterruptedException
+	{
+		DecisionCache cache = new DecisionCache();
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.decisionCache(cache)
+			.object("user")
+			.object("doc")
+				.relation(OWNER)
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(OWNER)));
+
+		AccessControl acl = builder.build();
+		Tuple expiring = new Tuple(KIM, OWNER, ROADMAP);
+		expiring.setExpiresAt(new Date(System.currentTimeMillis() + 200));
+		acl.addTuple(expiring);
+
+		assertTrue(acl.check(KIM, VIEWER, ROADMAP));
+		assertTrue(acl.check(KIM, VIEWER, ROADMAP));
+		assertEquals(1, cache.getHits());
+
+		Thread.sleep(250);
+		assertFalse(acl.check(KIM, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testAccessControlDecisionCache()
+	throws ParseException, InvalidTupleException
+	{
+		DecisionCache cache = new DecisionCache();
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.decisionCache(cache)
+			.object("user")
+			.object("doc")
+				.relation(OWNER)
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(OWNER)))
+			.tuple(KIM, OWNER, ROADMAP);
+
+		AccessControl acl = builder.build();
+
+		assertTrue(acl.check(KIM, VIEWER, ROADMAP));
+		assertTrue(acl.check(KIM, VIEWER, ROADMAP));
+		assertFalse(acl.check(BEN, VIEWER, ROADMAP));
+		assertEquals(1, cache.getHits());
+
+		// A write advances the store past the cached decisions.
+		acl.addTuple(BEN, OWNER, ROADMAP);
+		assertTrue(acl.check(BEN, VIEWER, ROADMAP));
+		assertEquals(1, cache.getInvalidations());
+	}
+
+	@Test
+	public void testZookieCheck()
+	throws ParseException, InvalidTupleException
+	{
+		DecisionCache cache = new DecisionCache();
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.decisionCache(cache)
+			.object("user")
+			.object("doc")
+				.relation(OWNER)
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(OWNER)));
+
+		AccessControl acl = builder.build();
+		UserSet kim = UserSet.parse(KIM);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+
+		Zookie added = acl.addTuple(KIM, OWNER, ROADMAP);
+		assertTrue(acl.check(kim, VIEWER, roadmap, added));
+
+		// A Zookie from before the write cannot miss it: the decision cached at the newer revision answers.
+		Zookie unrelated = acl.addTuple(BEN, OWNER, "app:doc/readme");
+		assertTrue(acl.check(kim, VIEWER, roadmap, added));
+		assertEquals(1, cache.getHits());
+
+		// A check demanding the latest revision recomputes the decision.
+		assertTrue(acl.check(kim, VIEWER, roadmap, unrelated));
+		assertEquals(1, cache.getHits());
+
+		Zookie removed = acl.removeTuple(kim, OWNER, roadmap);
+		assertTrue(removed.compareTo(unrelated) > 0);
+		assertFalse(acl.check(kim, VIEWER, roadmap, removed));
+	}
+}
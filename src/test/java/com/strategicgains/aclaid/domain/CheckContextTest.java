@@ -0,0 +1,413 @@
+package com.strategicgains.aclaid.domain;
+
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites._this;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.computedUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.tupleToUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.union;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.cache.DecisionCache;
+import com.strategicgains.aclaid.domain.rewrite.ComputedUserSet;
+import com.strategicgains.aclaid.domain.rewrite.This;
+import com.strategicgains.aclaid.domain.rewrite.Union;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class CheckContextTest
+{
+	private static final String OWNER = "owner";
+	private static final String EDITOR = "editor";
+	private static final String VIEWER = "viewer";
+	private static final String PARENT = "parent";
+
+	private static final String KIM = "app:user/kim";
+	private static final String BEN = "app:user/ben";
+	private static final String ROOT = "app:folder/root";
+	private static final String PROJECTS = "app:folder/projects";
+	private static final String PLANNING = "app:folder/planning";
+	private static final String ROADMAP = "app:doc/roadmap";
+
+	private AccessControl acl;
+
+	@Before
+	public void initialize()
+	throws ParseException, InvalidTupleException
+	{
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.object("user")
+			.object("folder")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(EDITOR)
+					.rewrite(union(_this(), computedUserSet(OWNER)))
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(EDITOR),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.object("doc")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(EDITOR)
+					.rewrite(union(_this(), computedUserSet(OWNER)))
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(EDITOR),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.tuple(KIM, OWNER, ROOT)
+			.tuple(ROOT, PARENT, PROJECTS)
+			.tuple(PROJECTS, PARENT, PLANNING)
+			.tuple(PLANNING, PARENT, ROADMAP);
+
+		acl = builder.build();
+	}
+
+	@Test
+	public void testInheritsThroughParentRewrites()
+	throws ParseException
+	{
+		assertTrue(acl.check(KIM, VIEWER, ROADMAP));
+		assertTrue(acl.check(KIM, VIEWER, PLANNING));
+		assertFalse(acl.check(KIM, EDITOR, ROADMAP));
+		assertFalse(acl.check(BEN, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testMemoizesWithinContext()
+	throws ParseException
+	{
+		CheckContext context = acl.newCheckContext();
+		assertFalse(acl.check(context, UserSet.parse(BEN), VIEWER, new ObjectId(ROADMAP)));
+		assertEquals(0, context.getHits());
+		long misses = context.getMisses();
+
+		assertFalse(acl.check(context, UserSet.parse(BEN), VIEWER, new ObjectId(PLANNING)));
+		assertEquals(misses, context.getMisses());
+		assertEquals(1, context.getHits());
+		assertEquals(1.0 / (misses + 1), context.getHitRatio(), 0.0001);
+	}
+
+	@Test
+	public void testCyclicParentsTerminate()
+	throws ParseException, InvalidTupleException
+	{
+		acl.addTuple(PLANNING, PARENT, ROOT);
+		assertTrue(acl.check(KIM, VIEWER, ROOT));
+		assertFalse(acl.check(BEN, VIEWER, ROOT));
+		assertTrue(acl.check(KIM, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testCycleDoesNotMemoizeAssumedResults()
+	throws ParseException, InvalidTupleException
+	{
+		AccessControlBuilder builder = new AccessControlBuilder().decisionCache(new DecisionCache());
+		builder
+			.object("user")
+			.object("folder")
+				.relation(PARENT)
+				.relation(VIEWER)
+					.rewrite(union(_this(), tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.tuple("app:folder/b", PARENT, "app:folder/a")
+			.tuple(ROOT, PARENT, "app:folder/a")
+			.tuple("app:folder/a", PARENT, "app:folder/b")
+			.tuple(KIM, VIEWER, ROOT);
+		AccessControl cyclic = builder.build();
+
+		BitSet results = cyclic.checkAll(Arrays.asList(
+			new CheckRequest(KIM, VIEWER, "app:folder/a"),
+			new CheckRequest(KIM, VIEWER, "app:folder/b")));
+		assertTrue(results.get(0));
+		assertTrue(results.get(1));
+		assertTrue(cyclic.check(KIM, VIEWER, "app:folder/b"));
+
+		CheckContext context = cyclic.newCheckContext();
+		assertTrue(cyclic.checkAsync(context, UserSet.parse(KIM), VIEWER, new ObjectId("app:folder/a")).toCompletableFuture().join());
+		assertTrue(cyclic.checkAsync(context, UserSet.parse(KIM), VIEWER, new ObjectId("app:folder/b")).toCompletableFuture().join());
+
+		context = cyclic.newCheckContext();
+		UserSet kim = UserSet.parse(KIM);
+		assertTrue(context.expand(new ObjectId("app:folder/a"), VIEWER).leaves().anyMatch(kim::equals));
+		assertTrue(context.expand(new ObjectId("app:folder/b"), VIEWER).leaves().anyMatch(kim::equals));
+	}
+
+	@Test
+	public void testParallelUnionsMatchSequential()
+	throws ParseException, InvalidTupleException
+	{
+		acl.addTuple(PLANNING, PARENT, ROOT);
+		acl.addTuple(BEN, EDITOR, PROJECTS);
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			for (String user : new String[] {KIM, BEN})
+			{
+				for (String relation : new String[] {OWNER, EDITOR, VIEWER})
+				{
+					for (String objectId : new String[] {ROOT, PROJECTS, PLANNING, ROADMAP})
+					{
+						acl.setUnionExecutor(null);
+						boolean expected = acl.check(user, relation, objectId);
+						acl.setUnionExecutor(executor);
+						assertEquals(user + " " + relation + " " + objectId, expected, acl.check(user, relation, objectId));
+					}
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testAllowedBranchDoesNotWaitForSlowSibling()
+	throws Exception
+	{
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		SimpleTupleStore slowParents = new SimpleTupleStore()
+		{
+			@Override
+			public Collection<Tuple> read(TupleSet tupleSet)
+			{
+				if (PARENT.equals(tupleSet.getRelation()))
+				{
+					reading.countDown();
+
+					try
+					{
+						release.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				return super.read(tupleSet);
+			}
+		};
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		// The slow parent walk is declared first, so a sequential union would wait on it.
+		AccessControlBuilder builder = new AccessControlBuilder().tupleStore(slowParents).parallelUnions(executor);
+		builder
+			.object("user")
+			.object("doc")
+				.relation(PARENT)
+				.relation(VIEWER)
+					.rewrite(union(tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT)), _this()))
+			.tuple(BEN, VIEWER, ROADMAP);
+		AccessControl parallel = builder.build();
+
+		long start = System.nanoTime();
+		assertTrue(parallel.check(BEN, VIEWER, ROADMAP));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testAsyncChecksMatchSequential()
+	throws Exception
+	{
+		ExecutorService io = Executors.newSingleThreadExecutor();
+		SimpleTupleStore remote = new SimpleTupleStore()
+		{
+			@Override
+			public CompletionStage<Boolean> checkAsync(UserSet userset, String relation, ObjectId objectId)
+			{
+				return CompletableFuture.supplyAsync(() -> check(userset, relation, objectId), io);
+			}
+
+			@Override
+			public CompletionStage<Collection<Tuple>> readAsync(TupleSet tupleSet)
+			{
+				return CompletableFuture.supplyAsync(() -> read(tupleSet), io);
+			}
+		};
+		AccessControlBuilder builder = new AccessControlBuilder().tupleStore(remote);
+		builder
+			.object("user")
+			.object("folder")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(EDITOR)
+					.rewrite(union(_this(), computedUserSet(OWNER)))
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(EDITOR),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.tuple(KIM, OWNER, ROOT)
+			.tuple(ROOT, PARENT, PROJECTS)
+			.tuple(PROJECTS, PARENT, PLANNING)
+			.tuple(PLANNING, PARENT, ROOT)
+			.tuple(BEN, EDITOR, PROJECTS);
+		AccessControl async = builder.build();
+
+		try
+		{
+			for (String user : new String[] {KIM, BEN})
+			{
+				for (String relation : new String[] {OWNER, EDITOR, VIEWER})
+				{
+					for (String objectId : new String[] {ROOT, PROJECTS, PLANNING})
+					{
+						boolean expected = async.check(user, relation, objectId);
+						boolean actual = async.checkAsync(UserSet.parse(user), relation, new ObjectId(objectId)).toCompletableFuture().get(10, TimeUnit.SECONDS);
+						assertEquals(user + " " + relation + " " + objectId, expected, actual);
+					}
+				}
+			}
+		}
+		finally
+		{
+			io.shutdown();
+		}
+	}
+
+	@Test
+	public void testAsyncCheckDoesNotBlockOnPendingRead()
+	throws Exception
+	{
+		CompletableFuture<Collection<Tuple>> parents = new CompletableFuture<>();
+		SimpleTupleStore pending = new SimpleTupleStore()
+		{
+			@Override
+			public CompletionStage<Collection<Tuple>> readAsync(TupleSet tupleSet)
+			{
+				return (PARENT.equals(tupleSet.getRelation()) ? parents : super.readAsync(tupleSet));
+			}
+		};
+		AccessControlBuilder builder = new AccessControlBuilder().tupleStore(pending);
+		builder
+			.object("user")
+			.object("doc")
+				.relation(PARENT)
+				.relation(VIEWER)
+					.rewrite(union(_this(), tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.tuple(BEN, VIEWER, "app:doc/plans")
+			.tuple("app:doc/plans", PARENT, ROADMAP);
+		AccessControl async = builder.build();
+
+		CompletableFuture<Boolean> allowed = async.checkAsync(UserSet.parse(BEN), VIEWER, new ObjectId(ROADMAP)).toCompletableFuture();
+		assertFalse(allowed.isDone());
+
+		parents.complete(pending.read(new TupleSet(PARENT, new ObjectId(ROADMAP))));
+		assertTrue(allowed.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testDepthBudgetIsIndeterminate()
+	throws ParseException
+	{
+		// Each computed userset is a nested check: roadmap's viewers reach root's owners six checks deep.
+		acl.setCheckBudget(new CheckBudget(5, Long.MAX_VALUE, Long.MAX_VALUE));
+		assertEquals(CheckResult.INDETERMINATE, acl.decide(UserSet.parse(KIM), VIEWER, new ObjectId(ROADMAP)));
+		assertFalse(acl.check(KIM, VIEWER, ROADMAP));
+		assertEquals(CheckResult.ALLOWED, acl.decide(UserSet.parse(KIM), VIEWER, new ObjectId(PROJECTS)));
+		assertEquals(CheckResult.DENIED, acl.decide(UserSet.parse(BEN), VIEWER, new ObjectId(PLANNING)));
+
+		acl.setCheckBudget(new CheckBudget(6, Long.MAX_VALUE, Long.MAX_VALUE));
+		assertEquals(CheckResult.ALLOWED, acl.decide(UserSet.parse(KIM), VIEWER, new ObjectId(ROADMAP)));
+	}
+
+	@Test
+	public void testCyclicComputedUserSetsTerminate()
+	throws ParseException, InvalidTupleException
+	{
+		AccessControl cyclic = new AccessControl().setCheckBudget(new CheckBudget(32, 1000, 1000));
+		cyclic.object("user");
+		ObjectDefinition doc = cyclic.object("doc");
+		RelationDefinition a = new RelationDefinition(doc, "a");
+		RelationDefinition b = new RelationDefinition(doc, "b");
+		doc.addRelation(a);
+		doc.addRelation(b);
+		a.setRewriteRules(new Union(Arrays.asList(new This(a), new ComputedUserSet(b))));
+		b.setRewriteRules(new Union(Arrays.asList(new This(b), new ComputedUserSet(a))));
+		cyclic.addTuple(KIM, "b", ROADMAP);
+
+		assertEquals(CheckResult.ALLOWED, cyclic.decide(UserSet.parse(KIM), "a", new ObjectId(ROADMAP)));
+		assertEquals(CheckResult.DENIED, cyclic.decide(UserSet.parse(BEN), "a", new ObjectId(ROADMAP)));
+		assertTrue(cyclic.checkAsync(UserSet.parse(KIM), "b", new ObjectId(ROADMAP)).toCompletableFuture().join());
+		assertEquals(1, cyclic.expand(new ObjectId(ROADMAP), "a").leaves().count());
+	}
+
+	@Test
+	public void testTupleBudgetStopsWideFanOut()
+	throws Exception
+	{
+		for (int i = 0; i < 1000; i++)
+		{
+			acl.addTuple("app:folder/f" + i, PARENT, ROADMAP);
+		}
+
+		UserSet ben = UserSet.parse(BEN);
+		ObjectId roadmap = new ObjectId(ROADMAP);
+		assertEquals(CheckResult.DENIED, acl.decide(ben, VIEWER, roadmap));
+
+		acl.setCheckBudget(new CheckBudget(Integer.MAX_VALUE, 100, Long.MAX_VALUE));
+		assertEquals(CheckResult.INDETERMINATE, acl.decide(ben, VIEWER, roadmap));
+		assertEquals(CheckResult.INDETERMINATE, acl.decideAsync(ben, VIEWER, roadmap).toCompletableFuture().get(10, TimeUnit.SECONDS));
+		assertFalse(acl.checkAsync(ben, VIEWER, roadmap).toCompletableFuture().get(10, TimeUnit.SECONDS));
+		assertEquals(CheckResult.ALLOWED, acl.decide(UserSet.parse(KIM), VIEWER, new ObjectId(PROJECTS)));
+	}
+
+	@Test
+	public void testTimeBudgetStopsSlowChecks()
+	throws ParseException, InvalidTupleException
+	{
+		SimpleTupleStore slowParents = new SimpleTupleStore()
+		{
+			@Override
+			public Collection<Tuple> read(TupleSet tupleSet)
+			{
+				try
+				{
+					Thread.sleep(40);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+
+				return super.read(tupleSet);
+			}
+		};
+		AccessControlBuilder builder = new AccessControlBuilder().tupleStore(slowParents).checkBudget(new CheckBudget(Integer.MAX_VALUE, Long.MAX_VALUE, 50));
+		builder
+			.object("user")
+			.object("folder")
+				.relation(PARENT)
+				.relation(VIEWER)
+					.rewrite(union(_this(), tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.tuple(KIM, VIEWER, ROOT)
+			.tuple(ROOT, PARENT, PROJECTS)
+			.tuple(PROJECTS, PARENT, PLANNING);
+		AccessControl slow = builder.build();
+
+		long start = System.nanoTime();
+		assertEquals(CheckResult.INDETERMINATE, slow.decide(UserSet.parse(KIM), VIEWER, new ObjectId(PLANNING)));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		assertEquals(CheckResult.ALLOWED, slow.decide(UserSet.parse(KIM), VIEWER, new ObjectId(ROOT)));
+	}
+}
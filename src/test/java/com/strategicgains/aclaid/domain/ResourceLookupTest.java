@@ -0,0 +1,178 @@
+package com.strategicgains.aclaid.domain;
+
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites._this;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.computedUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.exclusion;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.tupleToUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.union;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class ResourceLookupTest
+{
+	private static final String MEMBER = "member";
+	private static final String OWNER = "owner";
+	private static final String EDITOR = "editor";
+	private static final String VIEWER = "viewer";
+	private static final String PARENT = "parent";
+	private static final String BANNED = "banned";
+	private static final String READER = "reader";
+
+	private static final String KIM = "app:user/kim";
+	private static final String BEN = "app:user/ben";
+	private static final String SAM = "app:user/sam";
+	private static final String ENG = "app:group/eng";
+	private static final String ROOT = "app:folder/root";
+	private static final String PROJECTS = "app:folder/projects";
+	private static final String ROADMAP = "app:doc/roadmap";
+	private static final String BUDGET = "app:doc/budget";
+	private static final String NOTES = "app:doc/notes";
+	private static final String MENU = "app:doc/menu";
+
+	private AccessControl acl;
+
+	@Before
+	public void initialize()
+	throws ParseException, InvalidTupleException
+	{
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.object("user")
+			.object("group")
+				.relation(MEMBER)
+			.object("folder")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(OWNER),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.object("doc")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(EDITOR)
+					.rewrite(union(_this(), computedUserSet(OWNER)))
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(EDITOR),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+				.relation(BANNED)
+				.relation(READER)
+					.rewrite(exclusion(computedUserSet(VIEWER), computedUserSet(BANNED)))
+			.tuple(KIM, OWNER, ROOT)
+			.tuple(ROOT, PARENT, PROJECTS)
+			.tuple(PROJECTS, PARENT, ROADMAP)
+			.tuple(ROOT, PARENT, BUDGET)
+			.tuple(BEN, EDITOR, NOTES)
+			.tuple(ENG + "#" + MEMBER, VIEWER, MENU)
+			.tuple("app:user/*", VIEWER, BUDGET);
+
+		acl = builder.build();
+		acl.addTuple(BEN, MEMBER, ENG);
+	}
+
+	@Test
+	public void testLookupThroughRewrites()
+	throws ParseException
+	{
+		assertEquals(ids(ROADMAP, BUDGET), lookup(KIM, VIEWER, "doc"));
+		assertEquals(ids(ROOT, PROJECTS), lookup(KIM, VIEWER, "folder"));
+		assertEquals(ids(NOTES, MENU, BUDGET), lookup(BEN, VIEWER, "doc"));
+		assertEquals(ids(NOTES), lookup(BEN, EDITOR, "doc"));
+		assertEquals(ids(BUDGET), lookup(SAM, VIEWER, "doc"));
+		assertTrue(lookup(KIM, EDITOR, "doc").isEmpty());
+		assertTrue(lookup(KIM, "undefined", "doc").isEmpty());
+		assertTrue(lookup(KIM, VIEWER, "undefined").isEmpty());
+	}
+
+	@Test
+	public void testLookupMatchesCheck()
+	throws ParseException
+	{
+		List<ObjectId> objects = new ArrayList<>();
+
+		for (String objectId : new String[] {ROADMAP, BUDGET, NOTES, MENU})
+		{
+			objects.add(new ObjectId(objectId));
+		}
+
+		for (String user : new String[] {KIM, BEN, SAM})
+		{
+			Set<ObjectId> expected = objects.stream()
+				.filter(o -> acl.check(parse(user), VIEWER, o))
+				.collect(Collectors.toSet());
+			assertEquals(user, expected, lookup(user, VIEWER, "doc"));
+		}
+	}
+
+	@Test
+	public void testPagination()
+	throws ParseException
+	{
+		UserSet ben = UserSet.parse(BEN);
+		List<ObjectId> all = acl.lookupResources(ben, VIEWER, "doc").toList();
+		assertEquals(3, all.size());
+
+		List<ObjectId> pages = new ArrayList<>(acl.lookupResources(ben, VIEWER, "doc", 0, 2));
+		assertEquals(2, pages.size());
+		pages.addAll(acl.lookupResources(ben, VIEWER, "doc", 2, 2));
+		assertEquals(all, pages);
+		assertTrue(acl.lookupResources(ben, VIEWER, "doc", 3, 2).isEmpty());
+	}
+
+	@Test
+	public void testLookupThroughExclusion()
+	throws ParseException, InvalidTupleException
+	{
+		acl.addTuple(BEN, BANNED, MENU);
+		acl.addTuple(KIM, BANNED, BUDGET);
+
+		assertEquals(ids(NOTES, BUDGET), lookup(BEN, READER, "doc"));
+		assertEquals(ids(ROADMAP), lookup(KIM, READER, "doc"));
+		assertEquals(ids(BUDGET), lookup(SAM, READER, "doc"));
+	}
+
+	private Set<ObjectId> lookup(String user, String relation, String objectType)
+	throws ParseException
+	{
+		return acl.lookupResources(UserSet.parse(user), relation, objectType).collect(Collectors.toSet());
+	}
+
+	private Set<ObjectId> ids(String... objectIds)
+	throws ParseException
+	{
+		Set<ObjectId> ids = new HashSet<>();
+
+		for (String objectId : objectIds)
+		{
+			ids.add(new ObjectId(objectId));
+		}
+
+		return ids;
+	}
+
+	private UserSet parse(String userset)
+	{
+		try
+		{
+			return UserSet.parse(userset);
+		}
+		catch (ParseException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
@@ -1,12 +1,28 @@
 package com.strategicgains.aclaid.domain;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.text.ParseException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -120,6 +136,454 @@ public class SimpleTupleStoreTest
 		assertEquals(UserSet.parse(CONTOSO_MEMBER), tuple.getUserset());
 	}
 
+	@Test
+	public void testReadAllInWriteOrder()
+	throws ParseException, InvalidTupleException
+	{
+		List<Tuple> expected = new ArrayList<>(ts.readAll());
+		assertEquals(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP), expected.get(0));
+		assertEquals(new Tuple(FOLDER_ENGINEERING, PARENT_RELATION, DOC_README), expected.get(expected.size() - 1));
+
+		ts.remove(expected.remove(3));
+		ts.write(DANA, EDITOR_RELATION, DOC_README);
+		expected.add(new Tuple(DANA, EDITOR_RELATION, DOC_README));
+		assertEquals(expected, ts.readAll());
+	}
+
+	@Test
+	public void testBulkWriteAndRemove()
+	throws ParseException, InvalidTupleException
+	{
+		// Large enough to build the indexes in parallel; users are grouped so consecutive tuples share keys.
+		List<Tuple> tuples = new ArrayList<>();
+
+		for (int u = 0; u < 200; u++)
+		{
+			for (int d = 0; d < 100; d++)
+			{
+				tuples.add(new Tuple(DOCUMENT_NAMESPACE + ":user/u" + u, VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d" + d));
+			}
+		}
+
+		tuples.add(new Tuple(CONTOSO_MEMBER, EDITOR_RELATION, DOCUMENT_NAMESPACE + ":document/d0"));
+		long revision = ts.getRevision();
+		ts.write(tuples);
+
+		assertEquals(revision + 1, ts.getRevision());
+		assertEquals(9 + tuples.size(), ts.readAll().size());
+		assertTrue(ts.check(DOCUMENT_NAMESPACE + ":user/u199", VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d99"));
+		assertTrue(ts.check(DANA, EDITOR_RELATION, DOCUMENT_NAMESPACE + ":document/d0"));
+		assertEquals(201, ts.readAll(new ObjectId(DOCUMENT_NAMESPACE + ":document/d0")).size());
+		assertEquals(100, ts.readAll(UserSet.parse(DOCUMENT_NAMESPACE + ":user/u7"), VIEWER_RELATION).size());
+
+		try (SimpleTupleStore.Snapshot snapshot = ts.snapshot())
+		{
+			ts.remove(tuples.subList(0, 10_000));
+			assertEquals(revision + 2, ts.getRevision());
+			assertTrue(snapshot.check(UserSet.parse(DOCUMENT_NAMESPACE + ":user/u0"), VIEWER_RELATION, new ObjectId(DOCUMENT_NAMESPACE + ":document/d0")));
+		}
+
+		assertEquals(9 + tuples.size() - 10_000, ts.readAll().size());
+		assertFalse(ts.check(DOCUMENT_NAMESPACE + ":user/u0", VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d0"));
+		assertTrue(ts.check(DOCUMENT_NAMESPACE + ":user/u100", VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d0"));
+		assertEquals(101, ts.readAll(new ObjectId(DOCUMENT_NAMESPACE + ":document/d0")).size());
+		assertTrue(ts.readAll(UserSet.parse(DOCUMENT_NAMESPACE + ":user/u7")).isEmpty());
+	}
+
+	@Test
+	public void testConcurrentWrites()
+	throws Exception
+	{
+		int writers = 8;
+		int perWriter = 2_000;
+		SimpleTupleStore tuples = new SimpleTupleStore();
+		List<Tuple> shared = new ArrayList<>();
+
+		for (int i = 0; i < 64; i++)
+		{
+			shared.add(new Tuple(CARL, VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/shared" + i));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean done = new AtomicBoolean();
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int w = 0; w < writers; w++)
+		{
+			String user = DOCUMENT_NAMESPACE + ":user/u" + w;
+
+			futures.add(executor.submit(() -> {
+				start.await();
+
+				for (int i = 0; i < perWriter; i++)
+				{
+					tuples.write(user, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g" + (i % 16));
+					tuples.write(ORGANIZATION_NAMESPACE + ":group/g" + (i % 16) + "#" + MEMBER_RELATION, VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d" + i);
+					tuples.write(user, EDITOR_RELATION, DOCUMENT_NAMESPACE + ":document/d" + i);
+
+					// Every writer contends for the same tuples.
+					Tuple contended = shared.get(i % shared.size());
+					tuples.write(contended);
+					tuples.remove(contended);
+				}
+
+				// Leave only the even documents editable.
+				for (int i = 1; i < perWriter; i += 2)
+				{
+					tuples.remove(new Tuple(user, EDITOR_RELATION, DOCUMENT_NAMESPACE + ":document/d" + i));
+				}
+
+				return null;
+			}));
+		}
+
+		for (int r = 0; r < 2; r++)
+		{
+			futures.add(executor.submit(() -> {
+				start.await();
+
+				while (!done.get())
+				{
+					tuples.check(DOCUMENT_NAMESPACE + ":user/u0", VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d1");
+					tuples.read(new TupleSet(VIEWER_RELATION, new ObjectId(DOCUMENT_NAMESPACE + ":document/d1")));
+				}
+
+				return null;
+			}));
+		}
+
+		start.countDown();
+
+		for (int i = 0; i < writers; i++)
+		{
+			futures.get(i).get(60, TimeUnit.SECONDS);
+		}
+
+		done.set(true);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		for (Future<?> future : futures)
+		{
+			future.get();
+		}
+
+		for (int w = 0; w < writers; w++)
+		{
+			String user = DOCUMENT_NAMESPACE + ":user/u" + w;
+
+			for (int i = 0; i < perWriter; i++)
+			{
+				String document = DOCUMENT_NAMESPACE + ":document/d" + i;
+				boolean editor = (i % 2 == 0);
+				assertEquals(editor, tuples.check(user, EDITOR_RELATION, document));
+				assertEquals(editor, tuples.readOne(user, EDITOR_RELATION, document) != null);
+				assertEquals(editor, tuples.readAll(new ObjectId(document), EDITOR_RELATION).contains(new Tuple(user, EDITOR_RELATION, document)));
+				assertEquals(editor, tuples.readAll(UserSet.parse(user), EDITOR_RELATION).contains(new Tuple(user, EDITOR_RELATION, document)));
+				assertTrue(tuples.check(user, VIEWER_RELATION, document));
+			}
+		}
+
+		// Each contended tuple is either in every index or in none of them.
+		for (Tuple tuple : shared)
+		{
+			boolean stored = (tuples.readOne(tuple.getUserset(), tuple.getRelation(), tuple.getObjectId()) != null);
+			assertEquals(stored, tuples.readAll(tuple.getObjectId(), VIEWER_RELATION).contains(tuple));
+			assertEquals(stored, tuples.readAll(tuple.getUserset(), VIEWER_RELATION).contains(tuple));
+			assertEquals(stored, tuples.check(tuple.getUserset(), VIEWER_RELATION, tuple.getObjectId()));
+		}
+
+		// Duplicate writes do not advance the revision; every write and remove that changed the store did.
+		assertTrue(tuples.getRevision() >= writers * 16 + perWriter + writers * perWriter + writers * (perWriter / 2));
+	}
+
+	@Test
+	public void testSnapshotIsUnaffectedByLaterWrites()
+	throws ParseException, InvalidTupleException
+	{
+		long revision = ts.getRevision();
+
+		try (SimpleTupleStore.Snapshot snapshot = ts.snapshot())
+		{
+			ts.remove(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP));
+			ts.remove(new Tuple(CARL, MEMBER_RELATION, CONTOSO));
+			ts.write(BEN, OWNER_RELATION, DOC_ROADMAP);
+			ts.write(KIM, OWNER_RELATION, DOC_README);
+
+			assertEquals(revision, snapshot.getRevision());
+			assertEquals(revision + 4, ts.getRevision());
+
+			assertTrue(snapshot.check(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP)));
+			assertTrue(snapshot.check(UserSet.parse(CARL), VIEWER_RELATION, new ObjectId(DOC_SLIDES)));
+			assertFalse(snapshot.check(UserSet.parse(BEN), OWNER_RELATION, new ObjectId(DOC_ROADMAP)));
+			assertEquals(Arrays.asList(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP)), new ArrayList<>(snapshot.read(new TupleSet(UserSet.parse(KIM), OWNER_RELATION))));
+
+			assertFalse(ts.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+			assertFalse(ts.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+			assertTrue(ts.check(BEN, OWNER_RELATION, DOC_ROADMAP));
+		}
+
+		// Removed tuples are collected once the snapshot is closed and can be written again.
+		ts.write(KIM, OWNER_RELATION, DOC_ROADMAP);
+		assertTrue(ts.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertFalse(ts.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosedSnapshot()
+	throws ParseException
+	{
+		SimpleTupleStore.Snapshot snapshot = ts.snapshot();
+		snapshot.close();
+		snapshot.close();
+		snapshot.check(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP));
+	}
+
+	@Test
+	public void testBatchIsAtomic()
+	throws Exception
+	{
+		SimpleTupleStore tuples = new SimpleTupleStore();
+		UserSet user = UserSet.parse(CARL);
+		int batches = 2_000;
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		Future<?> reader = executor.submit(() -> {
+			while (!done.get())
+			{
+				try (SimpleTupleStore.Snapshot snapshot = tuples.snapshot())
+				{
+					// Each batch writes an editor and a viewer tuple, so a snapshot sees both or neither.
+					Collection<Tuple> written = snapshot.read(new TupleSet(user));
+					assertEquals(2 * snapshot.getRevision(), written.size());
+
+					ObjectId document = new ObjectId(DOCUMENT_NAMESPACE + ":document/d" + (snapshot.getRevision() + 1));
+					assertFalse(snapshot.check(user, EDITOR_RELATION, document));
+					assertFalse(snapshot.check(user, VIEWER_RELATION, document));
+				}
+			}
+
+			return null;
+		});
+
+		for (int i = 1; i <= batches; i++)
+		{
+			ObjectId document = new ObjectId(DOCUMENT_NAMESPACE + ":document/d" + i);
+			tuples.write(Arrays.asList(new Tuple(user, EDITOR_RELATION, document), new Tuple(user, VIEWER_RELATION, document)));
+		}
+
+		done.set(true);
+		executor.shutdown();
+		reader.get(30, TimeUnit.SECONDS);
+		assertEquals(batches, tuples.getRevision());
+	}
+
+	@Test
+	public void testFailedBatchCommitsNothing()
+	throws ParseException, InvalidTupleException
+	{
+		SimpleTupleStore tuples = new SimpleTupleStore();
+		Tuple failing = new Tuple(BEN, EDITOR_RELATION, DOC_ROADMAP)
+		{
+			@Override
+			public boolean expires()
+			{
+				throw new IllegalStateException("Failing tuple");
+			}
+		};
+
+		try
+		{
+			tuples.write(Arrays.asList(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP), failing));
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e)
+		{
+			// expected.
+		}
+
+		assertEquals(1, tuples.getRevision());
+		assertTrue(tuples.isEmpty());
+		assertFalse(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(tuples.readAll().isEmpty());
+
+		tuples.write(KIM, OWNER_RELATION, DOC_ROADMAP);
+		assertEquals(2, tuples.getRevision());
+		assertFalse(tuples.isEmpty());
+		assertTrue(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+
+		tuples.remove(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(tuples.isEmpty());
+	}
+
+	@Test
+	public void testExpiredTuplesAreIgnored()
+	throws ParseException, InvalidTupleException
+	{
+		ManualClock clock = new ManualClock(100_000);
+		SimpleTupleStore tuples = new SimpleTupleStore(clock)
+			.write(CARL, MEMBER_RELATION, CONTOSO)
+			.write(CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES)
+			.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 105_000))
+			.write(expiring(DANA, MEMBER_RELATION, CONTOSO, 110_000));
+		long revision = tuples.getRevision();
+
+		assertTrue(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(tuples.check(DANA, VIEWER_RELATION, DOC_SLIDES));
+
+		clock.set(105_001);
+		assertFalse(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertNull(tuples.readOne(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(tuples.check(DANA, VIEWER_RELATION, DOC_SLIDES));
+		assertEquals(2, tuples.readAll(new ObjectId(CONTOSO)).size());
+
+		clock.set(110_001);
+		assertFalse(tuples.check(DANA, VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(tuples.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertEquals(1, tuples.read(new TupleSet(MEMBER_RELATION, new ObjectId(CONTOSO))).size());
+		assertEquals(2, tuples.readAll().size());
+		assertEquals(revision, tuples.getRevision());
+	}
+
+	@Test
+	public void testReaperPurgesExpiredTuples()
+	throws ParseException, InvalidTupleException
+	{
+		ManualClock clock = new ManualClock(100_000);
+		SimpleTupleStore tuples = new SimpleTupleStore(clock)
+			.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 101_000))
+			.write(expiring(BEN, EDITOR_RELATION, DOC_ROADMAP, 500_000))
+			.write(CARL, MEMBER_RELATION, CONTOSO);
+		long revision = tuples.getRevision();
+		assertEquals(0, tuples.reapExpired());
+
+		clock.set(102_000);
+		assertEquals(1, tuples.reapExpired());
+		assertEquals(revision, tuples.getRevision());
+
+		// Once purged, writing the tuple again adds it anew, after the others.
+		tuples.write(KIM, OWNER_RELATION, DOC_ROADMAP);
+		assertTrue(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertEquals(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP), tuples.readAll().get(2));
+
+		clock.set(500_001);
+		assertEquals(0, tuples.reapExpired());
+		clock.set(501_000);
+		assertEquals(1, tuples.reapExpired());
+		assertEquals(2, tuples.readAll().size());
+	}
+
+	@Test
+	public void testAdvanceRevision()
+	throws ParseException, InvalidTupleException
+	{
+		SimpleTupleStore tuples = new SimpleTupleStore().write(KIM, OWNER_RELATION, DOC_ROADMAP);
+		assertTrue(tuples.advanceRevision(3));
+		assertEquals(3, tuples.getRevision());
+		assertTrue(tuples.advanceRevision(2));
+		assertEquals(3, tuples.getRevision());
+		assertEquals(1, tuples.readAll().size());
+
+		tuples.write(BEN, EDITOR_RELATION, DOC_ROADMAP);
+		assertEquals(4, tuples.getRevision());
+	}
+
+	@Test
+	public void testWritingAgainReplacesExpiry()
+	throws ParseException, InvalidTupleException
+	{
+		ManualClock clock = new ManualClock(100_000);
+		SimpleTupleStore tuples = new SimpleTupleStore(clock)
+			.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 101_000));
+		long revision = tuples.getRevision();
+
+		tuples.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 101_000));
+		assertEquals(revision, tuples.getRevision());
+		tuples.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 200_000));
+		assertEquals(revision + 1, tuples.getRevision());
+
+		clock.set(150_000);
+		assertEquals(0, tuples.reapExpired());
+		assertTrue(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertEquals(200_000, tuples.readOne(KIM, OWNER_RELATION, DOC_ROADMAP).getExpiresAt().getTime());
+
+		tuples.write(KIM, OWNER_RELATION, DOC_ROADMAP);
+		clock.set(300_000);
+		assertEquals(0, tuples.reapExpired());
+		assertTrue(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertFalse(tuples.readOne(KIM, OWNER_RELATION, DOC_ROADMAP).expires());
+	}
+
+	@Test
+	public void testEachVersionKeepsItsExpiry()
+	throws ParseException, InvalidTupleException
+	{
+		ManualClock clock = new ManualClock(100_000);
+		Tuple written = expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 101_000);
+		SimpleTupleStore tuples = new SimpleTupleStore(clock).write(written);
+		assertEquals(101_000, tuples.getNextExpiry());
+
+		written.setExpiresAt(new Date(500_000));
+		assertEquals(101_000, tuples.readOne(KIM, OWNER_RELATION, DOC_ROADMAP).getExpiresAt().getTime());
+
+		try (SimpleTupleStore.Snapshot snapshot = tuples.snapshot())
+		{
+			tuples.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 200_000));
+			Tuple read = snapshot.read(new TupleSet(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP))).iterator().next();
+			assertEquals(101_000, read.getExpiresAt().getTime());
+			assertEquals(200_000, tuples.readOne(KIM, OWNER_RELATION, DOC_ROADMAP).getExpiresAt().getTime());
+		}
+
+		// The earlier expiry is still scheduled, so the next expiry errs early.
+		assertEquals(101_000, tuples.getNextExpiry());
+		clock.set(150_000);
+		tuples.reapExpired();
+		assertEquals(200_000, tuples.getNextExpiry());
+	}
+
+	@Test
+	public void testSnapshotDefersPurge()
+	throws ParseException, InvalidTupleException
+	{
+		ManualClock clock = new ManualClock(100_000);
+		SimpleTupleStore tuples = new SimpleTupleStore(clock).write(KIM, OWNER_RELATION, DOC_ROADMAP);
+
+		try (SimpleTupleStore.Snapshot snapshot = tuples.snapshot())
+		{
+			tuples.write(expiring(KIM, OWNER_RELATION, DOC_ROADMAP, 101_000));
+			clock.set(102_000);
+
+			assertFalse(tuples.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+			assertTrue(snapshot.check(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP)));
+			assertEquals(0, tuples.reapExpired());
+			assertTrue(snapshot.check(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP)));
+		}
+
+		clock.set(103_000);
+		assertEquals(1, tuples.reapExpired());
+		assertTrue(tuples.readAll().isEmpty());
+	}
+
+	@Test
+	public void testLeopardIndexIgnoresExpiredTuples()
+	throws ParseException, InvalidTupleException
+	{
+		ManualClock clock = new ManualClock(100_000);
+		SimpleTupleStore tuples = new SimpleTupleStore(clock).enableLeopardIndex()
+			.write(expiring(CARL, MEMBER_RELATION, CONTOSO, 101_000))
+			.write(CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES);
+		assertTrue(tuples.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+
+		clock.set(101_001);
+		assertFalse(tuples.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+
+		clock.set(102_000);
+		assertEquals(1, tuples.reapExpired());
+		assertFalse(tuples.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+	}
+
 //	@Test
 //	public void testExpandViewersSlides()
 //	throws ParseException
@@ -154,4 +618,53 @@ public class SimpleTupleStoreTest
 //		assertTrue(usersets.contains(UserSet.parse(CARL)));
 //		assertTrue(usersets.contains(UserSet.parse(DANA)));
 //	}	
+
+	private static Tuple expiring(String userset, String relation, String objectId, long expiresAt)
+	throws ParseException
+	{
+		Tuple tuple = new Tuple(userset, relation, objectId);
+		tuple.setExpiresAt(new Date(expiresAt));
+		return tuple;
+	}
+
+	private static final class ManualClock
+	extends Clock
+	{
+		private volatile long millis;
+
+		private ManualClock(long millis)
+		{
+			super();
+			this.millis = millis;
+		}
+
+		private void set(long millis)
+		{
+			this.millis = millis;
+		}
+
+		@Override
+		public long millis()
+		{
+			return millis;
+		}
+
+		@Override
+		public Instant instant()
+		{
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public ZoneId getZone()
+		{
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone)
+		{
+			return this;
+		}
+	}
 }
@@ -0,0 +1,162 @@
+package com.strategicgains.aclaid.domain;
+
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites._this;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.computedUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.exclusion;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.tupleToUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.union;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class SubjectLookupTest
+{
+	private static final String MEMBER = "member";
+	private static final String OWNER = "owner";
+	private static final String EDITOR = "editor";
+	private static final String VIEWER = "viewer";
+	private static final String PARENT = "parent";
+	private static final String BANNED = "banned";
+	private static final String READER = "reader";
+
+	private static final String KIM = "app:user/kim";
+	private static final String BEN = "app:user/ben";
+	private static final String SAM = "app:user/sam";
+	private static final String DANA = "app:user/dana";
+	private static final String ENG = "app:group/eng";
+	private static final String BACKEND = "app:group/backend";
+	private static final String ROOT = "app:folder/root";
+	private static final String ROADMAP = "app:doc/roadmap";
+
+	private AccessControl acl;
+	private ObjectId roadmap;
+
+	@Before
+	public void initialize()
+	throws ParseException, InvalidTupleException
+	{
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.object("user")
+			.object("group")
+				.relation(MEMBER)
+			.object("folder")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(OWNER),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+			.object("doc")
+				.relation(PARENT)
+				.relation(OWNER)
+				.relation(EDITOR)
+					.rewrite(union(_this(), computedUserSet(OWNER)))
+				.relation(VIEWER)
+					.rewrite(union(_this(), computedUserSet(EDITOR),
+						tupleToUserSet(PARENT, computedUserSet(VIEWER).resource(Tuple.USERSET_OBJECT))))
+				.relation(BANNED)
+				.relation(READER)
+					.rewrite(exclusion(computedUserSet(VIEWER), computedUserSet(BANNED)));
+
+		acl = builder.build();
+		acl.addTuple(KIM, OWNER, ROOT);
+		acl.addTuple(ROOT, PARENT, ROADMAP);
+		acl.addTuple(BEN, EDITOR, ROADMAP);
+		acl.addTuple(ENG + "#" + MEMBER, VIEWER, ROADMAP);
+		acl.addTuple(SAM, MEMBER, ENG);
+		acl.addTuple(BACKEND + "#" + MEMBER, MEMBER, ENG);
+		acl.addTuple(DANA, MEMBER, BACKEND);
+		roadmap = new ObjectId(ROADMAP);
+	}
+
+	@Test
+	public void testExpand()
+	throws ParseException
+	{
+		UsersetTree tree = acl.expand(roadmap, VIEWER);
+		assertEquals(new UserSet(roadmap, VIEWER), tree.getUserset());
+		assertEquals(UsersetTree.Kind.UNION, tree.getKind());
+		assertEquals(3, tree.getChildren().size());
+		assertEquals(usersets(ENG + "#" + MEMBER, BEN, KIM), tree.leaves().collect(Collectors.toSet()));
+
+		UsersetTree direct = tree.getChildren().get(0);
+		assertTrue(direct.isLeaf());
+		assertEquals(usersets(ENG + "#" + MEMBER), new HashSet<>(direct.getSubjects()));
+
+		UsersetTree undefined = acl.expand(roadmap, "undefined");
+		assertTrue(undefined.isLeaf());
+		assertTrue(undefined.getSubjects().isEmpty());
+	}
+
+	@Test
+	public void testLookupSubjects()
+	throws ParseException
+	{
+		assertEquals(usersets(KIM, BEN, SAM, DANA), acl.lookupSubjects(roadmap, VIEWER).collect(Collectors.toSet()));
+		assertEquals(usersets(BEN), acl.lookupSubjects(roadmap, EDITOR).collect(Collectors.toSet()));
+		assertEquals(usersets(KIM), acl.lookupSubjects(new ObjectId(ROOT), VIEWER).collect(Collectors.toSet()));
+		assertTrue(acl.lookupSubjects(roadmap, "undefined").findAny().isEmpty());
+
+		for (UserSet subject : acl.lookupSubjects(roadmap, VIEWER).toList())
+		{
+			assertTrue(subject.toString(), acl.check(subject, VIEWER, roadmap));
+		}
+	}
+
+	@Test
+	public void testDepthAndLimit()
+	throws ParseException
+	{
+		assertEquals(usersets(KIM, BEN, SAM), acl.lookupSubjects(roadmap, VIEWER, 2, 10).collect(Collectors.toSet()));
+		assertEquals(usersets(KIM, BEN), acl.lookupSubjects(roadmap, VIEWER, 1, 10).collect(Collectors.toSet()));
+		assertEquals(2, acl.lookupSubjects(roadmap, VIEWER, 5, 2).count());
+	}
+
+	@Test
+	public void testCyclicParentsTerminate()
+	throws ParseException, InvalidTupleException
+	{
+		acl.addTuple(ROOT, PARENT, ROOT);
+		assertEquals(usersets(KIM), acl.lookupSubjects(new ObjectId(ROOT), VIEWER).collect(Collectors.toSet()));
+		assertEquals(usersets(KIM, BEN, SAM, DANA), acl.lookupSubjects(roadmap, VIEWER).collect(Collectors.toSet()));
+	}
+
+	@Test
+	public void testExclusionConfirmsCandidates()
+	throws ParseException, InvalidTupleException
+	{
+		acl.addTuple(SAM, BANNED, ROADMAP);
+		acl.addTuple(BEN, BANNED, ROADMAP);
+
+		UsersetTree tree = acl.expand(roadmap, READER);
+		assertEquals(UsersetTree.Kind.EXCLUSION, tree.getKind());
+		assertFalse(tree.isExact());
+		assertEquals(usersets(KIM, DANA), acl.lookupSubjects(roadmap, READER).collect(Collectors.toSet()));
+		assertTrue(acl.lookupSubjects(roadmap, BANNED).allMatch(s -> !acl.check(s, READER, roadmap)));
+	}
+
+	private Set<UserSet> usersets(String... usersets)
+	throws ParseException
+	{
+		Set<UserSet> results = new HashSet<>();
+
+		for (String userset : usersets)
+		{
+			results.add(UserSet.parse(userset));
+		}
+
+		return results;
+	}
+}
@@ -0,0 +1,94 @@
+package com.strategicgains.aclaid.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimerWheelTest
+{
+	@Test
+	public void testItemsAreDueAfterTheirDeadline()
+	{
+		TimerWheel<String> wheel = new TimerWheel<>(10, 1000);
+		wheel.schedule("a", 1005);
+		wheel.schedule("b", 1010);
+		wheel.schedule("c", 999);
+		assertEquals(3, wheel.size());
+
+		assertEquals(Arrays.asList("c"), wheel.advance(1000));
+		assertTrue(wheel.advance(1009).isEmpty());
+		List<String> due = wheel.advance(1010);
+		assertEquals(2, due.size());
+		assertTrue(due.containsAll(Arrays.asList("a", "b")));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void testNextDeadline()
+	{
+		TimerWheel<String> wheel = new TimerWheel<>(10, 1000);
+		assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+
+		wheel.schedule("a", 1_000_000);
+		wheel.schedule("b", 1015);
+		wheel.schedule("c", 1015);
+		assertEquals(1015, wheel.nextDeadline());
+
+		wheel.advance(1020);
+		assertEquals(1_000_000, wheel.nextDeadline());
+
+		wheel.advance(1_000_000);
+		assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+	}
+
+	@Test
+	public void testDistantDeadlinesCascade()
+	{
+		Random random = new Random(7);
+		TimerWheel<Integer> wheel = new TimerWheel<>(1, 0);
+		Map<Integer, Long> deadlines = new HashMap<>();
+
+		for (int i = 0; i < 2000; i++)
+		{
+			// Spread over every level, including past the top level's range.
+			long deadline = (long) Math.pow(2, random.nextDouble() * 25);
+			deadlines.put(i, deadline);
+			wheel.schedule(i, deadline);
+		}
+
+		long now = 0;
+
+		while (!wheel.isEmpty())
+		{
+			now += 1 + random.nextInt(4096);
+
+			for (Integer item : wheel.advance(now))
+			{
+				long deadline = deadlines.remove(item);
+				assertTrue(deadline <= now);
+				assertTrue(deadline > now - 4097);
+			}
+		}
+
+		assertTrue(deadlines.isEmpty());
+	}
+
+	@Test
+	public void testIdleWheelSkipsAhead()
+	{
+		TimerWheel<String> wheel = new TimerWheel<>(1000, 0);
+		assertTrue(wheel.advance(Long.MAX_VALUE / 2).isEmpty());
+
+		long later = (Long.MAX_VALUE / 2000) * 1000 + 5000;
+		wheel.schedule("a", later);
+		assertTrue(wheel.advance(later - 1).isEmpty());
+		assertEquals(Arrays.asList("a"), wheel.advance(later));
+	}
+}
@@ -0,0 +1,379 @@
+package com.strategicgains.aclaid.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.strategicgains.aclaid.domain.encoded.DictionaryTupleStore;
+import com.strategicgains.aclaid.domain.encoded.OffHeapTupleStore;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+/**
+ * The behavior every TupleStore implementation shares, run against each of them.
+ */
+@RunWith(Parameterized.class)
+public class TupleStoreTest
+{
+	private static final String DOCUMENT_NAMESPACE = "doc";
+	private static final String ORGANIZATION_NAMESPACE = "org";
+	private static final String FOLDER_NAMESPACE = "folder";
+
+	// Relations
+	private static final String EDITOR_RELATION = "editor";
+	private static final String MEMBER_RELATION = "member";
+	private static final String OWNER_RELATION = "owner";
+	private static final String PARENT_RELATION = "parent";
+	private static final String VIEWER_RELATION = "viewer";
+	private static final List<String> RELATIONS = Arrays.asList(EDITOR_RELATION, MEMBER_RELATION, OWNER_RELATION, PARENT_RELATION, VIEWER_RELATION);
+
+	// Groups
+	private static final String CONTOSO = ORGANIZATION_NAMESPACE + ":contoso";
+	private static final String CONTOSO_MEMBER = CONTOSO + "#" + MEMBER_RELATION;
+
+	// Users
+	private static final String KIM = DOCUMENT_NAMESPACE + ":user/kim";
+	private static final String BEN = DOCUMENT_NAMESPACE + ":user/ben";
+	private static final String CARL = DOCUMENT_NAMESPACE + ":user/carl";
+	private static final String DANA = DOCUMENT_NAMESPACE + ":user/dana";
+
+	// Resources
+	private static final String DOC_ROADMAP = DOCUMENT_NAMESPACE + ":document/roadmap";
+	private static final String DOC_README = DOCUMENT_NAMESPACE + ":document/readme";
+	private static final String DOC_SLIDES = DOCUMENT_NAMESPACE + ":document/slides";
+	private static final String FOLDER_PLANNING = FOLDER_NAMESPACE + ":folder/planning";
+	private static final String FOLDER_ENGINEERING = FOLDER_NAMESPACE + ":folder/engineering";
+	private static final List<String> OBJECTS = Arrays.asList(DOC_ROADMAP, DOC_README, DOC_SLIDES, FOLDER_PLANNING, FOLDER_ENGINEERING, CONTOSO);
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> stores()
+	{
+		IntFunction<TupleStore> simple = maxDepth -> {
+			SimpleTupleStore store = new SimpleTupleStore();
+			store.setMaxDepth(maxDepth);
+			return store;
+		};
+		IntFunction<TupleStore> dictionary = maxDepth -> {
+			DictionaryTupleStore store = new DictionaryTupleStore();
+			store.setMaxDepth(maxDepth);
+			return store;
+		};
+		IntFunction<TupleStore> offHeap = maxDepth -> {
+			OffHeapTupleStore store = new OffHeapTupleStore();
+			store.setMaxDepth(maxDepth);
+			return store;
+		};
+
+		return Arrays.asList(
+			new Object[] {"SimpleTupleStore", simple},
+			new Object[] {"DictionaryTupleStore", dictionary},
+			new Object[] {"OffHeapTupleStore", offHeap});
+	}
+
+	@Parameter(0)
+	public String name;
+
+	// Creates an empty store following nested usersets to the given depth.
+	@Parameter(1)
+	public IntFunction<TupleStore> factory;
+
+	private TupleStore ts;
+
+	@Before
+	public void initialize()
+	throws ParseException, InvalidTupleException
+	{
+		ts = factory.apply(TupleStore.DEFAULT_MAX_DEPTH);
+		write(ts, KIM, OWNER_RELATION, DOC_ROADMAP);
+		write(ts, BEN, EDITOR_RELATION, DOC_ROADMAP);
+		write(ts, KIM, EDITOR_RELATION, DOC_ROADMAP);
+		write(ts, CARL, MEMBER_RELATION, CONTOSO);
+		write(ts, DANA, MEMBER_RELATION, CONTOSO);
+		write(ts, CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES);
+		write(ts, CONTOSO_MEMBER, EDITOR_RELATION, FOLDER_ENGINEERING);
+		write(ts, FOLDER_PLANNING, PARENT_RELATION, FOLDER_ENGINEERING);
+		write(ts, FOLDER_ENGINEERING, PARENT_RELATION, DOC_README);
+	}
+
+	@Test
+	public void testReadOneDoesNotFollowIndirect()
+	throws ParseException
+	{
+		assertFalse(contains(ts, KIM, VIEWER_RELATION, DOC_ROADMAP));
+		assertFalse(contains(ts, CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertFalse(contains(ts, DANA, EDITOR_RELATION, FOLDER_ENGINEERING));
+	}
+
+	@Test
+	public void testReadOneKimOwnerOfRoadmap()
+	throws ParseException
+	{
+		Collection<Tuple> tuples = ts.read(new TupleSet(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP)));
+		assertEquals(1, tuples.size());
+		Tuple tuple = tuples.iterator().next();
+		assertEquals(DOC_ROADMAP, tuple.getObjectId().toString());
+		assertEquals(OWNER_RELATION, tuple.getRelation());
+		assertEquals(KIM, tuple.getUserset().toString());
+	}
+
+	@Test
+	public void testReadOneKimEditorOfRoadmap()
+	throws ParseException
+	{
+		Collection<Tuple> tuples = ts.read(new TupleSet(UserSet.parse(KIM), EDITOR_RELATION, new ObjectId(DOC_ROADMAP)));
+		assertEquals(1, tuples.size());
+		Tuple tuple = tuples.iterator().next();
+		assertEquals(DOC_ROADMAP, tuple.getObjectId().toString());
+		assertEquals(EDITOR_RELATION, tuple.getRelation());
+		assertEquals(KIM, tuple.getUserset().toString());
+	}
+
+	@Test
+	public void testReadEditorsForRoadmap()
+	throws ParseException
+	{
+		Collection<Tuple> tuples = ts.read(new TupleSet(EDITOR_RELATION, new ObjectId(DOC_ROADMAP)));
+		assertNotNull(tuples);
+		assertEquals(2, tuples.size());
+		tuples.forEach(tuple -> {
+			assertEquals(DOC_ROADMAP, tuple.getObjectId().toString());
+			assertEquals(EDITOR_RELATION, tuple.getRelation());
+			assertTrue(tuple.getUserset().toString().equals(KIM) || tuple.getUserset().toString().equals(BEN));
+		});
+	}
+
+	@Test
+	public void testReadViewersSlides()
+	throws ParseException
+	{
+		Collection<Tuple> tuples = ts.read(new TupleSet(VIEWER_RELATION, new ObjectId(DOC_SLIDES)));
+		assertEquals(1, tuples.size());
+		Tuple tuple = tuples.iterator().next();
+		assertEquals(new ObjectId(DOC_SLIDES), tuple.getObjectId());
+		assertEquals(VIEWER_RELATION, tuple.getRelation());
+		assertEquals(UserSet.parse(CONTOSO_MEMBER), tuple.getUserset());
+	}
+
+	@Test
+	public void testReadByUserset()
+	throws ParseException
+	{
+		assertEquals(2, ts.read(new TupleSet(UserSet.parse(CONTOSO_MEMBER))).size());
+		assertEquals(1, ts.read(new TupleSet(UserSet.parse(CONTOSO_MEMBER), VIEWER_RELATION)).size());
+		assertEquals(2, ts.read(new TupleSet(UserSet.parse(KIM))).size());
+		assertTrue(ts.read(new TupleSet(UserSet.parse(CONTOSO), MEMBER_RELATION)).isEmpty());
+	}
+
+	@Test
+	public void testCheckDirectAndIndirect()
+	throws ParseException
+	{
+		assertTrue(check(ts, KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(check(ts, CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(check(ts, DANA, EDITOR_RELATION, FOLDER_ENGINEERING));
+		assertFalse(check(ts, BEN, OWNER_RELATION, DOC_ROADMAP));
+		assertFalse(check(ts, KIM, VIEWER_RELATION, DOC_SLIDES));
+	}
+
+	@Test
+	public void testCheckAll()
+	throws ParseException
+	{
+		List<ObjectId> objectIds = Arrays.asList(new ObjectId(DOC_ROADMAP), new ObjectId(DOC_SLIDES), new ObjectId(DOC_README),
+			new ObjectId(FOLDER_ENGINEERING), new ObjectId(CONTOSO));
+
+		for (String user : Arrays.asList(KIM, BEN, CARL, DANA))
+		{
+			for (String relation : Arrays.asList(OWNER_RELATION, EDITOR_RELATION, VIEWER_RELATION, MEMBER_RELATION))
+			{
+				BitSet results = ts.checkAll(UserSet.parse(user), relation, objectIds);
+
+				for (int i = 0; i < objectIds.size(); i++)
+				{
+					assertEquals(ts.check(UserSet.parse(user), relation, objectIds.get(i)), results.get(i));
+				}
+			}
+		}
+
+		assertEquals(2, ts.checkAll(UserSet.parse(CARL), VIEWER_RELATION, Arrays.asList(new ObjectId(DOC_SLIDES), new ObjectId(DOC_ROADMAP), new ObjectId(DOC_SLIDES))).cardinality());
+	}
+
+	@Test
+	public void testCheckNestedGroups()
+	throws ParseException, InvalidTupleException
+	{
+		TupleStore tuples = writeNestedGroups(factory.apply(TupleStore.DEFAULT_MAX_DEPTH));
+		assertTrue(check(tuples, KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g9"));
+		assertTrue(check(tuples, KIM, VIEWER_RELATION, DOC_ROADMAP));
+		assertFalse(check(tuples, BEN, VIEWER_RELATION, DOC_ROADMAP));
+		assertFalse(check(tuples, KIM, EDITOR_RELATION, DOC_ROADMAP));
+
+		TupleStore shallow = writeNestedGroups(factory.apply(5));
+		assertFalse(check(shallow, KIM, VIEWER_RELATION, DOC_ROADMAP));
+		assertTrue(check(shallow, KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g5"));
+	}
+
+	@Test
+	public void testCheckGroupCycle()
+	throws ParseException, InvalidTupleException
+	{
+		TupleStore tuples = factory.apply(TupleStore.DEFAULT_MAX_DEPTH);
+		write(tuples, ORGANIZATION_NAMESPACE + ":group/a#" + MEMBER_RELATION, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/b");
+		write(tuples, ORGANIZATION_NAMESPACE + ":group/b#" + MEMBER_RELATION, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/a");
+		write(tuples, CARL, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/a");
+
+		assertTrue(check(tuples, CARL, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/b"));
+		assertFalse(check(tuples, DANA, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/b"));
+	}
+
+	@Test
+	public void testCheckWildcardUser()
+	throws ParseException, InvalidTupleException
+	{
+		write(ts, DOCUMENT_NAMESPACE + ":user/*", VIEWER_RELATION, DOC_README);
+		assertTrue(check(ts, KIM, VIEWER_RELATION, DOC_README));
+		assertTrue(check(ts, DOCUMENT_NAMESPACE + ":user/unknown", VIEWER_RELATION, DOC_README));
+		assertFalse(check(ts, KIM, EDITOR_RELATION, DOC_README));
+		assertFalse(check(ts, FOLDER_PLANNING, VIEWER_RELATION, DOC_README));
+	}
+
+	@Test
+	public void testRemove()
+	throws ParseException
+	{
+		ts.remove(UserSet.parse(DANA), MEMBER_RELATION, new ObjectId(CONTOSO));
+		ts.remove(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP));
+		ts.remove(UserSet.parse(CONTOSO_MEMBER), EDITOR_RELATION, new ObjectId(FOLDER_ENGINEERING));
+		ts.remove(UserSet.parse(BEN), OWNER_RELATION, new ObjectId(DOC_ROADMAP));
+
+		assertEquals(6, count(ts));
+		assertFalse(check(ts, DANA, VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(check(ts, CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertFalse(check(ts, CARL, EDITOR_RELATION, FOLDER_ENGINEERING));
+		assertFalse(contains(ts, KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(contains(ts, KIM, EDITOR_RELATION, DOC_ROADMAP));
+		assertEquals(1, ts.read(new TupleSet(MEMBER_RELATION, new ObjectId(CONTOSO))).size());
+	}
+
+	@Test
+	public void testDuplicateWriteIsIgnored()
+	throws ParseException, InvalidTupleException
+	{
+		long revision = ts.getRevision();
+		write(ts, KIM, OWNER_RELATION, DOC_ROADMAP);
+		assertEquals(9, count(ts));
+		assertEquals(revision, ts.getRevision());
+	}
+
+	@Test
+	public void testBulkWriteAndRemove()
+	throws ParseException, InvalidTupleException
+	{
+		List<Tuple> tuples = new ArrayList<>();
+
+		for (int i = 0; i < 5000; i++)
+		{
+			tuples.add(new Tuple(DOCUMENT_NAMESPACE + ":user/u" + i, MEMBER_RELATION, CONTOSO));
+		}
+
+		ts.write(tuples);
+		assertEquals(5009, count(ts));
+		assertTrue(check(ts, DOCUMENT_NAMESPACE + ":user/u4999", VIEWER_RELATION, DOC_SLIDES));
+
+		ts.remove(tuples.subList(0, 4000));
+		assertEquals(1009, count(ts));
+		assertFalse(check(ts, DOCUMENT_NAMESPACE + ":user/u0", VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(check(ts, DOCUMENT_NAMESPACE + ":user/u4000", VIEWER_RELATION, DOC_SLIDES));
+	}
+
+	@Test
+	public void testBulkWriteWithInvalidTupleWritesNothing()
+	throws ParseException
+	{
+		long revision = ts.getRevision();
+
+		try
+		{
+			ts.write(Arrays.asList(new Tuple(BEN, OWNER_RELATION, DOC_README), new Tuple()));
+			fail("Expected InvalidTupleException");
+		}
+		catch (InvalidTupleException e)
+		{
+			// expected
+		}
+
+		assertEquals(revision, ts.getRevision());
+		assertEquals(9, count(ts));
+		assertFalse(contains(ts, BEN, OWNER_RELATION, DOC_README));
+	}
+
+	/**
+	 * Group g0 has kim as a member, each g(n) contains g(n-1)#member, g9#member views the roadmap.
+	 */
+	private static TupleStore writeNestedGroups(TupleStore tuples)
+	throws ParseException, InvalidTupleException
+	{
+		write(tuples, KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g0");
+
+		for (int i = 1; i < 10; i++)
+		{
+			write(tuples, ORGANIZATION_NAMESPACE + ":group/g" + (i - 1) + "#" + MEMBER_RELATION, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g" + i);
+		}
+
+		write(tuples, ORGANIZATION_NAMESPACE + ":group/g9#" + MEMBER_RELATION, VIEWER_RELATION, DOC_ROADMAP);
+		return tuples;
+	}
+
+	private static void write(TupleStore tuples, String userset, String relation, String objectId)
+	throws ParseException, InvalidTupleException
+	{
+		tuples.write(UserSet.parse(userset), relation, new ObjectId(objectId));
+	}
+
+	private static boolean check(TupleStore tuples, String userset, String relation, String objectId)
+	throws ParseException
+	{
+		return tuples.check(UserSet.parse(userset), relation, new ObjectId(objectId));
+	}
+
+	private static boolean contains(TupleStore tuples, String userset, String relation, String objectId)
+	throws ParseException
+	{
+		return !tuples.read(new TupleSet(UserSet.parse(userset), relation, new ObjectId(objectId))).isEmpty();
+	}
+
+	/**
+	 * Count the stored tuples on the fixture's objects, which are all the tuples the tests write.
+	 */
+	private static int count(TupleStore tuples)
+	throws ParseException
+	{
+		int count = 0;
+
+		for (String objectId : OBJECTS)
+		{
+			for (String relation : RELATIONS)
+			{
+				count += tuples.read(new TupleSet(relation, new ObjectId(objectId))).size();
+			}
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,69 @@
+package com.strategicgains.aclaid.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+
+import org.junit.Test;
+
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class ZookieTest
+{
+	@Test
+	public void testEncodeDecode()
+	throws ParseException
+	{
+		for (long revision : new long[] {0, 1, 42, Long.MAX_VALUE})
+		{
+			Zookie zookie = new Zookie(revision);
+			assertEquals(zookie, Zookie.decode(zookie.encode()));
+			assertEquals(revision, Zookie.decode(zookie.toString()).getRevision());
+		}
+	}
+
+	@Test
+	public void testIsSatisfiedBy()
+	{
+		Zookie zookie = new Zookie(5);
+		assertFalse(zookie.isSatisfiedBy(4));
+		assertTrue(zookie.isSatisfiedBy(5));
+		assertTrue(zookie.isSatisfiedBy(6));
+		assertTrue(zookie.compareTo(new Zookie(6)) < 0);
+	}
+
+	@Test(expected = ParseException.class)
+	public void testDecodeInvalid()
+	throws ParseException
+	{
+		Zookie.decode("not a zookie");
+	}
+
+	@Test(expected = ParseException.class)
+	public void testDecodeWrongLength()
+	throws ParseException
+	{
+		Zookie.decode("AAAA");
+	}
+
+	@Test
+	public void testSnapshotServesSatisfiedZookie()
+	throws ParseException, InvalidTupleException
+	{
+		SimpleTupleStore tuples = new SimpleTupleStore();
+		UserSet kim = UserSet.parse("app:user/kim");
+		ObjectId roadmap = new ObjectId("app:doc/roadmap");
+		Zookie before = tuples.getZookie();
+
+		try (SimpleTupleStore.Snapshot snapshot = tuples.snapshot())
+		{
+			Zookie written = tuples.write(kim, "owner", roadmap).getZookie();
+			assertFalse(snapshot.check(kim, "owner", roadmap, before));
+			assertTrue(snapshot.check(kim, "owner", roadmap, written));
+			assertTrue(snapshot.read(new TupleSet(kim), before).isEmpty());
+			assertEquals(1, snapshot.read(new TupleSet(kim), written).size());
+		}
+	}
+}
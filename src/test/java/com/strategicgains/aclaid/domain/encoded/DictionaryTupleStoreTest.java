@@ -0,0 +1,173 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites._this;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.computedUserSet;
+import static com.strategicgains.aclaid.builder.rewrite.Rewrites.union;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.AccessControl;
+import com.strategicgains.aclaid.builder.AccessControlBuilder;
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class DictionaryTupleStoreTest
+{
+	private static final String DOCUMENT_NAMESPACE = "doc";
+	private static final String ORGANIZATION_NAMESPACE = "org";
+	private static final String FOLDER_NAMESPACE = "folder";
+
+	// Relations
+	private static final String EDITOR_RELATION = "editor";
+	private static final String MEMBER_RELATION = "member";
+	private static final String OWNER_RELATION = "owner";
+	private static final String PARENT_RELATION = "parent";
+	private static final String VIEWER_RELATION = "viewer";
+
+	// Groups
+	private static final String CONTOSO = ORGANIZATION_NAMESPACE + ":contoso";
+	private static final String CONTOSO_MEMBER = CONTOSO + "#" + MEMBER_RELATION;
+
+	// Users
+	private static final String KIM = DOCUMENT_NAMESPACE + ":user/kim";
+	private static final String BEN = DOCUMENT_NAMESPACE + ":user/ben";
+	private static final String CARL = DOCUMENT_NAMESPACE + ":user/carl";
+	private static final String DANA = DOCUMENT_NAMESPACE + ":user/dana";
+
+	// Resources
+	private static final String DOC_ROADMAP = DOCUMENT_NAMESPACE + ":document/roadmap";
+	private static final String DOC_README = DOCUMENT_NAMESPACE + ":document/readme";
+	private static final String DOC_SLIDES = DOCUMENT_NAMESPACE + ":document/slides";
+	private static final String FOLDER_PLANNING = FOLDER_NAMESPACE + ":folder/planning";
+	private static final String FOLDER_ENGINEERING = FOLDER_NAMESPACE + ":folder/engineering";
+
+	private DictionaryTupleStore ts;
+
+	@Before
+	public void initialize()
+	throws ParseException, InvalidTupleException
+	{
+		ts = new DictionaryTupleStore()
+			.write(KIM, OWNER_RELATION, DOC_ROADMAP)
+			.write(BEN, EDITOR_RELATION, DOC_ROADMAP)
+			.write(KIM, EDITOR_RELATION, DOC_ROADMAP)
+			.write(CARL, MEMBER_RELATION, CONTOSO)
+			.write(DANA, MEMBER_RELATION, CONTOSO)
+			.write(CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES)
+			.write(CONTOSO_MEMBER, EDITOR_RELATION, FOLDER_ENGINEERING)
+			.write(FOLDER_PLANNING, PARENT_RELATION, FOLDER_ENGINEERING)
+			.write(FOLDER_ENGINEERING, PARENT_RELATION, DOC_README);
+	}
+
+	@Test
+	public void testManyRowsSurviveGrowthAndRemoval()
+	throws ParseException, InvalidTupleException
+	{
+		for (int i = 0; i < 1000; i++)
+		{
+			ts.write(DOCUMENT_NAMESPACE + ":user/u" + i, MEMBER_RELATION, CONTOSO);
+		}
+
+		for (int i = 0; i < 1000; i += 2)
+		{
+			ts.remove(UserSet.parse(DOCUMENT_NAMESPACE + ":user/u" + i), MEMBER_RELATION, new ObjectId(CONTOSO));
+		}
+
+		assertEquals(509, ts.size());
+		assertFalse(ts.check(DOCUMENT_NAMESPACE + ":user/u10", VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(ts.check(DOCUMENT_NAMESPACE + ":user/u11", VIEWER_RELATION, DOC_SLIDES));
+		assertEquals(502, ts.readAll(new ObjectId(CONTOSO), MEMBER_RELATION).size());
+	}
+
+	@Test
+	public void testExpiringTupleIsRejected()
+	throws ParseException
+	{
+		Tuple expiring = new Tuple(BEN, OWNER_RELATION, DOC_README);
+		expiring.setExpiresAt(new Date(System.currentTimeMillis() + 60_000));
+
+		try
+		{
+			ts.write(Arrays.asList(new Tuple(CARL, OWNER_RELATION, DOC_README), expiring));
+			fail("Expected InvalidTupleException");
+		}
+		catch (InvalidTupleException e)
+		{
+			// expected
+		}
+
+		assertFalse(ts.check(UserSet.parse(BEN), OWNER_RELATION, new ObjectId(DOC_README)));
+		assertFalse(ts.check(UserSet.parse(CARL), OWNER_RELATION, new ObjectId(DOC_README)));
+	}
+
+	@Test
+	public void testCartaExample()
+	throws ParseException, InvalidTupleException
+	{
+		String kim = "CartaExample:employee/kim";
+		String bob = "CartaExample:employee/bob";
+		String classA = "CartaExample:class/a";
+		String classB = "CartaExample:class/b";
+		String gradeS = "CartaExample:grade/s";
+		String gradeX = "CartaExample:grade/x";
+		String gradeY = "CartaExample:grade/y";
+
+		DictionaryTupleStore tuples = new DictionaryTupleStore()
+			.write(kim, "teacher", classA)
+			.write(bob, "teacher", classB)
+			.write(classA + "#teacher", "edit", gradeX)
+			.write(classA + "#teacher", "edit", gradeY)
+			.write(classB + "#teacher", "edit", gradeS)
+			.write(gradeX + "#edit", "view", gradeX)
+			.write(gradeY + "#edit", "view", gradeY);
+
+		assertTrue(tuples.check(kim, "teacher", classA));
+		assertFalse(tuples.check(kim, "teacher", classB));
+		assertTrue(tuples.check(kim, "edit", gradeX));
+		assertTrue(tuples.check(kim, "view", gradeY));
+		assertFalse(tuples.check(kim, "edit", gradeS));
+		assertTrue(tuples.check(bob, "edit", gradeS));
+		assertFalse(tuples.check(bob, "edit", gradeY));
+	}
+
+	@Test
+	public void testAccessControlWithDictionaryTupleStore()
+	throws ParseException, InvalidTupleException
+	{
+		String contoso = "app:org/contoso";
+		String roadmap = "app:doc/roadmap";
+		String slides = "app:doc/slides";
+
+		AccessControlBuilder builder = new AccessControlBuilder();
+		builder
+			.tupleStore(new DictionaryTupleStore())
+			.object("org")
+				.relation(MEMBER_RELATION)
+			.object("doc")
+				.relation(OWNER_RELATION)
+				.relation(EDITOR_RELATION)
+					.rewrite(union(_this(), computedUserSet(OWNER_RELATION)))
+				.relation(VIEWER_RELATION)
+					.rewrite(union(_this(), computedUserSet(EDITOR_RELATION)))
+			.tuple(KIM, OWNER_RELATION, roadmap)
+			.tuple(CARL, MEMBER_RELATION, contoso)
+			.tuple(contoso + "#" + MEMBER_RELATION, VIEWER_RELATION, slides);
+
+		AccessControl acl = builder.build();
+
+		assertTrue(acl.check(KIM, VIEWER_RELATION, roadmap));
+		assertTrue(acl.check(CARL, VIEWER_RELATION, slides));
+		assertFalse(acl.check(CARL, VIEWER_RELATION, roadmap));
+	}
+}
@@ -0,0 +1,246 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class OffHeapTupleStoreTest
+{
+	private static final String DOCUMENT_NAMESPACE = "doc";
+	private static final String ORGANIZATION_NAMESPACE = "org";
+
+	// Relations
+	private static final String EDITOR_RELATION = "editor";
+	private static final String MEMBER_RELATION = "member";
+	private static final String OWNER_RELATION = "owner";
+	private static final String PARENT_RELATION = "parent";
+	private static final String VIEWER_RELATION = "viewer";
+
+	private static final String CONTOSO = ORGANIZATION_NAMESPACE + ":contoso";
+	private static final String CONTOSO_MEMBER = CONTOSO + "#" + MEMBER_RELATION;
+	private static final String KIM = DOCUMENT_NAMESPACE + ":user/kim";
+	private static final String BEN = DOCUMENT_NAMESPACE + ":user/ben";
+	private static final String CARL = DOCUMENT_NAMESPACE + ":user/carl";
+	private static final String DANA = DOCUMENT_NAMESPACE + ":user/dana";
+	private static final String DOC_ROADMAP = DOCUMENT_NAMESPACE + ":document/roadmap";
+	private static final String DOC_README = DOCUMENT_NAMESPACE + ":document/readme";
+	private static final String DOC_SLIDES = DOCUMENT_NAMESPACE + ":document/slides";
+	private static final String FOLDER_PLANNING = "folder:folder/planning";
+	private static final String FOLDER_ENGINEERING = "folder:folder/engineering";
+
+	private OffHeapTupleStore ts;
+
+	@Before
+	public void initialize()
+	throws ParseException, InvalidTupleException
+	{
+		ts = new OffHeapTupleStore()
+			.write(KIM, OWNER_RELATION, DOC_ROADMAP)
+			.write(BEN, EDITOR_RELATION, DOC_ROADMAP)
+			.write(KIM, EDITOR_RELATION, DOC_ROADMAP)
+			.write(CARL, MEMBER_RELATION, CONTOSO)
+			.write(DANA, MEMBER_RELATION, CONTOSO)
+			.write(CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES)
+			.write(CONTOSO_MEMBER, EDITOR_RELATION, FOLDER_ENGINEERING)
+			.write(FOLDER_PLANNING, PARENT_RELATION, FOLDER_ENGINEERING)
+			.write(FOLDER_ENGINEERING, PARENT_RELATION, DOC_README);
+	}
+
+	@Test
+	public void testRead()
+	throws ParseException
+	{
+		assertEquals(9, ts.size());
+		assertNull(ts.readOne(KIM, VIEWER_RELATION, DOC_ROADMAP));
+		Tuple tuple = ts.readOne(KIM, OWNER_RELATION, DOC_ROADMAP);
+		assertNotNull(tuple);
+		assertEquals(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP), tuple);
+
+		assertEquals(2, ts.readAll(new ObjectId(DOC_ROADMAP), EDITOR_RELATION).size());
+		assertEquals(3, ts.readAll(new ObjectId(DOC_ROADMAP)).size());
+		assertEquals(2, ts.read(new TupleSet(UserSet.parse(CONTOSO_MEMBER))).size());
+		assertEquals(1, ts.read(new TupleSet(UserSet.parse(CONTOSO_MEMBER), VIEWER_RELATION)).size());
+		assertTrue(ts.read(new TupleSet(UserSet.parse(CONTOSO), MEMBER_RELATION)).isEmpty());
+	}
+
+	@Test
+	public void testCheck()
+	throws ParseException, InvalidTupleException
+	{
+		assertTrue(ts.check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(ts.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(ts.check(DANA, EDITOR_RELATION, FOLDER_ENGINEERING));
+		assertFalse(ts.check(BEN, OWNER_RELATION, DOC_ROADMAP));
+		assertFalse(ts.check(KIM, VIEWER_RELATION, DOC_SLIDES));
+
+		ts.write(DOCUMENT_NAMESPACE + ":user/*", VIEWER_RELATION, DOC_README);
+		assertTrue(ts.check(KIM, VIEWER_RELATION, DOC_README));
+		assertTrue(ts.check(DOCUMENT_NAMESPACE + ":user/unknown", VIEWER_RELATION, DOC_README));
+		assertFalse(ts.check(FOLDER_PLANNING, VIEWER_RELATION, DOC_README));
+	}
+
+	@Test
+	public void testCheckNestedGroups()
+	throws ParseException, InvalidTupleException
+	{
+		ts.write(KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g0");
+
+		for (int i = 1; i < 10; i++)
+		{
+			ts.write(ORGANIZATION_NAMESPACE + ":group/g" + (i - 1) + "#" + MEMBER_RELATION, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g" + i);
+		}
+
+		ts.write(ORGANIZATION_NAMESPACE + ":group/g9#" + MEMBER_RELATION, VIEWER_RELATION, DOC_README);
+
+		assertTrue(ts.check(KIM, VIEWER_RELATION, DOC_README));
+		assertFalse(ts.check(BEN, VIEWER_RELATION, DOC_README));
+
+		ts.setMaxDepth(5);
+		assertFalse(ts.check(KIM, VIEWER_RELATION, DOC_README));
+	}
+
+	@Test
+	public void testRemove()
+	throws ParseException, InvalidTupleException
+	{
+		long revision = ts.getRevision();
+		ts.remove(UserSet.parse(DANA), MEMBER_RELATION, new ObjectId(CONTOSO));
+		ts.remove(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP));
+		ts.write(KIM, EDITOR_RELATION, DOC_ROADMAP);
+
+		assertEquals(revision + 2, ts.getRevision());
+		assertEquals(7, ts.size());
+		assertFalse(ts.check(DANA, VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(ts.check(CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertNull(ts.readOne(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertEquals(1, ts.readAll(new ObjectId(CONTOSO)).size());
+	}
+
+	@Test
+	public void testExpiringTupleIsRejected()
+	throws ParseException
+	{
+		Tuple expiring = new Tuple(BEN, OWNER_RELATION, DOC_README);
+		expiring.setExpiresAt(new Date(System.currentTimeMillis() + 60_000));
+
+		try
+		{
+			ts.write(Arrays.asList(new Tuple(CARL, OWNER_RELATION, DOC_README), expiring));
+			fail("Expected InvalidTupleException");
+		}
+		catch (InvalidTupleException e)
+		{
+			// expected
+		}
+
+		assertFalse(ts.check(UserSet.parse(BEN), OWNER_RELATION, new ObjectId(DOC_README)));
+		assertFalse(ts.check(UserSet.parse(CARL), OWNER_RELATION, new ObjectId(DOC_README)));
+	}
+
+	@Test
+	public void testGrowthAcrossPages()
+	throws ParseException, InvalidTupleException
+	{
+		// Pages of 16 ints, so rows, links, heads and the tuple table all span many pages.
+		OffHeapTupleStore tuples = new OffHeapTupleStore(4);
+		List<Tuple> bulk = new ArrayList<>();
+
+		for (int i = 0; i < 2000; i++)
+		{
+			tuples.write(DOCUMENT_NAMESPACE + ":user/u" + i, MEMBER_RELATION, CONTOSO);
+			bulk.add(new Tuple(DOCUMENT_NAMESPACE + ":user/u" + i, VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d" + i));
+		}
+
+		tuples.write(bulk);
+		tuples.write(CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES);
+
+		for (int i = 0; i < 2000; i += 2)
+		{
+			tuples.remove(UserSet.parse(DOCUMENT_NAMESPACE + ":user/u" + i), MEMBER_RELATION, new ObjectId(CONTOSO));
+		}
+
+		assertEquals(3001, tuples.size());
+		assertFalse(tuples.check(DOCUMENT_NAMESPACE + ":user/u10", VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(tuples.check(DOCUMENT_NAMESPACE + ":user/u1999", VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(tuples.check(DOCUMENT_NAMESPACE + ":user/u10", VIEWER_RELATION, DOCUMENT_NAMESPACE + ":document/d10"));
+		assertEquals(1000, tuples.readAll(new ObjectId(CONTOSO), MEMBER_RELATION).size());
+
+		// Removed rows are reused.
+		tuples.write(DOCUMENT_NAMESPACE + ":user/u10", MEMBER_RELATION, CONTOSO);
+		assertTrue(tuples.check(DOCUMENT_NAMESPACE + ":user/u10", VIEWER_RELATION, DOC_SLIDES));
+	}
+
+	@Test
+	public void testSameAnswersAsDictionaryTupleStore()
+	throws ParseException, InvalidTupleException
+	{
+		Random random = new Random(23);
+		DictionaryTupleStore expected = new DictionaryTupleStore();
+		OffHeapTupleStore actual = new OffHeapTupleStore(6);
+
+		for (int i = 0; i < 5000; i++)
+		{
+			String group = ORGANIZATION_NAMESPACE + ":group/g" + random.nextInt(100);
+			String user = (random.nextInt(4) == 0 ? ORGANIZATION_NAMESPACE + ":group/g" + random.nextInt(100) + "#" + MEMBER_RELATION : DOCUMENT_NAMESPACE + ":user/u" + random.nextInt(300));
+			String relation = (random.nextBoolean() ? MEMBER_RELATION : VIEWER_RELATION);
+			Tuple tuple = new Tuple(user, relation, (random.nextBoolean() ? group : DOCUMENT_NAMESPACE + ":document/d" + random.nextInt(200)));
+
+			if (random.nextInt(5) == 0)
+			{
+				expected.remove(tuple);
+				actual.remove(tuple);
+			}
+			else
+			{
+				expected.write(tuple);
+				actual.write(tuple);
+			}
+		}
+
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getRevision(), actual.getRevision());
+		List<ObjectId> objectIds = new ArrayList<>();
+
+		for (int i = 0; i < 50; i++)
+		{
+			objectIds.add(new ObjectId(DOCUMENT_NAMESPACE + ":document/d" + i));
+			objectIds.add(new ObjectId(ORGANIZATION_NAMESPACE + ":group/g" + i));
+		}
+
+		for (int u = 0; u < 300; u += 7)
+		{
+			UserSet user = UserSet.parse(DOCUMENT_NAMESPACE + ":user/u" + u);
+
+			for (String relation : Arrays.asList(MEMBER_RELATION, VIEWER_RELATION))
+			{
+				assertEquals(expected.checkAll(user, relation, objectIds), actual.checkAll(user, relation, objectIds));
+				assertEquals(new HashSet<>(expected.readAll(user, relation)), new HashSet<>(actual.readAll(user, relation)));
+			}
+		}
+
+		for (ObjectId objectId : objectIds)
+		{
+			assertEquals(new HashSet<>(expected.readAll(objectId)), new HashSet<>(actual.readAll(objectId)));
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package com.strategicgains.aclaid.domain.encoded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.TupleSet;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class TupleSnapshotTest
+{
+	private static final String DOCUMENT_NAMESPACE = "doc";
+	private static final String ORGANIZATION_NAMESPACE = "org";
+
+	// Relations
+	private static final String EDITOR_RELATION = "editor";
+	private static final String MEMBER_RELATION = "member";
+	private static final String OWNER_RELATION = "owner";
+	private static final String PARENT_RELATION = "parent";
+	private static final String VIEWER_RELATION = "viewer";
+
+	private static final String CONTOSO = ORGANIZATION_NAMESPACE + ":contoso";
+	private static final String CONTOSO_MEMBER = CONTOSO + "#" + MEMBER_RELATION;
+	private static final String KIM = DOCUMENT_NAMESPACE + ":user/kim";
+	private static final String BEN = DOCUMENT_NAMESPACE + ":user/ben";
+	private static final String CARL = DOCUMENT_NAMESPACE + ":user/carl";
+	private static final String DANA = DOCUMENT_NAMESPACE + ":user/dana";
+	private static final String DOC_ROADMAP = DOCUMENT_NAMESPACE + ":document/roadmap";
+	private static final String DOC_README = DOCUMENT_NAMESPACE + ":document/readme";
+	private static final String DOC_SLIDES = DOCUMENT_NAMESPACE + ":document/slides";
+	private static final String FOLDER_PLANNING = "folder:folder/planning";
+	private static final String FOLDER_ENGINEERING = "folder:folder/engineering";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Tuple> tuples;
+	private TupleSnapshot snapshot;
+
+	@Before
+	public void initialize()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		tuples = new ArrayList<>(Arrays.asList(
+			new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP),
+			new Tuple(BEN, EDITOR_RELATION, DOC_ROADMAP),
+			new Tuple(KIM, EDITOR_RELATION, DOC_ROADMAP),
+			new Tuple(CARL, MEMBER_RELATION, CONTOSO),
+			new Tuple(DANA, MEMBER_RELATION, CONTOSO),
+			new Tuple(CONTOSO_MEMBER, VIEWER_RELATION, DOC_SLIDES),
+			new Tuple(CONTOSO_MEMBER, EDITOR_RELATION, FOLDER_ENGINEERING),
+			new Tuple(FOLDER_PLANNING, PARENT_RELATION, FOLDER_ENGINEERING),
+			new Tuple(FOLDER_ENGINEERING, PARENT_RELATION, DOC_README)));
+		snapshot = writeAndOpen(tuples, 42);
+	}
+
+	@Test
+	public void testHeader()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		assertEquals(42, snapshot.getRevision());
+		assertEquals(9, snapshot.size());
+		assertFalse(snapshot.isEmpty());
+		assertEquals(new HashSet<>(tuples), new HashSet<>(snapshot.readAll()));
+
+		TupleSnapshot empty = writeAndOpen(new ArrayList<>(), 0);
+		assertTrue(empty.isEmpty());
+		assertFalse(empty.check(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP)));
+	}
+
+	@Test
+	public void testDuplicatesAreWrittenOnce()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		tuples.add(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertEquals(9, writeAndOpen(tuples, 1).size());
+	}
+
+	@Test
+	public void testRead()
+	throws ParseException
+	{
+		assertNull(snapshot.readOne(UserSet.parse(KIM), VIEWER_RELATION, new ObjectId(DOC_ROADMAP)));
+		Tuple tuple = snapshot.readOne(UserSet.parse(KIM), OWNER_RELATION, new ObjectId(DOC_ROADMAP));
+		assertNotNull(tuple);
+		assertEquals(new Tuple(KIM, OWNER_RELATION, DOC_ROADMAP), tuple);
+
+		assertEquals(2, snapshot.readAll(new ObjectId(DOC_ROADMAP), EDITOR_RELATION).size());
+		assertEquals(3, snapshot.readAll(new ObjectId(DOC_ROADMAP)).size());
+		assertEquals(2, snapshot.read(new TupleSet(UserSet.parse(CONTOSO_MEMBER))).size());
+		assertEquals(1, snapshot.read(new TupleSet(UserSet.parse(CONTOSO_MEMBER), VIEWER_RELATION)).size());
+		assertEquals(2, snapshot.read(new TupleSet(UserSet.parse(KIM))).size());
+		assertTrue(snapshot.read(new TupleSet(UserSet.parse(CONTOSO), MEMBER_RELATION)).isEmpty());
+		assertTrue(snapshot.readAll(new ObjectId("doc:document/unknown")).isEmpty());
+	}
+
+	@Test
+	public void testCheck()
+	throws ParseException, IOException, InvalidTupleException
+	{
+		assertTrue(check(KIM, OWNER_RELATION, DOC_ROADMAP));
+		assertTrue(check(CARL, VIEWER_RELATION, DOC_SLIDES));
+		assertTrue(check(DANA, EDITOR_RELATION, FOLDER_ENGINEERING));
+		assertFalse(check(BEN, OWNER_RELATION, DOC_ROADMAP));
+		assertFalse(check(KIM, VIEWER_RELATION, DOC_SLIDES));
+
+		tuples.add(new Tuple(DOCUMENT_NAMESPACE + ":user/*", VIEWER_RELATION, DOC_README));
+		snapshot = writeAndOpen(tuples, 43);
+		assertTrue(check(KIM, VIEWER_RELATION, DOC_README));
+		assertTrue(check(DOCUMENT_NAMESPACE + ":user/unknown", VIEWER_RELATION, DOC_README));
+		assertFalse(check(KIM, EDITOR_RELATION, DOC_README));
+		assertFalse(check(FOLDER_PLANNING, VIEWER_RELATION, DOC_README));
+	}
+
+	@Test
+	public void testCheckNestedGroups()
+	throws ParseException, IOException, InvalidTupleException
+	{
+		List<Tuple> nested = new ArrayList<>();
+		nested.add(new Tuple(KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g0"));
+
+		for (int i = 1; i < 10; i++)
+		{
+			nested.add(new Tuple(ORGANIZATION_NAMESPACE + ":group/g" + (i - 1) + "#" + MEMBER_RELATION, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g" + i));
+		}
+
+		nested.add(new Tuple(ORGANIZATION_NAMESPACE + ":group/g9#" + MEMBER_RELATION, VIEWER_RELATION, DOC_ROADMAP));
+		snapshot = writeAndOpen(nested, 1);
+
+		assertTrue(check(KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g9"));
+		assertTrue(check(KIM, VIEWER_RELATION, DOC_ROADMAP));
+		assertFalse(check(BEN, VIEWER_RELATION, DOC_ROADMAP));
+
+		snapshot.setMaxDepth(5);
+		assertFalse(check(KIM, VIEWER_RELATION, DOC_ROADMAP));
+		assertTrue(check(KIM, MEMBER_RELATION, ORGANIZATION_NAMESPACE + ":group/g5"));
+	}
+
+	@Test
+	public void testSameAnswersAsDictionaryTupleStore()
+	throws ParseException, IOException, InvalidTupleException
+	{
+		Random random = new Random(17);
+		List<Tuple> graph = new ArrayList<>();
+
+		for (int i = 0; i < 3000; i++)
+		{
+			String group = ORGANIZATION_NAMESPACE + ":group/g" + random.nextInt(100);
+			String user = (random.nextInt(4) == 0 ? ORGANIZATION_NAMESPACE + ":group/g" + random.nextInt(100) + "#" + MEMBER_RELATION : DOCUMENT_NAMESPACE + ":user/u" + random.nextInt(300));
+			String relation = (random.nextBoolean() ? MEMBER_RELATION : VIEWER_RELATION);
+			graph.add(new Tuple(user, relation, (random.nextBoolean() ? group : DOCUMENT_NAMESPACE + ":document/d" + random.nextInt(200))));
+		}
+
+		DictionaryTupleStore expected = new DictionaryTupleStore(graph);
+		snapshot = writeAndOpen(graph, expected.getRevision());
+		assertEquals(expected.size(), snapshot.size());
+
+		List<ObjectId> objectIds = new ArrayList<>();
+
+		for (int i = 0; i < 50; i++)
+		{
+			objectIds.add(new ObjectId(DOCUMENT_NAMESPACE + ":document/d" + i));
+			objectIds.add(new ObjectId(ORGANIZATION_NAMESPACE + ":group/g" + i));
+		}
+
+		for (int u = 0; u < 300; u += 7)
+		{
+			UserSet user = UserSet.parse(DOCUMENT_NAMESPACE + ":user/u" + u);
+
+			for (String relation : Arrays.asList(MEMBER_RELATION, VIEWER_RELATION))
+			{
+				assertEquals(expected.checkAll(user, relation, objectIds), snapshot.checkAll(user, relation, objectIds));
+				assertEquals(new HashSet<>(expected.readAll(user, relation)), new HashSet<>(snapshot.readAll(user, relation)));
+			}
+		}
+
+		for (ObjectId objectId : objectIds)
+		{
+			assertEquals(new HashSet<>(expected.readAll(objectId)), new HashSet<>(snapshot.readAll(objectId)));
+			assertEquals(new HashSet<>(expected.readAll(objectId, MEMBER_RELATION)), new HashSet<>(snapshot.readAll(objectId, MEMBER_RELATION)));
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly()
+	throws ParseException
+	{
+		snapshot.write(new Tuple(BEN, OWNER_RELATION, DOC_ROADMAP));
+	}
+
+	@Test
+	public void testExpiringTupleIsRejected()
+	throws IOException, ParseException
+	{
+		Path path = folder.getRoot().toPath().resolve("expiring");
+		Tuple expiring = new Tuple(BEN, OWNER_RELATION, DOC_README);
+		expiring.setExpiresAt(new Date(System.currentTimeMillis() + 60_000));
+		tuples.add(expiring);
+
+		try
+		{
+			TupleSnapshot.write(path, tuples, 1);
+			fail("Expected InvalidTupleException");
+		}
+		catch (InvalidTupleException e)
+		{
+			// expected
+		}
+
+		assertFalse(path.toFile().exists());
+	}
+
+	@Test
+	public void testInvalidFileIsRejected()
+	throws IOException, InvalidTupleException
+	{
+		Path path = folder.getRoot().toPath().resolve("snapshot");
+		TupleSnapshot.write(path, tuples, 1);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+		{
+			channel.write(ByteBuffer.wrap(new byte[] {9, 9, 9, 9}), 4);
+		}
+
+		try
+		{
+			TupleSnapshot.open(path);
+			fail("Expected IOException");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().contains("version"));
+		}
+	}
+
+	private boolean check(String user, String relation, String objectId)
+	throws ParseException
+	{
+		return snapshot.check(UserSet.parse(user), relation, new ObjectId(objectId));
+	}
+
+	private TupleSnapshot writeAndOpen(List<Tuple> tuples, long revision)
+	throws IOException, InvalidTupleException
+	{
+		Path path = folder.newFile().toPath();
+		TupleSnapshot.write(path, tuples, revision);
+		return TupleSnapshot.open(path);
+	}
+}
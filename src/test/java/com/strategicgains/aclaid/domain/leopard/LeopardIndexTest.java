@@ -0,0 +1,159 @@
+package com.strategicgains.aclaid.domain.leopard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class LeopardIndexTest
+{
+	private static final String MEMBER = "member";
+	private static final String VIEWER = "viewer";
+
+	private static final String KIM = "app:user/kim";
+	private static final String BEN = "app:user/ben";
+	private static final String ENG = "app:group/eng";
+	private static final String BACKEND = "app:group/backend";
+	private static final String DATABASE = "app:group/database";
+	private static final String ROADMAP = "app:doc/roadmap";
+
+	private LeopardIndex index;
+
+	@Before
+	public void initialize()
+	throws ParseException
+	{
+		index = new LeopardIndex();
+		index.add(tuple(KIM, MEMBER, DATABASE));
+		index.add(tuple(BEN, MEMBER, ENG));
+		index.add(tuple(DATABASE + "#" + MEMBER, MEMBER, BACKEND));
+		index.add(tuple(BACKEND + "#" + MEMBER, MEMBER, ENG));
+		index.add(tuple(ENG + "#" + MEMBER, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testNestedMembership()
+	throws ParseException
+	{
+		assertTrue(check(KIM, MEMBER, DATABASE));
+		assertTrue(check(KIM, MEMBER, BACKEND));
+		assertTrue(check(KIM, MEMBER, ENG));
+		assertTrue(check(KIM, VIEWER, ROADMAP));
+		assertTrue(check(BEN, VIEWER, ROADMAP));
+		assertFalse(check(BEN, MEMBER, BACKEND));
+		assertFalse(check(KIM, MEMBER, ROADMAP));
+	}
+
+	@Test
+	public void testRemoveNestedUserset()
+	throws ParseException
+	{
+		index.remove(tuple(BACKEND + "#" + MEMBER, MEMBER, ENG));
+		assertTrue(check(KIM, MEMBER, BACKEND));
+		assertFalse(check(KIM, MEMBER, ENG));
+		assertFalse(check(KIM, VIEWER, ROADMAP));
+		assertTrue(check(BEN, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testRemoveDirectMember()
+	throws ParseException
+	{
+		index.remove(tuple(KIM, MEMBER, DATABASE));
+		assertFalse(check(KIM, MEMBER, DATABASE));
+		assertFalse(check(KIM, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testCycle()
+	throws ParseException
+	{
+		index.add(tuple(ENG + "#" + MEMBER, MEMBER, DATABASE));
+		assertTrue(check(BEN, MEMBER, DATABASE));
+		assertTrue(check(BEN, MEMBER, BACKEND));
+
+		index.remove(tuple(ENG + "#" + MEMBER, MEMBER, DATABASE));
+		assertFalse(check(BEN, MEMBER, DATABASE));
+		assertTrue(check(KIM, VIEWER, ROADMAP));
+	}
+
+	@Test
+	public void testCopyDoesNotChangeOriginal()
+	throws ParseException
+	{
+		LeopardIndex copy = index.copy();
+		copy.remove(tuple(BACKEND + "#" + MEMBER, MEMBER, ENG));
+		copy.add(tuple(ENG + "#" + MEMBER, MEMBER, DATABASE));
+		copy.add(tuple(BEN, MEMBER, "app:group/ops"));
+
+		assertTrue(check(KIM, MEMBER, ENG));
+		assertFalse(check(BEN, MEMBER, DATABASE));
+		assertFalse(check(BEN, MEMBER, "app:group/ops"));
+
+		assertFalse(copy.check(new ObjectId(KIM), MEMBER, new ObjectId(ENG)));
+		assertTrue(copy.check(new ObjectId(BEN), MEMBER, new ObjectId(DATABASE)));
+		assertTrue(copy.check(new ObjectId(BEN), MEMBER, new ObjectId("app:group/ops")));
+	}
+
+	@Test
+	public void testAgreesWithTraversal()
+	throws ParseException, InvalidTupleException
+	{
+		Random random = new Random(42);
+		SimpleTupleStore indexed = new SimpleTupleStore().enableLeopardIndex();
+		SimpleTupleStore traversed = new SimpleTupleStore();
+		List<Tuple> written = new ArrayList<>();
+
+		for (int i = 0; i < 400; i++)
+		{
+			Tuple tuple = (random.nextInt(3) == 0
+				? tuple("app:user/u" + random.nextInt(20), MEMBER, "app:group/g" + random.nextInt(30))
+				: tuple("app:group/g" + random.nextInt(30) + "#" + MEMBER, MEMBER, "app:group/g" + random.nextInt(30)));
+			indexed.write(tuple);
+			traversed.write(tuple);
+			written.add(tuple);
+
+			if (i % 7 == 0)
+			{
+				Tuple removed = written.remove(random.nextInt(written.size()));
+				indexed.remove(removed);
+				traversed.remove(removed);
+			}
+		}
+
+		for (int u = 0; u < 20; u++)
+		{
+			for (int g = 0; g < 30; g++)
+			{
+				String user = "app:user/u" + u;
+				String group = "app:group/g" + g;
+				assertEquals(user + " in " + group, traversed.check(user, MEMBER, group), indexed.check(user, MEMBER, group));
+			}
+		}
+	}
+
+	private boolean check(String user, String relation, String objectId)
+	throws ParseException
+	{
+		return index.check(new ObjectId(user), relation, new ObjectId(objectId));
+	}
+
+	private static Tuple tuple(String userset, String relation, String objectId)
+	throws ParseException
+	{
+		return new Tuple(UserSet.parse(userset), relation, new ObjectId(objectId));
+	}
+}
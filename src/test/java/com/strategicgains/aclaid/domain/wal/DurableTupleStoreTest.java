@@ -0,0 +1,368 @@
+package com.strategicgains.aclaid.domain.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.encoded.DictionaryTupleStore;
+import com.strategicgains.aclaid.domain.wal.WriteAheadLog.FsyncPolicy;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+
+public class DurableTupleStoreTest
+{
+	private static final String KIM = "doc:user/kim";
+	private static final String BEN = "doc:user/ben";
+	private static final String CONTOSO_MEMBER = "org:contoso#member";
+	private static final String DOC_ROADMAP = "doc:document/roadmap";
+	private static final String DOC_SLIDES = "doc:document/slides";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+	private DurableTupleStore ts;
+
+	@Before
+	public void initialize()
+	throws IOException
+	{
+		directory = folder.getRoot().toPath().resolve("wal");
+		ts = new DurableTupleStore(directory);
+	}
+
+	@After
+	public void close()
+	throws IOException
+	{
+		ts.close();
+	}
+
+	@Test
+	public void testReplay()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP))
+			.write(Arrays.asList(tuple(BEN, "editor", DOC_ROADMAP), tuple(CONTOSO_MEMBER, "viewer", DOC_SLIDES), tuple(KIM, "member", "org:contoso")))
+			.remove(tuple(BEN, "editor", DOC_ROADMAP));
+		Tuple expiring = tuple(BEN, "viewer", DOC_SLIDES);
+		expiring.setExpiresAt(new Date(4102444800000L));
+		ts.write(expiring);
+		long revision = ts.getRevision();
+
+		reopen();
+
+		assertEquals(revision, ts.getRevision());
+		assertTrue(ts.check(UserSet.parse(KIM), "owner", new ObjectId(DOC_ROADMAP)));
+		assertFalse(ts.check(UserSet.parse(BEN), "editor", new ObjectId(DOC_ROADMAP)));
+		assertTrue(ts.check(UserSet.parse(KIM), "viewer", new ObjectId(DOC_SLIDES)));
+
+		List<Tuple> tuples = ((SimpleTupleStore) ts.getTupleStore()).readAll();
+		assertEquals(4, tuples.size());
+		Tuple replayed = tuples.get(tuples.indexOf(expiring));
+		assertEquals(expiring.getExpiresAt(), replayed.getExpiresAt());
+	}
+
+	@Test
+	public void testReplayRestoresRevisionOfReapedRewrite()
+	throws Exception
+	{
+		Tuple expiring = tuple(KIM, "viewer", DOC_SLIDES);
+		expiring.setExpiresAt(new Date(System.currentTimeMillis() + 200));
+		ts.write(expiring);
+		assertEquals(1, ts.getRevision());
+
+		// Writing it again changes the store only once the reaper has purged it.
+		SimpleTupleStore store = (SimpleTupleStore) ts.getTupleStore();
+		long deadline = System.currentTimeMillis() + 10_000;
+
+		while (store.getNextExpiry() != Long.MAX_VALUE && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(50);
+			store.reapExpired();
+		}
+
+		ts.write(expiring);
+		assertEquals(2, ts.getRevision());
+
+		reopen();
+		assertEquals(2, ts.getRevision());
+		ts.write(tuple(BEN, "owner", DOC_ROADMAP));
+		assertEquals(3, ts.getRevision());
+	}
+
+	@Test
+	public void testUnchangedWritesAreNotLogged()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+		long size = logSize();
+
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP)).remove(tuple(BEN, "owner", DOC_ROADMAP));
+		assertEquals(size, logSize());
+	}
+
+	@Test
+	public void testInvalidTupleIsNotLogged()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		try
+		{
+			ts.write(Arrays.asList(tuple(KIM, "owner", DOC_ROADMAP), new Tuple()));
+			fail("Expected InvalidTupleException");
+		}
+		catch (InvalidTupleException e)
+		{
+			// expected
+		}
+
+		reopen();
+		assertTrue(ts.isEmpty());
+		assertEquals(0, ts.getRevision());
+	}
+
+	@Test
+	public void testBatchRefusedByStoreKeepsLogUsable()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.close();
+		ts = new DurableTupleStore(new DictionaryTupleStore(), new WriteAheadLog(directory));
+		Tuple expiring = tuple(BEN, "viewer", DOC_SLIDES);
+		expiring.setExpiresAt(new Date(4102444800000L));
+
+		try
+		{
+			ts.write(expiring);
+			fail("Expected InvalidTupleException");
+		}
+		catch (InvalidTupleException e)
+		{
+			// expected
+		}
+
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+		assertEquals(1, ts.getRevision());
+		ts.close();
+
+		ts = new DurableTupleStore(new DictionaryTupleStore(), new WriteAheadLog(directory));
+		assertEquals(1, ts.getRevision());
+		assertTrue(ts.check(UserSet.parse(KIM), "owner", new ObjectId(DOC_ROADMAP)));
+		assertFalse(ts.check(UserSet.parse(BEN), "viewer", new ObjectId(DOC_SLIDES)));
+	}
+
+	@Test
+	public void testRefusedChangeIsNotApplied()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+		long revision = ts.getRevision();
+		ts.close();
+
+		try
+		{
+			ts.write(tuple(BEN, "owner", DOC_ROADMAP));
+			fail("Expected UncheckedIOException");
+		}
+		catch (UncheckedIOException e)
+		{
+			// expected
+		}
+
+		try
+		{
+			ts.remove(tuple(KIM, "owner", DOC_ROADMAP));
+			fail("Expected UncheckedIOException");
+		}
+		catch (UncheckedIOException e)
+		{
+			// expected
+		}
+
+		assertEquals(revision, ts.getRevision());
+		assertFalse(ts.check(UserSet.parse(BEN), "owner", new ObjectId(DOC_ROADMAP)));
+		assertTrue(ts.check(UserSet.parse(KIM), "owner", new ObjectId(DOC_ROADMAP)));
+	}
+
+	@Test
+	public void testTornTailIsTruncated()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+		ts.close();
+
+		// A crash part way through appending the next record.
+		Path segment = segments().get(0);
+		Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		reopen();
+		assertEquals(1, ts.getRevision());
+		ts.write(tuple(BEN, "owner", DOC_ROADMAP));
+
+		// The truncated segment is no longer the newest, but still replays cleanly.
+		reopen();
+		assertEquals(2, ts.getRevision());
+		assertEquals(2, segments().size());
+	}
+
+	@Test
+	public void testCorruptSegmentFailsReplay()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+		ts.close();
+		ts = new DurableTupleStore(directory);
+		ts.write(tuple(BEN, "owner", DOC_ROADMAP));
+		ts.close();
+
+		try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE))
+		{
+			channel.truncate(channel.size() - 1);
+		}
+
+		try
+		{
+			ts = new DurableTupleStore(directory);
+			fail("Expected IOException");
+		}
+		catch (IOException e)
+		{
+			// expected
+			ts = new DurableTupleStore(folder.newFolder().toPath());
+		}
+	}
+
+	@Test
+	public void testSegmentsRoll()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.close();
+		ts = new DurableTupleStore(new SimpleTupleStore(), new WriteAheadLog(directory, FsyncPolicy.NEVER, 0, 1024));
+
+		for (int i = 0; i < 200; i++)
+		{
+			ts.write(tuple(KIM, "viewer", "doc:document/d" + i));
+		}
+
+		assertTrue(segments().size() > 1);
+
+		reopen();
+		assertEquals(200, ts.getRevision());
+		assertTrue(ts.check(UserSet.parse(KIM), "viewer", new ObjectId("doc:document/d199")));
+	}
+
+	@Test
+	public void testConcurrentWritersWithPeriodicFsync()
+	throws Exception
+	{
+		ts.close();
+		ts = new DurableTupleStore(new SimpleTupleStore(), new WriteAheadLog(directory, FsyncPolicy.PERIODIC, 1, WriteAheadLog.DEFAULT_SEGMENT_SIZE));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> writers = new ArrayList<>();
+
+		for (int t = 0; t < 4; t++)
+		{
+			String user = "doc:user/u" + t;
+			writers.add(executor.submit(() -> {
+				for (int i = 0; i < 250; i++)
+				{
+					ts.write(tuple(user, "viewer", "doc:document/d" + i));
+					if (i % 5 == 0) ts.remove(tuple(user, "viewer", "doc:document/d" + i));
+				}
+
+				return null;
+			}));
+		}
+
+		for (Future<?> writer : writers)
+		{
+			writer.get();
+		}
+
+		executor.shutdown();
+		long revision = ts.getRevision();
+
+		reopen();
+		assertEquals(revision, ts.getRevision());
+		assertEquals(800, ((SimpleTupleStore) ts.getTupleStore()).readAll().size());
+	}
+
+	@Test
+	public void testClosedStoreRefusesWrites()
+	throws IOException, ParseException, InvalidTupleException
+	{
+		ts.close();
+
+		try
+		{
+			ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+			fail("Expected UncheckedIOException");
+		}
+		catch (UncheckedIOException e)
+		{
+			// expected
+		}
+	}
+
+	private void reopen()
+	throws IOException
+	{
+		ts.close();
+		ts = new DurableTupleStore(directory);
+	}
+
+	private long logSize()
+	throws IOException
+	{
+		ts.sync();
+		long size = 0;
+
+		for (Path segment : segments())
+		{
+			size += Files.size(segment);
+		}
+
+		return size;
+	}
+
+	private List<Path> segments()
+	throws IOException
+	{
+		try (Stream<Path> files = Files.list(directory))
+		{
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static Tuple tuple(String userset, String relation, String objectId)
+	throws ParseException
+	{
+		return new Tuple(userset, relation, objectId);
+	}
+}
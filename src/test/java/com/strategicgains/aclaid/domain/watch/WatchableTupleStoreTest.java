@@ -0,0 +1,253 @@
+package com.strategicgains.aclaid.domain.watch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strategicgains.aclaid.domain.ObjectId;
+import com.strategicgains.aclaid.domain.SimpleTupleStore;
+import com.strategicgains.aclaid.domain.Tuple;
+import com.strategicgains.aclaid.domain.UserSet;
+import com.strategicgains.aclaid.domain.encoded.DictionaryTupleStore;
+import com.strategicgains.aclaid.domain.watch.ChangeEvent.Type;
+import com.strategicgains.aclaid.domain.watch.WatchableTupleStore.OverflowPolicy;
+import com.strategicgains.aclaid.exception.InvalidTupleException;
+import com.strategicgains.aclaid.exception.RevisionExpiredException;
+
+public class WatchableTupleStoreTest
+{
+	private static final String KIM = "doc:user/kim";
+	private static final String BEN = "doc:user/ben";
+	private static final String CONTOSO_MEMBER = "org:contoso#member";
+	private static final String DOC_ROADMAP = "doc:document/roadmap";
+	private static final String DOC_SLIDES = "doc:document/slides";
+
+	private WatchableTupleStore ts;
+
+	@Before
+	public void initialize()
+	{
+		ts = new WatchableTupleStore(new SimpleTupleStore());
+	}
+
+	@Test
+	public void testEventsAreOrderedWithRevisions()
+	throws Exception
+	{
+		Watch watch = ts.watch();
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP))
+			.write(Arrays.asList(tuple(BEN, "editor", DOC_ROADMAP), tuple(CONTOSO_MEMBER, "viewer", DOC_SLIDES)))
+			.write(tuple(KIM, "owner", DOC_ROADMAP))
+			.remove(tuple(BEN, "viewer", DOC_SLIDES))
+			.remove(UserSet.parse(BEN), "editor", new ObjectId(DOC_ROADMAP));
+
+		List<ChangeEvent> events = watch.poll(10, 0, TimeUnit.MILLISECONDS);
+		assertEquals(4, events.size());
+		assertEvent(events.get(0), Type.WRITE, tuple(KIM, "owner", DOC_ROADMAP), 1);
+		assertEvent(events.get(1), Type.WRITE, tuple(BEN, "editor", DOC_ROADMAP), 2);
+		assertEvent(events.get(2), Type.WRITE, tuple(CONTOSO_MEMBER, "viewer", DOC_SLIDES), 2);
+		assertEvent(events.get(3), Type.REMOVE, tuple(BEN, "editor", DOC_ROADMAP), 3);
+		assertEquals(3, watch.getRevision());
+		assertTrue(watch.poll(10, 10, TimeUnit.MILLISECONDS).isEmpty());
+	}
+
+	@Test
+	public void testWatchFromRevision()
+	throws Exception
+	{
+		ts = new WatchableTupleStore(new DictionaryTupleStore());
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+		long revision = ts.getRevision();
+		ts.write(Arrays.asList(tuple(BEN, "editor", DOC_ROADMAP), tuple(BEN, "viewer", DOC_SLIDES)));
+		ts.remove(tuple(KIM, "owner", DOC_ROADMAP));
+
+		List<ChangeEvent> events = ts.watch(revision).poll(10, 0, TimeUnit.MILLISECONDS);
+		assertEquals(3, events.size());
+		assertEquals(tuple(BEN, "editor", DOC_ROADMAP), events.get(0).getTuple());
+		assertEquals(Type.REMOVE, events.get(2).getType());
+		assertEquals(ts.getRevision(), events.get(2).getRevision());
+
+		assertTrue(ts.watch(ts.getZookie()).poll(10, 0, TimeUnit.MILLISECONDS).isEmpty());
+	}
+
+	@Test
+	public void testPartialBatchDoesNotAdvanceRevision()
+	throws Exception
+	{
+		Watch watch = ts.watch();
+		ts.write(Arrays.asList(tuple(KIM, "owner", DOC_ROADMAP), tuple(BEN, "editor", DOC_ROADMAP), tuple(BEN, "viewer", DOC_SLIDES)));
+
+		assertEquals(2, watch.poll(2, 0, TimeUnit.MILLISECONDS).size());
+		assertEquals(0, watch.getRevision());
+		watch.close();
+
+		// Resuming from the last complete revision redelivers the whole batch.
+		assertEquals(3, ts.watch(watch.getRevision()).poll(10, 0, TimeUnit.MILLISECONDS).size());
+	}
+
+	@Test
+	public void testPollRejectsNonPositiveMaxEvents()
+	throws Exception
+	{
+		Watch watch = ts.watch();
+		ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+
+		try
+		{
+			watch.poll(0, 0, TimeUnit.MILLISECONDS);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+
+		// The pending change is still delivered and the store still accepts writes.
+		assertEquals(1, watch.poll(10, 0, TimeUnit.MILLISECONDS).size());
+		ts.write(tuple(BEN, "editor", DOC_ROADMAP));
+		assertEquals(1, watch.poll(10, 0, TimeUnit.MILLISECONDS).size());
+	}
+
+	@Test
+	public void testExpiredRevisionIsRejected()
+	throws Exception
+	{
+		ts = new WatchableTupleStore(new SimpleTupleStore(), 4, OverflowPolicy.EXPIRE);
+		Watch watch = ts.watch();
+
+		for (int i = 0; i < 6; i++)
+		{
+			ts.write(tuple(KIM, "viewer", "doc:document/d" + i));
+		}
+
+		try
+		{
+			watch.poll(10, 0, TimeUnit.MILLISECONDS);
+			fail("Expected RevisionExpiredException");
+		}
+		catch (RevisionExpiredException e)
+		{
+			assertEquals(0, watch.getRevision());
+		}
+
+		try
+		{
+			ts.watch(1);
+			fail("Expected RevisionExpiredException");
+		}
+		catch (RevisionExpiredException e)
+		{
+			// expected
+		}
+
+		List<ChangeEvent> events = ts.watch(2).poll(10, 0, TimeUnit.MILLISECONDS);
+		assertEquals(4, events.size());
+		assertEquals(3, events.get(0).getRevision());
+	}
+
+	@Test
+	public void testBlockingPolicyHoldsBackWriters()
+	throws Exception
+	{
+		ts = new WatchableTupleStore(new SimpleTupleStore(), 4, OverflowPolicy.BLOCK);
+		Watch watch = ts.watch();
+		CountDownLatch written = new CountDownLatch(1);
+
+		Thread writer = new Thread(() -> {
+			try
+			{
+				for (int i = 0; i < 10; i++)
+				{
+					ts.write(tuple(KIM, "viewer", "doc:document/d" + i));
+				}
+
+				written.countDown();
+			}
+			catch (ParseException | InvalidTupleException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+		writer.start();
+
+		assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+		assertEquals(4, ts.getRevision());
+
+		List<ChangeEvent> events = new ArrayList<>();
+
+		while (events.size() < 10)
+		{
+			events.addAll(watch.poll(3, 1, TimeUnit.SECONDS));
+		}
+
+		assertTrue(written.await(1, TimeUnit.SECONDS));
+
+		for (int i = 0; i < 10; i++)
+		{
+			assertEquals(i + 1, events.get(i).getRevision());
+		}
+	}
+
+	@Test
+	public void testClosingReleasesWriters()
+	throws Exception
+	{
+		ts = new WatchableTupleStore(new SimpleTupleStore(), 2, OverflowPolicy.BLOCK);
+		Watch watch = ts.watch();
+		ts.write(tuple(KIM, "viewer", DOC_ROADMAP)).write(tuple(KIM, "viewer", DOC_SLIDES));
+		watch.close();
+
+		ts.write(tuple(BEN, "viewer", DOC_SLIDES));
+		assertEquals(3, ts.getRevision());
+		assertTrue(watch.poll(10, 0, TimeUnit.MILLISECONDS).isEmpty());
+	}
+
+	@Test
+	public void testWaitingPollReceivesLaterChange()
+	throws Exception
+	{
+		Watch watch = ts.watch();
+
+		Thread writer = new Thread(() -> {
+			try
+			{
+				Thread.sleep(50);
+				ts.write(tuple(KIM, "owner", DOC_ROADMAP));
+			}
+			catch (InterruptedException | ParseException | InvalidTupleException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+		writer.start();
+
+		List<ChangeEvent> events = watch.poll(10, 5, TimeUnit.SECONDS);
+		assertEquals(1, events.size());
+		assertEquals(Type.WRITE, events.get(0).getType());
+		writer.join();
+	}
+
+	private static void assertEvent(ChangeEvent event, Type type, Tuple tuple, long revision)
+	{
+		assertEquals(type, event.getType());
+		assertEquals(tuple, event.getTuple());
+		assertEquals(revision, event.getRevision());
+	}
+
+	private static Tuple tuple(String userset, String relation, String objectId)
+	throws ParseException
+	{
+		return new Tuple(userset, relation, objectId);
+	}
+}